@@ -0,0 +1,50 @@
+package hangman;
+
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.ImmutableGameDetail;
+import hangman.service.LetterMask;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+// what the benchmarks share: a context holding just the components under test, and games part way through
+public final class Benchmarks {
+
+    // the guesses made before the one being measured, rarest letters first so they are misses
+    private static final String MISSES = "zqxjkvbpygfwmucldrhsnioeat";
+
+    private Benchmarks() {
+    }
+
+    // a plain context rather than a SpringApplication, so nothing depends on the spring.factories in the benchmark jar
+    public static AnnotationConfigApplicationContext context(Map<String, Object> properties, Class<?>... components) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.register(components);
+        context.refresh();
+        return context;
+    }
+
+    // a game on the word that has had guessCount wrong guesses, at most 9 so it is still being played
+    public static GameDetail game(String gameId, String secretWord, int guessCount) {
+        StringBuilder guesses = new StringBuilder();
+        long wordMask = LetterMask.of(secretWord);
+        for (int loop = 0; loop < MISSES.length() && guesses.length() < guessCount; loop++) {
+            if (!LetterMask.contains(wordMask, MISSES.charAt(loop))) {
+                guesses.append(MISSES.charAt(loop));
+            }
+        }
+        return ImmutableGameDetail.builder()
+                .gameId(gameId)
+                .secretWord(secretWord)
+                .guesses(guesses.toString())
+                .guessesRemaining(10 - guesses.length())
+                .nextGuessId(guesses.length())
+                .status(guesses.length() == 0 ? GameStatus.NEW : GameStatus.IN_PROGRESS)
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package hangman.admission;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// what deciding on a guess costs: admitting it, turning it away on a client's limit, and shedding it,
+// over 1024 clients and games, alone and with 4 threads deciding at once
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class AdmissionBenchmark {
+
+    private static final int KEYS = 1024;
+
+    private final String[] clients = new String[KEYS];
+    private final String[] games = new String[KEYS];
+    private AdmissionControl unlimited;
+    private AdmissionControl limited;
+    private AdmissionControl overloaded;
+
+    @State(Scope.Thread)
+    public static class Next {
+        int index;
+    }
+
+    @Setup
+    public void create() {
+        for (int loop = 0; loop < KEYS; loop++) {
+            clients[loop] = "10.0." + loop / 256 + "." + loop % 256;
+            games[loop] = Integer.toString(loop * 7919, 36);
+        }
+        unlimited = new AdmissionControl(System::nanoTime, 1e9, 1_000_000, 1e9, 1_000_000, 100_000,
+                Duration.ofMillis(50), Duration.ofMillis(100));
+        limited = new AdmissionControl(System::nanoTime, 1e-9, 1, 1e-9, 1, 100_000,
+                Duration.ofMillis(50), Duration.ofMillis(100));
+        // a clock that stops once a slow window has gone by, so the window never rolls over again
+        long[] time = {0};
+        overloaded = new AdmissionControl(() -> time[0], 1e9, 1_000_000, 1e9, 1_000_000, 100_000,
+                Duration.ofMillis(50), Duration.ofMillis(100));
+        overloaded.served(Duration.ofSeconds(1).toNanos());
+        time[0] = Duration.ofMillis(100).toNanos();
+        for (int loop = 0; loop < KEYS; loop++) {
+            limited.admit(clients[loop], games[loop]);
+        }
+        if (overloaded.admit(clients[0], games[0]) != AdmissionControl.Decision.OVERLOADED) {
+            throw new IllegalStateException("not overloaded");
+        }
+    }
+
+    @Benchmark
+    public AdmissionControl.Decision admitted(Next next) {
+        int index = next.index++ & KEYS - 1;
+        return unlimited.admit(clients[index], games[index]);
+    }
+
+    @Benchmark
+    public AdmissionControl.Decision limited(Next next) {
+        int index = next.index++ & KEYS - 1;
+        return limited.admit(clients[index], games[index]);
+    }
+
+    @Benchmark
+    public AdmissionControl.Decision shed(Next next) {
+        int index = next.index++ & KEYS - 1;
+        return overloaded.admit(clients[index], games[index]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public AdmissionControl.Decision admittedShared(Next next) {
+        int index = next.index++ & KEYS - 1;
+        return unlimited.admit(clients[index], games[index]);
+    }
+}
@@ -0,0 +1,67 @@
+package hangman.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hangman.Benchmarks;
+import hangman.service.GameDetail;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+// turning a game into the api response, and the response into the JSON that goes out (and into the ResponseCache).
+// write* is GameWriter, which the api uses for single games, the rest is the Jackson path it replaced
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class GameResponseBenchmark {
+
+    @Param({"yacht", "elephant", "accomplished"})
+    String secretWord;
+
+    @Param({"0", "5", "9"})
+    int guessCount;
+
+    private GameDetail game;
+    private GameResponse response;
+
+    // configured the way spring boot configures the api's mapper
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Setup
+    public void create() {
+        game = Benchmarks.game("a657aa", secretWord, guessCount);
+        response = GameResponses.build(game);
+    }
+
+    @Benchmark
+    public GameResponse build() {
+        return GameResponses.build(game);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] buildAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(GameResponses.build(game));
+    }
+
+    @Benchmark
+    public byte[] writeJson() {
+        return GameWriter.json(game);
+    }
+
+    @Benchmark
+    public byte[] writeBinary() {
+        return GameWriter.binary(game);
+    }
+}
@@ -0,0 +1,30 @@
+package hangman.metrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// what timing a request adds to it, alone and with 4 threads recording against the same route
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    private final Metrics metrics = new Metrics();
+
+    @Benchmark
+    public void recordRequest() {
+        metrics.recordRequest("PUT", "/api/hangman/games/{gameId}", 200, 1_500_000);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordRequestShared() {
+        metrics.recordRequest("PUT", "/api/hangman/games/{gameId}", 200, 1_500_000);
+    }
+}
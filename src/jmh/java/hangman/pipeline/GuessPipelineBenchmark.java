@@ -0,0 +1,60 @@
+package hangman.pipeline;
+
+import hangman.Benchmarks;
+import hangman.service.GameDetail;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// what publishing a guess costs the thread that made it, alone and with 4 threads publishing at once,
+// with the statistics consumer draining the pipeline
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class GuessPipelineBenchmark {
+
+    @Param({"DROP", "BLOCK"})
+    private GuessPipeline.Overflow overflow;
+
+    private final GameDetail game = Benchmarks.game("a657aa", "yacht", 3);
+    private GuessPipeline pipeline;
+
+    @Setup
+    public void start() {
+        pipeline = new GuessPipeline(Collections.singletonList(new GuessStats()), 65536, 1024, overflow);
+        pipeline.start();
+    }
+
+    @TearDown
+    public void stop() throws InterruptedException {
+        pipeline.close();
+        System.out.printf("%n%,d published, %,d dropped%n", pipeline.published(), pipeline.dropped());
+    }
+
+    @Benchmark
+    public void publish() {
+        pipeline.gameUpdated(game);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void publishShared() {
+        pipeline.gameUpdated(game);
+    }
+}
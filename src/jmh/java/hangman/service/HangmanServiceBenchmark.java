@@ -0,0 +1,116 @@
+package hangman.service;
+
+import hangman.Benchmarks;
+import hangman.api.GameStatus;
+import hangman.store.GameIdGenerator;
+import hangman.store.HangmanStore;
+import hangman.store.MapHangmanStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+
+/**
+ * A guess going through {@link HangmanService#applyGuess}: load, check, build the new game and update the store.
+ *
+ * Every invocation first puts the game back as it was before the guess, so each one measures the same guess.
+ * The contended benchmark has every thread guessing on one game, so most of them lose to a concurrent update.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HangmanServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Service {
+        ConfigurableApplicationContext context;
+        HangmanService service;
+        HangmanStore store;
+
+        @Setup
+        public void start() {
+            context = Benchmarks.context(Collections.emptyMap(),
+                    HangmanService.class, MapHangmanStore.class, GameIdGenerator.class, Dictionary.class);
+            service = context.getBean(HangmanService.class);
+            store = context.getBean(HangmanStore.class);
+        }
+
+        @TearDown
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Game {
+        @Param({"yacht", "elephant", "accomplished"})
+        String secretWord;
+
+        // the wrong guesses already made
+        @Param({"0", "5", "9"})
+        int guessCount;
+
+        GameDetail before;
+        char guess;
+
+        @Setup
+        public void create(Service service) {
+            before = Benchmarks.game(service.store.generateUniqueId(), secretWord, guessCount);
+            // a letter of the word, so the guess also checks for a win
+            guess = secretWord.charAt(0);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedGame {
+        GameDetail fresh;
+
+        @Setup(Level.Iteration)
+        public void create(Service service) {
+            fresh = Benchmarks.game(service.store.generateUniqueId(), "elephant", 0);
+            service.store.storeGame(fresh);
+        }
+    }
+
+    @Benchmark
+    public GameDetail applyGuess(Service service, Game game) {
+        service.store.storeGame(game.before);
+        return service.service.applyGuess(game.before.getGameId(), game.guess, game.before.getNextGuessId());
+    }
+
+    // each thread on its own game, so only the store's shared structures are contended
+    @Benchmark
+    @Threads(4)
+    public GameDetail applyGuessUncontended(Service service, Game game) {
+        return applyGuess(service, game);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object applyGuessContended(Service service, SharedGame shared) {
+        GameDetail current = service.service.getGameState(shared.fresh.getGameId());
+        if (current.getStatus() == GameStatus.WON || current.getStatus() == GameStatus.LOST) {
+            service.store.storeGame(shared.fresh);
+            return current;
+        }
+        // the nth guess is the nth letter, so no letter is guessed twice
+        char guess = (char) ('a' + current.getNextGuessId());
+        try {
+            return service.service.applyGuess(current.getGameId(), guess, current.getNextGuessId());
+        } catch (ConcurrentModificationException | IllegalStateException e) {
+            // another thread got in first
+            return e;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package hangman.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+// the letter checks made on every guess, over a spread of games so the results can't be folded away
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class LetterMaskBenchmark {
+
+    private static final int GAMES = 1024;
+    private static final String[] WORDS = {"yacht", "elephant", "accomplished", "\u00e9t\u00e9", "strengths"};
+
+    private final String[] words = new String[GAMES];
+    private final long[] wordMasks = new long[GAMES];
+    private final long[] guessedMasks = new long[GAMES];
+    private final char[] guesses = new char[GAMES];
+
+    @Setup
+    public void create() {
+        Random random = new Random(42);
+        for (int loop = 0; loop < GAMES; loop++) {
+            words[loop] = WORDS[random.nextInt(WORDS.length)];
+            wordMasks[loop] = LetterMask.of(words[loop]);
+            // most games have guessed some of their letters, a few all of them
+            guessedMasks[loop] = wordMasks[loop] & random.nextLong() | (random.nextInt(8) == 0 ? wordMasks[loop] : 0);
+            guesses[loop] = (char) ('a' + random.nextInt(26));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public int allMatched() {
+        int matched = 0;
+        for (int loop = 0; loop < GAMES; loop++) {
+            matched += LetterMask.allMatched(wordMasks[loop], guessedMasks[loop]) ? 1 : 0;
+        }
+        return matched;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public int contains() {
+        int found = 0;
+        for (int loop = 0; loop < GAMES; loop++) {
+            found += LetterMask.contains(wordMasks[loop], guesses[loop]) ? 1 : 0;
+        }
+        return found;
+    }
+
+    // done once for every game created
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public long wordMask() {
+        long masks = 0;
+        for (int loop = 0; loop < GAMES; loop++) {
+            masks ^= LetterMask.of(words[loop]);
+        }
+        return masks;
+    }
+}
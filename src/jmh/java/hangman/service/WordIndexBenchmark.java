@@ -0,0 +1,94 @@
+package hangman.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// the latency of a hint from the index against checking every word of the length, at the start of a game
+// (every word a candidate) and a few guesses in
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class WordIndexBenchmark {
+
+    private static final int LENGTH = 8;
+
+    @Param({"10000", "1000000"})
+    private int words;
+
+    @Param({"false", "true"})
+    private boolean parallel;
+
+    @Param({"        ", "  e   e ", "s e   er"})
+    private String shown;
+
+    private String failed;
+    private Dictionary dictionary;
+    private WordIndex index;
+
+    @Setup
+    public void create() {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        for (int loop = 0; loop < words; loop++) {
+            for (int offset = 0; offset < LENGTH; offset++) {
+                // squared so a few letters are common and most rare, as in real words
+                double skew = random.nextDouble();
+                text.append((char) ('a' + (int) (26 * skew * skew)));
+            }
+            text.append('\n');
+        }
+        dictionary = new Dictionary();
+        dictionary.load(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII)));
+        index = new WordIndex(dictionary, parallel ? 65536 : Integer.MAX_VALUE);
+        failed = shown.trim().isEmpty() ? "" : "tz";
+    }
+
+    @Benchmark
+    public Hint index() {
+        return index.hint(shown, failed);
+    }
+
+    @Benchmark
+    public long everyWord() {
+        int candidates = 0;
+        long tried = LetterMask.of(shown) | LetterMask.of(failed);
+        int[] counts = new int[LetterMask.LETTERS];
+        for (int word = 0; word < dictionary.size(LENGTH); word++) {
+            boolean fits = true;
+            long letters = 0L;
+            for (int offset = 0; offset < LENGTH && fits; offset++) {
+                char letter = dictionary.letter(LENGTH, word, offset);
+                fits = shown.charAt(offset) == ' ' ? !LetterMask.contains(tried, letter) : shown.charAt(offset) == letter;
+                letters |= LetterMask.of(letter);
+            }
+            if (fits) {
+                candidates++;
+                for (long untried = letters & ~tried; untried != 0; untried &= untried - 1) {
+                    counts[Long.numberOfTrailingZeros(untried)]++;
+                }
+            }
+        }
+        int best = 0;
+        for (int bit = 1; bit < LetterMask.LETTERS; bit++) {
+            best = counts[bit] > counts[best] ? bit : best;
+        }
+        return (long) candidates << 32 | best;
+    }
+}
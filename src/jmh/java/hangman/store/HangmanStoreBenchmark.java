@@ -0,0 +1,119 @@
+package hangman.store;
+
+import hangman.Benchmarks;
+import hangman.service.GameDetail;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+
+/**
+ * {@link HangmanStore#loadGame} and {@link HangmanStore#updateGame} on each backend.
+ *
+ * A game is played through a fixed list of versions, one guess apart, and updated back to the start when it runs out.
+ * In the contended benchmark every thread updates the same game from the version it loaded, so all but one fail.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HangmanStoreBenchmark {
+
+    private static final String WORD = "elephant";
+
+    @State(Scope.Benchmark)
+    public static class Store {
+        @Param({"map", "slab"})
+        String backend;
+
+        ConfigurableApplicationContext context;
+        HangmanStore store;
+
+        @Setup
+        public void start() {
+            context = Benchmarks.context(Collections.singletonMap("hangman.store.backend", backend),
+                    MapHangmanStore.class, SlabHangmanStore.class, GameIdGenerator.class);
+            store = context.getBean(HangmanStore.class);
+        }
+
+        @TearDown
+        public void stop() {
+            context.close();
+        }
+    }
+
+    // the versions of one game, versions[n] having made n guesses
+    public static class Versions {
+        GameDetail[] versions;
+
+        void create(HangmanStore store) {
+            String gameId = store.generateUniqueId();
+            versions = new GameDetail[10];
+            // wrong guesses only, so the game lasts for all of them
+            versions[0] = Benchmarks.game(gameId, WORD, 0);
+            for (int loop = 1; loop < versions.length; loop++) {
+                versions[loop] = Benchmarks.game(gameId, WORD, loop);
+            }
+            store.storeGame(versions[0]);
+        }
+
+        Object update(HangmanStore store) {
+            GameDetail current = store.loadGame(versions[0].getGameId()).get();
+            int next = current.getNextGuessId() + 1;
+            try {
+                // an update back to the start, as the stores only take a new game once
+                store.updateGame(versions[next == versions.length ? 0 : next], current.getNextGuessId());
+                return current;
+            } catch (ConcurrentModificationException e) {
+                return e;
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Game extends Versions {
+        @Setup
+        public void create(Store store) {
+            create(store.store);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedGame extends Versions {
+        @Setup
+        public void create(Store store) {
+            create(store.store);
+        }
+    }
+
+    @Benchmark
+    public GameDetail loadGame(Store store, Game game) {
+        return store.store.loadGame(game.versions[0].getGameId()).get();
+    }
+
+    @Benchmark
+    public Object updateGame(Store store, Game game) {
+        return game.update(store.store);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object updateGameUncontended(Store store, Game game) {
+        return game.update(store.store);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object updateGameContended(Store store, SharedGame game) {
+        return game.update(store.store);
+    }
+}
@@ -0,0 +1,65 @@
+package hangman;
+
+import hangman.api.LiteServer;
+import hangman.api.ResponseCache;
+import hangman.service.Dictionary;
+import hangman.service.HangmanService;
+import hangman.service.VirtualThreads;
+import hangman.store.MapHangmanStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the game endpoints without starting Spring: the dictionary, an in-memory store, the service and the
+ * response cache are wired here by hand and put behind a {@link LiteServer}. It starts in a fraction of the time
+ * and memory {@link App} takes, for short lived instances and tests, but only the map store, with its default
+ * expiry, and none of the bulk, batch, event, hint or metrics endpoints.
+ *
+ * Takes {@code -Dserver.port}, {@code -Dhangman.dictionary.file}, {@code -Dhangman.lite.threads} and
+ * {@code -Dhangman.threads.virtual}, which on Java 21 or later handles each request on a virtual thread instead.
+ */
+public class LiteApp {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LiteApp.class);
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.getInteger("server.port", 8080);
+        int threads = Integer.getInteger("hangman.lite.threads", 32);
+
+        MapHangmanStore store = new MapHangmanStore(Duration.ofHours(1), Duration.ofDays(1));
+        store.start();
+        HangmanService service = new HangmanService(store, Dictionary.loadFrom(System.getProperty("hangman.dictionary.file", "")));
+        LiteServer server = new LiteServer(service, new ResponseCache(100_000, Duration.ofMinutes(10)));
+
+        ExecutorService executor;
+        if (Boolean.getBoolean("hangman.threads.virtual") && VirtualThreads.isSupported()) {
+            executor = VirtualThreads.newExecutor("hangman-lite-");
+        } else {
+            if (Boolean.getBoolean("hangman.threads.virtual")) {
+                LOGGER.warn("hangman.threads.virtual is set but virtual threads need Java 21 or later, this is {}",
+                        Runtime.version());
+            }
+            AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "hangman-lite-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        server.start(port, executor);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            executor.shutdown();
+            store.stop();
+        }));
+        LOGGER.info("Started LiteApp on port {} in {}ms", server.getPort(),
+                Duration.between(ProcessHandle.current().info().startInstant().orElseGet(Instant::now), Instant.now()).toMillis());
+    }
+}
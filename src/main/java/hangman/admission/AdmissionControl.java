@@ -0,0 +1,210 @@
+package hangman.admission;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether a guess is served or turned away with a 429, so one client hammering the guess endpoints
+ * can't take the latency of everyone else down with it. Enabled by setting {@code hangman.admission.enabled=true}.
+ *
+ * Each client, and each game, gets a {@link TokenBucket}: {@code hangman.admission.client.rate} guesses a second
+ * with bursts of {@code hangman.admission.client.burst}, and the same under {@code hangman.admission.game}.
+ * A batch is charged a guess for each of its items. The buckets are held in {@link BucketTable}s of {@code hangman.admission.max-tracked} slots each, so clients
+ * that keep changing their address can't make the tables grow.
+ *
+ * On top of that, every guess is turned away while the guess path is overloaded. Following CoDel, the time taken
+ * by the guesses that are served is watched over windows of {@code hangman.admission.latency-interval}. A queue
+ * that clears shows up as at least one fast guess in the window. If even the fastest guess of a window took longer
+ * than {@code hangman.admission.latency-target}, requests are waiting behind a standing queue, and the next window
+ * sheds load. Shedding is a volatile read, so a turned away guess costs little more than parsing its path.
+ *
+ * The time is service time, from the admission filter to the response: queues inside the app (the store, the
+ * journal, the guess pipeline) are in it, but the server's accept and worker queues ahead of the filter are not,
+ * since neither Tomcat nor Netty stamps a request before a worker picks it up. Those are bounded by the server's
+ * own settings, e.g. {@code server.tomcat.accept-count} and {@code server.tomcat.threads.max}.
+ */
+@Component
+@ConditionalOnProperty(name = "hangman.admission.enabled", havingValue = "true")
+public class AdmissionControl {
+
+    public enum Decision {
+        ADMITTED, CLIENT_LIMITED, GAME_LIMITED, OVERLOADED
+    }
+
+    private static final String GAMES = "/api/hangman/games/";
+    private static final String GUESSES = "/api/hangman/guesses";
+
+    @Value("${hangman.admission.client.rate:50}")
+    private double clientRate = 50;
+
+    @Value("${hangman.admission.client.burst:100}")
+    private int clientBurst = 100;
+
+    @Value("${hangman.admission.game.rate:20}")
+    private double gameRate = 20;
+
+    @Value("${hangman.admission.game.burst:40}")
+    private int gameBurst = 40;
+
+    @Value("${hangman.admission.max-tracked:100000}")
+    private long maxTracked = 100_000;
+
+    @Value("${hangman.admission.latency-target:50ms}")
+    private Duration latencyTarget = Duration.ofMillis(50);
+
+    @Value("${hangman.admission.latency-interval:100ms}")
+    private Duration latencyInterval = Duration.ofMillis(100);
+
+    private final LongSupplier clock;
+    private final LongAdder[] decisions = new LongAdder[Decision.values().length];
+
+    private BucketTable clients;
+    private BucketTable games;
+
+    // the fastest guess served since the window started, Long.MAX_VALUE for none
+    private final AtomicLong windowStart = new AtomicLong();
+    private final AtomicLong windowFastest = new AtomicLong(Long.MAX_VALUE);
+    private volatile boolean overloaded;
+
+    public AdmissionControl() {
+        this(System::nanoTime);
+    }
+
+    AdmissionControl(LongSupplier clock) {
+        this.clock = clock;
+        for (int loop = 0; loop < decisions.length; loop++) {
+            decisions[loop] = new LongAdder();
+        }
+    }
+
+    AdmissionControl(LongSupplier clock, double clientRate, int clientBurst, double gameRate, int gameBurst,
+                     long maxTracked, Duration latencyTarget, Duration latencyInterval) {
+        this(clock);
+        this.clientRate = clientRate;
+        this.clientBurst = clientBurst;
+        this.gameRate = gameRate;
+        this.gameBurst = gameBurst;
+        this.maxTracked = maxTracked;
+        this.latencyTarget = latencyTarget;
+        this.latencyInterval = latencyInterval;
+        createCaches();
+    }
+
+    @PostConstruct
+    void createCaches() {
+        clients = new BucketTable(maxTracked);
+        games = new BucketTable(maxTracked);
+        windowStart.set(clock.getAsLong());
+    }
+
+    // a guess on one game, or a batch of guesses. Everything else is always admitted.
+    public static boolean isGuess(String method, String path) {
+        if (method.equals("PUT")) {
+            return path.startsWith(GAMES) && path.indexOf('/', GAMES.length()) < 0;
+        }
+        return method.equals("POST") && path.equals(GUESSES);
+    }
+
+    // the game a guess is on, or null for a batch, whose games are in its body
+    public static String gameOf(String path) {
+        return path.startsWith(GAMES) ? path.substring(GAMES.length()) : null;
+    }
+
+    // a null client skips the client's limit, for guesses another node has already admitted
+    public Decision admit(String client, String gameId) {
+        long now = clock.getAsLong();
+        rollWindow(now);
+        Decision decision = Decision.ADMITTED;
+        if (overloaded) {
+            decision = Decision.OVERLOADED;
+        } else if (client != null && !clients.get(client, clientRate, clientBurst, now).tryTake(now)) {
+            decision = Decision.CLIENT_LIMITED;
+        } else if (gameId != null && !games.get(gameId, gameRate, gameBurst, now).tryTake(now)) {
+            decision = Decision.GAME_LIMITED;
+        }
+        decisions[decision.ordinal()].increment();
+        return decision;
+    }
+
+    // whether a batch could be admitted at all, checked before its body is read so a batch turned away costs
+    // no more than a single guess. Takes nothing, and counts only a batch it turns away, as one guess.
+    public Decision precheckBatch(String client) {
+        long now = clock.getAsLong();
+        rollWindow(now);
+        Decision decision = Decision.ADMITTED;
+        if (overloaded) {
+            decision = Decision.OVERLOADED;
+        } else if (client != null && !clients.get(client, clientRate, clientBurst, now).hasToken(now)) {
+            decision = Decision.CLIENT_LIMITED;
+        }
+        if (decision != Decision.ADMITTED) {
+            decisions[decision.ordinal()].increment();
+        }
+        return decision;
+    }
+
+    // a batch of guesses costs the client one token per guess, and each game one per guess on it.
+    // As with a single guess, tokens already taken stay taken if a later limit turns the batch away.
+    public Decision admitBatch(String client, List<String> gameIds) {
+        long now = clock.getAsLong();
+        rollWindow(now);
+        Decision decision = Decision.ADMITTED;
+        if (overloaded) {
+            decision = Decision.OVERLOADED;
+        } else if (client != null && !clients.get(client, clientRate, clientBurst, now).tryTake(now, gameIds.size())) {
+            decision = Decision.CLIENT_LIMITED;
+        } else {
+            Map<String, Integer> guessesPerGame = new HashMap<>();
+            gameIds.forEach(gameId -> guessesPerGame.merge(gameId, 1, Integer::sum));
+            for (Map.Entry<String, Integer> game : guessesPerGame.entrySet()) {
+                if (!games.get(game.getKey(), gameRate, gameBurst, now).tryTake(now, game.getValue())) {
+                    decision = Decision.GAME_LIMITED;
+                    break;
+                }
+            }
+        }
+        decisions[decision.ordinal()].add(gameIds.size());
+        return decision;
+    }
+
+    // how long an admitted guess took to serve, once a server thread had picked it up
+    public void served(long nanos) {
+        long fastest = windowFastest.get();
+        while (nanos < fastest && !windowFastest.compareAndSet(fastest, nanos)) {
+            fastest = windowFastest.get();
+        }
+        rollWindow(clock.getAsLong());
+    }
+
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    // the guesses given that decision so far
+    public long count(Decision decision) {
+        return decisions[decision.ordinal()].sum();
+    }
+
+    public int trackedClients() {
+        return clients.size();
+    }
+
+    // a window with nothing served in it ends any shedding, so a quiet spell always lets guesses through again
+    private void rollWindow(long now) {
+        long start = windowStart.get();
+        if (now - start >= latencyInterval.toNanos() && windowStart.compareAndSet(start, now)) {
+            long fastest = windowFastest.getAndSet(Long.MAX_VALUE);
+            overloaded = fastest != Long.MAX_VALUE && fastest > latencyTarget.toNanos();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package hangman.admission;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hangman.admission.AdmissionControl.Decision;
+import hangman.api.BodyRequest;
+import hangman.api.GuessRequest;
+import hangman.api.ImmutableGuessRequest;
+import hangman.cluster.Cluster;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puts {@link AdmissionControl} in front of the guess endpoints in servlet mode. It runs just inside
+ * the metrics filter, so turned away guesses are still counted, and before the cluster filter. A guess forwarded
+ * by another node of the cluster was held to its client's limit there, so only the game's limit and the shedding
+ * apply to it here, on the node that owns the game. A batch is read here to charge it a guess for each of its items,
+ * but only once the shedding and its client's limit would let it through, and only up to a size that
+ * {@code hangman.api.max-batch-size} items could take. A larger body gets a 413 without being read.
+ *
+ * Clients are told apart by their address, or by {@code hangman.admission.client-header} when set, for
+ * deployments behind a proxy that passes the address on.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@ConditionalOnProperty(name = "hangman.admission.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private AdmissionControl admission;
+
+    @Autowired(required = false)
+    private Cluster cluster;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${hangman.admission.client-header:}")
+    private String clientHeader = "";
+
+    @Value("${hangman.api.max-batch-size:1000}")
+    private int maxBatchSize = 1000;
+
+    // room for any item of a batch, whose ids and numbers are far shorter
+    private static final int MAX_ITEM_BYTES = 256;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI();
+        if (!AdmissionControl.isGuess(request.getMethod(), path)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String client = null;
+        // anyone can send the forwarded header, so only a node with the cluster's token skips the client's limit
+        if (cluster == null || !cluster.isForwarded(request.getHeader(Cluster.FORWARDED), request.getHeader(Cluster.TOKEN))) {
+            client = clientHeader.isEmpty() ? null : request.getHeader(clientHeader);
+            client = client == null ? request.getRemoteAddr() : client;
+        }
+        String gameId = AdmissionControl.gameOf(path);
+        Decision decision;
+        if (gameId == null) {
+            decision = admission.precheckBatch(client);
+            if (decision == Decision.ADMITTED) {
+                long maxBytes = (long) maxBatchSize * MAX_ITEM_BYTES;
+                byte[] body = request.getContentLengthLong() > maxBytes
+                        ? null : request.getInputStream().readNBytes((int) maxBytes + 1);
+                if (body == null || body.length > maxBytes) {
+                    response.setStatus(HttpStatus.PAYLOAD_TOO_LARGE.value());
+                    return;
+                }
+                request = new BodyRequest(request, body);
+                List<String> gameIds = gamesOf(body);
+                if (gameIds.size() > maxBatchSize) {
+                    response.setStatus(HttpStatus.BAD_REQUEST.value());
+                    return;
+                }
+                // one that won't parse is charged as a single guess, and left to the api to turn down
+                decision = gameIds.isEmpty() ? admission.admit(client, null) : admission.admitBatch(client, gameIds);
+            }
+        } else {
+            decision = admission.admit(client, gameId);
+        }
+        if (decision != Decision.ADMITTED) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            admission.served(System.nanoTime() - start);
+        }
+    }
+
+    private List<String> gamesOf(byte[] body) {
+        List<String> gameIds = new ArrayList<>();
+        try {
+            for (GuessRequest guess : objectMapper.readValue(body, ImmutableGuessRequest[].class)) {
+                gameIds.add(guess.getGameId());
+            }
+        } catch (IOException e) {
+            gameIds.clear();
+        }
+        return gameIds;
+    }
+}
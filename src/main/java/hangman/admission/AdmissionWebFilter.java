@@ -0,0 +1,54 @@
+package hangman.admission;
+
+import hangman.admission.AdmissionControl.Decision;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+// the reactive equivalent of AdmissionFilter
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@ConditionalOnProperty(name = "hangman.admission.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class AdmissionWebFilter implements WebFilter {
+
+    @Autowired
+    private AdmissionControl admission;
+
+    @Value("${hangman.admission.client-header:}")
+    private String clientHeader = "";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().value();
+        if (!AdmissionControl.isGuess(request.getMethodValue(), path)) {
+            return chain.filter(exchange);
+        }
+        String client = clientHeader.isEmpty() ? null : request.getHeaders().getFirst(clientHeader);
+        if (client == null) {
+            InetSocketAddress address = request.getRemoteAddress();
+            client = address == null ? "" : address.getHostString();
+        }
+        if (admission.admit(client, AdmissionControl.gameOf(path)) != Decision.ADMITTED) {
+            exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+            exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+            return exchange.getResponse().setComplete();
+        }
+        long start = System.nanoTime();
+        return chain.filter(exchange).doFinally(signal -> admission.served(System.nanoTime() - start));
+    }
+}
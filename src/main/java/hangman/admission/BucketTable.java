@@ -0,0 +1,58 @@
+package hangman.admission;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed number of slots holding {@link TokenBucket}s by key, so the memory kept per client or game is bounded
+ * however many of them turn up.
+ *
+ * Each key can live in one of two slots, picked by two different hashes of it. A lookup that finds the key in
+ * neither takes over whichever of the two holds the fuller bucket, usually one that hasn't been used for a while.
+ * The evicted key starts again with a full bucket next time, which only ever errs on the side of admitting.
+ * Lookups take no lock and only allocate when they add a key.
+ */
+final class BucketTable {
+
+    private final AtomicReferenceArray<TokenBucket> slots;
+    private final int shift;
+
+    // rounded up to a power of two, at least 2
+    BucketTable(long size) {
+        int capacity = 2;
+        while (capacity < size && capacity < 1 << 30) {
+            capacity <<= 1;
+        }
+        slots = new AtomicReferenceArray<>(capacity);
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    TokenBucket get(String key, double rate, int burst, long now) {
+        int hash = key.hashCode();
+        int first = (hash ^ hash >>> 16) & slots.length() - 1;
+        int second = hash * 0x9e3779b9 >>> shift;
+        while (true) {
+            TokenBucket inFirst = slots.get(first);
+            if (inFirst != null && inFirst.key.equals(key)) {
+                return inFirst;
+            }
+            TokenBucket inSecond = slots.get(second);
+            if (inSecond != null && inSecond.key.equals(key)) {
+                return inSecond;
+            }
+            TokenBucket bucket = new TokenBucket(key, rate, burst, now);
+            boolean replaceFirst = inFirst == null || inSecond != null && inFirst.fullAt() <= inSecond.fullAt();
+            if (replaceFirst ? slots.compareAndSet(first, inFirst, bucket) : slots.compareAndSet(second, inSecond, bucket)) {
+                return bucket;
+            }
+            // another thread changed the slot, which may have been to add this key
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (int loop = 0; loop < slots.length(); loop++) {
+            size += slots.get(loop) == null ? 0 : 1;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,56 @@
+package hangman.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket refilled at a fixed rate up to a burst, held as a single {@code long} so it can be updated
+ * with a compare-and-set rather than a lock.
+ *
+ * Rather than a token count and the time it was last topped up, the bucket keeps the time at which it will be
+ * full again (the generic cell rate algorithm). Taking a token pushes that time one interval further on, and a
+ * token is only there to take while the time is less than a whole burst of intervals ahead of now.
+ */
+final class TokenBucket {
+
+    final String key;
+    private final long interval;
+    private final long burstTolerance;
+    private final AtomicLong fullAt;
+
+    // starts full. rate is tokens per second
+    TokenBucket(String key, double rate, int burst, long now) {
+        this.key = key;
+        interval = Math.max(1, (long) (1_000_000_000L / rate));
+        burstTolerance = interval * (burst - 1);
+        fullAt = new AtomicLong(now);
+    }
+
+    // the time it will be full again, if nothing more is taken
+    long fullAt() {
+        return fullAt.get();
+    }
+
+    boolean tryTake(long now) {
+        return tryTake(now, 1);
+    }
+
+    // whether tryTake would succeed now, taking nothing
+    boolean hasToken(long now) {
+        return Math.max(fullAt.get(), now) - now <= burstTolerance;
+    }
+
+    // takes them all as long as there is one to take, borrowing the rest from the refills to come,
+    // so a batch larger than the burst still gets through a full bucket
+    boolean tryTake(long now, int tokens) {
+        while (true) {
+            long current = fullAt.get();
+            long from = Math.max(current, now);
+            if (from - now > burstTolerance) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, from + interval * tokens)) {
+                return true;
+            }
+        }
+    }
+}
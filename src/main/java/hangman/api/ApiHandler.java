@@ -1,87 +1,251 @@
 package hangman.api;
 
+import hangman.api.ResponseCache.CachedResponse;
 import hangman.service.GameDetail;
+import hangman.service.GameFinishedException;
+import hangman.service.Guess;
+import hangman.service.GuessOutcome;
 import hangman.service.HangmanService;
+import hangman.service.ImmutableGuess;
 import hangman.service.InvalidGameException;
+import hangman.service.InvalidGuessException;
+import hangman.service.WordIndex;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
-import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/hangman")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ApiHandler {
 
+    // one game per line
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+
+    // games looked up per call to the store
+    static final int LOOKUP_BATCH = 256;
+
     @Autowired
     private HangmanService service;
 
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private GameEvents events;
+
+    @Autowired
+    private WordIndex wordIndex;
+
+    @Value("${hangman.api.max-batch-size:1000}")
+    private int maxBatchSize = 1000;
+
+    @Value("${hangman.api.max-lookup-size:100000}")
+    private int maxLookupSize = 100_000;
+
+    // an event stream holds no thread while it waits, only the connection
+    @Value("${hangman.api.events.timeout:1h}")
+    private Duration eventsTimeout = Duration.ofHours(1);
+
     @RequestMapping(value = "/games/{gameId}", method = RequestMethod.GET)
-    public ResponseEntity<GameResponse> getGameState(@PathVariable String gameId) {
+    public ResponseEntity<byte[]> getGameState(@PathVariable String gameId,
+                                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                               @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        // the store is asked every time, as other writers move games too; the cache only saves serializing it again
+        CachedResponse response;
         try {
-            return ResponseEntity.ok(buildResponse(service.getGameState(gameId)));
+            response = responseCache.current(service.getGameState(gameId));
         } catch (InvalidGameException e) {
+            responseCache.invalidate(gameId);
             return ResponseEntity.notFound().build();
         }
+        String etag = response.getEtag(GameWriter.prefersBinary(accept));
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return respond(ResponseEntity.ok(), response, accept);
     }
 
     @RequestMapping(value = "/games", method = RequestMethod.POST)
-    public ResponseEntity<GameResponse> newGame() {
-        GameDetail newGame = service.createNewGame();
+    public ResponseEntity<byte[]> newGame(@RequestParam(required = false) Integer length,
+                                          @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        GameDetail newGame;
+        try {
+            newGame = length == null ? service.createNewGame() : service.createNewGame(length);
+        } catch (IllegalArgumentException e) {
+            // no words of that length
+            return ResponseEntity.badRequest().build();
+        }
         String newResource = ServletUriComponentsBuilder.fromCurrentRequestUri()
                 .path("/").path(newGame.getGameId())
                 .build().toString();
-        return ResponseEntity.created(URI.create(newResource)).body(buildResponse(newGame));
+        return respond(ResponseEntity.created(URI.create(newResource)), responseCache.cache(newGame), accept);
     }
 
     @RequestMapping(value = "/games/{gameId}", method = RequestMethod.PUT)
-    public ResponseEntity<GameResponse> guess(@PathVariable String gameId, @RequestParam Character guess, @RequestParam int guessId) {
+    public ResponseEntity<byte[]> guess(@PathVariable String gameId, @RequestParam Character guess, @RequestParam int guessId,
+                                        @RequestParam(defaultValue = "false") boolean merge,
+                                        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
         try {
-            return ResponseEntity.ok(buildResponse(service.applyGuess(gameId, guess, guessId)));
+            return respond(ResponseEntity.ok(), responseCache.cache(service.applyGuess(gameId, guess, guessId, merge)), accept);
         } catch (InvalidGameException e) {
+            responseCache.invalidate(gameId);
             return ResponseEntity.notFound().build();
         } catch (ConcurrentModificationException e2) {
+            // someone else moved the game, so the cached copy is behind
+            responseCache.invalidate(gameId);
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (GameFinishedException e3) {
             return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (InvalidGuessException e4) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @RequestMapping(value = "/games/{gameId}/hint", method = RequestMethod.GET)
+    public ResponseEntity<HintResponse> hint(@PathVariable String gameId) {
+        try {
+            return ResponseEntity.ok(GameResponses.buildHint(service.getGameState(gameId), wordIndex));
+        } catch (InvalidGameException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @RequestMapping(value = "/games/{gameId}/events", method = RequestMethod.GET)
+    public ResponseEntity<ResponseBodyEmitter> events(@PathVariable String gameId) {
+        // each event is a complete text/event-stream frame, written out as it is
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(eventsTimeout.toMillis());
+        Runnable unsubscribe;
+        try {
+            unsubscribe = events.subscribe(gameId, new GameEvents.Subscriber() {
+                @Override
+                public void send(byte[] event) throws IOException {
+                    emitter.send(event);
+                }
+
+                @Override
+                public void complete() {
+                    emitter.complete();
+                }
+            }).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof InvalidGameException) {
+                return ResponseEntity.notFound().build();
+            }
+            throw e;
+        }
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(error -> unsubscribe.run());
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter);
+    }
+
+    @RequestMapping(value = "/games/bulk", method = RequestMethod.POST)
+    public ResponseEntity<List<GameResponse>> newGames(@RequestParam int count) {
+        if (count < 1 || count > maxBatchSize) {
+            return ResponseEntity.badRequest().build();
         }
+        List<GameResponse> responses = new ArrayList<>(count);
+        for (GameDetail newGame : service.createNewGames(count)) {
+            responses.add(GameResponses.build(newGame));
+        }
+        return ResponseEntity.ok(responses);
     }
 
-    private GameResponse buildResponse(GameDetail game) {
-        ImmutableGameState state = ImmutableGameState.builder()
-                .guessesRemaining(game.getGuessesRemaining())
-                .nextGuessId(game.getNextGuessId())
-                .failedGuesses(buildFailedGuesses(game.getSecretWord(), game.getGuesses()))
-                .matchingLetters(buildMatchString(game.getSecretWord(), game.getGuesses()))
-                .status(game.getStatus())
-                .build();
-        return ImmutableGameResponse.builder()
-                .gameId(game.getGameId())
-                .numberOfLetters(game.getSecretWord().length())
-                .state(state)
-                .build();
+    // every game with one of the statuses, or every game. Written out as the store is walked, so only a
+    // response buffer's worth is ever held, and the games can change while the scan runs.
+    @RequestMapping(value = "/games", method = RequestMethod.GET)
+    public void scanGames(@RequestParam(required = false) Set<GameStatus> status, HttpServletResponse response) throws IOException {
+        Iterator<GameDetail> games = service.scanGames(status == null || status.isEmpty()
+                ? EnumSet.allOf(GameStatus.class) : EnumSet.copyOf(status));
+        response.setContentType(NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        while (games.hasNext()) {
+            out.write(GameWriter.json(games.next()));
+            out.write('\n');
+        }
+    }
+
+    // the games for a JSON array of ids, in the same order, leaving out ids with no game
+    @RequestMapping(value = "/games/lookup", method = RequestMethod.POST)
+    public void lookupGames(@RequestBody List<String> gameIds, HttpServletResponse response) throws IOException {
+        if (gameIds.size() > maxLookupSize) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+        response.setContentType(NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        for (int start = 0; start < gameIds.size(); start += LOOKUP_BATCH) {
+            for (GameDetail game : service.getGameStates(gameIds.subList(start, Math.min(start + LOOKUP_BATCH, gameIds.size())))) {
+                out.write(GameWriter.json(game));
+                out.write('\n');
+            }
+        }
     }
 
-    private String buildMatchString(String secretWord, List<Character> guesses) {
-        Set<Character> guessSet = new HashSet<>(guesses);
-        StringBuilder sb = new StringBuilder();
-        for(int loop = 0; loop < secretWord.length(); loop++) {
-            if (guessSet.contains(secretWord.charAt(loop))) {
-                sb.append(secretWord.charAt(loop));
-            } else {
-                sb.append(" ");
+    @RequestMapping(value = "/guesses", method = RequestMethod.POST)
+    public ResponseEntity<List<GuessResult>> guesses(@RequestBody List<GuessRequest> requests) {
+        if (requests.isEmpty() || requests.size() > maxBatchSize) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<Guess> guesses = new ArrayList<>(requests.size());
+        for (GuessRequest request : requests) {
+            guesses.add(ImmutableGuess.of(request.getGameId(), request.getGuess(), request.getGuessId()));
+        }
+        List<GuessOutcome> outcomes = service.applyGuesses(guesses);
+
+        List<GuessResult> results = new ArrayList<>(outcomes.size());
+        for (int loop = 0; loop < outcomes.size(); loop++) {
+            GuessOutcome outcome = outcomes.get(loop);
+            String gameId = requests.get(loop).getGameId();
+            ImmutableGuessResult.Builder result = ImmutableGuessResult.builder().gameId(gameId);
+            switch (outcome.getResult()) {
+                case APPLIED:
+                    responseCache.invalidate(gameId);
+                    result.status(HttpStatus.OK.value()).game(GameResponses.build(outcome.getGame().get()));
+                    break;
+                case NOT_FOUND:
+                    result.status(HttpStatus.NOT_FOUND.value());
+                    break;
+                case INVALID:
+                    result.status(HttpStatus.BAD_REQUEST.value());
+                    break;
+                default:
+                    result.status(HttpStatus.CONFLICT.value());
+                    outcome.getGame().ifPresent(game -> result.game(GameResponses.build(game)));
             }
+            results.add(result.build());
         }
-        return sb.toString();
+        return ResponseEntity.ok(results);
     }
 
-    private List<Character> buildFailedGuesses(String secretWord, List<Character> guesses) {
-        return guesses.stream().filter(s -> secretWord.indexOf(s) == -1).collect(Collectors.toList());
+    // JSON, unless the client asked for the binary format
+    private ResponseEntity<byte[]> respond(ResponseEntity.BodyBuilder builder, CachedResponse response, String accept) {
+        boolean binary = GameWriter.prefersBinary(accept);
+        return builder.eTag(response.getEtag(binary))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .contentType(binary ? GameWriter.BINARY : MediaType.APPLICATION_JSON)
+                .body(binary ? response.getBinaryBody() : response.getBody());
     }
 
 }
@@ -0,0 +1,101 @@
+package hangman.api;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+// a request whose body has already been read, and possibly replaced
+public final class BodyRequest extends HttpServletRequestWrapper {
+    private final byte[] body;
+
+    public BodyRequest(HttpServletRequest request, byte[] body) {
+        super(request);
+        this.body = body;
+    }
+
+    @Override
+    public int getContentLength() {
+        return body.length;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return body.length;
+    }
+
+    @Override
+    public BufferedReader getReader() {
+        // the servlet default when the request names no encoding
+        String encoding = getCharacterEncoding();
+        Charset charset = encoding == null ? StandardCharsets.ISO_8859_1 : Charset.forName(encoding);
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), charset));
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+        ByteArrayInputStream in = new ByteArrayInputStream(body);
+        return new ServletInputStream() {
+            private ReadListener listener;
+            private boolean dispatching;
+            private boolean allRead;
+
+            @Override
+            public boolean isFinished() {
+                return in.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            // the whole body is in memory, so it is all available straight away
+            @Override
+            public void setReadListener(ReadListener readListener) {
+                listener = readListener;
+                try {
+                    if (!isFinished()) {
+                        dispatching = true;
+                        try {
+                            listener.onDataAvailable();
+                        } finally {
+                            dispatching = false;
+                        }
+                    }
+                    finished();
+                } catch (IOException e) {
+                    listener.onError(e);
+                }
+            }
+
+            @Override
+            public int read() throws IOException {
+                int read = in.read();
+                finished();
+                return read;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = in.read(buffer, offset, length);
+                finished();
+                return read;
+            }
+
+            // as a container does, the end of the body is only reported once onDataAvailable has returned
+            private void finished() throws IOException {
+                if (listener != null && !dispatching && !allRead && isFinished()) {
+                    allRead = true;
+                    listener.onAllDataRead();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,343 @@
+package hangman.api;
+
+import hangman.api.ResponseCache.CachedResponse;
+import hangman.service.GameDetail;
+import hangman.service.GameListener;
+import hangman.service.HangmanService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pushes every new state of a game to the clients watching it, as Server-Sent Events.
+ *
+ * Each state is serialized into a complete event frame once, and the same bytes are handed to every
+ * subscriber. Subscribers are callbacks onto an async servlet response or a reactive stream, so an
+ * idle one holds no thread. All the subscribing, unsubscribing and publishing happens on one publisher
+ * thread, which keeps the events of a game in order and keeps guesses from waiting on slow clients.
+ *
+ * The publisher never sends itself, as a servlet response blocks once the client stops reading. It queues the
+ * event on each subscription, which is drained in order by one of {@code hangman.api.events.senders} threads.
+ * A subscriber that falls {@value #MAX_QUEUED} events behind loses the oldest, as any later state holds
+ * everything the skipped ones did.
+ *
+ * A send still blocks its sender, so a send that takes longer than {@code hangman.api.events.send-timeout}
+ * cancels its subscription and the sender is given up on: the pool gets another thread in its place, and sheds
+ * it once the stuck write returns, which the server's own write timeout sees to. Clients that stop reading
+ * then hold up nobody else's stream for longer than the timeout.
+ */
+@Component
+public class GameEvents implements GameListener {
+
+    // per subscriber, before the oldest are dropped
+    static final int MAX_QUEUED = 16;
+
+    interface Subscriber {
+        // sends one complete event frame, throwing if the client has gone
+        void send(byte[] event) throws Exception;
+
+        // ends the stream once the game is over
+        void complete();
+    }
+
+    private final class Subscription implements Runnable {
+        final String gameId;
+        final Subscriber subscriber;
+        volatile boolean cancelled;
+
+        // guarded by this
+        private final ArrayDeque<byte[]> queued = new ArrayDeque<>();
+        private boolean draining;
+        private boolean finishing;
+        // when the send in progress started, and whether its sender has been given up on
+        private long sendStarted;
+        private boolean sending;
+        private boolean abandoned;
+
+        Subscription(String gameId, Subscriber subscriber) {
+            this.gameId = gameId;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void run() {
+            cancelled = true;
+            publisher.execute(() -> unsubscribe(this));
+        }
+
+        // called on the publisher thread, never waits on the client
+        synchronized void offer(byte[] event, boolean last) {
+            if (queued.size() == MAX_QUEUED) {
+                queued.poll();
+                dropped.increment();
+            }
+            queued.add(event);
+            finishing |= last;
+            if (!draining) {
+                draining = true;
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            while (!cancelled) {
+                byte[] event;
+                boolean complete;
+                synchronized (this) {
+                    event = queued.poll();
+                    complete = event == null && finishing;
+                    draining = event != null;
+                }
+                if (event == null) {
+                    if (complete) {
+                        subscriber.complete();
+                    }
+                    return;
+                }
+                sending(true);
+                boolean sent = false;
+                try {
+                    subscriber.send(event);
+                    sent = true;
+                } catch (Exception e) {
+                    // the client has gone away
+                    run();
+                }
+                if (!sending(false)) {
+                    if (sent) {
+                        // cancelled while this send was stuck, so end the stream for the client to reconnect
+                        subscriber.complete();
+                    }
+                    return;
+                }
+            }
+        }
+
+        // returns false once the sender has been given up on
+        private synchronized boolean sending(boolean starting) {
+            sending = starting;
+            sendStarted = System.nanoTime();
+            if (starting) {
+                sendsInProgress.add(this);
+            } else {
+                sendsInProgress.remove(this);
+            }
+            if (!starting && abandoned) {
+                resizeSenders(-1);
+                return false;
+            }
+            return true;
+        }
+
+        // called on the publisher thread
+        synchronized boolean abandonIfStuck(long now) {
+            if (!sending || abandoned || now - sendStarted < sendTimeout.toNanos()) {
+                return false;
+            }
+            abandoned = true;
+            cancelled = true;
+            resizeSenders(1);
+            return true;
+        }
+    }
+
+    private static final class Channel {
+        final Set<Subscription> subscriptions = new LinkedHashSet<>();
+        int nextGuessId = -1;
+        boolean finished;
+        byte[] event;
+    }
+
+    @Autowired
+    private HangmanService service;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Value("${hangman.api.events.senders:8}")
+    private int senderThreads = 8;
+
+    @Value("${hangman.api.events.send-timeout:10s}")
+    private Duration sendTimeout = Duration.ofSeconds(10);
+
+    // the subscriptions to each game, including those still loading it. Updates to other games never reach the publisher.
+    private final ConcurrentHashMap<String, Integer> watchers = new ConcurrentHashMap<>();
+
+    // only touched on the publisher thread
+    private final Map<String, Channel> channels = new HashMap<>();
+
+    // the subscriptions with a send under way, for the publisher to look for stuck ones
+    private final Set<Subscription> sendsInProgress = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hangman-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ThreadPoolExecutor senders;
+
+    // events a slow subscriber never got, as newer ones took their place
+    private final LongAdder dropped = new LongAdder();
+
+    // subscriptions cancelled because a send was stuck
+    private final LongAdder stalled = new LongAdder();
+
+    @PostConstruct
+    void start() {
+        senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "hangman-events-send");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long check = Math.max(10, Math.min(1000, sendTimeout.toMillis() / 4));
+        publisher.scheduleWithFixedDelay(this::abandonStuckSends, check, check, TimeUnit.MILLISECONDS);
+    }
+
+    // starts the subscriber off with the current state of the game, and completes with the way to unsubscribe.
+    // completes exceptionally with InvalidGameException for an unknown game.
+    CompletableFuture<Runnable> subscribe(String gameId, Subscriber subscriber) {
+        Subscription subscription = new Subscription(gameId, subscriber);
+        // watching before loading means any update the load misses still reaches the publisher
+        watchers.merge(gameId, 1, Integer::sum);
+        CompletableFuture<GameDetail> current = service.getGameStateAsync(gameId);
+        current.whenComplete((game, error) -> publisher.execute(() -> start(subscription, game)));
+        return current.thenApply(game -> subscription);
+    }
+
+    @Override
+    public void gameUpdated(GameDetail game) {
+        if (watchers.containsKey(game.getGameId())) {
+            publisher.execute(() -> publish(game));
+        }
+    }
+
+    int watchedGames() {
+        return watchers.size();
+    }
+
+    long droppedEvents() {
+        return dropped.sum();
+    }
+
+    long stalledSubscribers() {
+        return stalled.sum();
+    }
+
+    @PreDestroy
+    void stop() {
+        publisher.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    private void start(Subscription subscription, GameDetail current) {
+        if (current == null || subscription.cancelled) {
+            release(subscription.gameId);
+            return;
+        }
+        Channel channel = channels.computeIfAbsent(subscription.gameId, gameId -> new Channel());
+        if (current.getNextGuessId() > channel.nextGuessId) {
+            setState(channel, current);
+        }
+        channel.subscriptions.add(subscription);
+        send(channel, subscription);
+    }
+
+    private void publish(GameDetail game) {
+        if (!watchers.containsKey(game.getGameId())) {
+            return;
+        }
+        // the channel may not exist yet if the subscriber's load is still running
+        Channel channel = channels.computeIfAbsent(game.getGameId(), gameId -> new Channel());
+        if (game.getNextGuessId() <= channel.nextGuessId) {
+            return;
+        }
+        setState(channel, game);
+        for (Subscription subscription : channel.subscriptions.toArray(new Subscription[0])) {
+            send(channel, subscription);
+        }
+    }
+
+    private void send(Channel channel, Subscription subscription) {
+        subscription.offer(channel.event, channel.finished);
+        if (channel.finished) {
+            // its sender completes the stream once the last event is out
+            unsubscribe(subscription);
+        }
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        Channel channel = channels.get(subscription.gameId);
+        if (channel != null && channel.subscriptions.remove(subscription)) {
+            release(subscription.gameId);
+        }
+    }
+
+    private void release(String gameId) {
+        if (watchers.computeIfPresent(gameId, (id, count) -> count == 1 ? null : count - 1) == null) {
+            channels.remove(gameId);
+        }
+    }
+
+    private void abandonStuckSends() {
+        long now = System.nanoTime();
+        for (Subscription subscription : sendsInProgress) {
+            if (subscription.abandonIfStuck(now)) {
+                stalled.increment();
+                unsubscribe(subscription);
+            }
+        }
+    }
+
+    // a sender is added in place of each stuck one, and taken away again once its send returns
+    private void resizeSenders(int change) {
+        synchronized (senders) {
+            int size = senders.getCorePoolSize() + change;
+            if (change > 0) {
+                senders.setMaximumPoolSize(size);
+                senders.setCorePoolSize(size);
+            } else {
+                senders.setCorePoolSize(size);
+                senders.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    private void setState(Channel channel, GameDetail game) {
+        // the api handlers cache the same version, so it is usually serialized already
+        CachedResponse response = responseCache.current(game);
+        channel.nextGuessId = game.getNextGuessId();
+        channel.finished = game.getStatus() == GameStatus.WON || game.getStatus() == GameStatus.LOST;
+        channel.event = event(response);
+    }
+
+    // id:<nextGuessId>, event:game, data:<the same json as a GET>
+    private static byte[] event(CachedResponse response) {
+        byte[] header = ("id:" + response.getNextGuessId() + "\nevent:game\ndata:").getBytes(StandardCharsets.US_ASCII);
+        byte[] body = response.getBody();
+        byte[] event = new byte[header.length + body.length + 2];
+        System.arraycopy(header, 0, event, 0, header.length);
+        System.arraycopy(body, 0, event, header.length, body.length);
+        event[event.length - 2] = '\n';
+        event[event.length - 1] = '\n';
+        return event;
+    }
+}
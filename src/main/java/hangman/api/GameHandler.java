@@ -0,0 +1,224 @@
+package hangman.api;
+
+import com.google.common.collect.Lists;
+import hangman.api.ResponseCache.CachedResponse;
+import hangman.service.GameDetail;
+import hangman.service.GameFinishedException;
+import hangman.service.HangmanService;
+import hangman.service.InvalidGameException;
+import hangman.service.InvalidGuessException;
+import hangman.service.WordIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The reactive equivalent of {@link ApiHandler}, serving the same endpoints on Netty when
+ * spring.main.web-application-type=reactive. Nothing here blocks: the service and store calls
+ * all return futures.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class GameHandler {
+
+    private static final DataBufferFactory BUFFERS = new DefaultDataBufferFactory();
+    private static final MediaType NDJSON = MediaType.parseMediaType(ApiHandler.NDJSON_VALUE);
+    private static final ParameterizedTypeReference<List<String>> GAME_IDS = new ParameterizedTypeReference<List<String>>() {
+    };
+
+    @Autowired
+    private HangmanService service;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private GameEvents events;
+
+    @Autowired
+    private WordIndex wordIndex;
+
+    @Value("${hangman.api.max-lookup-size:100000}")
+    private int maxLookupSize = 100_000;
+
+    public Mono<ServerResponse> getGameState(ServerRequest request) {
+        String gameId = request.pathVariable("gameId");
+        Optional<String> ifNoneMatch = request.headers().header(HttpHeaders.IF_NONE_MATCH).stream().findFirst();
+        boolean binary = GameWriter.prefersBinary(request.headers().asHttpHeaders().getFirst(HttpHeaders.ACCEPT));
+        return Mono.fromFuture(() -> service.getGameStateAsync(gameId)).map(responseCache::current)
+                .flatMap(game -> ifNoneMatch.filter(game.getEtag(binary)::equals).isPresent()
+                        ? ServerResponse.status(HttpStatus.NOT_MODIFIED).eTag(game.getEtag(binary)).build()
+                        : respond(ServerResponse.ok(), game, request))
+                .onErrorResume(InvalidGameException.class, e -> {
+                    responseCache.invalidate(gameId);
+                    return ServerResponse.notFound().build();
+                });
+    }
+
+    public Mono<ServerResponse> newGame(ServerRequest request) {
+        Optional<String> lengthParam = request.queryParam("length");
+        Optional<Integer> length = lengthParam.flatMap(GameHandler::parseInt);
+        if (lengthParam.isPresent() && !length.isPresent()) {
+            return ServerResponse.badRequest().build();
+        }
+        return Mono.fromFuture(() -> length.isPresent()
+                        ? service.createNewGameAsync(length.get())
+                        : service.createNewGameAsync())
+                .flatMap(game -> respond(ServerResponse.created(UriComponentsBuilder.fromUri(request.uri())
+                        .replaceQuery(null).path("/").path(game.getGameId()).build().toUri()), responseCache.cache(game), request))
+                // no words of that length
+                .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest().build());
+    }
+
+    public Mono<ServerResponse> guess(ServerRequest request) {
+        String gameId = request.pathVariable("gameId");
+        Optional<String> guess = request.queryParam("guess").filter(value -> value.length() == 1);
+        Optional<Integer> guessId = request.queryParam("guessId").flatMap(GameHandler::parseInt);
+        Optional<String> merge = request.queryParam("merge");
+        if (!guess.isPresent() || !guessId.isPresent()
+                || !merge.map(value -> value.equals("true") || value.equals("false")).orElse(true)) {
+            return ServerResponse.badRequest().build();
+        }
+        return Mono.fromFuture(() -> service.applyGuessAsync(gameId, guess.get().charAt(0), guessId.get(),
+                merge.map(Boolean::parseBoolean).orElse(false)))
+                .flatMap(game -> respond(ServerResponse.ok(), responseCache.cache(game), request))
+                .onErrorResume(InvalidGameException.class, e -> {
+                    responseCache.invalidate(gameId);
+                    return ServerResponse.notFound().build();
+                })
+                .onErrorResume(ConcurrentModificationException.class, e -> {
+                    responseCache.invalidate(gameId);
+                    return ServerResponse.status(HttpStatus.CONFLICT).build();
+                })
+                .onErrorResume(GameFinishedException.class, e -> ServerResponse.status(HttpStatus.CONFLICT).build())
+                .onErrorResume(InvalidGuessException.class, e -> ServerResponse.badRequest().build());
+    }
+
+    // the hint counts through the word index, which can take a while for short words, so it is worked out on the
+    // bounded elastic pool rather than holding up the event loop
+    public Mono<ServerResponse> hint(ServerRequest request) {
+        String gameId = request.pathVariable("gameId");
+        return Mono.fromFuture(() -> service.getGameStateAsync(gameId))
+                .publishOn(Schedulers.boundedElastic())
+                .map(game -> GameResponses.buildHint(game, wordIndex))
+                .flatMap(hint -> ServerResponse.ok().bodyValue(hint))
+                .onErrorResume(InvalidGameException.class, e -> ServerResponse.notFound().build());
+    }
+
+    public Mono<ServerResponse> events(ServerRequest request) {
+        String gameId = request.pathVariable("gameId");
+        // each event is a complete text/event-stream frame, and each subscriber gets the same bytes wrapped.
+        // a client that falls behind only gets the latest state, which holds everything the skipped ones did.
+        Flux<DataBuffer> stream = Flux.create(sink -> {
+            CompletableFuture<Runnable> subscription = events.subscribe(gameId, new GameEvents.Subscriber() {
+                @Override
+                public void send(byte[] event) {
+                    sink.next(BUFFERS.wrap(event));
+                }
+
+                @Override
+                public void complete() {
+                    sink.complete();
+                }
+            });
+            subscription.whenComplete((unsubscribe, error) -> {
+                if (error != null) {
+                    sink.error(error);
+                }
+            });
+            sink.onDispose(() -> subscription.thenAccept(Runnable::run));
+        }, FluxSink.OverflowStrategy.LATEST);
+        return Mono.fromFuture(() -> service.getGameStateAsync(gameId))
+                .flatMap(game -> ServerResponse.ok()
+                        .contentType(MediaType.TEXT_EVENT_STREAM)
+                        .body(BodyInserters.fromDataBuffers(stream)))
+                .onErrorResume(InvalidGameException.class, e -> ServerResponse.notFound().build());
+    }
+
+    // every game with one of the statuses, or every game. A game is read from the store only when the client
+    // has asked for more, and on the bounded elastic pool, as walking a remote store waits on it.
+    public Mono<ServerResponse> scanGames(ServerRequest request) {
+        Set<GameStatus> statuses = EnumSet.noneOf(GameStatus.class);
+        try {
+            for (String value : request.queryParams().getOrDefault("status", Collections.emptyList())) {
+                for (String status : value.split(",")) {
+                    statuses.add(GameStatus.valueOf(status.trim()));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().build();
+        }
+        Set<GameStatus> scanned = statuses.isEmpty() ? EnumSet.allOf(GameStatus.class) : statuses;
+        Flux<DataBuffer> games = Flux.<GameDetail, Iterator<GameDetail>>generate(() -> service.scanGames(scanned), (scan, sink) -> {
+            if (scan.hasNext()) {
+                sink.next(scan.next());
+            } else {
+                sink.complete();
+            }
+            return scan;
+        }).map(GameHandler::line).subscribeOn(Schedulers.boundedElastic());
+        return ServerResponse.ok().contentType(NDJSON).body(BodyInserters.fromDataBuffers(games));
+    }
+
+    // the games for a JSON array of ids, in the same order, leaving out ids with no game. Looked up a batch at a time
+    // on the bounded elastic pool, like the scan
+    public Mono<ServerResponse> lookupGames(ServerRequest request) {
+        return request.bodyToMono(GAME_IDS).flatMap(gameIds -> {
+            if (gameIds.size() > maxLookupSize) {
+                return ServerResponse.badRequest().build();
+            }
+            Flux<DataBuffer> games = Flux.fromIterable(Lists.partition(gameIds, ApiHandler.LOOKUP_BATCH))
+                    .publishOn(Schedulers.boundedElastic(), 1)
+                    .concatMapIterable(service::getGameStates)
+                    .map(GameHandler::line);
+            return ServerResponse.ok().contentType(NDJSON).body(BodyInserters.fromDataBuffers(games));
+        });
+    }
+
+    private static DataBuffer line(GameDetail game) {
+        byte[] json = GameWriter.json(game);
+        return BUFFERS.allocateBuffer(json.length + 1).write(json).write((byte) '\n');
+    }
+
+    // JSON, unless the client asked for the binary format
+    private static Mono<ServerResponse> respond(ServerResponse.BodyBuilder builder, CachedResponse response, ServerRequest request) {
+        boolean binary = GameWriter.prefersBinary(request.headers().asHttpHeaders().getFirst(HttpHeaders.ACCEPT));
+        return builder.eTag(response.getEtag(binary))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .contentType(binary ? GameWriter.BINARY : MediaType.APPLICATION_JSON)
+                .bodyValue(binary ? response.getBinaryBody() : response.getBody());
+    }
+
+    private static Optional<Integer> parseInt(String value) {
+        try {
+            return Optional.of(Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package hangman.api;
+
+import hangman.service.GameDetail;
+import hangman.service.Hint;
+import hangman.service.LetterMask;
+import hangman.service.WordIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// turns a game into its api representation, without giving away the secret word
+public final class GameResponses {
+
+    private GameResponses() {
+    }
+
+    public static GameResponse build(GameDetail game) {
+        ImmutableGameState state = ImmutableGameState.builder()
+                .guessesRemaining(game.getGuessesRemaining())
+                .nextGuessId(game.getNextGuessId())
+                .failedGuesses(buildFailedGuesses(game))
+                .matchingLetters(buildMatchString(game))
+                .status(game.getStatus())
+                .build();
+        return ImmutableGameResponse.builder()
+                .gameId(game.getGameId())
+                .numberOfLetters(game.getSecretWord().length())
+                .state(state)
+                .build();
+    }
+
+    // the hint only sees what the game shows, the same as a player would
+    public static HintResponse buildHint(GameDetail game, WordIndex index) {
+        StringBuilder failedGuesses = new StringBuilder();
+        buildFailedGuesses(game).forEach(failedGuesses::append);
+        Hint hint = index.hint(buildMatchString(game), failedGuesses);
+        return ImmutableHintResponse.builder()
+                .gameId(game.getGameId())
+                .nextGuessId(game.getNextGuessId())
+                .letter(hint.getLetter())
+                .candidates(hint.getCandidates())
+                .matches(hint.getMatches())
+                .build();
+    }
+
+    private static String buildMatchString(GameDetail game) {
+        String secretWord = game.getSecretWord();
+        char[] match = new char[secretWord.length()];
+        for (int loop = 0; loop < match.length; loop++) {
+            char letter = secretWord.charAt(loop);
+            match[loop] = LetterMask.contains(game.getGuessedMask(), letter) ? letter : ' ';
+        }
+        return new String(match);
+    }
+
+    private static List<Character> buildFailedGuesses(GameDetail game) {
+        String guesses = game.getGuesses();
+        List<Character> failed = new ArrayList<>(guesses.length());
+        for (int loop = 0; loop < guesses.length(); loop++) {
+            char guess = guesses.charAt(loop);
+            if (!LetterMask.contains(game.getWordMask(), guess)) {
+                failed.add(guess);
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,35 @@
+package hangman.api;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.*;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class GameRouter {
+
+    @Bean
+    public RouterFunction<ServerResponse> gameRoutes(GameHandler handler) {
+        return RouterFunctions.route()
+                .GET("/api/hangman/games", handler::scanGames)
+                .GET("/api/hangman/games/{gameId}", handler::getGameState)
+                .GET("/api/hangman/games/{gameId}/events", handler::events)
+                .GET("/api/hangman/games/{gameId}/hint", handler::hint)
+                .POST("/api/hangman/games", handler::newGame)
+                .POST("/api/hangman/games/lookup", handler::lookupGames)
+                .PUT("/api/hangman/games/{gameId}", handler::guess)
+                .build();
+    }
+
+    // tomcat is on the classpath for the servlet mode, and spring boot would otherwise prefer it to netty
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -0,0 +1,300 @@
+package hangman.api;
+
+import hangman.service.GameDetail;
+import hangman.service.LetterMask;
+import hangman.service.VirtualThreads;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the api representation of a game straight from its {@link GameDetail}, without building a
+ * {@link GameResponse} or going through Jackson. The output is rendered into a buffer kept per thread and
+ * only copied out once, into the array that is sent (and cached).
+ *
+ * {@link #json} writes the same bytes Jackson writes for {@link GameResponses#build}.
+ *
+ * {@link #binary} writes the compact format served as {@value #BINARY_VALUE} to clients that ask for it.
+ * Every number is an unsigned LEB128 varint and every string a varint byte length followed by UTF-8:
+ * <pre>
+ *   byte    format version, 1
+ *   string  gameId
+ *   varint  numberOfLetters
+ *   varint  guessesRemaining
+ *   varint  nextGuessId
+ *   byte    status, 0 NEW, 1 IN_PROGRESS, 2 WON, 3 LOST
+ *   string  matchingLetters
+ *   string  failedGuesses, one character per guess
+ * </pre>
+ * A game a few guesses in takes around 30 bytes this way, against around 170 as JSON.
+ */
+public final class GameWriter {
+
+    public static final String BINARY_VALUE = "application/vnd.hangman.game";
+    public static final MediaType BINARY = MediaType.parseMediaType(BINARY_VALUE);
+
+    private static final byte BINARY_VERSION = 1;
+
+    private static final byte[] GAME_ID = ascii("{\"gameId\":\"");
+    private static final byte[] NUMBER_OF_LETTERS = ascii("\",\"numberOfLetters\":");
+    private static final byte[] GUESSES_REMAINING = ascii(",\"state\":{\"guessesRemaining\":");
+    private static final byte[] NEXT_GUESS_ID = ascii(",\"nextGuessId\":");
+    private static final byte[] FAILED_GUESSES = ascii(",\"failedGuesses\":[");
+    private static final byte[] MATCHING_LETTERS = ascii("],\"matchingLetters\":\"");
+    private static final byte[] STATUS = ascii("\",\"status\":\"");
+    private static final byte[] END = ascii("\"}}");
+    private static final byte[][] STATUSES = new byte[GameStatus.values().length][];
+    private static final byte[] HEX = ascii("0123456789ABCDEF");
+
+    // the short escapes Jackson uses, by control character
+    private static final byte[] SHORT_ESCAPES = new byte[0x20];
+
+    private static final int BUFFER_SIZE = 1024;
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    static {
+        for (GameStatus status : GameStatus.values()) {
+            STATUSES[status.ordinal()] = ascii(status.name());
+        }
+        SHORT_ESCAPES['\b'] = 'b';
+        SHORT_ESCAPES['\t'] = 't';
+        SHORT_ESCAPES['\n'] = 'n';
+        SHORT_ESCAPES['\f'] = 'f';
+        SHORT_ESCAPES['\r'] = 'r';
+    }
+
+    private GameWriter() {
+    }
+
+    public static byte[] json(GameDetail game) {
+        String secretWord = game.getSecretWord();
+        String guesses = game.getGuesses();
+        long wordMask = game.getWordMask();
+        long guessedMask = game.getGuessedMask();
+
+        byte[] out = buffer(game);
+        int position = put(out, 0, GAME_ID);
+        position = putEscaped(out, position, game.getGameId());
+        position = put(out, position, NUMBER_OF_LETTERS);
+        position = putInt(out, position, secretWord.length());
+        position = put(out, position, GUESSES_REMAINING);
+        position = putInt(out, position, game.getGuessesRemaining());
+        position = put(out, position, NEXT_GUESS_ID);
+        position = putInt(out, position, game.getNextGuessId());
+        position = put(out, position, FAILED_GUESSES);
+        boolean first = true;
+        for (int loop = 0; loop < guesses.length(); loop++) {
+            char guess = guesses.charAt(loop);
+            if (!LetterMask.contains(wordMask, guess)) {
+                if (!first) {
+                    out[position++] = ',';
+                }
+                first = false;
+                out[position++] = '"';
+                position = putEscaped(out, position, guess);
+                out[position++] = '"';
+            }
+        }
+        position = put(out, position, MATCHING_LETTERS);
+        for (int loop = 0; loop < secretWord.length(); loop++) {
+            char letter = secretWord.charAt(loop);
+            position = putEscaped(out, position, LetterMask.contains(guessedMask, letter) ? letter : ' ');
+        }
+        position = put(out, position, STATUS);
+        position = put(out, position, STATUSES[game.getStatus().ordinal()]);
+        position = put(out, position, END);
+        return Arrays.copyOf(out, position);
+    }
+
+    public static byte[] binary(GameDetail game) {
+        String secretWord = game.getSecretWord();
+        String guesses = game.getGuesses();
+        long wordMask = game.getWordMask();
+        long guessedMask = game.getGuessedMask();
+
+        byte[] out = buffer(game);
+        out[0] = BINARY_VERSION;
+        int position = putString(out, 1, game.getGameId());
+        position = putVarint(out, position, secretWord.length());
+        position = putVarint(out, position, game.getGuessesRemaining());
+        position = putVarint(out, position, game.getNextGuessId());
+        out[position++] = (byte) game.getStatus().ordinal();
+
+        int length = 0;
+        for (int loop = 0; loop < secretWord.length(); loop++) {
+            char letter = secretWord.charAt(loop);
+            length += utf8Length(LetterMask.contains(guessedMask, letter) ? letter : ' ');
+        }
+        position = putVarint(out, position, length);
+        for (int loop = 0; loop < secretWord.length(); loop++) {
+            char letter = secretWord.charAt(loop);
+            position = putUtf8(out, position, LetterMask.contains(guessedMask, letter) ? letter : ' ');
+        }
+
+        length = 0;
+        for (int loop = 0; loop < guesses.length(); loop++) {
+            if (!LetterMask.contains(wordMask, guesses.charAt(loop))) {
+                length += utf8Length(guesses.charAt(loop));
+            }
+        }
+        position = putVarint(out, position, length);
+        for (int loop = 0; loop < guesses.length(); loop++) {
+            if (!LetterMask.contains(wordMask, guesses.charAt(loop))) {
+                position = putUtf8(out, position, guesses.charAt(loop));
+            }
+        }
+        return Arrays.copyOf(out, position);
+    }
+
+    // true if the client ranks the binary format above JSON. Anything else, a wildcard included, gets JSON.
+    public static boolean prefersBinary(String accept) {
+        if (accept == null || !accept.contains(BINARY_VALUE)) {
+            return false;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() == 0) {
+                continue;
+            }
+            if (type.equalsTypeAndSubtype(BINARY)) {
+                return true;
+            }
+            if (type.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    // big enough for the worst case of either format, where every character takes a six byte escape
+    private static byte[] buffer(GameDetail game) {
+        int worstCase = 160 + 6 * game.getGameId().length() + 6 * game.getSecretWord().length()
+                + 9 * game.getGuesses().length();
+        if (VirtualThreads.isVirtual(Thread.currentThread())) {
+            // a virtual thread only lives for one request, so a buffer kept for it would never be used again
+            return new byte[worstCase];
+        }
+        byte[] buffer = BUFFERS.get();
+        if (buffer.length < worstCase) {
+            // only games with absurdly long ids or words get here, so the bigger buffer isn't kept
+            buffer = new byte[worstCase];
+        }
+        return buffer;
+    }
+
+    private static int put(byte[] out, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, out, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    private static int putInt(byte[] out, int position, int value) {
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) {
+                return put(out, position, ascii(Integer.toString(value)));
+            }
+            out[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int remaining = value / 10; remaining > 0; remaining /= 10) {
+            digits++;
+        }
+        for (int loop = position + digits - 1; loop >= position; loop--) {
+            out[loop] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
+
+    private static int putEscaped(byte[] out, int position, String value) {
+        for (int loop = 0; loop < value.length(); loop++) {
+            position = putEscaped(out, position, value.charAt(loop));
+        }
+        return position;
+    }
+
+    // escapes as Jackson does. A surrogate can only turn up here on its own, as a guess, so it is written as an escape.
+    private static int putEscaped(byte[] out, int position, char c) {
+        if (c == '"' || c == '\\') {
+            out[position++] = '\\';
+            out[position++] = (byte) c;
+        } else if (c < 0x20) {
+            out[position++] = '\\';
+            if (SHORT_ESCAPES[c] != 0) {
+                out[position++] = SHORT_ESCAPES[c];
+            } else {
+                position = putUnicodeEscape(out, position, c);
+            }
+        } else if (Character.isSurrogate(c)) {
+            out[position++] = '\\';
+            position = putUnicodeEscape(out, position, c);
+        } else {
+            position = putUtf8(out, position, c);
+        }
+        return position;
+    }
+
+    private static int putUnicodeEscape(byte[] out, int position, char c) {
+        out[position++] = 'u';
+        out[position++] = HEX[c >> 12];
+        out[position++] = HEX[(c >> 8) & 0xf];
+        out[position++] = HEX[(c >> 4) & 0xf];
+        out[position++] = HEX[c & 0xf];
+        return position;
+    }
+
+    // characters outside the basic multilingual plane can't be guesses or letters, a lone surrogate is written as ?
+    private static int putUtf8(byte[] out, int position, char c) {
+        if (c < 0x80) {
+            out[position++] = (byte) c;
+        } else if (c < 0x800) {
+            out[position++] = (byte) (0xc0 | c >> 6);
+            out[position++] = (byte) (0x80 | c & 0x3f);
+        } else if (Character.isSurrogate(c)) {
+            out[position++] = '?';
+        } else {
+            out[position++] = (byte) (0xe0 | c >> 12);
+            out[position++] = (byte) (0x80 | (c >> 6) & 0x3f);
+            out[position++] = (byte) (0x80 | c & 0x3f);
+        }
+        return position;
+    }
+
+    private static int utf8Length(char c) {
+        return c < 0x80 || Character.isSurrogate(c) ? 1 : c < 0x800 ? 2 : 3;
+    }
+
+    private static int putString(byte[] out, int position, String value) {
+        int length = 0;
+        for (int loop = 0; loop < value.length(); loop++) {
+            length += utf8Length(value.charAt(loop));
+        }
+        position = putVarint(out, position, length);
+        for (int loop = 0; loop < value.length(); loop++) {
+            position = putUtf8(out, position, value.charAt(loop));
+        }
+        return position;
+    }
+
+    private static int putVarint(byte[] out, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            out[position++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
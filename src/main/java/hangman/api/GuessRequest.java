@@ -0,0 +1,18 @@
+package hangman.api;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+@Value.Immutable
+@JsonSerialize(as = ImmutableGuessRequest.class)
+@JsonDeserialize(as = ImmutableGuessRequest.class)
+public interface GuessRequest {
+
+    String getGameId();
+
+    char getGuess();
+
+    int getGuessId();
+
+}
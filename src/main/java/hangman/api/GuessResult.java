@@ -0,0 +1,21 @@
+package hangman.api;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import java.util.Optional;
+
+@Value.Immutable
+@JsonSerialize(as = ImmutableGuessResult.class)
+@JsonDeserialize(as = ImmutableGuessResult.class)
+public interface GuessResult {
+
+    String getGameId();
+
+    // the http status the guess would have got on its own: 200, 400, 404 or 409
+    int getStatus();
+
+    Optional<GameResponse> getGame();
+
+}
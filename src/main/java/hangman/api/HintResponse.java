@@ -0,0 +1,28 @@
+package hangman.api;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import java.util.Optional;
+
+@Value.Immutable
+@JsonSerialize(as = ImmutableHintResponse.class)
+@JsonDeserialize(as = ImmutableHintResponse.class)
+public interface HintResponse {
+
+    String getGameId();
+
+    // the guessId to guess the letter with
+    int getNextGuessId();
+
+    // missing when no word in the dictionary fits the game or there is nothing left worth guessing
+    Optional<Character> getLetter();
+
+    // the dictionary words that fit what the game shows
+    int getCandidates();
+
+    // the candidates with the letter in them
+    int getMatches();
+
+}
@@ -0,0 +1,203 @@
+package hangman.api;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hangman.api.ResponseCache.CachedResponse;
+import hangman.service.GameDetail;
+import hangman.service.GameFinishedException;
+import hangman.service.HangmanService;
+import hangman.service.InvalidGameException;
+import hangman.service.InvalidGuessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * The game endpoints of {@link ApiHandler} (GET, POST and PUT on /games) on the JDK's built-in HTTP server,
+ * for {@link hangman.LiteApp}. The responses are the same, headers, status codes and bodies, and the bodies come
+ * from {@link GameWriter} as they do there, so nothing is serialized by reflection.
+ */
+public class LiteServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LiteServer.class);
+
+    private static final String GAMES = "/api/hangman/games";
+    private static final int OK = 200;
+    private static final int CREATED = 201;
+    private static final int NOT_MODIFIED = 304;
+    private static final int BAD_REQUEST = 400;
+    private static final int NOT_FOUND = 404;
+    private static final int METHOD_NOT_ALLOWED = 405;
+    private static final int CONFLICT = 409;
+    private static final int INTERNAL_SERVER_ERROR = 500;
+
+    private final HangmanService service;
+    private final ResponseCache responseCache;
+    private HttpServer server;
+
+    public LiteServer(HangmanService service, ResponseCache responseCache) {
+        this.service = service;
+        this.responseCache = responseCache;
+    }
+
+    // port 0 picks a free one, see getPort()
+    public void start(int port, Executor executor) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(GAMES, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            // no endpoint takes a body. Unless it's read the server closes the connection after a response without one
+            exchange.getRequestBody().close();
+            String path = exchange.getRequestURI().getRawPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals(GAMES)) {
+                if (method.equals("POST")) {
+                    newGame(exchange);
+                } else {
+                    send(exchange, METHOD_NOT_ALLOWED);
+                }
+            } else if (path.startsWith(GAMES + "/") && path.indexOf('/', GAMES.length() + 1) < 0) {
+                String gameId = decode(path.substring(GAMES.length() + 1));
+                if (method.equals("GET")) {
+                    getGameState(exchange, gameId);
+                } else if (method.equals("PUT")) {
+                    guess(exchange, gameId);
+                } else {
+                    send(exchange, METHOD_NOT_ALLOWED);
+                }
+            } else {
+                send(exchange, NOT_FOUND);
+            }
+        } catch (RuntimeException e) {
+            // anything the handlers above don't turn into a status of their own is a 500, as spring would answer it
+            LOGGER.error("request failed", e);
+            send(exchange, INTERNAL_SERVER_ERROR);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void getGameState(HttpExchange exchange, String gameId) throws IOException {
+        CachedResponse response;
+        try {
+            response = responseCache.current(service.getGameState(gameId));
+        } catch (InvalidGameException e) {
+            responseCache.invalidate(gameId);
+            send(exchange, NOT_FOUND);
+            return;
+        }
+        String etag = response.getEtag(GameWriter.prefersBinary(exchange.getRequestHeaders().getFirst(HttpHeaders.ACCEPT)));
+        if (etag.equals(exchange.getRequestHeaders().getFirst(HttpHeaders.IF_NONE_MATCH))) {
+            exchange.getResponseHeaders().set(HttpHeaders.ETAG, etag);
+            send(exchange, NOT_MODIFIED);
+            return;
+        }
+        respond(exchange, OK, response);
+    }
+
+    private void newGame(HttpExchange exchange) throws IOException {
+        String length = query(exchange).get("length");
+        GameDetail newGame;
+        try {
+            newGame = length == null ? service.createNewGame() : service.createNewGame(Integer.parseInt(length));
+        } catch (IllegalArgumentException e) {
+            // not a number, or no words of that length
+            send(exchange, BAD_REQUEST);
+            return;
+        }
+        String host = exchange.getRequestHeaders().getFirst(HttpHeaders.HOST);
+        exchange.getResponseHeaders().set(HttpHeaders.LOCATION,
+                "http://" + (host == null ? "localhost:" + getPort() : host) + GAMES + "/" + newGame.getGameId());
+        respond(exchange, CREATED, responseCache.cache(newGame));
+    }
+
+    private void guess(HttpExchange exchange, String gameId) throws IOException {
+        Map<String, String> query = query(exchange);
+        String guess = query.get("guess");
+        String merge = query.getOrDefault("merge", "false");
+        int guessId;
+        try {
+            guessId = Integer.parseInt(query.getOrDefault("guessId", ""));
+        } catch (NumberFormatException e) {
+            guessId = -1;
+        }
+        if (guess == null || guess.length() != 1 || guessId < 0 || !merge.equals("true") && !merge.equals("false")) {
+            send(exchange, BAD_REQUEST);
+            return;
+        }
+        try {
+            respond(exchange, OK, responseCache.cache(service.applyGuess(gameId, guess.charAt(0), guessId, merge.equals("true"))));
+        } catch (InvalidGameException e) {
+            responseCache.invalidate(gameId);
+            send(exchange, NOT_FOUND);
+        } catch (ConcurrentModificationException e) {
+            responseCache.invalidate(gameId);
+            send(exchange, CONFLICT);
+        } catch (GameFinishedException e) {
+            send(exchange, CONFLICT);
+        } catch (InvalidGuessException e) {
+            send(exchange, BAD_REQUEST);
+        }
+    }
+
+    // JSON, unless the client asked for the binary format
+    private static void respond(HttpExchange exchange, int status, CachedResponse response) throws IOException {
+        boolean binary = GameWriter.prefersBinary(exchange.getRequestHeaders().getFirst(HttpHeaders.ACCEPT));
+        byte[] body = binary ? response.getBinaryBody() : response.getBody();
+        Headers headers = exchange.getResponseHeaders();
+        headers.set(HttpHeaders.ETAG, response.getEtag(binary));
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        headers.set(HttpHeaders.CONTENT_TYPE, binary ? GameWriter.BINARY_VALUE : MediaType.APPLICATION_JSON_VALUE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    // the first value wins, as with spring
+                    parameters.putIfAbsent(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,138 @@
+package hangman.api;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import hangman.service.GameDetail;
+import hangman.store.GameVersionStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+
+/**
+ * Holds the serialized response for the latest version of each game this node has served,
+ * so GET polls that find the game unchanged in the store are answered, or turned into a 304, without serializing it again.
+ * Other writers (other nodes, the kv backend, expiry) move games without going through here, so the store has the last word.
+ * Responses for games announced on the {@link GameVersionStream}, if there is one, as moved on are dropped straight away.
+ *
+ * Bounded by hangman.api.response-cache.size entries, least recently used go first.
+ */
+@Component
+public class ResponseCache {
+
+    public static final class CachedResponse {
+        private final GameDetail game;
+        // each representation has its own, as a strong ETag promises the same bytes
+        private final String etag;
+        private final String binaryEtag;
+        private final byte[] body;
+
+        // only rendered if a client asks for it, which most never do
+        private volatile byte[] binaryBody;
+
+        CachedResponse(GameDetail game, byte[] body) {
+            this.game = game;
+            this.etag = "\"" + game.getNextGuessId() + "\"";
+            this.binaryEtag = "\"" + game.getNextGuessId() + "-b\"";
+            this.body = body;
+        }
+
+        public int getNextGuessId() {
+            return game.getNextGuessId();
+        }
+
+        public String getEtag(boolean binary) {
+            return binary ? binaryEtag : etag;
+        }
+
+        // the JSON
+        public byte[] getBody() {
+            return body;
+        }
+
+        public byte[] getBinaryBody() {
+            byte[] binary = binaryBody;
+            if (binary == null) {
+                // two threads may both render it, which does no harm
+                binary = GameWriter.binary(game);
+                binaryBody = binary;
+            }
+            return binary;
+        }
+    }
+
+    @Value("${hangman.api.response-cache.size:100000}")
+    private long maximumSize = 100_000;
+
+    // a backstop for games that expire from the store while still cached
+    @Value("${hangman.api.response-cache.ttl:10m}")
+    private Duration timeToLive = Duration.ofMinutes(10);
+
+    @Autowired(required = false)
+    private GameVersionStream versions;
+
+    private Cache<String, CachedResponse> responses;
+
+    public ResponseCache() {
+    }
+
+    // for wiring by hand
+    public ResponseCache(long maximumSize, Duration timeToLive) {
+        this.maximumSize = maximumSize;
+        this.timeToLive = timeToLive;
+        createCache();
+    }
+
+    @PostConstruct
+    void createCache() {
+        responses = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .build();
+        if (versions != null) {
+            versions.subscribe(this::announced);
+        }
+    }
+
+    // serializes the game and caches it
+    public CachedResponse cache(GameDetail game) {
+        CachedResponse response = new CachedResponse(game, GameWriter.json(game));
+        put(game.getGameId(), response);
+        return response;
+    }
+
+    // the response for the game as the store has it, serialized again only if the cached one is of another version
+    public CachedResponse current(GameDetail game) {
+        CachedResponse cached = responses.getIfPresent(game.getGameId());
+        if (cached != null && (cached.game == game || cached.game.equals(game))) {
+            return cached;
+        }
+        // not put(), the store may have gone back to an older version, e.g. after a conflict with another writer
+        CachedResponse response = new CachedResponse(game, GameWriter.json(game));
+        responses.put(game.getGameId(), response);
+        return response;
+    }
+
+    public CachedResponse get(String gameId) {
+        return responses.getIfPresent(gameId);
+    }
+
+    // keeps whichever version is newer, as two guesses on the same game can finish in either order
+    public CachedResponse put(String gameId, CachedResponse response) {
+        return responses.asMap().merge(gameId, response,
+                (cached, fresh) -> fresh.getNextGuessId() >= cached.getNextGuessId() ? fresh : cached);
+    }
+
+    public void invalidate(String gameId) {
+        responses.invalidate(gameId);
+    }
+
+    private void announced(String gameId, long version) {
+        CachedResponse cached = responses.getIfPresent(gameId);
+        if (cached != null && (version == GameVersionStream.REMOVED || cached.getNextGuessId() < version)) {
+            responses.asMap().remove(gameId, cached);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package hangman.api;
+
+import hangman.service.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * With {@code hangman.threads.virtual=true} Tomcat runs every request on a virtual thread of its own instead of
+ * taking one from its worker pool, so a request waiting on a slow store costs a little heap rather than a thread,
+ * and {@code server.tomcat.max-threads} no longer caps how many can be in flight ({@code server.tomcat.max-connections} still does).
+ * The store calls made while handling the request run on the same thread.
+ *
+ * It needs Java 21 or later. On anything earlier it logs a warning and Tomcat keeps its pool.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "hangman.threads.virtual", havingValue = "true")
+public class VirtualThreadConfig {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutor() {
+        return protocolHandler -> {
+            if (VirtualThreads.isSupported()) {
+                protocolHandler.setExecutor(VirtualThreads.newExecutor("hangman-request-"));
+            } else {
+                LOGGER.warn("hangman.threads.virtual is set but virtual threads need Java 21 or later, this is {}. "
+                        + "Requests stay on the Tomcat worker pool", Runtime.version());
+            }
+        };
+    }
+}
@@ -0,0 +1,487 @@
+package hangman.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.HangmanService;
+import hangman.service.InvalidGameException;
+import hangman.store.GameIdGenerator;
+import hangman.store.HangmanStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The nodes that share the games between them, and which node owns which game.
+ *
+ * Membership is hangman.cluster.nodes, a comma separated list of nodeId=baseUrl including this node
+ * (hangman.node.id), and can be changed while running through {@link ClusterHandler}. Games are spread over the
+ * nodes by a {@link HashRing}, and this node only hands out ids for games it owns.
+ *
+ * When membership changes, every node hands the games it holds but no longer owns to their new owners in the
+ * background, sending a copy and only dropping its own once the owner has it, and tries again later for owners it
+ * can't reach. A game asked for before it has arrived is taken over from whichever node might still hold it: its
+ * owners under the last few memberships and the node that created it. They send a copy, and drop theirs when the
+ * owner acknowledges the version it took. Ids none of them had are remembered until membership next changes, so
+ * they aren't asked about again. A game takes no guesses on a node that has sent a copy of it away, until it has
+ * gone, so no guess is made on a copy that is about to be dropped.
+ */
+@Component
+@ConditionalOnProperty(name = "hangman.cluster.nodes")
+public class Cluster {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Cluster.class);
+
+    // marks a request that has already been routed, so it is served where it lands
+    public static final String FORWARDED = "X-Hangman-Forwarded";
+
+    // carries hangman.cluster.token on the requests between nodes
+    public static final String TOKEN = "X-Hangman-Cluster-Token";
+
+    private static final String CLUSTER_GAMES = "/api/hangman/cluster/games/";
+
+    // past memberships remembered, for finding games whose hand-off hasn't finished
+    private static final int HISTORY = 8;
+
+    // how far ahead of this node's clock another node's may be
+    private static final Duration CLOCK_SLACK = Duration.ofMinutes(1);
+
+    // how long to wait, at most, before trying again to hand games to an owner that couldn't be reached
+    private static final Duration MAX_HAND_OFF_RETRY = Duration.ofMinutes(1);
+
+    private static final class Membership {
+        final Map<Integer, String> urls;
+        final HashRing ring;
+
+        Membership(Map<Integer, String> urls, int pointsPerNode) {
+            this.urls = Collections.unmodifiableMap(new TreeMap<>(urls));
+            this.ring = new HashRing(urls.keySet(), pointsPerNode);
+        }
+    }
+
+    @Value("${hangman.node.id:0}")
+    private int nodeId;
+
+    @Value("${hangman.cluster.nodes}")
+    private String nodes;
+
+    @Value("${hangman.cluster.virtual-nodes:128}")
+    private int pointsPerNode = 128;
+
+    @Value("${hangman.cluster.timeout:5s}")
+    private Duration timeout = Duration.ofSeconds(5);
+
+    // shared by the nodes. The cluster endpoints (which can hand out secret words) only answer requests carrying it,
+    // and only requests carrying it are trusted as already routed
+    @Value("${hangman.cluster.token:}")
+    private String token = "";
+
+    @Value("${hangman.store.backend:map}")
+    private String backend = "map";
+
+    @Autowired
+    private GameIdGenerator idGenerator;
+
+    @Autowired
+    private HangmanStore store;
+
+    @Autowired
+    private HangmanService service;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+
+    private volatile Membership current;
+
+    // the memberships before the current one, newest first
+    private volatile List<Membership> history = List.of();
+
+    // ids this node owns that no other node had when asked
+    private final Cache<String, Boolean> missing = CacheBuilder.newBuilder()
+            .maximumSize(100_000)
+            .build();
+
+    // a game arriving from another node is stored only if it isn't here already, which is checked and done together
+    private final Striped<Lock> placing = Striped.lock(64);
+
+    // games this node has sent a copy of to their owner but still holds
+    private final Set<String> moving = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService handOffs = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hangman-handoff");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> nextHandOff;
+    private Duration handOffRetry;
+
+    @PostConstruct
+    void start() {
+        if (!"map".equals(backend)) {
+            // the slab store can only hold games whose ids it generated itself
+            throw new IllegalStateException("cluster mode needs the map store backend, to take over games from other nodes");
+        }
+        if (token.isEmpty()) {
+            // otherwise anyone could change membership or take over games, secret words and all
+            throw new IllegalStateException("cluster mode needs hangman.cluster.token, the secret the nodes trust each other by");
+        }
+        Map<Integer, String> members = new TreeMap<>();
+        for (String member : nodes.split(",")) {
+            String[] parts = member.trim().split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalStateException("hangman.cluster.nodes should look like 0=http://host:port,1=...");
+            }
+            members.put(Integer.parseInt(parts[0].trim()), parts[1].trim());
+        }
+        setMembers(members);
+        idGenerator.setOwnership(this::isLocal);
+        service.setMoving(moving::contains);
+    }
+
+    @PreDestroy
+    void stop() {
+        handOffs.shutdownNow();
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public Map<Integer, String> getMembers() {
+        return current.urls;
+    }
+
+    public synchronized void setMembers(Map<Integer, String> members) {
+        if (!members.containsKey(nodeId)) {
+            throw new IllegalArgumentException("the members must include this node, " + nodeId);
+        }
+        Membership next = new Membership(members, pointsPerNode);
+        if (current != null) {
+            List<Membership> past = new ArrayList<>(HISTORY);
+            past.add(current);
+            past.addAll(history.subList(0, Math.min(history.size(), HISTORY - 1)));
+            history = List.copyOf(past);
+        }
+        current = next;
+        // a game this node was told nobody had may be on its way from a node that has just lost it
+        missing.invalidateAll();
+        LOGGER.info("Node {} cluster members {}", nodeId, next.urls);
+        // this also covers games recovered from the journal at startup that have moved since
+        handOffRetry = timeout;
+        scheduleHandOffs(Duration.ZERO);
+    }
+
+    public boolean isTrusted(String requestToken) {
+        return !token.isEmpty() && requestToken != null
+                && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), requestToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // a request another node has already routed, which is served where it lands. Only believed with the token.
+    public boolean isForwarded(String forwardedHeader, String tokenHeader) {
+        return forwardedHeader != null && isTrusted(tokenHeader);
+    }
+
+    public int ownerOf(String gameId) {
+        return current.ring.nodeFor(gameId);
+    }
+
+    public boolean isLocal(String gameId) {
+        return ownerOf(gameId) == nodeId;
+    }
+
+    public URI uriOf(int node, String pathAndQuery) {
+        return URI.create(current.urls.get(node) + pathAndQuery);
+    }
+
+    // sends a request on to another node
+    public CompletableFuture<HttpResponse<byte[]>> forward(int node, String method, String pathAndQuery,
+                                                         Map<String, String> headers, byte[] body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uriOf(node, pathAndQuery))
+                .timeout(timeout)
+                .method(method, body.length == 0
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(body))
+                .header(FORWARDED, Integer.toString(nodeId))
+                .header(TOKEN, token);
+        headers.forEach(request::header);
+        return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    // a copy of a game this node holds, so that its new owner can take it over. This node keeps the game, taking no
+    // more guesses on it, until the owner acknowledges the copy through handedOff
+    public Optional<GameDetail> handOff(String gameId) {
+        moving.add(gameId);
+        Optional<GameDetail> game = store.loadGame(gameId);
+        if (!game.isPresent()) {
+            moving.remove(gameId);
+            return game;
+        }
+        // should the acknowledgement never come, the game is sent on with the next round of hand-offs
+        scheduleHandOffsWithin(timeout.multipliedBy(2));
+        return game;
+    }
+
+    // drops this node's copy of a game its owner has taken over at that version. False if this node's copy has
+    // moved on since, in which case it is sent on with the next round of hand-offs, where the later version wins
+    public boolean handedOff(String gameId, int nextGuessId) {
+        if (isLocal(gameId)) {
+            return false;
+        }
+        if (store.removeGame(gameId, nextGuessId) || !store.loadGame(gameId).isPresent()) {
+            moving.remove(gameId);
+            return true;
+        }
+        scheduleHandOffsWithin(Duration.ZERO);
+        return false;
+    }
+
+    // a game handed over by a node that no longer owns it, or false if this node doesn't own it either
+    public boolean takeOver(GameDetail game) {
+        if (!isLocal(game.getGameId())) {
+            return false;
+        }
+        place(game);
+        return true;
+    }
+
+    // takes over a game this node owns but does not hold, returning it if another node had it
+    public Optional<GameDetail> adopt(String gameId) {
+        if (missing.getIfPresent(gameId) != null) {
+            return Optional.empty();
+        }
+        // ask them all at once, so a miss costs one round trip
+        Map<String, CompletableFuture<HttpResponse<byte[]>>> asked = new TreeMap<>();
+        for (String holder : holdersOf(gameId)) {
+            asked.put(holder, client.sendAsync(HttpRequest.newBuilder(URI.create(holder + CLUSTER_GAMES + gameId + "/handoff"))
+                    .timeout(timeout)
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .header(TOKEN, token)
+                    .build(), HttpResponse.BodyHandlers.ofByteArray()));
+        }
+
+        GameDetail found = null;
+        // the version each holder sent, which it drops once this node has the game
+        Map<String, Integer> copies = new TreeMap<>();
+        boolean allAnswered = true;
+        for (Map.Entry<String, CompletableFuture<HttpResponse<byte[]>>> entry : asked.entrySet()) {
+            try {
+                HttpResponse<byte[]> response = entry.getValue().join();
+                if (response.statusCode() == 200) {
+                    GameDetail game = objectMapper.readValue(response.body(), GameTransfer.class).toGameDetail();
+                    copies.put(entry.getKey(), game.getNextGuessId());
+                    if (found == null || game.getNextGuessId() > found.getNextGuessId()) {
+                        found = game;
+                    }
+                } else if (response.statusCode() != 404) {
+                    // it still thinks the game is its own, so it may yet hand it over
+                    allAnswered = false;
+                }
+            } catch (CompletionException | IOException e) {
+                LOGGER.warn("Could not reach {} to take over game {}", entry.getKey(), gameId, e);
+                allAnswered = false;
+            }
+        }
+        if (found != null) {
+            GameDetail placed = place(found);
+            copies.forEach((holder, nextGuessId) -> acknowledge(holder, gameId, nextGuessId));
+            return Optional.of(placed);
+        }
+        if (allAnswered) {
+            missing.put(gameId, Boolean.TRUE);
+        }
+        return Optional.empty();
+    }
+
+    // tells a holder that this node has its copy of a game, so it can drop it. One that isn't told hands the game
+    // over again later
+    private void acknowledge(String holder, String gameId, int nextGuessId) {
+        client.sendAsync(HttpRequest.newBuilder(URI.create(holder + CLUSTER_GAMES + gameId + "?nextGuessId=" + nextGuessId))
+                .timeout(timeout)
+                .DELETE()
+                .header(TOKEN, token)
+                .build(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        LOGGER.debug("Could not tell {} that game {} was taken over", holder, gameId, error);
+                    }
+                });
+    }
+
+    // the nodes other than this one that might hold a game: its owners under the memberships this node remembers,
+    // and the node that created it. None if the ring never moved it, or if it isn't an id any node made.
+    private Set<String> holdersOf(String gameId) {
+        Set<String> holders = new LinkedHashSet<>();
+        int creator = GameIdGenerator.nodeOf(gameId);
+        if (creator < 0 || GameIdGenerator.createdAt(gameId) > System.currentTimeMillis() + CLOCK_SLACK.toMillis()) {
+            return holders;
+        }
+        List<Membership> past = history;
+        for (Membership membership : past) {
+            int owner = membership.ring.nodeFor(gameId);
+            if (owner != nodeId) {
+                holders.add(urlOf(owner, past));
+            }
+        }
+        if (creator != nodeId) {
+            holders.add(urlOf(creator, past));
+        }
+        holders.remove(null);
+        return holders;
+    }
+
+    private String urlOf(int node, List<Membership> past) {
+        String url = current.urls.get(node);
+        for (int loop = 0; url == null && loop < past.size(); loop++) {
+            url = past.get(loop).urls.get(node);
+        }
+        return url;
+    }
+
+    // stores a game handed over from another node, keeping the later version should this node hold it already
+    private GameDetail place(GameDetail game) {
+        Lock lock = placing.get(game.getGameId());
+        lock.lock();
+        try {
+            missing.invalidate(game.getGameId());
+            while (true) {
+                Optional<GameDetail> held = store.loadGame(game.getGameId());
+                if (!held.isPresent()) {
+                    store.storeGame(game);
+                    return game;
+                }
+                if (held.get().getNextGuessId() >= game.getNextGuessId()) {
+                    return held.get();
+                }
+                try {
+                    store.updateGame(game, held.get().getNextGuessId());
+                    return game;
+                } catch (ConcurrentModificationException | InvalidGameException e) {
+                    // it changed under us, look again
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private synchronized void scheduleHandOffs(Duration delay) {
+        if (nextHandOff != null) {
+            nextHandOff.cancel(false);
+        }
+        nextHandOff = handOffs.schedule(this::handOffMisplaced, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // schedules a round of hand-offs unless one is due sooner already
+    private synchronized void scheduleHandOffsWithin(Duration delay) {
+        if (nextHandOff == null || nextHandOff.isDone() || nextHandOff.getDelay(TimeUnit.MILLISECONDS) > delay.toMillis()) {
+            scheduleHandOffs(delay);
+        }
+    }
+
+    // hands every game this node holds but no longer owns to its owner, trying again, further apart each time,
+    // while there are owners it can't reach
+    void handOffMisplaced() {
+        int moved = 0;
+        int left = 0;
+        // games that have gone some other way, or that this node owns again, take guesses here once more
+        moving.removeIf(gameId -> isLocal(gameId) || !store.loadGame(gameId).isPresent());
+        Iterator<GameDetail> games = store.scanGames(EnumSet.allOf(GameStatus.class));
+        while (games.hasNext() && !Thread.currentThread().isInterrupted()) {
+            GameDetail game = games.next();
+            if (!isLocal(game.getGameId())) {
+                if (handTo(ownerOf(game.getGameId()), game)) {
+                    moved++;
+                } else {
+                    left++;
+                }
+            }
+        }
+        if (moved > 0 || left > 0) {
+            LOGGER.info("Node {} handed {} games to their owners, {} left to retry", nodeId, moved, left);
+        }
+        if (left > 0 && !handOffs.isShutdown()) {
+            synchronized (this) {
+                Duration delay = handOffRetry;
+                Duration doubled = handOffRetry.multipliedBy(2);
+                handOffRetry = doubled.compareTo(MAX_HAND_OFF_RETRY) < 0 ? doubled : MAX_HAND_OFF_RETRY;
+                scheduleHandOffs(delay);
+            }
+        }
+    }
+
+    // sends a copy of the game to its owner, and drops it here once the owner has it, so that whenever the owner
+    // looks for it, some node still holds it. It takes no guesses here from the moment the copy is made
+    private boolean handTo(int owner, GameDetail game) {
+        String gameId = game.getGameId();
+        moving.add(gameId);
+        Optional<GameDetail> copy = store.loadGame(gameId);
+        while (copy.isPresent()) {
+            HttpResponse<Void> response;
+            try {
+                response = client.send(HttpRequest.newBuilder(uriOf(owner, CLUSTER_GAMES + gameId))
+                        .timeout(timeout)
+                        .PUT(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(GameTransfer.of(copy.get()))))
+                        .header("Content-Type", "application/json")
+                        .header(TOKEN, token)
+                        .build(), HttpResponse.BodyHandlers.discarding());
+            } catch (IOException e) {
+                LOGGER.debug("Could not hand game {} to node {}", gameId, owner, e);
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (response.statusCode() != 200) {
+                // the owner doesn't think it owns the game yet
+                return false;
+            }
+            if (store.removeGame(gameId, copy.get().getNextGuessId())) {
+                break;
+            }
+            // a guess that got in before the copy was made, or the owner took it over in the meantime
+            copy = store.loadGame(gameId);
+        }
+        moving.remove(gameId);
+        return true;
+    }
+}
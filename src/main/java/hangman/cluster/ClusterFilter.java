@@ -0,0 +1,228 @@
+package hangman.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hangman.api.BodyRequest;
+import hangman.api.GuessRequest;
+import hangman.api.GuessResult;
+import hangman.api.ImmutableGuessRequest;
+import hangman.api.ImmutableGuessResult;
+import hangman.store.HangmanStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Sends each game request to the node that owns the game.
+ *
+ * Requests for another node's game are forwarded and its answer is copied back, so clients can talk to any node.
+ * Event streams are redirected rather than held open through this node. A batch of guesses is split up by
+ * owner, the parts are applied in parallel, and the results are put back in order.
+ */
+@Component
+@ConditionalOnProperty(name = "hangman.cluster.nodes")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ClusterFilter extends OncePerRequestFilter {
+
+    private static final String GAMES = "/api/hangman/games/";
+    private static final String GUESSES = "/api/hangman/guesses";
+    private static final String EVENTS = "/events";
+
+    private static final String[] REQUEST_HEADERS = {HttpHeaders.IF_NONE_MATCH, HttpHeaders.ACCEPT, HttpHeaders.CONTENT_TYPE};
+    private static final String[] RESPONSE_HEADERS = {HttpHeaders.ETAG, HttpHeaders.CONTENT_TYPE, HttpHeaders.LOCATION,
+            HttpHeaders.VARY};
+
+    @Autowired
+    private Cluster cluster;
+
+    @Autowired
+    private HangmanStore store;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${hangman.api.max-batch-size:1000}")
+    private int maxBatchSize = 1000;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI();
+        boolean forwarded = cluster.isForwarded(request.getHeader(Cluster.FORWARDED), request.getHeader(Cluster.TOKEN));
+        if (path.startsWith(GAMES)) {
+            String rest = path.substring(GAMES.length());
+            int slash = rest.indexOf('/');
+            String gameId = slash < 0 ? rest : rest.substring(0, slash);
+            if (!gameId.isEmpty() && !gameId.equals("bulk") && !gameId.equals("lookup")) {
+                routeGame(gameId, slash >= 0 && rest.substring(slash).equals(EVENTS), forwarded, request, response, chain);
+                return;
+            }
+        } else if (path.equals(GUESSES) && "POST".equals(request.getMethod()) && !forwarded) {
+            routeGuesses(request, response, chain);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private void routeGame(String gameId, boolean events, boolean forwarded,
+                           HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        int owner = cluster.ownerOf(gameId);
+        if (owner == cluster.getNodeId()) {
+            adoptIfMissing(gameId);
+            chain.doFilter(request, response);
+        } else if (forwarded) {
+            // the nodes disagree on membership, which settles once every node has been told
+            chain.doFilter(request, response);
+        } else if (events) {
+            response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+            response.setHeader(HttpHeaders.LOCATION, cluster.uriOf(owner, pathAndQuery(request)).toString());
+        } else {
+            Map<String, String> headers = new HashMap<>();
+            for (String header : REQUEST_HEADERS) {
+                if (request.getHeader(header) != null) {
+                    headers.put(header, request.getHeader(header));
+                }
+            }
+            byte[] body = request.getInputStream().readAllBytes();
+            HttpResponse<byte[]> answer;
+            try {
+                answer = cluster.forward(owner, request.getMethod(), pathAndQuery(request), headers, body).get();
+            } catch (ExecutionException e) {
+                response.sendError(HttpStatus.BAD_GATEWAY.value());
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+                return;
+            }
+            response.setStatus(answer.statusCode());
+            for (String header : RESPONSE_HEADERS) {
+                answer.headers().firstValue(header).ifPresent(value -> response.setHeader(header, value));
+            }
+            response.getOutputStream().write(answer.body());
+        }
+    }
+
+    private void routeGuesses(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        byte[] body = request.getInputStream().readAllBytes();
+        GuessRequest[] guesses = parseGuesses(body);
+        if (guesses == null || guesses.length == 0 || guesses.length > maxBatchSize) {
+            // leave the error to the api
+            chain.doFilter(new BodyRequest(request, body), response);
+            return;
+        }
+
+        Map<Integer, List<Integer>> byOwner = new TreeMap<>();
+        for (int loop = 0; loop < guesses.length; loop++) {
+            byOwner.computeIfAbsent(cluster.ownerOf(guesses[loop].getGameId()), owner -> new ArrayList<>()).add(loop);
+        }
+        List<Integer> local = byOwner.remove(cluster.getNodeId());
+        if (local != null) {
+            local.forEach(guess -> adoptIfMissing(guesses[guess].getGameId()));
+        }
+        if (byOwner.isEmpty()) {
+            chain.doFilter(new BodyRequest(request, body), response);
+            return;
+        }
+
+        Map<String, String> headers = Map.of(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        Map<Integer, CompletableFuture<HttpResponse<byte[]>>> remote = new TreeMap<>();
+        for (Map.Entry<Integer, List<Integer>> entry : byOwner.entrySet()) {
+            remote.put(entry.getKey(), cluster.forward(entry.getKey(), "POST", GUESSES, headers, json(guesses, entry.getValue())));
+        }
+
+        GuessResult[] results = new GuessResult[guesses.length];
+        if (local != null) {
+            ContentCachingResponseWrapper captured = new ContentCachingResponseWrapper(response);
+            chain.doFilter(new BodyRequest(request, json(guesses, local)), captured);
+            if (captured.getStatus() != HttpStatus.OK.value()) {
+                captured.copyBodyToResponse();
+                return;
+            }
+            place(results, local, objectMapper.readValue(captured.getContentAsByteArray(), ImmutableGuessResult[].class));
+        }
+        for (Map.Entry<Integer, CompletableFuture<HttpResponse<byte[]>>> entry : remote.entrySet()) {
+            List<Integer> indexes = byOwner.get(entry.getKey());
+            GuessResult[] answered = null;
+            try {
+                HttpResponse<byte[]> answer = entry.getValue().get();
+                if (answer.statusCode() == HttpStatus.OK.value()) {
+                    answered = objectMapper.readValue(answer.body(), ImmutableGuessResult[].class);
+                }
+            } catch (ExecutionException | IOException e) {
+                // reported per guess below
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (answered == null) {
+                answered = new GuessResult[indexes.size()];
+                for (int loop = 0; loop < indexes.size(); loop++) {
+                    answered[loop] = ImmutableGuessResult.builder()
+                            .gameId(guesses[indexes.get(loop)].getGameId())
+                            .status(HttpStatus.BAD_GATEWAY.value())
+                            .build();
+                }
+            }
+            place(results, indexes, answered);
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), Arrays.asList(results));
+    }
+
+    private GuessRequest[] parseGuesses(byte[] body) {
+        try {
+            return objectMapper.readValue(body, ImmutableGuessRequest[].class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void adoptIfMissing(String gameId) {
+        if (!store.loadGame(gameId).isPresent()) {
+            cluster.adopt(gameId);
+        }
+    }
+
+    private byte[] json(GuessRequest[] guesses, List<Integer> indexes) throws IOException {
+        List<GuessRequest> part = new ArrayList<>(indexes.size());
+        indexes.forEach(index -> part.add(guesses[index]));
+        return objectMapper.writeValueAsBytes(part);
+    }
+
+    private static void place(GuessResult[] results, List<Integer> indexes, GuessResult[] answered) {
+        for (int loop = 0; loop < indexes.size() && loop < answered.length; loop++) {
+            results[indexes.get(loop)] = answered[loop];
+        }
+    }
+
+    private static String pathAndQuery(HttpServletRequest request) {
+        return request.getQueryString() == null
+                ? request.getRequestURI()
+                : request.getRequestURI() + "?" + request.getQueryString();
+    }
+}
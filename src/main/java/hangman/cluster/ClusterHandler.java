@@ -0,0 +1,83 @@
+package hangman.cluster;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * The endpoints nodes use to talk to each other, and operators to change membership.
+ * Not meant to be reachable by players.
+ */
+@RestController
+@RequestMapping("/api/hangman/cluster")
+@ConditionalOnProperty(name = "hangman.cluster.nodes")
+public class ClusterHandler {
+
+    @Autowired
+    private Cluster cluster;
+
+    @RequestMapping(value = "/nodes", method = RequestMethod.GET)
+    public ResponseEntity<Map<Integer, String>> getMembers() {
+        return ResponseEntity.ok(cluster.getMembers());
+    }
+
+    // changes membership on this node only, so it should be sent to every node, old and new
+    @RequestMapping(value = "/nodes", method = RequestMethod.PUT)
+    public ResponseEntity<Map<Integer, String>> setMembers(@RequestHeader(value = Cluster.TOKEN, required = false) String token,
+                                                           @RequestBody Map<Integer, String> members) {
+        if (!cluster.isTrusted(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            cluster.setMembers(members);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(cluster.getMembers());
+    }
+
+    // a game handed over by a node that no longer owns it
+    @RequestMapping(value = "/games/{gameId}", method = RequestMethod.PUT)
+    public ResponseEntity<Void> takeOver(@RequestHeader(value = Cluster.TOKEN, required = false) String token,
+                                         @PathVariable String gameId, @RequestBody GameTransfer game) {
+        if (!cluster.isTrusted(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!gameId.equals(game.getGameId()) || !cluster.takeOver(game.toGameDetail())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    // the owner has taken over the game at this version, so this node's copy can go
+    @RequestMapping(value = "/games/{gameId}", method = RequestMethod.DELETE)
+    public ResponseEntity<Void> handedOff(@RequestHeader(value = Cluster.TOKEN, required = false) String token,
+                                          @PathVariable String gameId, @RequestParam int nextGuessId) {
+        if (!cluster.isTrusted(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!cluster.handedOff(gameId, nextGuessId)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    @RequestMapping(value = "/games/{gameId}/handoff", method = RequestMethod.POST)
+    public ResponseEntity<GameTransfer> handOff(@RequestHeader(value = Cluster.TOKEN, required = false) String token,
+                                                @PathVariable String gameId) {
+        if (!cluster.isTrusted(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (cluster.isLocal(gameId)) {
+            // as far as this node knows the game is still its own
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return cluster.handOff(gameId)
+                .map(game -> ResponseEntity.ok(GameTransfer.of(game)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
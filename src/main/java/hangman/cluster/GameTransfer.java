@@ -0,0 +1,52 @@
+package hangman.cluster;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.ImmutableGameDetail;
+import org.immutables.value.Value;
+
+/**
+ * A whole game, secret word included, as it is handed from one node to another.
+ * Only ever sent between nodes, never to players.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableGameTransfer.class)
+@JsonDeserialize(as = ImmutableGameTransfer.class)
+public interface GameTransfer {
+
+    String getGameId();
+
+    String getSecretWord();
+
+    int getGuessesRemaining();
+
+    int getNextGuessId();
+
+    String getGuesses();
+
+    GameStatus getStatus();
+
+    static GameTransfer of(GameDetail game) {
+        return ImmutableGameTransfer.builder()
+                .gameId(game.getGameId())
+                .secretWord(game.getSecretWord())
+                .guessesRemaining(game.getGuessesRemaining())
+                .nextGuessId(game.getNextGuessId())
+                .guesses(game.getGuesses())
+                .status(game.getStatus())
+                .build();
+    }
+
+    default GameDetail toGameDetail() {
+        return ImmutableGameDetail.builder()
+                .gameId(getGameId())
+                .secretWord(getSecretWord())
+                .guessesRemaining(getGuessesRemaining())
+                .nextGuessId(getNextGuessId())
+                .guesses(getGuesses())
+                .status(getStatus())
+                .build();
+    }
+}
@@ -0,0 +1,57 @@
+package hangman.cluster;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A consistent-hash ring mapping game ids onto node ids.
+ *
+ * Each node is placed at a number of pseudo-random points round the ring, and a game belongs to the node at the
+ * first point at or after the hash of its id. Adding a node only takes over the games just before its own points,
+ * roughly 1/n of them, and removing one only hands its games on; nothing else moves.
+ *
+ * The points are held in sorted parallel arrays, so a lookup is one hash and a binary search.
+ */
+final class HashRing {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final long[] points;
+    private final int[] nodes;
+
+    HashRing(Collection<Integer> nodeIds, int pointsPerNode) {
+        if (nodeIds.isEmpty()) {
+            throw new IllegalArgumentException("a ring needs at least one node");
+        }
+        long[][] placed = new long[nodeIds.size() * pointsPerNode][];
+        int count = 0;
+        for (int nodeId : nodeIds) {
+            for (int point = 0; point < pointsPerNode; point++) {
+                placed[count++] = new long[]{HASH.newHasher().putInt(nodeId).putInt(point).hash().asLong(), nodeId};
+            }
+        }
+        // ties are broken on node id so every node builds the same ring
+        Arrays.sort(placed, (left, right) -> left[0] != right[0]
+                ? Long.compare(left[0], right[0])
+                : Long.compare(left[1], right[1]));
+        points = new long[count];
+        nodes = new int[count];
+        for (int loop = 0; loop < count; loop++) {
+            points[loop] = placed[loop][0];
+            nodes[loop] = (int) placed[loop][1];
+        }
+    }
+
+    int nodeFor(String gameId) {
+        long hash = HASH.hashString(gameId, StandardCharsets.ISO_8859_1).asLong();
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return nodes[index == points.length ? 0 : index];
+    }
+}
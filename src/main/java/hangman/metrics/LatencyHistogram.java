@@ -0,0 +1,56 @@
+package hangman.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with fixed buckets, written out as a Prometheus histogram.
+ *
+ * Each bucket is a {@link LongAdder}, so threads recording at the same time add to their own cells rather than
+ * fighting over one counter. The buckets are only added up, and made cumulative, when the metrics are scraped.
+ */
+final class LatencyHistogram {
+
+    // the upper bounds in seconds, from 100 microseconds to 10 seconds
+    private static final String[] BOUNDS = {"0.0001", "0.00025", "0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025",
+            "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"};
+    private static final long[] BOUND_NANOS = new long[BOUNDS.length];
+
+    static {
+        for (int loop = 0; loop < BOUNDS.length; loop++) {
+            BOUND_NANOS[loop] = Math.round(Double.parseDouble(BOUNDS[loop]) * 1e9);
+        }
+    }
+
+    // the last bucket is everything over 10 seconds
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    LatencyHistogram() {
+        for (int loop = 0; loop < buckets.length; loop++) {
+            buckets[loop] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUND_NANOS.length && nanos > BOUND_NANOS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    // labels are written inside the braces ahead of le, so they end with a comma if there are any
+    void write(StringBuilder out, String name, String labels) {
+        long count = 0;
+        for (int loop = 0; loop < buckets.length; loop++) {
+            count += buckets[loop].sum();
+            out.append(name).append("_bucket{").append(labels)
+                    .append("le=\"").append(loop < BOUNDS.length ? BOUNDS[loop] : "+Inf").append("\"} ")
+                    .append(count).append('\n');
+        }
+        String total = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        out.append(name).append("_sum").append(total).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(total).append(' ').append(count).append('\n');
+    }
+}
@@ -0,0 +1,192 @@
+package hangman.metrics;
+
+import hangman.admission.AdmissionControl;
+import hangman.api.GameStatus;
+import hangman.pipeline.GuessPipeline;
+import hangman.pipeline.GuessStats;
+import hangman.service.Dictionary;
+import hangman.service.GameDetail;
+import hangman.service.GameListener;
+import hangman.service.WordIndex;
+import hangman.store.CachingHangmanStore;
+import hangman.store.HangmanStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The numbers behind /metrics: request latency and response codes per endpoint, games created, won and lost,
+ * and the counts the store, dictionary and hint index keep themselves.
+ *
+ * Everything recorded on the request path goes into {@link LongAdder}s, which spread concurrent updates over
+ * several cells, so instrumentation never becomes the point every request queues on.
+ */
+@Component
+public class Metrics implements GameListener {
+
+    // requests that didn't match a route are put together, so random paths can't create endless series
+    public static final String UNMATCHED = "unmatched";
+
+    // and so are requests with any other method, which a client can make up
+    static final String OTHER_METHOD = "OTHER";
+
+    private static final Set<String> METHODS = Set.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS", "TRACE");
+
+    private static final int MAX_STATUS = 600;
+
+    private static final class Endpoint {
+        final String labels;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<>(MAX_STATUS);
+
+        Endpoint(String method, String path) {
+            labels = "method=\"" + method + "\",path=\"" + path.replace("\\", "\\\\").replace("\"", "\\\"") + "\",";
+        }
+
+        LongAdder status(int status) {
+            LongAdder count = statuses.get(status);
+            if (count == null) {
+                statuses.compareAndSet(status, null, new LongAdder());
+                count = statuses.get(status);
+            }
+            return count;
+        }
+    }
+
+    @Autowired
+    private HangmanStore store;
+
+    @Autowired
+    private Dictionary dictionary;
+
+    @Autowired
+    private WordIndex wordIndex;
+
+    @Autowired(required = false)
+    private GuessPipeline pipeline;
+
+    @Autowired(required = false)
+    private GuessStats guessStats;
+
+    @Autowired(required = false)
+    private AdmissionControl admission;
+
+    @Autowired(required = false)
+    private CachingHangmanStore nearCache;
+
+    private final Map<String, Map<String, Endpoint>> endpoints = new ConcurrentHashMap<>();
+    private final LongAdder gamesCreated = new LongAdder();
+    private final LongAdder gamesWon = new LongAdder();
+    private final LongAdder gamesLost = new LongAdder();
+
+    public void recordRequest(String requestMethod, String path, int status, long nanos) {
+        String method = METHODS.contains(requestMethod) ? requestMethod : OTHER_METHOD;
+        // looked up by route then method, so recording allocates nothing once both have been seen
+        Map<String, Endpoint> methods = endpoints.get(path);
+        if (methods == null) {
+            methods = endpoints.computeIfAbsent(path, missing -> new ConcurrentHashMap<>());
+        }
+        Endpoint endpoint = methods.get(method);
+        if (endpoint == null) {
+            endpoint = methods.computeIfAbsent(method, missing -> new Endpoint(method, path));
+        }
+        endpoint.latency.record(nanos);
+        endpoint.status(status >= 0 && status < MAX_STATUS ? status : 0).increment();
+    }
+
+    @Override
+    public void gameCreated(GameDetail game) {
+        gamesCreated.increment();
+    }
+
+    @Override
+    public void gameUpdated(GameDetail game) {
+        // a finished game takes no more guesses, so each is only counted once
+        if (game.getStatus() == GameStatus.WON) {
+            gamesWon.increment();
+        } else if (game.getStatus() == GameStatus.LOST) {
+            gamesLost.increment();
+        }
+    }
+
+    // the Prometheus text format, version 0.0.4
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        Map<String, Endpoint> sorted = new TreeMap<>();
+        endpoints.forEach((path, methods) -> methods.forEach((method, endpoint) -> sorted.put(path + ' ' + method, endpoint)));
+
+        header(out, "hangman_http_request_duration_seconds", "histogram", "Time taken to answer requests, by route");
+        sorted.values().forEach(endpoint -> endpoint.latency.write(out, "hangman_http_request_duration_seconds", endpoint.labels));
+
+        header(out, "hangman_http_responses_total", "counter", "Responses sent, by route and status code");
+        for (Endpoint endpoint : sorted.values()) {
+            for (int status = 0; status < MAX_STATUS; status++) {
+                LongAdder count = endpoint.statuses.get(status);
+                if (count != null) {
+                    out.append("hangman_http_responses_total{").append(endpoint.labels)
+                            .append("status=\"").append(status).append("\"} ").append(count.sum()).append('\n');
+                }
+            }
+        }
+
+        value(out, "hangman_games_created_total", "counter", "Games created", gamesCreated.sum());
+        value(out, "hangman_games_won_total", "counter", "Games won", gamesWon.sum());
+        value(out, "hangman_games_lost_total", "counter", "Games lost", gamesLost.sum());
+        value(out, "hangman_store_live_games", "gauge", "Games held by the store", store.liveGames());
+        value(out, "hangman_store_expired_games_total", "counter", "Finished games removed by the store", store.expiredGames());
+        value(out, "hangman_store_evicted_games_total", "counter", "Idle games removed by the store", store.evictedGames());
+        value(out, "hangman_store_updates_total", "counter", "Game updates applied by the store", store.updates());
+        value(out, "hangman_store_update_conflicts_total", "counter",
+                "Game updates refused because another guess got in first", store.updateConflicts());
+        value(out, "hangman_dictionary_words", "gauge", "Words in the dictionary", dictionary.size());
+        value(out, "hangman_hint_index_bytes", "gauge", "Memory taken by the hint index, 0 until the first hint", wordIndex.sizeInBytes());
+        if (nearCache != null) {
+            header(out, "hangman_store_cache_loads_total", "counter", "Game loads seen by the near cache, by whether it held the game");
+            out.append("hangman_store_cache_loads_total{result=\"hit\"} ").append(nearCache.hits()).append('\n');
+            out.append("hangman_store_cache_loads_total{result=\"miss\"} ").append(nearCache.misses()).append('\n');
+            value(out, "hangman_store_cache_games", "gauge", "Games held by the near cache", nearCache.cachedGames());
+            value(out, "hangman_store_cache_invalidations_total", "counter",
+                    "Cached games dropped because another node wrote or removed them", nearCache.invalidations());
+            value(out, "hangman_store_cache_stale_versions_total", "counter",
+                    "How many versions behind the dropped games were, in total", nearCache.staleVersions());
+            value(out, "hangman_store_cache_stale_updates_total", "counter",
+                    "Updates the store refused because the cached game they were made from was out of date", nearCache.staleUpdates());
+        }
+        if (pipeline != null) {
+            value(out, "hangman_pipeline_published_total", "counter", "Guesses published to the guess pipeline", pipeline.published());
+            value(out, "hangman_pipeline_dropped_total", "counter",
+                    "Guesses dropped because the guess pipeline was full", pipeline.dropped());
+            value(out, "hangman_pipeline_lag", "gauge", "Guesses the slowest pipeline consumer has yet to process", pipeline.lag());
+        }
+        if (admission != null) {
+            header(out, "hangman_admission_guesses_total", "counter", "Guesses seen by admission control, by decision");
+            for (AdmissionControl.Decision decision : AdmissionControl.Decision.values()) {
+                out.append("hangman_admission_guesses_total{decision=\"").append(decision.name().toLowerCase())
+                        .append("\"} ").append(admission.count(decision)).append('\n');
+            }
+            value(out, "hangman_admission_overloaded", "gauge", "1 while guesses are being shed", admission.isOverloaded() ? 1 : 0);
+        }
+        if (guessStats != null) {
+            header(out, "hangman_guesses_total", "counter", "Guesses that changed a game, by whether the letter was in the word");
+            out.append("hangman_guesses_total{result=\"hit\"} ").append(guessStats.hits()).append('\n');
+            out.append("hangman_guesses_total{result=\"miss\"} ").append(guessStats.misses()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void value(StringBuilder out, String name, String type, String help, long value) {
+        header(out, name, type, help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
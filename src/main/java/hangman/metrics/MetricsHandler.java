@@ -0,0 +1,50 @@
+package hangman.metrics;
+
+import hangman.service.Dictionary;
+import hangman.store.HangmanStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// the scrape and health check endpoints, served in both the servlet and the reactive modes
+@RestController
+public class MetricsHandler {
+
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Autowired
+    private Metrics metrics;
+
+    @Autowired
+    private HangmanStore store;
+
+    @Autowired
+    private Dictionary dictionary;
+
+    @GetMapping(value = "/metrics", produces = PROMETHEUS_TEXT)
+    public String metrics() {
+        return metrics.scrape();
+    }
+
+    // UP while the store answers and there are words to play
+    @GetMapping("/health")
+    public ResponseEntity<Map<String, Object>> health() {
+        Map<String, Object> health = new LinkedHashMap<>();
+        boolean up;
+        try {
+            health.put("liveGames", store.liveGames());
+            health.put("dictionaryWords", dictionary.size());
+            up = dictionary.size() > 0;
+        } catch (RuntimeException e) {
+            health.put("error", e.toString());
+            up = false;
+        }
+        health.put("status", up ? "UP" : "DOWN");
+        return ResponseEntity.status(up ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(health);
+    }
+}
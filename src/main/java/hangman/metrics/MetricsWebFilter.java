@@ -0,0 +1,43 @@
+package hangman.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+// times every request in reactive mode. Event streams are timed until they end.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class MetricsWebFilter implements WebFilter {
+
+    @Autowired
+    private Metrics metrics;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        long start = System.nanoTime();
+        return chain.filter(exchange).doFinally(signal -> {
+            // the router functions and the annotated controllers each record the route they matched
+            Object pattern = exchange.getAttribute(RouterFunctions.MATCHING_PATTERN_ATTRIBUTE);
+            if (pattern == null) {
+                pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            }
+            HttpStatus status = signal == SignalType.ON_ERROR
+                    ? HttpStatus.INTERNAL_SERVER_ERROR
+                    : exchange.getResponse().getStatusCode();
+            metrics.recordRequest(exchange.getRequest().getMethodValue(),
+                    pattern == null ? Metrics.UNMATCHED : pattern.toString(),
+                    status == null ? HttpStatus.OK.value() : status.value(), System.nanoTime() - start);
+        });
+    }
+}
@@ -0,0 +1,71 @@
+package hangman.pipeline;
+
+import hangman.service.GameDetail;
+import hangman.service.LetterMask;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Appends a line per guess to {@code hangman.pipeline.audit.file}, fed by the {@link GuessPipeline}.
+ * Enabled by setting the file. Each line holds, separated by tabs, the time the guess was made, the game, the
+ * guessId it took, the guess, whether it was in the word, and the game's status and guesses remaining after it:
+ * <pre>
+ *   2020-01-15T10:12:03.215Z	a657aa	3	e	hit	IN_PROGRESS	8
+ * </pre>
+ * The secret word is not written. Lines are buffered and written out once per batch.
+ */
+@Component
+@ConditionalOnProperty(name = "hangman.pipeline.audit.file")
+public class AuditLog implements GuessConsumer {
+
+    @Value("${hangman.pipeline.audit.file}")
+    private Path file;
+
+    private BufferedWriter writer;
+
+    public AuditLog() {
+    }
+
+    AuditLog(Path file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // the pipeline stops first, as it depends on this
+    @PreDestroy
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    @Override
+    public void onGuess(GameDetail game, long publishedAt, boolean endOfBatch) throws IOException {
+        String guesses = game.getGuesses();
+        char guess = guesses.charAt(guesses.length() - 1);
+        writer.append(Instant.ofEpochMilli(publishedAt).toString()).append('\t')
+                .append(game.getGameId()).append('\t')
+                .append(Integer.toString(game.getNextGuessId() - 1)).append('\t')
+                .append(guess).append('\t')
+                .append(LetterMask.contains(game.getWordMask(), guess) ? "hit" : "miss").append('\t')
+                .append(game.getStatus().name()).append('\t')
+                .append(Integer.toString(game.getGuessesRemaining())).append('\n');
+        if (endOfBatch) {
+            writer.flush();
+        }
+    }
+}
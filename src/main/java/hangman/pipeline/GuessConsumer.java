@@ -0,0 +1,17 @@
+package hangman.pipeline;
+
+import hangman.service.GameDetail;
+
+/**
+ * Drains the {@link GuessPipeline} on a thread of its own. Every consumer sees every guess the pipeline
+ * takes in, in the order they were published.
+ *
+ * Guesses arrive in batches of whatever has been published since the last one, so a consumer can do its
+ * expensive part, such as a flush, once per batch at endOfBatch rather than once per guess.
+ */
+public interface GuessConsumer {
+
+    // the game just after the guess, which is the last character of its guesses.
+    // publishedAt is the time the guess was published, in epoch milliseconds
+    void onGuess(GameDetail game, long publishedAt, boolean endOfBatch) throws Exception;
+}
@@ -0,0 +1,231 @@
+package hangman.pipeline;
+
+import hangman.service.GameDetail;
+import hangman.service.GameListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands every committed guess to the {@link GuessConsumer}s (auditing, statistics) without doing their work on
+ * the thread that made the guess.
+ *
+ * Guesses go into a ring of {@code hangman.pipeline.buffer-size} slots allocated up front. A guess claims the next
+ * sequence number with a compare-and-set, writes the game into that slot and marks the slot published with the
+ * sequence number, so publishing takes no lock and allocates nothing. Each consumer has its own thread and its own
+ * cursor, and reads everything published past its cursor, up to {@code hangman.pipeline.batch-size} at a time,
+ * before moving the cursor on. A slot can only be reused once every consumer's cursor has passed it.
+ *
+ * When the slowest consumer is a whole ring behind, {@code hangman.pipeline.overflow} decides what happens:
+ * {@code drop} (the default) counts the guess as dropped and returns straight away, so the request never waits on
+ * a consumer. {@code block} waits for a slot, which keeps every guess at the cost of slowing down guessing to the
+ * pace of the slowest consumer.
+ */
+@Component
+public class GuessPipeline implements GameListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GuessPipeline.class);
+
+    // how long an idle consumer or a blocked producer waits before looking again
+    private static final long PARK_NANOS = 100_000;
+
+    public enum Overflow {
+        DROP, BLOCK
+    }
+
+    private final class Worker implements Runnable {
+        final GuessConsumer consumer;
+        // the next sequence number the consumer will read
+        final AtomicLong cursor = new AtomicLong();
+        final Thread thread;
+
+        Worker(GuessConsumer consumer) {
+            this.consumer = consumer;
+            thread = new Thread(this, "hangman-pipeline-" + consumer.getClass().getSimpleName());
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long sequence = cursor.get();
+            while (true) {
+                long end = sequence;
+                while (end - sequence < batchSize && published.get((int) end & mask) == end) {
+                    end++;
+                }
+                if (end == sequence) {
+                    // whatever was published before close() has been read
+                    if (!running) {
+                        return;
+                    }
+                    LockSupport.parkNanos(PARK_NANOS);
+                    continue;
+                }
+                for (long loop = sequence; loop < end; loop++) {
+                    int index = (int) loop & mask;
+                    try {
+                        consumer.onGuess(games[index], publishedAt[index], loop == end - 1);
+                    } catch (Exception e) {
+                        LOGGER.warn("{} failed on game {}", thread.getName(), games[index].getGameId(), e);
+                    }
+                }
+                sequence = end;
+                cursor.lazySet(end);
+            }
+        }
+    }
+
+    @Autowired(required = false)
+    private List<GuessConsumer> consumers = Collections.emptyList();
+
+    @Value("${hangman.pipeline.buffer-size:65536}")
+    private int bufferSize = 65536;
+
+    @Value("${hangman.pipeline.batch-size:1024}")
+    private int batchSize = 1024;
+
+    @Value("${hangman.pipeline.overflow:drop}")
+    private Overflow overflow = Overflow.DROP;
+
+    private final AtomicLong next = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+
+    private int mask;
+    private GameDetail[] games;
+    private long[] publishedAt;
+    // the sequence number each slot was last published with, -1 before its first
+    private AtomicLongArray published;
+    private Worker[] workers;
+    // the slowest cursor when last looked at, so producers only scan the cursors when the ring looks full
+    private volatile long slowest;
+    private volatile boolean running;
+
+    public GuessPipeline() {
+    }
+
+    GuessPipeline(List<GuessConsumer> consumers, int bufferSize, int batchSize, Overflow overflow) {
+        this.consumers = consumers;
+        this.bufferSize = bufferSize;
+        this.batchSize = batchSize;
+        this.overflow = overflow;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        if (bufferSize < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("the pipeline's buffer and batch sizes must be positive");
+        }
+        // a power of two, so a sequence number maps onto a slot with a mask
+        int capacity = Integer.highestOneBit(bufferSize);
+        if (capacity < bufferSize) {
+            capacity <<= 1;
+        }
+        mask = capacity - 1;
+        games = new GameDetail[capacity];
+        publishedAt = new long[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int loop = 0; loop < capacity; loop++) {
+            published.set(loop, -1);
+        }
+        workers = new Worker[consumers.size()];
+        for (int loop = 0; loop < workers.length; loop++) {
+            workers[loop] = new Worker(consumers.get(loop));
+        }
+        running = true;
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    // consumers finish what was published before this, then stop
+    @PreDestroy
+    public synchronized void close() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Worker worker : workers) {
+            worker.thread.join();
+        }
+    }
+
+    @Override
+    public void gameUpdated(GameDetail game) {
+        if (!running || workers.length == 0) {
+            return;
+        }
+        long sequence = claim();
+        if (sequence < 0) {
+            dropped.increment();
+            return;
+        }
+        int index = (int) sequence & mask;
+        games[index] = game;
+        publishedAt[index] = System.currentTimeMillis();
+        // the ordered write makes the slot visible to the consumers after the game and time
+        published.lazySet(index, sequence);
+    }
+
+    // the next sequence number, or -1 if the guess is to be dropped
+    private long claim() {
+        int capacity = mask + 1;
+        if (overflow == Overflow.DROP) {
+            while (true) {
+                long sequence = next.get();
+                if (sequence - capacity >= slowest && sequence - capacity >= (slowest = slowestCursor())) {
+                    return -1;
+                }
+                if (next.compareAndSet(sequence, sequence + 1)) {
+                    return sequence;
+                }
+            }
+        }
+        long sequence = next.getAndIncrement();
+        while (sequence - capacity >= slowest && sequence - capacity >= (slowest = slowestCursor())) {
+            if (!running) {
+                return -1;
+            }
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return sequence;
+    }
+
+    private long slowestCursor() {
+        long cursor = Long.MAX_VALUE;
+        for (Worker worker : workers) {
+            cursor = Math.min(cursor, worker.cursor.get());
+        }
+        return cursor;
+    }
+
+    public long published() {
+        return next.get();
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    // the guesses published that the slowest consumer has yet to finish with
+    public long lag() {
+        return workers.length == 0 ? 0 : Math.max(0, next.get() - slowestCursor());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,74 @@
+package hangman.pipeline;
+
+import hangman.service.GameDetail;
+import hangman.service.LetterMask;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the guesses that come through the {@link GuessPipeline}: hits and misses, and how often each letter is
+ * guessed. Counting happens on the pipeline's thread into plain arrays, and the totals are copied out for
+ * readers once per batch.
+ */
+@Component
+public class GuessStats implements GuessConsumer {
+
+    // by LetterMask bit, with the guesses that aren't letters last
+    private static final int OTHER = LetterMask.LETTERS;
+
+    // only touched by the pipeline thread
+    private final long[] hits = new long[OTHER + 1];
+    private final long[] misses = new long[OTHER + 1];
+
+    private final AtomicLongArray publishedHits = new AtomicLongArray(OTHER + 1);
+    private final AtomicLongArray publishedMisses = new AtomicLongArray(OTHER + 1);
+
+    @Override
+    public void onGuess(GameDetail game, long publishedAt, boolean endOfBatch) {
+        String guesses = game.getGuesses();
+        char guess = guesses.charAt(guesses.length() - 1);
+        int bit = LetterMask.bit(guess);
+        int index = bit < 0 ? OTHER : bit;
+        if (LetterMask.contains(game.getWordMask(), guess)) {
+            hits[index]++;
+        } else {
+            misses[index]++;
+        }
+        if (endOfBatch) {
+            for (int loop = 0; loop <= OTHER; loop++) {
+                publishedHits.lazySet(loop, hits[loop]);
+                publishedMisses.lazySet(loop, misses[loop]);
+            }
+        }
+    }
+
+    public long hits() {
+        return sum(publishedHits);
+    }
+
+    public long misses() {
+        return sum(publishedMisses);
+    }
+
+    public long hits(char letter) {
+        return publishedHits.get(index(letter));
+    }
+
+    public long misses(char letter) {
+        return publishedMisses.get(index(letter));
+    }
+
+    private static int index(char letter) {
+        int bit = LetterMask.bit(letter);
+        return bit < 0 ? OTHER : bit;
+    }
+
+    private static long sum(AtomicLongArray counts) {
+        long sum = 0;
+        for (int loop = 0; loop < counts.length(); loop++) {
+            sum += counts.get(loop);
+        }
+        return sum;
+    }
+}
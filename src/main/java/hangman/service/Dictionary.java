@@ -0,0 +1,186 @@
+package hangman.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The words secret words are chosen from, packed so that millions of them cost little more than their letters.
+ *
+ * Words are grouped by length, and the words of each length are stored back to back in one byte array,
+ * one ISO-8859-1 byte per letter. A word is found by arithmetic on its length and position, so there is no
+ * String or offset per word until one is chosen.
+ *
+ * The word file is UTF-8, one word per line, read from hangman.dictionary.file (memory mapped) or the bundled
+ * words.txt. Words are lowercased. Any word with a character that is not a letter {@link LetterMask} knows is skipped.
+ */
+@Component
+public class Dictionary {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Dictionary.class);
+
+    static final int MAX_LENGTH = 64;
+
+    @Value("${hangman.dictionary.file:}")
+    private String file = "";
+
+    private byte[] letters;
+    // wordStarts[length] is the index of the first word of that length, wordStarts[MAX_LENGTH + 1] the word count
+    private final int[] wordStarts = new int[MAX_LENGTH + 2];
+    private final long[] letterStarts = new long[MAX_LENGTH + 1];
+
+    public Dictionary() {
+    }
+
+    Dictionary(String file) {
+        this.file = file;
+    }
+
+    // for wiring by hand. An empty file name loads the bundled words.txt
+    public static Dictionary loadFrom(String file) throws IOException {
+        Dictionary dictionary = new Dictionary(file);
+        dictionary.load();
+        return dictionary;
+    }
+
+    @PostConstruct
+    void load() throws IOException {
+        long start = System.nanoTime();
+        if (file.isEmpty()) {
+            try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("words.txt")) {
+                load(ByteBuffer.wrap(inputStream.readAllBytes()));
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+                load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+        LOGGER.info("Loaded {} words in {}ms", size(), (System.nanoTime() - start) / 1_000_000);
+        if (size() == 0) {
+            throw new IllegalStateException("the dictionary has no words");
+        }
+    }
+
+    // two passes over the file: the first counts the words of each length, the second copies each into place
+    void load(ByteBuffer words) {
+        long[] counts = new long[MAX_LENGTH + 1];
+        byte[] word = new byte[MAX_LENGTH];
+        for (int position = 0; position < words.limit(); ) {
+            int end = lineEnd(words, position);
+            int length = decode(words, position, end, word);
+            if (length > 0) {
+                counts[length]++;
+            }
+            position = end + 1;
+        }
+
+        long totalWords = 0;
+        long totalLetters = 0;
+        for (int length = 1; length <= MAX_LENGTH; length++) {
+            wordStarts[length] = (int) totalWords;
+            letterStarts[length] = totalLetters;
+            totalWords += counts[length];
+            totalLetters += counts[length] * length;
+        }
+        if (totalLetters > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("the dictionary has more than 2GB of letters");
+        }
+        wordStarts[MAX_LENGTH + 1] = (int) totalWords;
+        letters = new byte[(int) totalLetters];
+
+        long[] next = letterStarts.clone();
+        for (int position = 0; position < words.limit(); ) {
+            int end = lineEnd(words, position);
+            int length = decode(words, position, end, word);
+            if (length > 0) {
+                System.arraycopy(word, 0, letters, (int) next[length], length);
+                next[length] += length;
+            }
+            position = end + 1;
+        }
+    }
+
+    public int size() {
+        return wordStarts[MAX_LENGTH + 1];
+    }
+
+    public int size(int length) {
+        if (length < 1 || length > MAX_LENGTH) {
+            return 0;
+        }
+        return wordStarts[length + 1] - wordStarts[length];
+    }
+
+    public String word(int index) {
+        int length = 1;
+        while (wordStarts[length + 1] <= index) {
+            length++;
+        }
+        return word(length, index - wordStarts[length]);
+    }
+
+    public String randomWord() {
+        return word(ThreadLocalRandom.current().nextInt(size()));
+    }
+
+    // throws IllegalArgumentException when there are no words of that length
+    public String randomWord(int length) {
+        int count = size(length);
+        if (count == 0) {
+            throw new IllegalArgumentException("no words of length " + length);
+        }
+        return word(length, ThreadLocalRandom.current().nextInt(count));
+    }
+
+    // one ISO-8859-1 letter of the word at that position among the words of that length
+    char letter(int length, int position, int offset) {
+        return (char) (letters[(int) (letterStarts[length] + (long) position * length + offset)] & 0xff);
+    }
+
+    private String word(int length, int position) {
+        return new String(letters, (int) (letterStarts[length] + (long) position * length), length, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int lineEnd(ByteBuffer words, int position) {
+        int end = position;
+        while (end < words.limit() && words.get(end) != '\n') {
+            end++;
+        }
+        return end;
+    }
+
+    // decodes the UTF-8 line into ISO-8859-1 letters, returning its length or 0 if it is not a word we can use
+    private static int decode(ByteBuffer words, int start, int end, byte[] word) {
+        int length = 0;
+        for (int position = start; position < end; position++) {
+            int c = words.get(position) & 0xff;
+            if (c == '\r' && position == end - 1) {
+                break;
+            }
+            if (c >= 0x80) {
+                // only the two byte sequences for U+0080 to U+00FF
+                if ((c != 0xc2 && c != 0xc3) || position + 1 == end || (words.get(position + 1) & 0xc0) != 0x80) {
+                    return 0;
+                }
+                c = (c & 0x1f) << 6 | words.get(++position) & 0x3f;
+            }
+            char letter = Character.toLowerCase((char) c);
+            if (length == MAX_LENGTH || LetterMask.of(letter) == 0) {
+                return 0;
+            }
+            word[length++] = (byte) letter;
+        }
+        return length;
+    }
+}
@@ -3,8 +3,6 @@ package hangman.service;
 import hangman.api.GameStatus;
 import org.immutables.value.Value;
 
-import java.util.List;
-
 @Value.Immutable
 public interface GameDetail {
 
@@ -16,7 +14,32 @@ public interface GameDetail {
 
     int getNextGuessId();
 
-    List<Character> getGuesses();
+    // the guesses in the order they were made, one character per guess
+    @Value.Default
+    default String getGuesses() {
+        return "";
+    }
+
+    // the letters of the secret word, see LetterMask
+    @Value.Default
+    default long getWordMask() {
+        return LetterMask.of(getSecretWord());
+    }
+
+    // the letters guessed so far, see LetterMask
+    @Value.Default
+    default long getGuessedMask() {
+        return LetterMask.of(getGuesses());
+    }
 
     GameStatus getStatus();
+
+    default boolean hasGuessed(char letter) {
+        long bit = LetterMask.of(letter);
+        if (bit != 0) {
+            return (getGuessedMask() & bit) != 0;
+        }
+        // letters without a bit are never in the word, so there can only be a handful of them
+        return getGuesses().indexOf(letter) >= 0;
+    }
 }
@@ -0,0 +1,11 @@
+package hangman.service;
+
+// a guess on a game that is already won or lost, which the api answers with a 409 as it would any guess made on a stale state
+public class GameFinishedException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public GameFinishedException() {
+        super("game has finished");
+    }
+}
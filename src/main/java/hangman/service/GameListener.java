@@ -0,0 +1,15 @@
+package hangman.service;
+
+/**
+ * Told about every new game and every guess that changes a game, once it has been committed to the store.
+ *
+ * Called on the thread that applied the guess, so implementations should hand off anything slow.
+ * Two guesses on the same game can be reported in either order, compare nextGuessId to find the latest.
+ */
+public interface GameListener {
+
+    default void gameCreated(GameDetail game) {
+    }
+
+    void gameUpdated(GameDetail game);
+}
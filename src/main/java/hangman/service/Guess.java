@@ -0,0 +1,16 @@
+package hangman.service;
+
+import org.immutables.value.Value;
+
+@Value.Immutable
+public interface Guess {
+
+    @Value.Parameter
+    String getGameId();
+
+    @Value.Parameter
+    char getGuess();
+
+    @Value.Parameter
+    int getGuessId();
+}
@@ -0,0 +1,32 @@
+package hangman.service;
+
+import org.immutables.value.Value;
+
+import java.util.Optional;
+
+@Value.Immutable
+public interface GuessOutcome {
+
+    enum Result {
+        APPLIED,
+        NOT_FOUND,
+        CONFLICT,
+        FINISHED,
+        INVALID
+    }
+
+    @Value.Parameter
+    Result getResult();
+
+    // the game after the guess, only present when the guess was applied or the game has finished
+    @Value.Parameter
+    Optional<GameDetail> getGame();
+
+    static GuessOutcome of(Result result) {
+        return ImmutableGuessOutcome.of(result, Optional.empty());
+    }
+
+    static GuessOutcome of(Result result, GameDetail game) {
+        return ImmutableGuessOutcome.of(result, Optional.of(game));
+    }
+}
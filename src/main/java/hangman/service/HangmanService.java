@@ -1,65 +1,319 @@
 package hangman.service;
 
-import com.google.common.collect.ImmutableList;
 import hangman.api.GameStatus;
 import hangman.store.HangmanStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.PostConstruct;
-import java.io.InputStream;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Predicate;
 
 @Component
 public class HangmanService {
 
     private static final int GUESSES_ALLOWED = 10;
 
+    // a merged guess is retried against each newer state it loses out to. A game is over within ten misses and
+    // one hit per letter of its word, so this limit only matters if the store misbehaves
+    private static final int MAX_MERGES = 64;
+
     @Autowired
     private HangmanStore store;
 
+    @Autowired
+    private Dictionary dictionary;
+
+    @Autowired(required = false)
+    private List<GameListener> listeners = Collections.emptyList();
+
+    // games on their way to another node, which take no guesses here until they have gone
+    private Predicate<String> moving = gameId -> false;
+
+    public HangmanService() {
+    }
+
+    // for wiring by hand
+    public HangmanService(HangmanStore store, Dictionary dictionary) {
+        this.store = store;
+        this.dictionary = dictionary;
+    }
+
+    public void setMoving(Predicate<String> moving) {
+        this.moving = moving;
+    }
+
     public GameDetail createNewGame() {
-        ImmutableGameDetail newGame = ImmutableGameDetail.builder()
-                .gameId(store.generateUniqueId())
-                .secretWord(chooseWord())
-                .status(GameStatus.NEW)
-                .guessesRemaining(GUESSES_ALLOWED)
-                .nextGuessId(0)
-                .build();
+        GameDetail newGame = newGameDetail(dictionary.randomWord());
         store.storeGame(newGame);
+        created(newGame);
         return newGame;
     }
 
+    // throws IllegalArgumentException if the dictionary has no words of that length
+    public GameDetail createNewGame(int wordLength) {
+        GameDetail newGame = newGameDetail(dictionary.randomWord(wordLength));
+        store.storeGame(newGame);
+        created(newGame);
+        return newGame;
+    }
+
+    public List<GameDetail> createNewGames(int count) {
+        List<GameDetail> newGames = new ArrayList<>(count);
+        for (int loop = 0; loop < count; loop++) {
+            newGames.add(newGameDetail(dictionary.randomWord()));
+        }
+        store.storeGames(newGames);
+        newGames.forEach(this::created);
+        return newGames;
+    }
+
     public GameDetail getGameState(String gameId) throws InvalidGameException {
         return store.loadGame(gameId).orElseThrow(InvalidGameException::new);
     }
 
+    // the games found, in the order asked for. Ids with no game are left out.
+    public List<GameDetail> getGameStates(List<String> gameIds) {
+        List<GameDetail> games = new ArrayList<>(gameIds.size());
+        store.loadGames(gameIds).forEach(game -> game.ifPresent(games::add));
+        return games;
+    }
+
+    public Iterator<GameDetail> scanGames(Set<GameStatus> statuses) {
+        return store.scanGames(statuses);
+    }
+
     public GameDetail applyGuess(String gameId, Character guess, int guessId) throws InvalidGameException {
-        GameDetail gameDetail =
-                store.loadGame(gameId).orElseThrow(InvalidGameException::new);
+        return applyGuess(gameId, guess, guessId, false);
+    }
 
-        if (gameDetail.getStatus() == GameStatus.WON ||
-                gameDetail.getStatus() == GameStatus.LOST) {
-            throw new IllegalStateException("game has finished");
+    // with merge, a guess made against an earlier state of the game is applied to the current state rather than
+    // refused, as long as the game is still going. The order letters are guessed in doesn't change the outcome.
+    public GameDetail applyGuess(String gameId, char guess, int guessId, boolean merge) throws InvalidGameException {
+        if (!isValidGuess(guess)) {
+            throw new InvalidGuessException(guess);
+        }
+        for (int merges = 0; ; merges++) {
+            GameDetail gameDetail =
+                    store.loadGame(gameId).orElseThrow(InvalidGameException::new);
+
+            boolean rebase = merge && guessId < gameDetail.getNextGuessId();
+            if (isFinished(gameDetail)) {
+                if (rebase) {
+                    throw new ConcurrentModificationException("game finished after guess " + guessId);
+                }
+                throw new GameFinishedException();
+            }
+
+            GameDetail updated = guess(gameDetail, guess);
+            if (updated == gameDetail) {
+                return updated;
+            }
+            if (moving.test(gameId)) {
+                throw new ConcurrentModificationException("game " + gameId + " is moving to another node");
+            }
+            try {
+                // this can throw concurrentmodificationexception if the game was updated by someone else
+                store.updateGame(updated, rebase ? gameDetail.getNextGuessId() : guessId);
+            } catch (ConcurrentModificationException e) {
+                if (!merge || guessId > gameDetail.getNextGuessId() || merges == MAX_MERGES) {
+                    throw e;
+                }
+                continue;
+            }
+            updated(updated);
+            return updated;
         }
+    }
+
+    // the non-blocking versions of the above, which never wait on the store. Failures, such as
+    // InvalidGameException or ConcurrentModificationException, complete the future exceptionally.
+
+    public CompletableFuture<GameDetail> createNewGameAsync() {
+        GameDetail newGame = newGameDetail(dictionary.randomWord());
+        return store.storeGameAsync(newGame).thenApply(stored -> created(newGame));
+    }
+
+    public CompletableFuture<GameDetail> createNewGameAsync(int wordLength) {
+        GameDetail newGame = newGameDetail(dictionary.randomWord(wordLength));
+        return store.storeGameAsync(newGame).thenApply(stored -> created(newGame));
+    }
+
+    public CompletableFuture<GameDetail> getGameStateAsync(String gameId) {
+        return store.loadGameAsync(gameId).thenApply(game -> game.orElseThrow(InvalidGameException::new));
+    }
+
+    public CompletableFuture<GameDetail> applyGuessAsync(String gameId, char guess, int guessId) {
+        return applyGuessAsync(gameId, guess, guessId, false);
+    }
 
+    public CompletableFuture<GameDetail> applyGuessAsync(String gameId, char guess, int guessId, boolean merge) {
+        if (!isValidGuess(guess)) {
+            return CompletableFuture.failedFuture(new InvalidGuessException(guess));
+        }
+        return applyGuessAsync(gameId, guess, guessId, merge, 0);
+    }
+
+    private CompletableFuture<GameDetail> applyGuessAsync(String gameId, char guess, int guessId, boolean merge, int merges) {
+        return getGameStateAsync(gameId).thenCompose(gameDetail -> {
+            boolean rebase = merge && guessId < gameDetail.getNextGuessId();
+            if (isFinished(gameDetail)) {
+                if (rebase) {
+                    throw new ConcurrentModificationException("game finished after guess " + guessId);
+                }
+                throw new GameFinishedException();
+            }
+            GameDetail updated = guess(gameDetail, guess);
+            if (updated == gameDetail) {
+                return CompletableFuture.completedFuture(gameDetail);
+            }
+            if (moving.test(gameId)) {
+                throw new ConcurrentModificationException("game " + gameId + " is moving to another node");
+            }
+            return store.updateGameAsync(updated, rebase ? gameDetail.getNextGuessId() : guessId).handle((stored, error) -> {
+                if (error == null) {
+                    updated(updated);
+                    return CompletableFuture.completedFuture(updated);
+                }
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof ConcurrentModificationException && merge
+                        && guessId <= gameDetail.getNextGuessId() && merges < MAX_MERGES) {
+                    return applyGuessAsync(gameId, guess, guessId, true, merges + 1);
+                }
+                return CompletableFuture.<GameDetail>failedFuture(cause);
+            }).thenCompose(result -> result);
+        });
+    }
+
+    // applies the guesses in order, a guess seeing the outcome of any earlier guess on the same game.
+    // each game is written once, at its last state, in one batch to the store. Every guess that was decided
+    // on a state from earlier in the batch only stands if that write goes through.
+    public List<GuessOutcome> applyGuesses(List<Guess> guesses) {
+        GuessOutcome[] outcomes = new GuessOutcome[guesses.size()];
+        Map<String, Optional<GameDetail>> latest = new HashMap<>();
+        // the game's place in updates, once a guess in the batch has moved it on
+        Map<String, Integer> updateOfGame = new HashMap<>();
+        List<GameDetail> updates = new ArrayList<>();
+        int[] expectedGuessIds = new int[guesses.size()];
+        int[] waitsFor = new int[guesses.size()];
+        // the states guesses moved their games on to, in order, for the listeners
+        List<List<GameDetail>> states = new ArrayList<>();
+
+        for (int loop = 0; loop < guesses.size(); loop++) {
+            Guess guess = guesses.get(loop);
+            if (!isValidGuess(guess.getGuess())) {
+                outcomes[loop] = GuessOutcome.of(GuessOutcome.Result.INVALID);
+                waitsFor[loop] = -1;
+                continue;
+            }
+            Optional<GameDetail> game = latest.computeIfAbsent(guess.getGameId(), store::loadGame);
+            Integer update = updateOfGame.get(guess.getGameId());
+            waitsFor[loop] = update == null ? -1 : update;
+            if (!game.isPresent()) {
+                outcomes[loop] = GuessOutcome.of(GuessOutcome.Result.NOT_FOUND);
+                continue;
+            }
+            GameDetail gameDetail = game.get();
+            if (isFinished(gameDetail)) {
+                outcomes[loop] = GuessOutcome.of(GuessOutcome.Result.FINISHED, gameDetail);
+                continue;
+            }
+            GameDetail updated = guess(gameDetail, guess.getGuess());
+            if (updated == gameDetail) {
+                outcomes[loop] = GuessOutcome.of(GuessOutcome.Result.APPLIED, gameDetail);
+            } else if (gameDetail.getNextGuessId() != guess.getGuessId() || moving.test(guess.getGameId())) {
+                outcomes[loop] = GuessOutcome.of(GuessOutcome.Result.CONFLICT);
+            } else {
+                if (update == null) {
+                    update = updates.size();
+                    updateOfGame.put(guess.getGameId(), update);
+                    expectedGuessIds[update] = guess.getGuessId();
+                    updates.add(updated);
+                    states.add(new ArrayList<>());
+                } else {
+                    updates.set(update, updated);
+                }
+                states.get(update).add(updated);
+                waitsFor[loop] = update;
+                outcomes[loop] = GuessOutcome.of(GuessOutcome.Result.APPLIED, updated);
+                latest.put(guess.getGameId(), Optional.of(updated));
+            }
+        }
+
+        List<HangmanStore.UpdateResult> results = store.updateGames(updates, expectedGuessIds);
+        for (int loop = 0; loop < outcomes.length; loop++) {
+            if (waitsFor[loop] < 0) {
+                continue;
+            }
+            switch (results.get(waitsFor[loop])) {
+                case UPDATED:
+                    break;
+                case NOT_FOUND:
+                    outcomes[loop] = GuessOutcome.of(GuessOutcome.Result.NOT_FOUND);
+                    break;
+                default:
+                    // someone else moved the game on first, so none of this batch's guesses on it stand
+                    outcomes[loop] = GuessOutcome.of(GuessOutcome.Result.CONFLICT);
+            }
+        }
+        for (int loop = 0; loop < updates.size(); loop++) {
+            if (results.get(loop) == HangmanStore.UpdateResult.UPDATED) {
+                states.get(loop).forEach(this::updated);
+            }
+        }
+        return Arrays.asList(outcomes);
+    }
+
+    private GameDetail created(GameDetail game) {
+        for (GameListener listener : listeners) {
+            listener.gameCreated(game);
+        }
+        return game;
+    }
+
+    private void updated(GameDetail game) {
+        for (GameListener listener : listeners) {
+            listener.gameUpdated(game);
+        }
+    }
+
+    private ImmutableGameDetail newGameDetail(String secretWord) {
+        return ImmutableGameDetail.builder()
+                .gameId(store.generateUniqueId())
+                .secretWord(secretWord)
+                .status(GameStatus.NEW)
+                .guessesRemaining(GUESSES_ALLOWED)
+                .nextGuessId(0)
+                .build();
+    }
+
+    private static boolean isFinished(GameDetail gameDetail) {
+        return gameDetail.getStatus() == GameStatus.WON ||
+                gameDetail.getStatus() == GameStatus.LOST;
+    }
+
+    // every store holds guesses as ISO-8859-1, as the slab store packs them into bytes
+    private static boolean isValidGuess(char guess) {
         char lowercaseGuess = Character.toLowerCase(guess);
-        if (gameDetail.getGuesses().contains(lowercaseGuess)) {
+        return lowercaseGuess != 0 && lowercaseGuess <= 0xff;
+    }
+
+    // returns the game after the guess, or the same game if the letter has already been tried
+    private static GameDetail guess(GameDetail gameDetail, char guess) {
+        char lowercaseGuess = Character.toLowerCase(guess);
+        if (gameDetail.hasGuessed(lowercaseGuess)) {
             // this has already been tried, no update is needed
             return gameDetail;
         }
 
         GameStatus nextState = GameStatus.IN_PROGRESS;
-        ImmutableList<Character> guesses =
-                ImmutableList.<Character>builder().
-                        addAll(gameDetail.getGuesses()).
-                        add(lowercaseGuess).build();
+        long guessedMask = gameDetail.getGuessedMask() | LetterMask.of(lowercaseGuess);
 
         int remainingGuesses = gameDetail.getGuessesRemaining();
-        if (gameDetail.getSecretWord().indexOf(lowercaseGuess) >= 0) {
+        if (LetterMask.contains(gameDetail.getWordMask(), lowercaseGuess)) {
             // it's a good guess. See if we've got a complete match
-            if (allMatched(gameDetail.getSecretWord(), guesses)) {
+            if (LetterMask.allMatched(gameDetail.getWordMask(), guessedMask)) {
                 nextState = GameStatus.WON;
             }
         } else {
@@ -69,43 +323,13 @@ public class HangmanService {
             }
         }
 
-        ImmutableGameDetail updated = ImmutableGameDetail.copyOf(gameDetail)
-                .withGuessesRemaining(remainingGuesses)
-                .withNextGuessId(gameDetail.getNextGuessId() + 1)
-                .withGuesses(guesses)
-                .withStatus(nextState);
-
-        // this can throw concurrentmodificationexception if the game was updated by someone else
-        store.updateGame(updated, guessId);
-        return updated;
-    }
-
-    private boolean allMatched(String secretWord, ImmutableList<Character> guesses) {
-        // performance note : this is succint but not performant. If we wanted to tune
-        // this for better performance we would increase the data structure to maintain a
-        // set of characters that are needed to be typed. As successful guesses occur,
-        // this set would have elements removed. Once the set was empty then the match
-        // has occurred.
-        Set<Integer> guessSet =
-                guesses.stream().map(Integer::new).
-                        collect(Collectors.toSet());
-        return secretWord.chars().allMatch(guessSet::contains);
-    }
-
-    private static List<String> words = new ArrayList<>();
-
-    @PostConstruct
-    private void loadWords() {
-        InputStream inputStream = getClass()
-                .getClassLoader().getResourceAsStream("words.txt");
-        Scanner scanner = new Scanner(inputStream);
-        while (scanner.hasNextLine()) {
-            words.add(scanner.nextLine());
-        }
-    }
-
-    private String chooseWord() {
-        Random random = new Random();
-        return words.get(random.nextInt(words.size()));
+        return ImmutableGameDetail.builder()
+                .from(gameDetail)
+                .guessesRemaining(remainingGuesses)
+                .nextGuessId(gameDetail.getNextGuessId() + 1)
+                .guesses(gameDetail.getGuesses() + lowercaseGuess)
+                .guessedMask(guessedMask)
+                .status(nextState)
+                .build();
     }
 }
@@ -0,0 +1,25 @@
+package hangman.service;
+
+import org.immutables.value.Value;
+
+import java.util.Optional;
+
+@Value.Immutable
+public interface Hint {
+
+    // the untried letter in the most words that still fit the game, empty if no word fits or nothing is left to try
+    @Value.Parameter
+    Optional<Character> getLetter();
+
+    // the words of the dictionary that still fit the game
+    @Value.Parameter
+    int getCandidates();
+
+    // the candidates with the letter in them
+    @Value.Parameter
+    int getMatches();
+
+    static Hint none(int candidates) {
+        return ImmutableHint.of(Optional.empty(), candidates, 0);
+    }
+}
@@ -1,4 +1,6 @@
 package hangman.service;
 
 public class InvalidGameException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
 }
@@ -0,0 +1,11 @@
+package hangman.service;
+
+// a guess that is not an ISO-8859-1 character, so no game can hold it. The api answers it with a 400
+public class InvalidGuessException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidGuessException(char guess) {
+        super("guess is not an ISO-8859-1 character: U+" + String.format("%04X", (int) guess));
+    }
+}
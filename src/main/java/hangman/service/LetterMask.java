@@ -0,0 +1,71 @@
+package hangman.service;
+
+import java.util.Arrays;
+
+/**
+ * Maps letters onto the bits of a {@code long} so that sets of letters (the letters of the secret word,
+ * the letters guessed so far) can be held and compared without boxing.
+ *
+ * Every lowercase letter of ISO-8859-1 has a bit: 'a'-'z' and U+00DF-U+00FF apart from the division sign (58 letters).
+ * Anything else (digits, punctuation, other scripts) has no bit, {@link #of(char)} returns 0 for it,
+ * and it is treated as a letter that can never be in a secret word.
+ */
+public final class LetterMask {
+
+    // the number of letters with a bit
+    public static final int LETTERS = 58;
+
+    private static final byte[] BITS = new byte[256];
+    private static final char[] LETTERS_BY_BIT = new char[LETTERS];
+
+    static {
+        Arrays.fill(BITS, (byte) -1);
+        int bit = 0;
+        for (char c = 'a'; c <= 'z'; c++) {
+            LETTERS_BY_BIT[bit] = c;
+            BITS[c] = (byte) bit++;
+        }
+        // sharp s to y-diaeresis, skipping the division sign
+        for (char c = '\u00df'; c <= '\u00ff'; c++) {
+            if (c != '\u00f7') {
+                LETTERS_BY_BIT[bit] = c;
+                BITS[c] = (byte) bit++;
+            }
+        }
+    }
+
+    private LetterMask() {
+    }
+
+    public static long of(char letter) {
+        if (letter >= BITS.length || BITS[letter] < 0) {
+            return 0L;
+        }
+        return 1L << BITS[letter];
+    }
+
+    // the bit number of the letter, or -1 if it has none
+    public static int bit(char letter) {
+        return letter >= BITS.length ? -1 : BITS[letter];
+    }
+
+    public static char letter(int bit) {
+        return LETTERS_BY_BIT[bit];
+    }
+
+    public static long of(CharSequence letters) {
+        long mask = 0L;
+        for (int loop = 0; loop < letters.length(); loop++) {
+            mask |= of(letters.charAt(loop));
+        }
+        return mask;
+    }
+
+    public static boolean contains(long mask, char letter) {
+        return (mask & of(letter)) != 0;
+    }
+
+    public static boolean allMatched(long wordMask, long guessedMask) {
+        return (wordMask & ~guessedMask) == 0;
+    }
+}
@@ -0,0 +1,84 @@
+package hangman.service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads, where the JVM has them. The build targets Java 11, so they are looked up reflectively:
+ * on 21 or later {@link #isSupported()} is true, before that there are none and every thread is a platform one.
+ *
+ * A virtual thread that blocks, on a socket, a sleep or a {@code CompletableFuture}, gives its carrier back,
+ * unless it holds a monitor at the time. Code that can run on one should guard anything it might wait inside
+ * with a {@code java.util.concurrent} lock rather than {@code synchronized}.
+ */
+public final class VirtualThreads {
+
+    // (String prefix) -> ThreadFactory naming threads prefix0, prefix1, ...
+    private static final MethodHandle FACTORY;
+    private static final MethodHandle NEW_THREAD_PER_TASK_EXECUTOR;
+    private static final MethodHandle IS_VIRTUAL;
+
+    static {
+        MethodHandle factory = null;
+        MethodHandle newThreadPerTaskExecutor = null;
+        MethodHandle isVirtual = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            MethodHandle named = lookup.findVirtual(ofVirtual, "name", MethodType.methodType(ofVirtual, String.class, long.class));
+            MethodHandle build = lookup.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class));
+            // ofVirtual().name(prefix, 0).factory()
+            factory = MethodHandles.filterReturnValue(
+                    MethodHandles.insertArguments(
+                            MethodHandles.foldArguments(named,
+                                    lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtual))),
+                            1, 0L),
+                    build.asType(MethodType.methodType(ThreadFactory.class, ofVirtual)));
+            newThreadPerTaskExecutor = lookup.findStatic(java.util.concurrent.Executors.class, "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+            isVirtual = lookup.findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+            // a preview release has the methods but throws unless previews are enabled
+            Objects.requireNonNull((ThreadFactory) factory.invokeExact("probe-"));
+        } catch (Throwable e) {
+            factory = null;
+        }
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        IS_VIRTUAL = isVirtual;
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return FACTORY != null;
+    }
+
+    public static boolean isVirtual(Thread thread) {
+        if (FACTORY == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // starts a new virtual thread for every task, named prefix0, prefix1, ...
+    public static ExecutorService newExecutor(String prefix) {
+        if (FACTORY == null) {
+            throw new UnsupportedOperationException("virtual threads need Java 21 or later, this is " + Runtime.version());
+        }
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invokeExact((ThreadFactory) FACTORY.invokeExact(prefix));
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package hangman.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * An index over the {@link Dictionary} for suggesting the next guess from what a game shows.
+ *
+ * For each word length there is a bitset per letter and position, of the words with that letter there, and a
+ * bitset per letter of the words with it anywhere. Bit i stands for the i-th word of that length.
+ *
+ * The words that still fit a game come from intersecting them, without looking at a single word. A candidate has
+ * each revealed letter where it shows, no revealed letter anywhere else (it would have shown there too) and none of
+ * the failed guesses. The same pass counts the candidates holding each letter not tried yet, and the letter in the
+ * most of them is the hint, the guess least likely to miss. Lengths with at least {@code hangman.hint.parallel-words}
+ * words are split into ranges that are counted in parallel.
+ *
+ * The bitsets take a few times the memory of the dictionary's letters, so they are built on the first hint asked
+ * for, unless {@code hangman.hint.eager} builds them at startup.
+ */
+@Component
+public class WordIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WordIndex.class);
+
+    // the longs of bitset counted as one task when counting in parallel, 64k words
+    private static final int RANGE_LONGS = 1024;
+
+    private static final class Words {
+        final int count;
+        final int longs;
+        // [offset * LetterMask.LETTERS + bit], null where no word of this length has the letter there
+        final long[][] atPosition;
+        // [bit], null where no word of this length has the letter
+        final long[][] containing;
+
+        Words(int count, int longs, long[][] atPosition, long[][] containing) {
+            this.count = count;
+            this.longs = longs;
+            this.atPosition = atPosition;
+            this.containing = containing;
+        }
+    }
+
+    @Autowired
+    private Dictionary dictionary;
+
+    @Value("${hangman.hint.parallel-words:65536}")
+    private int parallelWords = 65536;
+
+    @Value("${hangman.hint.eager:false}")
+    private boolean eager;
+
+    // null until built
+    private volatile Words[] byLength;
+    private volatile long sizeInBytes;
+
+    public WordIndex() {
+    }
+
+    WordIndex(Dictionary dictionary, int parallelWords) {
+        this(dictionary, parallelWords, true);
+    }
+
+    WordIndex(Dictionary dictionary, int parallelWords, boolean eager) {
+        this.dictionary = dictionary;
+        this.parallelWords = parallelWords;
+        this.eager = eager;
+        start();
+    }
+
+    @PostConstruct
+    void start() {
+        if (eager) {
+            words();
+        }
+    }
+
+    // the bytes the bitsets take, or 0 while they haven't been built
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    private Words[] words() {
+        Words[] built = byLength;
+        if (built == null) {
+            synchronized (this) {
+                built = byLength;
+                if (built == null) {
+                    built = build();
+                }
+            }
+        }
+        return built;
+    }
+
+    private Words[] build() {
+        long start = System.nanoTime();
+        Words[] built = new Words[Dictionary.MAX_LENGTH + 1];
+        long bytes = 0;
+        for (int length = 1; length <= Dictionary.MAX_LENGTH; length++) {
+            if (dictionary.size(length) > 0) {
+                built[length] = index(length, dictionary.size(length));
+                bytes += sizeInBytes(built[length]);
+            }
+        }
+        sizeInBytes = bytes;
+        byLength = built;
+        LOGGER.info("Indexed {} words into {}KB in {}ms", dictionary.size(), bytes / 1024, (System.nanoTime() - start) / 1_000_000);
+        return built;
+    }
+
+    private static long sizeInBytes(Words words) {
+        long bitsets = 0;
+        for (long[] bitset : words.atPosition) {
+            bitsets += bitset == null ? 0 : 1;
+        }
+        for (long[] bitset : words.containing) {
+            bitsets += bitset == null ? 0 : 1;
+        }
+        return bitsets * words.longs * Long.BYTES;
+    }
+
+    private Words index(int length, int count) {
+        int longs = (count + 63) >>> 6;
+        long[][] atPosition = new long[length * LetterMask.LETTERS][];
+        long[][] containing = new long[LetterMask.LETTERS][];
+        for (int word = 0; word < count; word++) {
+            for (int offset = 0; offset < length; offset++) {
+                // the dictionary only holds letters with a bit
+                int bit = LetterMask.bit(dictionary.letter(length, word, offset));
+                set(atPosition, offset * LetterMask.LETTERS + bit, longs, word);
+                set(containing, bit, longs, word);
+            }
+        }
+        return new Words(count, longs, atPosition, containing);
+    }
+
+    private static void set(long[][] bitsets, int index, int longs, int word) {
+        if (bitsets[index] == null) {
+            bitsets[index] = new long[longs];
+        }
+        bitsets[index][word >>> 6] |= 1L << word;
+    }
+
+    // matchingLetters has a space for each letter not found yet, as in the api
+    public Hint hint(String matchingLetters, CharSequence failedGuesses) {
+        int length = matchingLetters.length();
+        Words words = length <= Dictionary.MAX_LENGTH ? words()[length] : null;
+        if (words == null) {
+            return Hint.none(0);
+        }
+
+        long revealed = LetterMask.of(matchingLetters);
+        long failed = LetterMask.of(failedGuesses);
+        List<long[]> required = new ArrayList<>();
+        List<long[]> excluded = new ArrayList<>();
+        for (int offset = 0; offset < length; offset++) {
+            char letter = matchingLetters.charAt(offset);
+            if (letter != ' ') {
+                int bit = LetterMask.bit(letter);
+                long[] bitset = bit < 0 ? null : words.atPosition[offset * LetterMask.LETTERS + bit];
+                if (bitset == null) {
+                    return Hint.none(0);
+                }
+                required.add(bitset);
+                continue;
+            }
+            for (long letters = revealed; letters != 0; letters &= letters - 1) {
+                addIfPresent(excluded, words.atPosition[offset * LetterMask.LETTERS + Long.numberOfTrailingZeros(letters)]);
+            }
+        }
+        for (long letters = failed; letters != 0; letters &= letters - 1) {
+            addIfPresent(excluded, words.containing[Long.numberOfTrailingZeros(letters)]);
+        }
+
+        List<long[]> untried = new ArrayList<>();
+        List<Character> untriedLetters = new ArrayList<>();
+        for (int bit = 0; bit < LetterMask.LETTERS; bit++) {
+            if (((revealed | failed) & 1L << bit) == 0 && words.containing[bit] != null) {
+                untried.add(words.containing[bit]);
+                untriedLetters.add(LetterMask.letter(bit));
+            }
+        }
+
+        long[][] requiredBits = required.toArray(new long[0][]);
+        long[][] excludedBits = excluded.toArray(new long[0][]);
+        long[][] untriedBits = untried.toArray(new long[0][]);
+        long[] counts;
+        if (words.count < parallelWords) {
+            counts = count(words, requiredBits, excludedBits, untriedBits, 0, words.longs);
+        } else {
+            counts = IntStream.range(0, (words.longs + RANGE_LONGS - 1) / RANGE_LONGS)
+                    .parallel()
+                    .mapToObj(range -> count(words, requiredBits, excludedBits, untriedBits,
+                            range * RANGE_LONGS, Math.min(words.longs, (range + 1) * RANGE_LONGS)))
+                    .reduce(WordIndex::add)
+                    .get();
+        }
+
+        int candidates = (int) counts[untriedBits.length];
+        int best = -1;
+        for (int loop = 0; loop < untriedBits.length; loop++) {
+            if (counts[loop] > 0 && (best < 0 || counts[loop] > counts[best])) {
+                best = loop;
+            }
+        }
+        return best < 0
+                ? Hint.none(candidates)
+                : ImmutableHint.of(Optional.of(untriedLetters.get(best)), candidates, (int) counts[best]);
+    }
+
+    private static void addIfPresent(List<long[]> bitsets, long[] bitset) {
+        if (bitset != null) {
+            bitsets.add(bitset);
+        }
+    }
+
+    // counts the candidates holding each untried letter over a range of the bitsets, with the candidates themselves last
+    private static long[] count(Words words, long[][] required, long[][] excluded, long[][] untried, int from, int to) {
+        long[] counts = new long[untried.length + 1];
+        for (int index = from; index < to; index++) {
+            long candidates = index == words.longs - 1 && (words.count & 63) != 0
+                    ? (1L << words.count) - 1
+                    : -1L;
+            for (int loop = 0; loop < required.length && candidates != 0; loop++) {
+                candidates &= required[loop][index];
+            }
+            for (int loop = 0; loop < excluded.length && candidates != 0; loop++) {
+                candidates &= ~excluded[loop][index];
+            }
+            if (candidates == 0) {
+                continue;
+            }
+            counts[untried.length] += Long.bitCount(candidates);
+            for (int loop = 0; loop < untried.length; loop++) {
+                counts[loop] += Long.bitCount(candidates & untried[loop][index]);
+            }
+        }
+        return counts;
+    }
+
+    private static long[] add(long[] counts, long[] more) {
+        for (int loop = 0; loop < counts.length; loop++) {
+            counts[loop] += more[loop];
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,311 @@
+package hangman.store;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.InvalidGameException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A near cache of games in front of whichever store backend is configured, enabled by setting
+ * {@code hangman.store.near-cache.enabled=true}. Every GET poll, and the read half of every guess, is a
+ * {@link #loadGame}, which against a remote store is a round trip each. Here it's a local lookup once the game is held.
+ *
+ * A game only changes when its nextGuessId does, so that is its version. Games this node writes go through to the
+ * backend and then into the cache, only ever replacing an older version. Games other nodes write are announced on
+ * the {@link GameVersionStream}, if there is one, and any older copy held here is dropped. Until an announcement
+ * arrives the old copy can still be read, but it can't be written from: the backend refuses the update as it would
+ * any other stale guess, and the copy is dropped then. {@code hangman.store.near-cache.ttl} bounds how long a copy
+ * is kept either way, which also covers games the backend expires itself, as those aren't announced.
+ *
+ * Without a stream the cache is only safe where no other node writes this node's games, as in a {@code cluster}.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "hangman.store.near-cache.enabled", havingValue = "true")
+public class CachingHangmanStore implements HangmanStore {
+
+    // the backend, as this bean is never a candidate for its own injection
+    @Autowired
+    private HangmanStore store;
+
+    @Autowired(required = false)
+    private GameVersionStream versions;
+
+    @Value("${hangman.store.near-cache.size:100000}")
+    private long maximumSize = 100_000;
+
+    @Value("${hangman.store.near-cache.ttl:30s}")
+    private Duration timeToLive = Duration.ofSeconds(30);
+
+    private Cache<String, GameDetail> games;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder staleVersions = new LongAdder();
+    private final LongAdder staleUpdates = new LongAdder();
+
+    public CachingHangmanStore() {
+    }
+
+    CachingHangmanStore(HangmanStore store, GameVersionStream versions, long maximumSize, Duration timeToLive) {
+        this.store = store;
+        this.versions = versions;
+        this.maximumSize = maximumSize;
+        this.timeToLive = timeToLive;
+    }
+
+    @PostConstruct
+    void start() {
+        games = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .build();
+        if (versions != null) {
+            versions.subscribe(this::announced);
+        }
+    }
+
+    @Override
+    public String generateUniqueId() {
+        return store.generateUniqueId();
+    }
+
+    @Override
+    public Optional<GameDetail> loadGame(String gameId) {
+        GameDetail game = games.getIfPresent(gameId);
+        if (game != null) {
+            hits.increment();
+            return Optional.of(game);
+        }
+        misses.increment();
+        Optional<GameDetail> loaded = store.loadGame(gameId);
+        loaded.ifPresent(this::cache);
+        return loaded;
+    }
+
+    @Override
+    public CompletableFuture<Optional<GameDetail>> loadGameAsync(String gameId) {
+        GameDetail game = games.getIfPresent(gameId);
+        if (game != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(Optional.of(game));
+        }
+        misses.increment();
+        return store.loadGameAsync(gameId).thenApply(loaded -> {
+            loaded.ifPresent(this::cache);
+            return loaded;
+        });
+    }
+
+    // held games come from the cache and the rest from the backend in one call, without being cached,
+    // so a job reading thousands of games doesn't push out the ones being played
+    @Override
+    public List<Optional<GameDetail>> loadGames(List<String> gameIds) {
+        List<Optional<GameDetail>> loaded = new ArrayList<>(gameIds.size());
+        List<String> missing = new ArrayList<>();
+        for (String gameId : gameIds) {
+            GameDetail game = games.getIfPresent(gameId);
+            loaded.add(game == null ? null : Optional.of(game));
+            if (game == null) {
+                missing.add(gameId);
+            }
+        }
+        hits.add(gameIds.size() - missing.size());
+        misses.add(missing.size());
+        if (missing.isEmpty()) {
+            return loaded;
+        }
+        Iterator<Optional<GameDetail>> fetched = store.loadGames(missing).iterator();
+        for (int loop = 0; loop < loaded.size(); loop++) {
+            if (loaded.get(loop) == null) {
+                loaded.set(loop, fetched.next());
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public Iterator<GameDetail> scanGames(Set<GameStatus> statuses) {
+        return store.scanGames(statuses);
+    }
+
+    @Override
+    public void storeGame(GameDetail game) {
+        store.storeGame(game);
+        written(game);
+    }
+
+    @Override
+    public CompletableFuture<Void> storeGameAsync(GameDetail game) {
+        return store.storeGameAsync(game).thenRun(() -> written(game));
+    }
+
+    @Override
+    public void storeGames(List<GameDetail> games) {
+        store.storeGames(games);
+        games.forEach(this::written);
+    }
+
+    @Override
+    public void updateGame(GameDetail game, int nextGuessId) {
+        try {
+            store.updateGame(game, nextGuessId);
+        } catch (RuntimeException e) {
+            refused(game.getGameId(), nextGuessId, e);
+            throw e;
+        }
+        written(game);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateGameAsync(GameDetail game, int nextGuessId) {
+        return store.updateGameAsync(game, nextGuessId).whenComplete((updated, error) -> {
+            if (error == null) {
+                written(game);
+            } else {
+                refused(game.getGameId(), nextGuessId, error instanceof CompletionException ? error.getCause() : error);
+            }
+        });
+    }
+
+    @Override
+    public List<UpdateResult> updateGames(List<GameDetail> games, int[] nextGuessIds) {
+        List<UpdateResult> results = store.updateGames(games, nextGuessIds);
+        for (int loop = 0; loop < results.size(); loop++) {
+            GameDetail game = games.get(loop);
+            switch (results.get(loop)) {
+                case UPDATED:
+                    written(game);
+                    break;
+                case CONFLICT:
+                    refused(game.getGameId(), nextGuessIds[loop], new ConcurrentModificationException());
+                    break;
+                default:
+                    refused(game.getGameId(), nextGuessIds[loop], new InvalidGameException());
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public boolean removeGame(String gameId, int nextGuessId) {
+        if (!store.removeGame(gameId, nextGuessId)) {
+            return false;
+        }
+        games.invalidate(gameId);
+        if (versions != null) {
+            versions.publish(gameId, GameVersionStream.REMOVED);
+        }
+        return true;
+    }
+
+    // keeps whichever version is newer, as a load and a write of the same game can finish in either order
+    private void cache(GameDetail game) {
+        games.asMap().merge(game.getGameId(), game,
+                (cached, fresh) -> fresh.getNextGuessId() >= cached.getNextGuessId() ? fresh : cached);
+    }
+
+    private void written(GameDetail game) {
+        cache(game);
+        if (versions != null) {
+            versions.publish(game.getGameId(), game.getNextGuessId());
+        }
+    }
+
+    private void refused(String gameId, int nextGuessId, Throwable error) {
+        if (error instanceof InvalidGameException) {
+            games.invalidate(gameId);
+        } else if (error instanceof ConcurrentModificationException) {
+            // a newer copy means another guess here got in first. Otherwise the backend has moved on without us.
+            GameDetail cached = games.getIfPresent(gameId);
+            if (cached != null && cached.getNextGuessId() <= nextGuessId && games.asMap().remove(gameId, cached)) {
+                staleUpdates.increment();
+            }
+        }
+    }
+
+    private void announced(String gameId, long version) {
+        GameDetail cached = games.getIfPresent(gameId);
+        // nothing to do for this node's own writes, or ones it has already caught up with
+        if (cached != null && (version == GameVersionStream.REMOVED || cached.getNextGuessId() < version)
+                && games.asMap().remove(gameId, cached)) {
+            invalidations.increment();
+            if (version != GameVersionStream.REMOVED) {
+                staleVersions.add(version - cached.getNextGuessId());
+            }
+        }
+    }
+
+    @Override
+    public long liveGames() {
+        return store.liveGames();
+    }
+
+    @Override
+    public long expiredGames() {
+        return store.expiredGames();
+    }
+
+    @Override
+    public long evictedGames() {
+        return store.evictedGames();
+    }
+
+    @Override
+    public long updates() {
+        return store.updates();
+    }
+
+    @Override
+    public long updateConflicts() {
+        return store.updateConflicts();
+    }
+
+    // loads answered from the cache
+    public long hits() {
+        return hits.sum();
+    }
+
+    // loads that went to the backend
+    public long misses() {
+        return misses.sum();
+    }
+
+    // copies dropped because another node announced a newer version, or removed the game
+    public long invalidations() {
+        return invalidations.sum();
+    }
+
+    // how many versions behind the dropped copies were, in total
+    public long staleVersions() {
+        return staleVersions.sum();
+    }
+
+    // updates the backend refused because the cached copy they were made from was out of date
+    public long staleUpdates() {
+        return staleUpdates.sum();
+    }
+
+    public long cachedGames() {
+        return games.size();
+    }
+}
@@ -0,0 +1,30 @@
+package hangman.store;
+
+import org.immutables.value.Value;
+
+import java.util.Optional;
+
+// sets the key to the value and version, or deletes it when there is no value, if it is still at expectedVersion
+@Value.Immutable
+public interface ConditionalWrite {
+
+    @Value.Parameter
+    String getKey();
+
+    @Value.Parameter
+    long getExpectedVersion();
+
+    @Value.Parameter
+    long getVersion();
+
+    @Value.Parameter
+    Optional<byte[]> getValue();
+
+    static ConditionalWrite put(String key, long expectedVersion, long version, byte[] value) {
+        return ImmutableConditionalWrite.of(key, expectedVersion, version, Optional.of(value));
+    }
+
+    static ConditionalWrite delete(String key, long expectedVersion) {
+        return ImmutableConditionalWrite.of(key, expectedVersion, KeyValueClient.ABSENT, Optional.empty());
+    }
+}
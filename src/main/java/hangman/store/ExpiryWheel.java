@@ -0,0 +1,222 @@
+package hangman.store;
+
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A hashed timing wheel that removes games once they have been left alone for long enough.
+ *
+ * Each game has one entry, which every write to the game updates in place with its new version and deadline.
+ * The entry sits in the bucket for the deadline it had when it was queued. A single background thread visits one
+ * bucket per tick: an entry whose deadline has moved on since is queued again at its new deadline, once,
+ * and one that is due has its game removed, but only if the store still has the version the entry last saw.
+ * A write only touches the wheel's queues when it brings a deadline forward, as finishing a game can.
+ *
+ * Finished games (WON or LOST) count as expired when removed, idle games that are still being played
+ * count as evicted.
+ */
+class ExpiryWheel {
+
+    interface Remover {
+        // removes the game only if it is still at nextGuessId
+        boolean remove(String gameId, int nextGuessId);
+    }
+
+    // all guarded by the entry's lock
+    private static final class Entry {
+        final String gameId;
+        int nextGuessId;
+        boolean finished;
+        long deadlineTick;
+        // the deadline it was queued for, which picks its bucket, or -1 while in none
+        long queuedTick = -1;
+        // out of the map, so a write that still holds it has to start a new one
+        boolean dropped;
+
+        Entry(String gameId) {
+            this.gameId = gameId;
+        }
+    }
+
+    private final Remover remover;
+    private final LongSupplier clock;
+    private final long tickMillis;
+    private final Queue<Entry>[] buckets;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    private volatile long finishedTtlMillis;
+    private volatile long idleTtlMillis;
+
+    // only read and written by whichever thread calls advance()
+    private long lastTick;
+    private ScheduledExecutorService ticker;
+
+    ExpiryWheel(Remover remover) {
+        this(remover, System::currentTimeMillis, 1000, 3600);
+    }
+
+    ExpiryWheel(Remover remover, LongSupplier clock, long tickMillis, int wheelSize) {
+        this.remover = remover;
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Queue<Entry>[] buckets = new Queue[wheelSize];
+        this.buckets = buckets;
+        for (int loop = 0; loop < wheelSize; loop++) {
+            buckets[loop] = new ConcurrentLinkedQueue<>();
+        }
+        this.lastTick = clock.getAsLong() / tickMillis;
+    }
+
+    // a zero or negative ttl disables that kind of expiry
+    void configure(Duration finishedTtl, Duration idleTtl) {
+        this.finishedTtlMillis = finishedTtl.toMillis();
+        this.idleTtlMillis = idleTtl.toMillis();
+    }
+
+    synchronized void start() {
+        if (ticker == null) {
+            ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hangman-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    void schedule(GameDetail game) {
+        boolean finished = game.getStatus() == GameStatus.WON || game.getStatus() == GameStatus.LOST;
+        long ttl = finished ? finishedTtlMillis : idleTtlMillis;
+        if (ttl <= 0) {
+            return;
+        }
+        long deadlineTick = (clock.getAsLong() + ttl + tickMillis - 1) / tickMillis;
+        while (true) {
+            Entry entry = entries.computeIfAbsent(game.getGameId(), Entry::new);
+            synchronized (entry) {
+                if (entry.dropped) {
+                    continue;
+                }
+                // versions can be scheduled out of order, by concurrent writes
+                if (game.getNextGuessId() >= entry.nextGuessId) {
+                    entry.nextGuessId = game.getNextGuessId();
+                    entry.finished = finished;
+                    entry.deadlineTick = deadlineTick;
+                }
+                if (entry.queuedTick < 0 || entry.deadlineTick < entry.queuedTick) {
+                    queue(entry);
+                }
+                return;
+            }
+        }
+    }
+
+    // removes everything that has fallen due since the last call
+    void advance() {
+        long now = clock.getAsLong() / tickMillis;
+        // after a long pause one lap of the wheel visits every bucket
+        long from = Math.max(lastTick + 1, now - buckets.length + 1);
+        for (long tick = from; tick <= now; tick++) {
+            Queue<Entry> bucket = buckets[(int) (tick % buckets.length)];
+            // entries added while we drain are left for the next lap, which is when they are due
+            for (int remaining = bucket.size(); remaining > 0; remaining--) {
+                Entry entry = bucket.poll();
+                if (entry == null) {
+                    break;
+                }
+                visit(entry, bucket, now);
+            }
+        }
+        lastTick = Math.max(lastTick, now);
+    }
+
+    private void visit(Entry entry, Queue<Entry> bucket, long now) {
+        int nextGuessId;
+        boolean finished;
+        synchronized (entry) {
+            if (entry.dropped || entry.queuedTick < 0 || buckets[bucketOf(entry.queuedTick)] != bucket) {
+                // left behind when a write brought the deadline forward into another bucket
+                return;
+            }
+            if (entry.queuedTick > now) {
+                // due on a later lap
+                bucket.add(entry);
+                return;
+            }
+            entry.queuedTick = -1;
+            if (entry.deadlineTick > now) {
+                queue(entry);
+                return;
+            }
+            nextGuessId = entry.nextGuessId;
+            finished = entry.finished;
+        }
+        boolean removed = remover.remove(entry.gameId, nextGuessId);
+        synchronized (entry) {
+            if (entry.nextGuessId != nextGuessId) {
+                // written while being removed, so it has a new deadline
+                queue(entry);
+                return;
+            }
+            // removed, or gone from the store some other way
+            entry.dropped = true;
+            entry.queuedTick = -1;
+            entries.remove(entry.gameId, entry);
+        }
+        if (removed) {
+            (finished ? expired : evicted).increment();
+        }
+    }
+
+    // holding the entry's lock
+    private void queue(Entry entry) {
+        // a bucket it is already in will see the new deadline
+        boolean queued = entry.queuedTick >= 0 && bucketOf(entry.queuedTick) == bucketOf(entry.deadlineTick);
+        entry.queuedTick = entry.deadlineTick;
+        if (!queued) {
+            buckets[bucketOf(entry.deadlineTick)].add(entry);
+        }
+    }
+
+    private int bucketOf(long tick) {
+        return (int) (tick % buckets.length);
+    }
+
+    // for tests, as counting the buckets takes a lap
+    int queuedEntries() {
+        int queued = 0;
+        for (Queue<Entry> bucket : buckets) {
+            queued += bucket.size();
+        }
+        return queued;
+    }
+
+    long expiredGames() {
+        return expired.sum();
+    }
+
+    long evictedGames() {
+        return evicted.sum();
+    }
+}
@@ -0,0 +1,142 @@
+package hangman.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Generates game ids that are unique without a round trip to the store, in the style of Twitter's Snowflake.
+ *
+ * An id is a positive long written in base 36 (at most 13 characters). From the top it holds:
+ * 10 bits of node id (hangman.node.id), 41 bits of milliseconds since 2020 and a 12 bit sequence.
+ * Ids from one node only ever go up. If more than 4096 are asked for in a millisecond, or the clock steps back,
+ * the generator runs ahead of the clock rather than repeat itself. Any node can tell which node made an id from
+ * {@link #nodeOf(String)}. In a cluster, ids that would belong to another node are skipped.
+ */
+@Component
+public class GameIdGenerator {
+
+    public static final int MAX_NODES = 1 << 10;
+
+    static final int NODE_SHIFT = 53;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long TIME_AND_SEQUENCE_MASK = (1L << NODE_SHIFT) - 1;
+
+    // 2020-01-01T00:00:00Z. 41 bits of milliseconds last until 2089
+    private static final long EPOCH = 1_577_836_800_000L;
+
+    private static final int MAX_LENGTH = 13;
+    private static final byte[] DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.US_ASCII);
+
+    @Value("${hangman.node.id:0}")
+    private int nodeId;
+
+    private final LongSupplier clock;
+
+    // the time and sequence of the last id handed out
+    private final AtomicLong last = new AtomicLong();
+
+    // the ids this node may hand out, which is all of them unless it is part of a cluster
+    private volatile Predicate<String> owned = gameId -> true;
+
+    public GameIdGenerator() {
+        this(0, System::currentTimeMillis);
+    }
+
+    GameIdGenerator(int nodeId, LongSupplier clock) {
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    void checkNodeId() {
+        if (nodeId < 0 || nodeId >= MAX_NODES) {
+            throw new IllegalStateException("hangman.node.id must be between 0 and " + (MAX_NODES - 1));
+        }
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public String nextId() {
+        // in a cluster of n nodes this takes n tries on average
+        String id;
+        do {
+            id = encode(nextLong());
+        } while (!owned.test(id));
+        return id;
+    }
+
+    public void setOwnership(Predicate<String> owned) {
+        this.owned = owned;
+    }
+
+    public boolean isOwned(String gameId) {
+        return owned.test(gameId);
+    }
+
+    long nextLong() {
+        long now = (clock.getAsLong() - EPOCH) << SEQUENCE_BITS;
+        long previous;
+        long next;
+        do {
+            previous = last.get();
+            next = Math.max(previous + 1, now);
+        } while (!last.compareAndSet(previous, next));
+        return (long) nodeId << NODE_SHIFT | next;
+    }
+
+    // makes sure an id from this node that was handed out before a restart, e.g. one recovered
+    // from the journal, is never handed out again whatever the clock says
+    public void observe(String gameId) {
+        long id = decode(gameId);
+        if (id >= 0 && id >>> NODE_SHIFT == nodeId) {
+            last.accumulateAndGet(id & TIME_AND_SEQUENCE_MASK, Math::max);
+        }
+    }
+
+    // the node that made the id, or -1 if it is not one of ours
+    public static int nodeOf(String gameId) {
+        long id = decode(gameId);
+        return id < 0 ? -1 : (int) (id >>> NODE_SHIFT);
+    }
+
+    // when the id was made, in epoch milliseconds, or -1 if it is not one of ours
+    public static long createdAt(String gameId) {
+        long id = decode(gameId);
+        return id < 0 ? -1 : EPOCH + ((id & TIME_AND_SEQUENCE_MASK) >>> SEQUENCE_BITS);
+    }
+
+    static String encode(long id) {
+        byte[] digits = new byte[MAX_LENGTH];
+        int position = MAX_LENGTH;
+        do {
+            digits[--position] = DIGITS[(int) (id % 36)];
+            id /= 36;
+        } while (id > 0);
+        return new String(digits, position, MAX_LENGTH - position, StandardCharsets.ISO_8859_1);
+    }
+
+    // the id, or -1 if it is not a base 36 positive long
+    static long decode(String gameId) {
+        if (gameId.isEmpty() || gameId.length() > MAX_LENGTH) {
+            return -1;
+        }
+        long id = 0;
+        for (int loop = 0; loop < gameId.length(); loop++) {
+            char c = gameId.charAt(loop);
+            int digit = c >= '0' && c <= '9' ? c - '0' : c >= 'a' && c <= 'z' ? c - 'a' + 10 : -1;
+            if (digit < 0 || id > (Long.MAX_VALUE - digit) / 36) {
+                return -1;
+            }
+            id = id * 36 + digit;
+        }
+        return id;
+    }
+}
@@ -0,0 +1,483 @@
+package hangman.store;
+
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.ImmutableGameDetail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of every game written to the {@link MapHangmanStore}, so the games survive a restart.
+ * Enabled by setting {@code hangman.store.journal.dir}.
+ *
+ * Each store or update appends a snapshot of the game as one record. Records are handed to a single writer
+ * thread, which writes everything queued in one go and then fsyncs once, so concurrent guesses share
+ * a sync (group commit). A caller only returns once its record is on disk.
+ *
+ * The log is split into numbered segments. Compaction rolls over to a new segment, writes every
+ * live game into a snapshot that stands in for all the earlier segments, then deletes them, so recovery only
+ * ever replays one snapshot plus what was written since. Recovery memory-maps each file and keeps
+ * the record with the highest nextGuessId for each game, as concurrent updates to the same game may reach
+ * the log out of order.
+ */
+@Component
+@ConditionalOnProperty(name = "hangman.store.journal.dir")
+public class GameJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(GameJournal.class);
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final int MAX_BATCH = 4096;
+    private static final GameStatus[] STATUSES = GameStatus.values();
+
+    private static final class Pending {
+        final byte[] record;
+        final CompletableFuture<Long> written = new CompletableFuture<>();
+
+        // a null record asks the writer to roll over to a new segment
+        Pending(byte[] record) {
+            this.record = record;
+        }
+    }
+
+    @Value("${hangman.store.journal.dir}")
+    private Path directory;
+
+    @Value("${hangman.store.journal.segment-size:67108864}")
+    private long segmentSize;
+
+    @Value("${hangman.store.journal.compaction-interval:10m}")
+    private Duration compactionInterval;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(1 << 20);
+
+    private volatile boolean running;
+    private Thread writer;
+    private ScheduledExecutorService compactor;
+    private Supplier<Collection<GameDetail>> liveGames;
+
+    // only touched by the writer thread once started
+    private FileChannel segment;
+    private long segmentNumber;
+
+    public GameJournal() {
+    }
+
+    GameJournal(Path directory, long segmentSize, Duration compactionInterval) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.compactionInterval = compactionInterval;
+    }
+
+    // loads everything in the journal into table. Must be called before start()
+    public void recover(Map<String, GameDetail> table) {
+        long startTime = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            TreeMap<Long, Path> segments = list(SEGMENT_SUFFIX);
+            TreeMap<Long, Path> snapshots = list(SNAPSHOT_SUFFIX);
+
+            long firstSegment = 0;
+            Map<String, String> words = new HashMap<>();
+            long records = 0;
+            if (!snapshots.isEmpty()) {
+                firstSegment = snapshots.lastKey();
+                records += replay(snapshots.lastEntry().getValue(), table, words);
+            }
+            for (Path path : segments.tailMap(firstSegment).values()) {
+                records += replay(path, table, words);
+            }
+            segmentNumber = segments.isEmpty() ? firstSegment : Math.max(firstSegment, segments.lastKey() + 1);
+            log.info("recovered {} games from {} journal records in {} ms", table.size(), records,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized void start(Supplier<Collection<GameDetail>> liveGames) {
+        if (running) {
+            return;
+        }
+        this.liveGames = liveGames;
+        try {
+            Files.createDirectories(directory);
+            segment = openSegment(segmentNumber);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "hangman-journal");
+        writer.setDaemon(true);
+        writer.start();
+
+        if (!compactionInterval.isZero() && !compactionInterval.isNegative()) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hangman-journal-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compactQuietly, compactionInterval.toMillis(),
+                    compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws InterruptedException, IOException {
+        if (!running) {
+            return;
+        }
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        running = false;
+        writer.join();
+        segment.close();
+        IllegalStateException closed = new IllegalStateException("journal is closed");
+        for (Pending pending = queue.poll(); pending != null; pending = queue.poll()) {
+            pending.written.completeExceptionally(closed);
+        }
+    }
+
+    // returns once the game is durable
+    public void append(GameDetail game) {
+        join(appendAsync(game));
+    }
+
+    public CompletableFuture<Long> appendAsync(GameDetail game) {
+        return enqueue(encode(game));
+    }
+
+    // removals are not waited for. If one is lost the game comes back on recovery and expires again.
+    public void appendRemoval(String gameId) {
+        if (running) {
+            enqueue(encodeRemoval(gameId));
+        }
+    }
+
+    public void compact() throws IOException {
+        long firstSegment = join(enqueue(null));
+        Path snapshot = directory.resolve(fileName(firstSegment, SNAPSHOT_SUFFIX));
+        Path temporary = directory.resolve(fileName(firstSegment, SNAPSHOT_SUFFIX + ".tmp"));
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            for (GameDetail game : liveGames.get()) {
+                byte[] record = encode(game);
+                if (buffer.remaining() < record.length) {
+                    writeFully(channel, buffer);
+                }
+                buffer.put(record);
+            }
+            writeFully(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+
+        // the snapshot now covers everything before firstSegment
+        for (Map.Entry<Long, Path> old : list(SEGMENT_SUFFIX).headMap(firstSegment).entrySet()) {
+            Files.deleteIfExists(old.getValue());
+        }
+        for (Map.Entry<Long, Path> old : list(SNAPSHOT_SUFFIX).headMap(firstSegment).entrySet()) {
+            Files.deleteIfExists(old.getValue());
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            log.warn("journal compaction failed", e);
+        }
+    }
+
+    private CompletableFuture<Long> enqueue(byte[] record) {
+        if (!running) {
+            throw new IllegalStateException("journal is not running");
+        }
+        Pending pending = new Pending(record);
+        queue.add(pending);
+        return pending.written;
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        // where the segment ends before this batch, so a failed write can be cut off and not hide what follows
+        long good = -1;
+        try {
+            good = segment.position();
+            for (Pending pending : batch) {
+                if (pending.record == null) {
+                    writeFully(segment, writeBuffer);
+                    segment.force(false);
+                    roll();
+                    good = 0;
+                } else if (pending.record.length > writeBuffer.remaining()) {
+                    writeFully(segment, writeBuffer);
+                    if (pending.record.length > writeBuffer.capacity()) {
+                        writeFully(segment, ByteBuffer.wrap(pending.record));
+                    } else {
+                        writeBuffer.put(pending.record);
+                    }
+                } else {
+                    writeBuffer.put(pending.record);
+                }
+            }
+            writeFully(segment, writeBuffer);
+            // the one sync that every record in the batch waits for
+            segment.force(false);
+            for (Pending pending : batch) {
+                pending.written.complete(segmentNumber);
+            }
+            if (segment.position() >= segmentSize) {
+                roll();
+            }
+        } catch (IOException | RuntimeException e) {
+            writeBuffer.clear();
+            discardFrom(good);
+            for (Pending pending : batch) {
+                pending.written.completeExceptionally(e);
+            }
+        }
+    }
+
+    // recovery stops at the first torn record in a segment, so part of a failed batch left on the end of one
+    // would lose every record written after it. Cut it off, or failing that start a new segment.
+    private void discardFrom(long good) {
+        if (good >= 0) {
+            try {
+                segment.truncate(good);
+                segment.force(false);
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("could not cut a failed write off journal segment {}, starting a new one", segmentNumber, e);
+            }
+        }
+        try {
+            roll();
+        } catch (IOException e) {
+            log.error("could not start journal segment {}", segmentNumber, e);
+        }
+    }
+
+    private void roll() throws IOException {
+        segment.close();
+        segmentNumber++;
+        segment = openSegment(segmentNumber);
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(directory.resolve(fileName(number, SEGMENT_SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // not static so a test can fail a write part way through
+    void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private long replay(Path path, Map<String, GameDetail> table, Map<String, String> words)
+            throws IOException {
+        long records = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= 8) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    log.warn("journal {} is truncated at {}, ignoring the rest", path, start);
+                    break;
+                }
+                ByteBuffer body = buffer.slice();
+                body.limit(length);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("journal {} has a torn record at {}, ignoring the rest", path, start);
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+                apply(body, table, words);
+                records++;
+            }
+        }
+        return records;
+    }
+
+    // records are applied in log order, so a removal only clears what came before it. A game stored again
+    // afterwards, as one handed back to this node is, comes back. So does an update that reached the log
+    // just after its game expired, and that game expires again.
+    private static void apply(ByteBuffer body, Map<String, GameDetail> table, Map<String, String> words) {
+        byte type = body.get();
+        String gameId = readString(body);
+        if (type == REMOVE) {
+            table.remove(gameId);
+            return;
+        }
+        String secretWord = words.computeIfAbsent(readString(body), word -> word);
+        int nextGuessId = body.getInt();
+        int guessesRemaining = body.getShort();
+        GameStatus status = STATUSES[body.get()];
+        String guesses = readString(body);
+        GameDetail existing = table.get(gameId);
+        if (existing == null || existing.getNextGuessId() <= nextGuessId) {
+            table.put(gameId, ImmutableGameDetail.builder()
+                    .gameId(gameId)
+                    .secretWord(secretWord)
+                    .nextGuessId(nextGuessId)
+                    .guessesRemaining(guessesRemaining)
+                    .status(status)
+                    .guesses(guesses)
+                    .build());
+        }
+    }
+
+    static byte[] encode(GameDetail game) {
+        byte[] gameId = game.getGameId().getBytes(StandardCharsets.UTF_8);
+        byte[] secretWord = game.getSecretWord().getBytes(StandardCharsets.UTF_8);
+        byte[] guesses = game.getGuesses().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = startRecord(PUT, 1 + 2 + gameId.length + 2 + secretWord.length + 4 + 2 + 1
+                + 2 + guesses.length);
+        writeString(record, gameId);
+        writeString(record, secretWord);
+        record.putInt(game.getNextGuessId());
+        record.putShort((short) game.getGuessesRemaining());
+        record.put((byte) game.getStatus().ordinal());
+        writeString(record, guesses);
+        return finishRecord(record);
+    }
+
+    // the game in a record written by encode
+    static GameDetail decode(byte[] record) {
+        Map<String, GameDetail> table = new HashMap<>(2);
+        apply(ByteBuffer.wrap(record, 8, record.length - 8), table, new HashMap<>());
+        return table.values().iterator().next();
+    }
+
+    static byte[] encodeRemoval(String gameId) {
+        byte[] id = gameId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = startRecord(REMOVE, 1 + 2 + id.length);
+        writeString(record, id);
+        return finishRecord(record);
+    }
+
+    // a record is its length, the crc of the rest, the type and then the fields
+    private static ByteBuffer startRecord(byte type, int length) {
+        ByteBuffer record = ByteBuffer.allocate(8 + length);
+        record.putInt(length);
+        record.putInt(0);
+        record.put(type);
+        return record;
+    }
+
+    private static byte[] finishRecord(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, record.position() - 8);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    private static void writeString(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] value = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private TreeMap<Long, Path> list(String suffix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.endsWith(suffix)) {
+                    files.put(Long.parseLong(name.substring(0, name.length() - suffix.length())), path);
+                }
+            });
+        }
+        return files;
+    }
+
+    private static String fileName(long number, String suffix) {
+        return String.format("%020d%s", number, suffix);
+    }
+
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package hangman.store;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Tells every node the version, the nextGuessId, each game reaches as it is written, as a Redis pub/sub channel
+ * or a compacted topic would. {@link CachingHangmanStore} publishes its own writes to it, and drops its copy of any
+ * game it hears another node has moved on. An announcement costs a game id and a number, never the game.
+ *
+ * Delivery may be late, and may be lost. Until an announcement turns up, the cache can serve the version before it.
+ */
+public interface GameVersionStream {
+
+    // the version announced for a game that has been removed
+    long REMOVED = -1;
+
+    void publish(String gameId, long version);
+
+    // the listener is called with every announcement, this node's own included, on a thread of the stream's choosing
+    void subscribe(ObjLongConsumer<String> listener);
+}
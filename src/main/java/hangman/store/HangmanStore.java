@@ -1,39 +1,112 @@
 package hangman.store;
 
+import hangman.api.GameStatus;
 import hangman.service.GameDetail;
-import org.springframework.stereotype.Component;
+import hangman.service.InvalidGameException;
 
+import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
-import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
-@Component
-public class HangmanStore {
+public interface HangmanStore {
 
-    private Map<String, GameDetail> gamesTable = new ConcurrentHashMap<>();
+    enum UpdateResult {
+        UPDATED,
+        CONFLICT,
+        NOT_FOUND
+    }
+
+    String generateUniqueId();
+
+    Optional<GameDetail> loadGame(String gameId);
+
+    void storeGame(GameDetail game);
+
+    // throws ConcurrentModificationException if the stored game is no longer at nextGuessId
+    void updateGame(GameDetail game, int nextGuessId);
+
+    // removes the game only if it is still at nextGuessId
+    boolean removeGame(String gameId, int nextGuessId);
 
-    public String generateUniqueId() {
-        return Integer.toString(new Random().nextInt(Integer.MAX_VALUE), 36);
+    // the non-blocking contract. These default to running the blocking calls, which is fine for the in-memory
+    // stores as they never wait, but a store that goes over the network or to disk should complete them itself.
+
+    default CompletableFuture<Optional<GameDetail>> loadGameAsync(String gameId) {
+        try {
+            return CompletableFuture.completedFuture(loadGame(gameId));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
-    public Optional<GameDetail> loadGame(String gameId) {
-        return Optional.ofNullable(gamesTable.get(gameId));
+    default CompletableFuture<Void> storeGameAsync(GameDetail game) {
+        try {
+            storeGame(game);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
-    public void storeGame(GameDetail game) {
-        gamesTable.put(game.getGameId(), game);
+    // completes exceptionally with ConcurrentModificationException if the stored game is no longer at nextGuessId
+    default CompletableFuture<Void> updateGameAsync(GameDetail game, int nextGuessId) {
+        try {
+            updateGame(game, nextGuessId);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
-    public synchronized void updateGame(GameDetail game, int nextGuessId) {
-        // in a real db this could be done with an update statement with a where clause
-        // to only find the expected row.
-        // there needs to be some kind of atomic update supported in the storage layer
-        GameDetail existingDetail = gamesTable.get(game.getGameId());
-        if (existingDetail.getNextGuessId() != nextGuessId) {
-            throw new ConcurrentModificationException();
+    default void storeGames(List<GameDetail> games) {
+        games.forEach(this::storeGame);
+    }
+
+    // applies the updates in order, each only if its game is still at nextGuessIds[i]
+    default List<UpdateResult> updateGames(List<GameDetail> games, int[] nextGuessIds) {
+        List<UpdateResult> results = new ArrayList<>(games.size());
+        for (int loop = 0; loop < games.size(); loop++) {
+            try {
+                updateGame(games.get(loop), nextGuessIds[loop]);
+                results.add(UpdateResult.UPDATED);
+            } catch (ConcurrentModificationException e) {
+                results.add(UpdateResult.CONFLICT);
+            } catch (InvalidGameException e) {
+                results.add(UpdateResult.NOT_FOUND);
+            }
         }
-        gamesTable.put(game.getGameId(), game);
+        return results;
     }
+
+    // the game held for each id, in the same order, empty where there is none. A remote store fetches them in one round trip.
+    default List<Optional<GameDetail>> loadGames(List<String> gameIds) {
+        List<Optional<GameDetail>> games = new ArrayList<>(gameIds.size());
+        for (String gameId : gameIds) {
+            games.add(loadGame(gameId));
+        }
+        return games;
+    }
+
+    // walks every game held whose status is in statuses, reading each one only when the iterator reaches it.
+    // Weakly consistent, like the iterators of java.util.concurrent: it never holds up a writer or throws
+    // ConcurrentModificationException, and returns each game at most once, as it was when reached. Games stored
+    // or removed while it runs may or may not be seen.
+    Iterator<GameDetail> scanGames(Set<GameStatus> statuses);
+
+    long liveGames();
+
+    // finished games removed once hangman.store.ttl.finished has passed
+    long expiredGames();
+
+    // unfinished games removed once they have been idle for hangman.store.ttl.idle
+    long evictedGames();
+
+    // updates applied, and updates refused because the game was no longer at their nextGuessId
+    long updates();
+
+    long updateConflicts();
 }
@@ -0,0 +1,24 @@
+package hangman.store;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * What {@link KeyValueHangmanStore} needs from a remote key/value store such as Redis.
+ *
+ * Each call is one round trip carrying a whole batch. Calls are pipelined, so the store keeps several in flight
+ * without waiting for the answers, and the client must apply them in the order they were made, as a single
+ * connection to Redis would.
+ */
+public interface KeyValueClient {
+
+    // the version of a key that isn't there
+    long ABSENT = -1;
+
+    // the value of each key, in order, with null for a key that isn't there
+    CompletableFuture<List<VersionedValue>> get(List<String> keys);
+
+    // applies each write only if its key is still at the version it expects, checking and writing atomically
+    // (in Redis, a short Lua script). Answers whether each write was applied.
+    CompletableFuture<boolean[]> write(List<ConditionalWrite> writes);
+}
@@ -0,0 +1,639 @@
+package hangman.store;
+
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.InvalidGameException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the games in a remote key/value store through a {@link KeyValueClient}, one key per game holding
+ * its latest state (as a {@link GameJournal} record) at the version of its nextGuessId.
+ * Enabled by setting {@code hangman.store.backend=kv} and providing a {@link KeyValueClient} bean. No client ships
+ * with the project.
+ *
+ * Games are played in memory. A write marks the game dirty, and the dirty games go out as one batch as soon as the
+ * flusher gets to them, so however many guesses a game takes meanwhile it is sent once, at its latest state. Up to
+ * {@code hangman.store.kv.max-in-flight} batches are pipelined without waiting for the answers to the ones before,
+ * and when the remote store is slow the dirty games pile up and the next batch carries more of them. A write is only
+ * acknowledged once the remote store has taken it, like a group commit.
+ *
+ * Rather than a {@code {gameId}-lock} key taken around every update, each write only applies if the game is still
+ * at the version this node last sent. A write that fails that check means another node has written the game,
+ * so the local copy is dropped, the writers waiting on it get a ConcurrentModificationException, and the next load
+ * reads the remote one. A batch that fails outright fails its writers, as they may or may not have been applied,
+ * and is sent again once the remote versions of its games have been read back.
+ *
+ * A game that isn't held locally is read through from the remote store, and one held locally is checked against
+ * it again once {@code hangman.store.kv.max-staleness} has passed, in case another node has moved it on.
+ *
+ * With {@code hangman.store.kv.write-behind=true} writes are acknowledged straight away and sent every
+ * {@code hangman.store.kv.flush-interval}, or as soon as {@code hangman.store.kv.batch-size} games are dirty.
+ * The store is then at most once: a crash loses the writes still dirty or in flight, and so does a conflict with
+ * another node, as the local copy holding them is dropped.
+ */
+@Component
+@ConditionalOnProperty(name = "hangman.store.backend", havingValue = "kv")
+public class KeyValueHangmanStore implements HangmanStore {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyValueHangmanStore.class);
+
+    private final Map<String, GameDetail> games = new ConcurrentHashMap<>();
+    // the version each game's key will be at once everything sent so far has been applied
+    private final Map<String, Long> sentVersions = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // games in a batch that failed, which may or may not have been written
+    private final Set<String> unknown = ConcurrentHashMap.newKeySet();
+    private final Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // writers waiting to hear that the remote store has taken their version of a game
+    private final Map<String, List<Waiter>> waiting = new ConcurrentHashMap<>();
+    // when each game held was last known to match the remote store, from System.nanoTime()
+    private final Map<String, Long> checked = new ConcurrentHashMap<>();
+
+    private final ExpiryWheel expiry = new ExpiryWheel(this::removeGame);
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder updateConflicts = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder writeConflicts = new LongAdder();
+
+    @Autowired(required = false)
+    private KeyValueClient client;
+
+    @Autowired(required = false)
+    private GameIdGenerator idGenerator = new GameIdGenerator();
+
+    @Value("${hangman.store.ttl.finished:1h}")
+    private Duration finishedTtl = Duration.ZERO;
+
+    @Value("${hangman.store.ttl.idle:1d}")
+    private Duration idleTtl = Duration.ZERO;
+
+    @Value("${hangman.store.kv.flush-interval:5ms}")
+    private Duration flushInterval = Duration.ofMillis(5);
+
+    @Value("${hangman.store.kv.batch-size:512}")
+    private int batchSize = 512;
+
+    @Value("${hangman.store.kv.max-in-flight:8}")
+    private int maxInFlight = 8;
+
+    @Value("${hangman.store.kv.timeout:5s}")
+    private Duration timeout = Duration.ofSeconds(5);
+
+    @Value("${hangman.store.kv.write-behind:false}")
+    private boolean writeBehind;
+
+    @Value("${hangman.store.kv.max-staleness:1s}")
+    private Duration maxStaleness = Duration.ofSeconds(1);
+
+    private Semaphore inFlightPermits;
+    private ScheduledExecutorService flusher;
+
+    public KeyValueHangmanStore() {
+    }
+
+    KeyValueHangmanStore(KeyValueClient client, Duration flushInterval, int batchSize, int maxInFlight,
+                         boolean writeBehind, Duration maxStaleness) {
+        this.client = client;
+        this.flushInterval = flushInterval;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.writeBehind = writeBehind;
+        this.maxStaleness = maxStaleness;
+    }
+
+    @PostConstruct
+    void start() {
+        if (client == null) {
+            throw new IllegalStateException("hangman.store.backend=kv needs a KeyValueClient bean over the remote store's"
+                    + " connection. None ships with the project, so the deployment has to provide one");
+        }
+        inFlightPermits = new Semaphore(maxInFlight);
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hangman-kv-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushDirty, flushInterval.toNanos(), flushInterval.toNanos(),
+                TimeUnit.NANOSECONDS);
+        expiry.configure(finishedTtl, idleTtl);
+        expiry.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        expiry.stop();
+        try {
+            flush().get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("games not written before shutdown: {}", dirty.size() + unknown.size(), e);
+        }
+        flusher.shutdownNow();
+    }
+
+    // completes once every game written so far has reached the remote store, or exceptionally if some didn't
+    public CompletableFuture<Void> flush() {
+        return CompletableFuture.supplyAsync(() -> {
+            flushDirty();
+            return CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0]));
+        }, flusher).thenCompose(sent -> sent).thenRun(() -> {
+            if (!unknown.isEmpty()) {
+                throw new IllegalStateException(unknown.size() + " games could not be written");
+            }
+        });
+    }
+
+    @Override
+    public String generateUniqueId() {
+        return idGenerator.nextId();
+    }
+
+    @Override
+    public Optional<GameDetail> loadGame(String gameId) {
+        GameDetail game = games.get(gameId);
+        if (game != null && !isStale(gameId)) {
+            return Optional.of(game);
+        }
+        return GameJournal.join(loadGameAsync(gameId));
+    }
+
+    @Override
+    public CompletableFuture<Optional<GameDetail>> loadGameAsync(String gameId) {
+        GameDetail game = games.get(gameId);
+        if (game != null && !isStale(gameId)) {
+            return CompletableFuture.completedFuture(Optional.of(game));
+        }
+        return client.get(List.of(gameId))
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(values -> game == null
+                        ? Optional.ofNullable(values.get(0)).map(value -> adopt(gameId, value))
+                        : Optional.ofNullable(refresh(gameId, game, values.get(0))));
+    }
+
+    // a game held here that hasn't been checked against the remote store for a while, and has no writes of
+    // its own on the way, which would find out anyway
+    private boolean isStale(String gameId) {
+        Long at = checked.get(gameId);
+        return at != null && System.nanoTime() - at > maxStaleness.toNanos()
+                && !dirty.contains(gameId) && !unknown.contains(gameId) && !waiting.containsKey(gameId);
+    }
+
+    // brings a game held here up to date with the remote store, should another node have moved it on
+    private GameDetail refresh(String gameId, GameDetail local, VersionedValue remote) {
+        if (remote != null && remote.getVersion() > local.getNextGuessId()) {
+            GameDetail moved = GameJournal.decode(remote.getValue());
+            if (games.replace(gameId, local, moved)) {
+                sentVersions.put(gameId, remote.getVersion());
+                expiry.schedule(moved);
+            }
+        }
+        // a game missing remotely is kept, as this node's own write of it may still be on the way
+        markChecked(gameId);
+        return games.get(gameId);
+    }
+
+    private void markChecked(String gameId) {
+        // only while the game is held, so a removed game leaves nothing behind
+        games.computeIfPresent(gameId, (id, game) -> {
+            checked.put(id, System.nanoTime());
+            return game;
+        });
+    }
+
+    @Override
+    public List<Optional<GameDetail>> loadGames(List<String> gameIds) {
+        List<Optional<GameDetail>> loaded = new ArrayList<>(gameIds.size());
+        List<String> remoteIds = new ArrayList<>();
+        // the copy held here of each game read remotely, or null if none is
+        List<GameDetail> held = new ArrayList<>();
+        for (String gameId : gameIds) {
+            GameDetail game = games.get(gameId);
+            if (game != null && !isStale(gameId)) {
+                loaded.add(Optional.of(game));
+            } else {
+                // checked against the remote store, as loadGame would
+                loaded.add(null);
+                remoteIds.add(gameId);
+                held.add(game);
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return loaded;
+        }
+        List<VersionedValue> values = GameJournal.join(client.get(remoteIds).orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS));
+        int next = 0;
+        for (int loop = 0; loop < loaded.size(); loop++) {
+            if (loaded.get(loop) == null) {
+                VersionedValue value = values.get(next);
+                GameDetail local = held.get(next);
+                String gameId = remoteIds.get(next++);
+                if (local != null) {
+                    loaded.set(loop, Optional.ofNullable(refresh(gameId, local, value)));
+                } else {
+                    // only read, not adopted, so reading many games doesn't fill this node with them
+                    loaded.set(loop, value == null ? Optional.empty() : Optional.of(GameJournal.decode(value.getValue())));
+                }
+            }
+        }
+        return loaded;
+    }
+
+    // only the games held on this node, as the remote store can't be walked through a KeyValueClient
+    @Override
+    public Iterator<GameDetail> scanGames(Set<GameStatus> statuses) {
+        return games.values().stream().filter(game -> statuses.contains(game.getStatus())).iterator();
+    }
+
+    // takes in a game read from the remote store, unless it turned up locally in the meantime
+    private GameDetail adopt(String gameId, VersionedValue value) {
+        GameDetail remote = GameJournal.decode(value.getValue());
+        // the version goes in first, so a write made as soon as the game is visible is checked against it
+        sentVersions.putIfAbsent(gameId, value.getVersion());
+        GameDetail local = games.putIfAbsent(gameId, remote);
+        if (local != null) {
+            return local;
+        }
+        markChecked(gameId);
+        expiry.schedule(remote);
+        return remote;
+    }
+
+    @Override
+    public void storeGame(GameDetail game) {
+        join(storeGameAsync(game));
+    }
+
+    @Override
+    public CompletableFuture<Void> storeGameAsync(GameDetail game) {
+        // waiting before the game can be sent, so the answer to its write can't miss the waiter
+        Waiter waiter = writeBehind ? null : await(game.getGameId(), game.getNextGuessId());
+        games.put(game.getGameId(), game);
+        expiry.schedule(game);
+        markDirty(game.getGameId());
+        return waiter == null ? CompletableFuture.completedFuture(null) : waiter.written;
+    }
+
+    @Override
+    public void storeGames(List<GameDetail> games) {
+        List<CompletableFuture<Void>> written = new ArrayList<>(games.size());
+        games.forEach(game -> written.add(storeGameAsync(game)));
+        // the whole batch shares the flushes
+        join(CompletableFuture.allOf(written.toArray(new CompletableFuture<?>[0])));
+    }
+
+    @Override
+    public void updateGame(GameDetail game, int nextGuessId) {
+        join(updateGameAsync(game, nextGuessId));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateGameAsync(GameDetail game, int nextGuessId) {
+        Waiter waiter = writeBehind ? null : await(game.getGameId(), game.getNextGuessId());
+        UpdateResult result = replace(game, nextGuessId);
+        if (result != UpdateResult.UPDATED) {
+            if (waiter != null) {
+                cancel(game.getGameId(), waiter);
+            }
+            return CompletableFuture.failedFuture(result == UpdateResult.NOT_FOUND
+                    ? new InvalidGameException() : new ConcurrentModificationException());
+        }
+        markDirty(game.getGameId());
+        return waiter == null ? CompletableFuture.completedFuture(null) : waiter.written;
+    }
+
+    @Override
+    public List<UpdateResult> updateGames(List<GameDetail> games, int[] nextGuessIds) {
+        List<CompletableFuture<Void>> written = new ArrayList<>(games.size());
+        for (int loop = 0; loop < games.size(); loop++) {
+            written.add(updateGameAsync(games.get(loop), nextGuessIds[loop]));
+        }
+        // the whole batch shares the flushes
+        List<UpdateResult> results = new ArrayList<>(games.size());
+        for (CompletableFuture<Void> update : written) {
+            try {
+                join(update);
+                results.add(UpdateResult.UPDATED);
+            } catch (ConcurrentModificationException e) {
+                results.add(UpdateResult.CONFLICT);
+            } catch (InvalidGameException e) {
+                results.add(UpdateResult.NOT_FOUND);
+            }
+        }
+        return results;
+    }
+
+    private UpdateResult replace(GameDetail game, int nextGuessId) {
+        // the same check as the map store, the remote store only ever sees the winners
+        while (true) {
+            GameDetail existingDetail = games.get(game.getGameId());
+            if (existingDetail == null) {
+                return UpdateResult.NOT_FOUND;
+            }
+            if (existingDetail.getNextGuessId() != nextGuessId) {
+                updateConflicts.increment();
+                return UpdateResult.CONFLICT;
+            }
+            if (games.replace(game.getGameId(), existingDetail, game)) {
+                expiry.schedule(game);
+                updates.increment();
+                return UpdateResult.UPDATED;
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final long version;
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        Waiter(long version) {
+            this.version = version;
+        }
+    }
+
+    private Waiter await(String gameId, long version) {
+        Waiter waiter = new Waiter(version);
+        waiting.compute(gameId, (id, waiters) -> {
+            List<Waiter> list = waiters == null ? new ArrayList<>(2) : waiters;
+            list.add(waiter);
+            return list;
+        });
+        return waiter;
+    }
+
+    private void cancel(String gameId, Waiter waiter) {
+        waiting.computeIfPresent(gameId, (id, waiters) -> {
+            waiters.remove(waiter);
+            return waiters.isEmpty() ? null : waiters;
+        });
+    }
+
+    // answers the writers of a game waiting on versions up to upTo, with the error if there is one
+    private void settle(String gameId, long upTo, RuntimeException error) {
+        List<Waiter> settled = new ArrayList<>();
+        waiting.computeIfPresent(gameId, (id, waiters) -> {
+            for (Iterator<Waiter> waiter = waiters.iterator(); waiter.hasNext(); ) {
+                Waiter next = waiter.next();
+                if (next.version <= upTo) {
+                    settled.add(next);
+                    waiter.remove();
+                }
+            }
+            return waiters.isEmpty() ? null : waiters;
+        });
+        // outside the map's lock, as completing runs whatever the writers chained on
+        for (Waiter waiter : settled) {
+            if (error == null) {
+                waiter.written.complete(null);
+            } else {
+                waiter.written.completeExceptionally(error);
+            }
+        }
+    }
+
+    // the blocking calls throw what the store refused them with, as the map store does
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean removeGame(String gameId, int nextGuessId) {
+        GameDetail existingDetail = games.get(gameId);
+        if (existingDetail == null
+                || existingDetail.getNextGuessId() != nextGuessId
+                || !games.remove(gameId, existingDetail)) {
+            return false;
+        }
+        checked.remove(gameId);
+        // the game is gone either way, so anyone waiting on it has nothing left to wait for
+        settle(gameId, Long.MAX_VALUE, null);
+        // the flusher deletes the key, as the game is no longer held
+        markDirty(gameId);
+        return true;
+    }
+
+    private void markDirty(String gameId) {
+        dirty.add(gameId);
+        // writes made while a flush runs go in the next one
+        if ((!writeBehind || dirty.size() >= batchSize) && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushDirty);
+        }
+    }
+
+    // only ever runs on the flusher thread
+    private void flushDirty() {
+        flushRequested.set(false);
+        try {
+            if (!unknown.isEmpty()) {
+                readBackUnknown();
+            }
+            while (!dirty.isEmpty()) {
+                if (!sendBatch()) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            // keeps the flusher scheduled, the games are still dirty
+            log.warn("flush failed", e);
+        }
+    }
+
+    // returns false if there was nothing left to send
+    private boolean sendBatch() {
+        List<ConditionalWrite> batch = new ArrayList<>();
+        for (Iterator<String> dirtyGames = dirty.iterator(); dirtyGames.hasNext() && batch.size() < batchSize; ) {
+            String gameId = dirtyGames.next();
+            if (unknown.contains(gameId)) {
+                continue;
+            }
+            dirtyGames.remove();
+            GameDetail game = games.get(gameId);
+            Long sent = sentVersions.get(gameId);
+            long expectedVersion = sent == null ? KeyValueClient.ABSENT : sent;
+            if (game == null) {
+                if (sent != null && sentVersions.remove(gameId, sent)) {
+                    batch.add(ConditionalWrite.delete(gameId, expectedVersion));
+                }
+            } else if (expectedVersion != game.getNextGuessId() || waiting.containsKey(gameId)) {
+                // sent again even at the same version while anyone waits, as the answer to an earlier send may
+                // already have come back
+                batch.add(ConditionalWrite.put(gameId, expectedVersion, game.getNextGuessId(), GameJournal.encode(game)));
+                sentVersions.put(gameId, (long) game.getNextGuessId());
+            }
+        }
+        if (batch.isEmpty()) {
+            return false;
+        }
+
+        inFlightPermits.acquireUninterruptibly();
+        batches.increment();
+        writes.add(batch.size());
+        CompletableFuture<Void> answered = client.write(batch)
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((applied, error) -> {
+                    if (error != null) {
+                        failed(batch, error);
+                    } else {
+                        for (int loop = 0; loop < batch.size(); loop++) {
+                            if (applied[loop]) {
+                                written(batch.get(loop));
+                            } else {
+                                conflicted(batch.get(loop));
+                            }
+                        }
+                    }
+                    return null;
+                });
+        inFlight.add(answered);
+        answered.whenComplete((done, error) -> {
+            inFlight.remove(answered);
+            inFlightPermits.release();
+        });
+        return true;
+    }
+
+    private void written(ConditionalWrite write) {
+        if (write.getValue().isPresent()) {
+            markChecked(write.getKey());
+            settle(write.getKey(), write.getVersion(), null);
+        }
+    }
+
+    private void conflicted(ConditionalWrite write) {
+        String gameId = write.getKey();
+        if (unknown.contains(gameId)) {
+            // refused because an earlier batch failed, which the read back will sort out
+            return;
+        }
+        writeConflicts.increment();
+        if (write.getValue().isPresent()) {
+            drop(gameId);
+        }
+    }
+
+    private void drop(String gameId) {
+        log.warn("game {} was written by another node, dropping the local copy", gameId);
+        games.remove(gameId);
+        sentVersions.remove(gameId);
+        dirty.remove(gameId);
+        checked.remove(gameId);
+        settle(gameId, Long.MAX_VALUE, new ConcurrentModificationException("game " + gameId + " was written by another node"));
+    }
+
+    private void failed(List<ConditionalWrite> batch, Throwable error) {
+        log.warn("writing {} games failed, they will be read back and sent again", batch.size(), error);
+        for (ConditionalWrite write : batch) {
+            unknown.add(write.getKey());
+            dirty.add(write.getKey());
+            settle(write.getKey(), write.getVersion(),
+                    new IllegalStateException("game " + write.getKey() + " may not have been written", error));
+        }
+    }
+
+    // finds out which version of each game in a failed batch made it, so they can be written again from there
+    private void readBackUnknown() {
+        List<String> gameIds = new ArrayList<>(unknown);
+        List<VersionedValue> values;
+        try {
+            values = client.get(gameIds).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("reading back {} games failed", gameIds.size(), e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (int loop = 0; loop < gameIds.size(); loop++) {
+            String gameId = gameIds.get(loop);
+            long remoteVersion = values.get(loop) == null ? KeyValueClient.ABSENT : values.get(loop).getVersion();
+            GameDetail game = games.get(gameId);
+            if (game != null && remoteVersion > game.getNextGuessId()) {
+                // ahead of anything this node wrote, so it came from another node
+                unknown.remove(gameId);
+                writeConflicts.increment();
+                drop(gameId);
+                continue;
+            }
+            if (remoteVersion == KeyValueClient.ABSENT) {
+                sentVersions.remove(gameId);
+            } else {
+                sentVersions.put(gameId, remoteVersion);
+            }
+            unknown.remove(gameId);
+        }
+    }
+
+    @Override
+    public long liveGames() {
+        return games.size();
+    }
+
+    @Override
+    public long expiredGames() {
+        return expiry.expiredGames();
+    }
+
+    @Override
+    public long evictedGames() {
+        return expiry.evictedGames();
+    }
+
+    @Override
+    public long updates() {
+        return updates.sum();
+    }
+
+    @Override
+    public long updateConflicts() {
+        return updateConflicts.sum();
+    }
+
+    // batches sent to the remote store
+    public long batches() {
+        return batches.sum();
+    }
+
+    // games written to the remote store, after coalescing
+    public long writes() {
+        return writes.sum();
+    }
+
+    // writes refused because the game had been written by another node
+    public long writeConflicts() {
+        return writeConflicts.sum();
+    }
+}
@@ -0,0 +1,232 @@
+package hangman.store;
+
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.InvalidGameException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+@ConditionalOnProperty(name = "hangman.store.backend", havingValue = "map", matchIfMissing = true)
+public class MapHangmanStore implements HangmanStore {
+
+    private Map<String, GameDetail> gamesTable = new ConcurrentHashMap<>();
+
+    private final ExpiryWheel expiry = new ExpiryWheel(this::removeGame);
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder updateConflicts = new LongAdder();
+
+    @Autowired(required = false)
+    private GameIdGenerator idGenerator = new GameIdGenerator();
+
+    @Autowired(required = false)
+    private GameJournal journal;
+
+    @Value("${hangman.store.ttl.finished:1h}")
+    private Duration finishedTtl = Duration.ZERO;
+
+    @Value("${hangman.store.ttl.idle:1d}")
+    private Duration idleTtl = Duration.ZERO;
+
+    public MapHangmanStore() {
+    }
+
+    MapHangmanStore(GameJournal journal) {
+        this.journal = journal;
+    }
+
+    // for wiring by hand, without a journal. Call start() before use
+    public MapHangmanStore(Duration finishedTtl, Duration idleTtl) {
+        this.finishedTtl = finishedTtl;
+        this.idleTtl = idleTtl;
+    }
+
+    @PostConstruct
+    public void start() {
+        expiry.configure(finishedTtl, idleTtl);
+        if (journal != null) {
+            journal.recover(gamesTable);
+            gamesTable.keySet().forEach(idGenerator::observe);
+            gamesTable.values().forEach(expiry::schedule);
+            journal.start(gamesTable::values);
+        }
+        expiry.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        expiry.stop();
+    }
+
+    @Override
+    public String generateUniqueId() {
+        return idGenerator.nextId();
+    }
+
+    @Override
+    public Optional<GameDetail> loadGame(String gameId) {
+        return Optional.ofNullable(gamesTable.get(gameId));
+    }
+
+    @Override
+    public Iterator<GameDetail> scanGames(Set<GameStatus> statuses) {
+        // the map's own iterator is weakly consistent, and the stream only pulls from it as games are asked for
+        return gamesTable.values().stream().filter(game -> statuses.contains(game.getStatus())).iterator();
+    }
+
+    @Override
+    public void storeGame(GameDetail game) {
+        gamesTable.put(game.getGameId(), game);
+        expiry.schedule(game);
+        if (journal != null) {
+            journal.append(game);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> storeGameAsync(GameDetail game) {
+        gamesTable.put(game.getGameId(), game);
+        expiry.schedule(game);
+        return journal == null ? CompletableFuture.completedFuture(null) : journal.appendAsync(game).thenApply(segment -> null);
+    }
+
+    @Override
+    public void storeGames(List<GameDetail> games) {
+        List<CompletableFuture<Long>> journaled = new ArrayList<>();
+        for (GameDetail game : games) {
+            gamesTable.put(game.getGameId(), game);
+            expiry.schedule(game);
+            if (journal != null) {
+                journaled.add(journal.appendAsync(game));
+            }
+        }
+        // the whole batch shares one group commit
+        awaitJournal(journaled);
+    }
+
+    @Override
+    public void updateGame(GameDetail game, int nextGuessId) {
+        UpdateResult result = replace(game, nextGuessId);
+        if (result == UpdateResult.NOT_FOUND) {
+            throw new InvalidGameException();
+        }
+        if (result == UpdateResult.CONFLICT) {
+            throw new ConcurrentModificationException();
+        }
+        if (journal != null) {
+            // only journaled once it has won the replace, so the log never holds a losing update
+            journal.append(game);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> updateGameAsync(GameDetail game, int nextGuessId) {
+        // the same as updateGame, but waits for the journal without holding the thread
+        UpdateResult result = replace(game, nextGuessId);
+        if (result == UpdateResult.NOT_FOUND) {
+            return CompletableFuture.failedFuture(new InvalidGameException());
+        }
+        if (result == UpdateResult.CONFLICT) {
+            return CompletableFuture.failedFuture(new ConcurrentModificationException());
+        }
+        return journal == null ? CompletableFuture.completedFuture(null) : journal.appendAsync(game).thenApply(segment -> null);
+    }
+
+    @Override
+    public List<UpdateResult> updateGames(List<GameDetail> games, int[] nextGuessIds) {
+        List<UpdateResult> results = new ArrayList<>(games.size());
+        List<CompletableFuture<Long>> journaled = new ArrayList<>();
+        for (int loop = 0; loop < games.size(); loop++) {
+            UpdateResult result = replace(games.get(loop), nextGuessIds[loop]);
+            if (result == UpdateResult.UPDATED && journal != null) {
+                journaled.add(journal.appendAsync(games.get(loop)));
+            }
+            results.add(result);
+        }
+        // the whole batch shares one group commit
+        awaitJournal(journaled);
+        return results;
+    }
+
+    private UpdateResult replace(GameDetail game, int nextGuessId) {
+        // the equivalent of an update statement with a where clause on both the gameId and the guessId.
+        // replace() only swaps in the new detail if the game still holds the detail we checked, so the
+        // version check and the write are atomic for this game without locking any other game.
+        while (true) {
+            GameDetail existingDetail = gamesTable.get(game.getGameId());
+            if (existingDetail == null) {
+                return UpdateResult.NOT_FOUND;
+            }
+            if (existingDetail.getNextGuessId() != nextGuessId) {
+                updateConflicts.increment();
+                return UpdateResult.CONFLICT;
+            }
+            if (gamesTable.replace(game.getGameId(), existingDetail, game)) {
+                expiry.schedule(game);
+                updates.increment();
+                return UpdateResult.UPDATED;
+            }
+        }
+    }
+
+    private static void awaitJournal(List<CompletableFuture<Long>> journaled) {
+        if (!journaled.isEmpty()) {
+            GameJournal.join(CompletableFuture.allOf(journaled.toArray(new CompletableFuture<?>[0])));
+        }
+    }
+
+    @Override
+    public long liveGames() {
+        return gamesTable.size();
+    }
+
+    @Override
+    public long expiredGames() {
+        return expiry.expiredGames();
+    }
+
+    @Override
+    public long evictedGames() {
+        return expiry.evictedGames();
+    }
+
+    @Override
+    public long updates() {
+        return updates.sum();
+    }
+
+    @Override
+    public long updateConflicts() {
+        return updateConflicts.sum();
+    }
+
+    @Override
+    public boolean removeGame(String gameId, int nextGuessId) {
+        GameDetail existingDetail = gamesTable.get(gameId);
+        if (existingDetail == null
+                || existingDetail.getNextGuessId() != nextGuessId
+                || !gamesTable.remove(gameId, existingDetail)) {
+            return false;
+        }
+        if (journal != null) {
+            journal.appendRemoval(gameId);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,203 @@
+package hangman.store;
+
+import hangman.api.GameStatus;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The timing wheel of the slab store, which works like {@link ExpiryWheel} without any object per game.
+ *
+ * A game's timing is one long kept beside its row: the tick it is due at in the low 32 bits, and the tick
+ * it was queued for, which picks its bucket, in the high 32 (0 while in none). Buckets hold row numbers in
+ * int arrays. The store updates the timing while it holds the row's lock, before it publishes the write,
+ * so a row whose lock is free and whose timing is unchanged has not been written since the timing was read.
+ */
+class RowExpiryWheel {
+
+    interface Rows {
+        // the timing kept for the row
+        long timing(long row);
+
+        boolean compareAndSetTiming(long row, long expected, long timing);
+
+        // removes the game in the row if it is not being written and its timing is still the one given.
+        // Returns the status it had, or null if it was kept
+        GameStatus removeIfUnchanged(long row, long timing);
+    }
+
+    private static final long TICK_MASK = 0xffffffffL;
+
+    // the rows queued for one tick of the wheel
+    private static final class Bucket {
+        private int[] rows = new int[8];
+        private int size;
+
+        synchronized void add(long row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size + (size >> 1));
+            }
+            rows[size++] = (int) row;
+        }
+
+        // empties the bucket, so rows added while the ones taken are visited wait for the next lap
+        synchronized int[] take() {
+            int[] taken = Arrays.copyOf(rows, size);
+            if (rows.length > 8 && size < rows.length / 4) {
+                rows = new int[rows.length / 2];
+            }
+            size = 0;
+            return taken;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+
+    private final Rows rows;
+    private final LongSupplier clock;
+    private final long tickMillis;
+    private final Bucket[] buckets;
+
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    private volatile long finishedTtlMillis;
+    private volatile long idleTtlMillis;
+
+    // only read and written by whichever thread calls advance()
+    private long lastTick;
+    private ScheduledExecutorService ticker;
+
+    RowExpiryWheel(Rows rows, LongSupplier clock) {
+        this(rows, clock, 1000, 3600);
+    }
+
+    RowExpiryWheel(Rows rows, LongSupplier clock, long tickMillis, int wheelSize) {
+        this.rows = rows;
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.buckets = new Bucket[wheelSize];
+        for (int loop = 0; loop < wheelSize; loop++) {
+            buckets[loop] = new Bucket();
+        }
+        this.lastTick = clock.getAsLong() / tickMillis;
+    }
+
+    // a zero or negative ttl disables that kind of expiry
+    void configure(Duration finishedTtl, Duration idleTtl) {
+        this.finishedTtlMillis = finishedTtl.toMillis();
+        this.idleTtlMillis = idleTtl.toMillis();
+    }
+
+    synchronized void start() {
+        if (ticker == null) {
+            ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hangman-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    // called by the store holding the row's lock. Only touches a bucket when the deadline comes forward
+    void schedule(long row, boolean finished) {
+        long ttl = finished ? finishedTtlMillis : idleTtlMillis;
+        long deadline = ttl <= 0 ? 0 : (clock.getAsLong() + ttl + tickMillis - 1) / tickMillis;
+        while (true) {
+            long timing = rows.timing(row);
+            long queued = timing >>> 32;
+            long requeue = deadline != 0 && (queued == 0 || deadline < queued) ? deadline : queued;
+            if (rows.compareAndSetTiming(row, timing, requeue << 32 | deadline)) {
+                // a bucket it is already in will see the new deadline
+                if (requeue != queued && (queued == 0 || bucketOf(queued) != bucketOf(requeue))) {
+                    buckets[bucketOf(requeue)].add(row);
+                }
+                return;
+            }
+        }
+    }
+
+    // removes everything that has fallen due since the last call
+    void advance() {
+        long now = clock.getAsLong() / tickMillis;
+        // after a long pause one lap of the wheel visits every bucket
+        long from = Math.max(lastTick + 1, now - buckets.length + 1);
+        for (long tick = from; tick <= now; tick++) {
+            int bucket = bucketOf(tick);
+            for (int row : buckets[bucket].take()) {
+                visit(Integer.toUnsignedLong(row), bucket, now);
+            }
+        }
+        lastTick = Math.max(lastTick, now);
+    }
+
+    private void visit(long row, int bucket, long now) {
+        while (true) {
+            long timing = rows.timing(row);
+            long queued = timing >>> 32;
+            long deadline = timing & TICK_MASK;
+            if (queued == 0 || bucketOf(queued) != bucket) {
+                // left behind when the game was removed, or its deadline was brought forward into another bucket
+                return;
+            }
+            if (queued > now) {
+                // due on a later lap
+                buckets[bucket].add(row);
+                return;
+            }
+            if (deadline > now) {
+                // written since it was queued, so it goes in the bucket for its new deadline
+                if (rows.compareAndSetTiming(row, timing, deadline << 32 | deadline)) {
+                    buckets[bucketOf(deadline)].add(row);
+                    return;
+                }
+                continue;
+            }
+            // no longer queued, so a write that gets in before the removal queues it again
+            if (!rows.compareAndSetTiming(row, timing, deadline)) {
+                continue;
+            }
+            GameStatus removed = deadline == 0 ? null : rows.removeIfUnchanged(row, deadline);
+            if (removed != null) {
+                (removed == GameStatus.WON || removed == GameStatus.LOST ? expired : evicted).increment();
+            }
+            return;
+        }
+    }
+
+    private int bucketOf(long tick) {
+        return (int) (tick % buckets.length);
+    }
+
+    // for tests, as counting the buckets takes a lap
+    int queuedRows() {
+        int queued = 0;
+        for (Bucket bucket : buckets) {
+            queued += bucket.size();
+        }
+        return queued;
+    }
+
+    long expiredGames() {
+        return expired.sum();
+    }
+
+    long evictedGames() {
+        return evicted.sum();
+    }
+}
@@ -0,0 +1,511 @@
+package hangman.store;
+
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.ImmutableGameDetail;
+import hangman.service.InvalidGameException;
+import hangman.service.LetterMask;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A store that packs every game into a fixed row of 8 longs inside large {@code long[]} pages,
+ * so a live game costs 64 bytes and no objects of its own, plus a long of expiry timing kept after the page's rows
+ * and a slot in a {@link RowExpiryWheel} bucket. The secret word is held as an index into
+ * a table of the distinct words seen, and a {@link GameDetail} is only built when a game is loaded.
+ *
+ * A game id encodes the node (as {@link GameIdGenerator} ids do), the row the game lives in and some random salt,
+ * so lookups need no index: the row is decoded from the id and the whole id is checked against the key held in the row.
+ *
+ * Rows are updated with a seqlock. A writer sets the lock bit in the row header with a compare-and-set
+ * that also checks the nextGuessId, writes the row, then publishes a new header. Readers retry if the
+ * header changed while they were copying the row, so neither side ever blocks on a monitor.
+ *
+ * Guesses are held as ISO-8859-1 bytes, at most {@link #MAX_GUESSES} per game.
+ * Rows of expired games go on a free list and are handed out again by {@link #generateUniqueId()}.
+ */
+@Component
+@ConditionalOnProperty(name = "hangman.store.backend", havingValue = "slab")
+public class SlabHangmanStore implements HangmanStore {
+
+    static final int MAX_GUESSES = 40;
+
+    private static final int ROW_LONGS = 8;
+    private static final int KEY = 0;
+    private static final int HEADER = 1;
+    private static final int GUESSED_MASK = 2;
+    private static final int GUESSES = 3;
+
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_ROWS = 1 << PAGE_SHIFT;
+    private static final int MAX_PAGES = 1 << 16;
+
+    // the key of a game is the node id, its row number, then SALT_BITS of random salt
+    static final int SALT_BITS = 21;
+    private static final long SALT_MASK = (1L << SALT_BITS) - 1;
+    private static final long ROW_MASK = (1L << (GameIdGenerator.NODE_SHIFT - SALT_BITS)) - 1;
+
+    // header layout
+    private static final long WORD_MASK = (1L << 24) - 1;
+    private static final int NEXT_GUESS_ID_SHIFT = 24;
+    private static final int REMAINING_SHIFT = 40;
+    private static final int GUESS_COUNT_SHIFT = 48;
+    private static final int STATUS_SHIFT = 56;
+    private static final long PRESENT = 1L << 62;
+    private static final long LOCKED = 1L << 63;
+
+    private static final VarHandle ROWS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final GameStatus[] STATUSES = GameStatus.values();
+
+    private final AtomicReferenceArray<long[]> pages = new AtomicReferenceArray<>(MAX_PAGES);
+    private final AtomicLong nextRow = new AtomicLong();
+    private final Queue<Long> freeRows = new ConcurrentLinkedQueue<>();
+    private final LongAdder liveGames = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder updateConflicts = new LongAdder();
+
+    private final RowExpiryWheel expiry;
+
+    @Autowired(required = false)
+    private GameIdGenerator idGenerator = new GameIdGenerator();
+
+    @Value("${hangman.store.ttl.finished:1h}")
+    private Duration finishedTtl = Duration.ZERO;
+
+    @Value("${hangman.store.ttl.idle:1d}")
+    private Duration idleTtl = Duration.ZERO;
+
+    private final Map<String, Integer> wordIndex = new ConcurrentHashMap<>();
+    private final Lock wordLock = new ReentrantLock();
+    private volatile String[] words = new String[1024];
+    private volatile long[] wordMasks = new long[1024];
+
+    public SlabHangmanStore() {
+        this(System::currentTimeMillis);
+    }
+
+    // for wiring by hand. Call startExpiry() before use
+    SlabHangmanStore(Duration finishedTtl, Duration idleTtl) {
+        this(System::currentTimeMillis);
+        this.finishedTtl = finishedTtl;
+        this.idleTtl = idleTtl;
+    }
+
+    // for tests, which move the clock and call expireDue() themselves
+    SlabHangmanStore(LongSupplier clock, Duration finishedTtl, Duration idleTtl) {
+        this(clock);
+        expiry.configure(finishedTtl, idleTtl);
+    }
+
+    private SlabHangmanStore(LongSupplier clock) {
+        expiry = new RowExpiryWheel(new Timings(), clock);
+    }
+
+    @PostConstruct
+    void startExpiry() {
+        expiry.configure(finishedTtl, idleTtl);
+        expiry.start();
+    }
+
+    @PreDestroy
+    void stopExpiry() {
+        expiry.stop();
+    }
+
+    void expireDue() {
+        expiry.advance();
+    }
+
+    @Override
+    public String generateUniqueId() {
+        // claiming a row up front means storeGame never has to search for one.
+        // the new salt means ids handed out for an expired game in a reused row no longer match.
+        Long freeRow = freeRows.poll();
+        long row = freeRow != null ? freeRow : nextRow.getAndIncrement();
+        if (row >= (long) MAX_PAGES * PAGE_ROWS) {
+            throw new IllegalStateException("slab store is full");
+        }
+        long prefix = (long) idGenerator.getNodeId() << GameIdGenerator.NODE_SHIFT | row << SALT_BITS;
+        long key;
+        String gameId;
+        do {
+            // in a cluster, salt until the id belongs to this node
+            key = prefix | ThreadLocalRandom.current().nextLong(1, SALT_MASK + 1);
+            gameId = GameIdGenerator.encode(key);
+        } while (!idGenerator.isOwned(gameId));
+        ROWS.setRelease(page(row), offset(row) + KEY, key);
+        return gameId;
+    }
+
+    @Override
+    public Optional<GameDetail> loadGame(String gameId) {
+        long key = parseKey(gameId);
+        if (key <= 0) {
+            return Optional.empty();
+        }
+        long row = (key >>> SALT_BITS) & ROW_MASK;
+        long[] page = existingPage(row);
+        if (page == null) {
+            return Optional.empty();
+        }
+        int offset = offset(row);
+        byte[] guesses = new byte[MAX_GUESSES];
+        while (true) {
+            long header = (long) ROWS.getAcquire(page, offset + HEADER);
+            if ((header & LOCKED) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long rowKey = page[offset + KEY];
+            long guessedMask = page[offset + GUESSED_MASK];
+            int guessCount = (int) (header >>> GUESS_COUNT_SHIFT) & 0xff;
+            for (int loop = 0; loop < guessCount; loop++) {
+                guesses[loop] = (byte) (page[offset + GUESSES + loop / 8] >>> ((loop % 8) * 8));
+            }
+            VarHandle.loadLoadFence();
+            if ((long) ROWS.getAcquire(page, offset + HEADER) != header) {
+                // a writer got in while we were copying the row
+                continue;
+            }
+            if (rowKey != key || (header & PRESENT) == 0) {
+                return Optional.empty();
+            }
+            int word = (int) (header & WORD_MASK);
+            return Optional.of(ImmutableGameDetail.builder()
+                    .gameId(gameId)
+                    .secretWord(words[word])
+                    .wordMask(wordMasks[word])
+                    .guessedMask(guessedMask)
+                    .guesses(new String(guesses, 0, guessCount, StandardCharsets.ISO_8859_1))
+                    .guessesRemaining((int) (header >>> REMAINING_SHIFT) & 0xff)
+                    .nextGuessId((int) (header >>> NEXT_GUESS_ID_SHIFT) & 0xffff)
+                    .status(STATUSES[(int) (header >>> STATUS_SHIFT) & 0x7])
+                    .build());
+        }
+    }
+
+    @Override
+    public Iterator<GameDetail> scanGames(Set<GameStatus> statuses) {
+        // rows handed out after this belong to games stored since the scan began, which it may leave out
+        long end = nextRow.get();
+        return new Iterator<>() {
+            private long row;
+            private GameDetail next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && row < end) {
+                    next = scanRow(row++, statuses);
+                }
+                return next != null;
+            }
+
+            @Override
+            public GameDetail next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                GameDetail game = next;
+                next = null;
+                return game;
+            }
+        };
+    }
+
+    // the game in the row if it has one of the statuses, going by the header so a GameDetail is only built for a match
+    private GameDetail scanRow(long row, Set<GameStatus> statuses) {
+        long[] page = existingPage(row);
+        if (page == null) {
+            return null;
+        }
+        int offset = offset(row);
+        long header = (long) ROWS.getAcquire(page, offset + HEADER);
+        if ((header & LOCKED) == 0
+                && ((header & PRESENT) == 0 || !statuses.contains(STATUSES[(int) (header >>> STATUS_SHIFT) & 0x7]))) {
+            return null;
+        }
+        // a locked row is being written, so loadGame waits for the write and the status is checked again
+        long key = (long) ROWS.getAcquire(page, offset + KEY);
+        if (key <= 0) {
+            return null;
+        }
+        return loadGame(GameIdGenerator.encode(key)).filter(game -> statuses.contains(game.getStatus())).orElse(null);
+    }
+
+    @Override
+    public void storeGame(GameDetail game) {
+        write(game, -1);
+    }
+
+    @Override
+    public void updateGame(GameDetail game, int nextGuessId) {
+        write(game, nextGuessId);
+    }
+
+    // expectedGuessId is -1 when the game is being stored for the first time
+    private void write(GameDetail game, int expectedGuessId) {
+        long key = parseKey(game.getGameId());
+        long row = (key >>> SALT_BITS) & ROW_MASK;
+        long[] page = key > 0 ? existingPage(row) : null;
+        if (page == null || (long) ROWS.getAcquire(page, offset(row) + KEY) != key) {
+            if (expectedGuessId < 0) {
+                throw new IllegalArgumentException("game id was not generated by this store: " + game.getGameId());
+            }
+            throw new InvalidGameException();
+        }
+        int offset = offset(row);
+        long newHeader;
+        long[] guesses;
+        try {
+            newHeader = encodeHeader(game);
+            guesses = encodeGuesses(game.getGuesses());
+        } catch (IllegalArgumentException e) {
+            if (expectedGuessId < 0) {
+                // generateUniqueId claimed the row for this game, so give it back rather than leak it
+                releaseRow(page, row, key);
+            }
+            throw e;
+        }
+
+        long header;
+        do {
+            header = (long) ROWS.getAcquire(page, offset + HEADER);
+            if ((header & LOCKED) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (expectedGuessId < 0) {
+                if ((header & PRESENT) != 0) {
+                    throw new IllegalStateException("game already stored: " + game.getGameId());
+                }
+            } else if ((header & PRESENT) == 0) {
+                throw new InvalidGameException();
+            } else if (((header >>> NEXT_GUESS_ID_SHIFT) & 0xffff) != expectedGuessId) {
+                updateConflicts.increment();
+                throw new ConcurrentModificationException();
+            }
+        } while ((header & LOCKED) != 0 || !ROWS.compareAndSet(page, offset + HEADER, header, header | LOCKED));
+
+        if ((long) ROWS.getAcquire(page, offset + KEY) != key) {
+            // the game expired and its row was handed to a new game between our key check and taking the lock
+            ROWS.setRelease(page, offset + HEADER, header);
+            throw new InvalidGameException();
+        }
+        page[offset + GUESSED_MASK] = game.getGuessedMask();
+        System.arraycopy(guesses, 0, page, offset + GUESSES, guesses.length);
+        // while the row is locked, so the wheel never sees this write without its deadline
+        expiry.schedule(row, game.getStatus() == GameStatus.WON || game.getStatus() == GameStatus.LOST);
+        ROWS.setRelease(page, offset + HEADER, newHeader);
+        if (expectedGuessId < 0) {
+            liveGames.increment();
+        } else {
+            updates.increment();
+        }
+    }
+
+    @Override
+    public long liveGames() {
+        return liveGames.sum();
+    }
+
+    @Override
+    public long expiredGames() {
+        return expiry.expiredGames();
+    }
+
+    @Override
+    public long evictedGames() {
+        return expiry.evictedGames();
+    }
+
+    @Override
+    public long updates() {
+        return updates.sum();
+    }
+
+    @Override
+    public long updateConflicts() {
+        return updateConflicts.sum();
+    }
+
+    @Override
+    public boolean removeGame(String gameId, int nextGuessId) {
+        long key = parseKey(gameId);
+        long row = (key >>> SALT_BITS) & ROW_MASK;
+        long[] page = key > 0 ? existingPage(row) : null;
+        if (page == null) {
+            return false;
+        }
+        int offset = offset(row);
+        long header = (long) ROWS.getAcquire(page, offset + HEADER);
+        if ((header & (LOCKED | PRESENT)) != PRESENT
+                || ((header >>> NEXT_GUESS_ID_SHIFT) & 0xffff) != nextGuessId
+                || (long) ROWS.getAcquire(page, offset + KEY) != key
+                || !ROWS.compareAndSet(page, offset + HEADER, header, 0L)) {
+            return false;
+        }
+        removed(page, row);
+        return true;
+    }
+
+    // once the header has been cleared
+    private void removed(long[] page, long row) {
+        ROWS.setRelease(page, timing(row), 0L);
+        liveGames.decrement();
+        freeRows.add(row);
+    }
+
+    // the expiry wheel's view of the rows
+    private final class Timings implements RowExpiryWheel.Rows {
+
+        @Override
+        public long timing(long row) {
+            return (long) ROWS.getAcquire(page(row), SlabHangmanStore.timing(row));
+        }
+
+        @Override
+        public boolean compareAndSetTiming(long row, long expected, long timing) {
+            return ROWS.compareAndSet(page(row), SlabHangmanStore.timing(row), expected, timing);
+        }
+
+        @Override
+        public GameStatus removeIfUnchanged(long row, long timing) {
+            long[] page = page(row);
+            int offset = offset(row);
+            long header = (long) ROWS.getAcquire(page, offset + HEADER);
+            if ((header & (LOCKED | PRESENT)) != PRESENT
+                    || (long) ROWS.getAcquire(page, SlabHangmanStore.timing(row)) != timing
+                    || !ROWS.compareAndSet(page, offset + HEADER, header, 0L)) {
+                return null;
+            }
+            removed(page, row);
+            return STATUSES[(int) (header >>> STATUS_SHIFT) & 0x7];
+        }
+    }
+
+    // frees a row claimed by generateUniqueId that never had a game stored in it
+    private void releaseRow(long[] page, long row, long key) {
+        int offset = offset(row);
+        if (((long) ROWS.getAcquire(page, offset + HEADER) & (LOCKED | PRESENT)) == 0
+                && ROWS.compareAndSet(page, offset + KEY, key, 0L)) {
+            freeRows.add(row);
+        }
+    }
+
+    private long encodeHeader(GameDetail game) {
+        if (game.getGuessesRemaining() < 0 || game.getGuessesRemaining() > 0xff) {
+            throw new IllegalArgumentException("guessesRemaining out of range: " + game.getGuessesRemaining());
+        }
+        if (game.getNextGuessId() < 0 || game.getNextGuessId() > 0xffff) {
+            throw new IllegalArgumentException("nextGuessId out of range: " + game.getNextGuessId());
+        }
+        return wordIndex(game.getSecretWord())
+                | (long) game.getNextGuessId() << NEXT_GUESS_ID_SHIFT
+                | (long) game.getGuessesRemaining() << REMAINING_SHIFT
+                | (long) game.getGuesses().length() << GUESS_COUNT_SHIFT
+                | (long) game.getStatus().ordinal() << STATUS_SHIFT
+                | PRESENT;
+    }
+
+    private static long[] encodeGuesses(String guesses) {
+        if (guesses.length() > MAX_GUESSES) {
+            throw new IllegalArgumentException("too many guesses for the slab store: " + guesses.length());
+        }
+        long[] packed = new long[ROW_LONGS - GUESSES];
+        for (int loop = 0; loop < guesses.length(); loop++) {
+            char guess = guesses.charAt(loop);
+            if (guess == 0 || guess > 0xff) {
+                throw new IllegalArgumentException("guess can not be held in the slab store: " + guess);
+            }
+            packed[loop / 8] |= (long) guess << ((loop % 8) * 8);
+        }
+        return packed;
+    }
+
+    private int wordIndex(String word) {
+        Integer index = wordIndex.get(word);
+        if (index != null) {
+            return index;
+        }
+        // a lock rather than synchronized, so a virtual thread waiting on it gives up its carrier
+        wordLock.lock();
+        try {
+            return wordIndex.computeIfAbsent(word, this::addWord);
+        } finally {
+            wordLock.unlock();
+        }
+    }
+
+    // only called while holding wordLock
+    private int addWord(String word) {
+        int index = wordIndex.size();
+        if (index > WORD_MASK) {
+            throw new IllegalStateException("too many distinct words for the slab store");
+        }
+        String[] currentWords = words;
+        long[] currentMasks = wordMasks;
+        if (index == currentWords.length) {
+            currentWords = Arrays.copyOf(currentWords, index * 2);
+            currentMasks = Arrays.copyOf(currentMasks, index * 2);
+        }
+        currentWords[index] = word;
+        currentMasks[index] = LetterMask.of(word);
+        wordMasks = currentMasks;
+        words = currentWords;
+        return index;
+    }
+
+    private long[] page(long row) {
+        int pageNumber = (int) (row >>> PAGE_SHIFT);
+        long[] page = pages.get(pageNumber);
+        if (page == null) {
+            pages.compareAndSet(pageNumber, null, new long[PAGE_ROWS * ROW_LONGS + PAGE_ROWS]);
+            page = pages.get(pageNumber);
+        }
+        return page;
+    }
+
+    private long[] existingPage(long row) {
+        long pageNumber = row >>> PAGE_SHIFT;
+        return pageNumber < MAX_PAGES ? pages.get((int) pageNumber) : null;
+    }
+
+    private static int offset(long row) {
+        return (int) (row & (PAGE_ROWS - 1)) * ROW_LONGS;
+    }
+
+    // the expiry timing of a row, kept after all the page's rows
+    private static int timing(long row) {
+        return PAGE_ROWS * ROW_LONGS + (int) (row & (PAGE_ROWS - 1));
+    }
+
+    private static long parseKey(String gameId) {
+        return GameIdGenerator.decode(gameId);
+    }
+}
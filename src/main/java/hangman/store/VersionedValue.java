@@ -0,0 +1,17 @@
+package hangman.store;
+
+import org.immutables.value.Value;
+
+@Value.Immutable
+public interface VersionedValue {
+
+    @Value.Parameter
+    long getVersion();
+
+    @Value.Parameter
+    byte[] getValue();
+
+    static VersionedValue of(long version, byte[] value) {
+        return ImmutableVersionedValue.of(version, value);
+    }
+}
@@ -0,0 +1,80 @@
+package hangman;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// starts App and LiteApp in their own JVMs, and times each from launch to its first new game
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class LiteModeBenchmarkTest {
+
+    private static final int RUNS = 5;
+
+    @Test
+    void compareStartup() throws Exception {
+        for (Class<?> main : new Class<?>[]{App.class, LiteApp.class}) {
+            for (int run = 0; run < RUNS; run++) {
+                start(main);
+            }
+        }
+    }
+
+    private static void start(Class<?> main) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest newGame = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/hangman/games"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), "-Dserver.port=" + port, main.getName())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            int status;
+            while (true) {
+                try {
+                    status = client.send(newGame, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    break;
+                } catch (java.io.IOException e) {
+                    // not listening yet
+                    Thread.sleep(5);
+                }
+            }
+            long firstRequest = System.nanoTime() - start;
+            assertEquals(201, status);
+            // give the spring app a moment to finish anything it does after it starts listening
+            Thread.sleep(1000);
+            System.out.printf("main=%s first request=%dms rss=%dMB%n", main.getSimpleName(),
+                    firstRequest / 1_000_000, residentKb(process.pid()) / 1024);
+        } finally {
+            process.destroy();
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+
+    // linux only
+    private static long residentKb(long pid) throws Exception {
+        for (String line : Files.readAllLines(Path.of("/proc/" + pid + "/status"))) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        }
+        return -1;
+    }
+}
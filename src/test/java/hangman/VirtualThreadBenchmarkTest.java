@@ -0,0 +1,181 @@
+package hangman;
+
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.VirtualThreads;
+import hangman.store.HangmanStore;
+import hangman.store.MapHangmanStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// polls games on tomcat's worker pool and on virtual threads, against a store that takes 20ms a call
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class VirtualThreadBenchmarkTest {
+
+    private static final int REQUESTS = 20_000;
+    private static final int GAMES = 100;
+    private static final long STORE_MILLIS = 20;
+
+    @Test
+    void compareThreads() throws Exception {
+        for (boolean virtual : new boolean[]{false, true}) {
+            if (virtual && !VirtualThreads.isSupported()) {
+                System.out.println("virtual threads need Java 21 or later, this is " + Runtime.version());
+                continue;
+            }
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(App.class)
+                    .initializers(applicationContext -> ((GenericApplicationContext) applicationContext).registerBean(
+                            "slowStore", HangmanStore.class, SlowHangmanStore::new, definition -> definition.setPrimary(true)))
+                    // every poll goes to the store
+                    .properties("server.port=0", "hangman.api.response-cache.size=0", "hangman.threads.virtual=" + virtual)
+                    .run()) {
+                String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/hangman/games";
+                String[] gameIds = createGames(base);
+                for (int concurrency : new int[]{16, 256, 1024}) {
+                    run(virtual ? "virtual" : "platform", base, gameIds, concurrency);
+                }
+            }
+        }
+    }
+
+    private static String[] createGames(String base) throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        Pattern gameId = Pattern.compile("\"gameId\":\"([0-9a-z]+)\"");
+        String[] gameIds = new String[GAMES];
+        for (int loop = 0; loop < GAMES; loop++) {
+            String body = client.send(HttpRequest.newBuilder(URI.create(base))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString()).body();
+            Matcher matcher = gameId.matcher(body);
+            matcher.find();
+            gameIds[loop] = matcher.group(1);
+        }
+        return gameIds;
+    }
+
+    private static void run(String threads, String base, String[] gameIds, int concurrency) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(REQUESTS);
+        AtomicInteger failures = new AtomicInteger();
+        long[] latencies = new long[REQUESTS];
+        long start = System.nanoTime();
+        for (int loop = 0; loop < REQUESTS; loop++) {
+            int request = loop;
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            client.sendAsync(HttpRequest.newBuilder(URI.create(base + "/" + gameIds[loop % GAMES]))
+                    .timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        latencies[request] = System.nanoTime() - sent;
+                        if (error != null || response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                        inFlight.release();
+                        done.countDown();
+                    });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        System.out.printf("threads=%s concurrency=%d requests/s=%,d p50=%.2fms p99=%.2fms failures=%d%n",
+                threads, concurrency, REQUESTS * 1_000_000_000L / elapsed,
+                latencies[REQUESTS / 2] / 1e6, latencies[REQUESTS * 99 / 100] / 1e6, failures.get());
+    }
+
+    // stands in for a store across the network
+    static class SlowHangmanStore implements HangmanStore {
+
+        private final MapHangmanStore store = new MapHangmanStore(Duration.ofHours(1), Duration.ofDays(1));
+
+        SlowHangmanStore() {
+            store.start();
+        }
+
+        private static void pause() {
+            try {
+                Thread.sleep(STORE_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public String generateUniqueId() {
+            return store.generateUniqueId();
+        }
+
+        @Override
+        public Optional<GameDetail> loadGame(String gameId) {
+            pause();
+            return store.loadGame(gameId);
+        }
+
+        @Override
+        public void storeGame(GameDetail game) {
+            pause();
+            store.storeGame(game);
+        }
+
+        @Override
+        public void updateGame(GameDetail game, int nextGuessId) {
+            pause();
+            store.updateGame(game, nextGuessId);
+        }
+
+        @Override
+        public Iterator<GameDetail> scanGames(Set<GameStatus> statuses) {
+            return store.scanGames(statuses);
+        }
+
+        @Override
+        public boolean removeGame(String gameId, int nextGuessId) {
+            return store.removeGame(gameId, nextGuessId);
+        }
+
+        @Override
+        public long liveGames() {
+            return store.liveGames();
+        }
+
+        @Override
+        public long expiredGames() {
+            return store.expiredGames();
+        }
+
+        @Override
+        public long evictedGames() {
+            return store.evictedGames();
+        }
+
+        @Override
+        public long updates() {
+            return store.updates();
+        }
+
+        @Override
+        public long updateConflicts() {
+            return store.updateConflicts();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package hangman;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// compares the servlet (tomcat) and reactive (netty) modes under the same load
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class WebModeBenchmarkTest {
+
+    private static final int REQUESTS = 20_000;
+    private static final int GAMES = 100;
+
+    @Test
+    void compareWebModes() throws Exception {
+        for (String mode : new String[]{"servlet", "reactive"}) {
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(App.class)
+                    .properties("server.port=0", "spring.main.web-application-type=" + mode)
+                    .run()) {
+                String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/hangman/games";
+                String[] gameIds = createGames(base);
+                for (int concurrency : new int[]{16, 256, 2048}) {
+                    run(mode, base, gameIds, concurrency);
+                }
+            }
+        }
+    }
+
+    private static String[] createGames(String base) throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        Pattern gameId = Pattern.compile("\"gameId\":\"([0-9a-z]+)\"");
+        String[] gameIds = new String[GAMES];
+        for (int loop = 0; loop < GAMES; loop++) {
+            String body = client.send(HttpRequest.newBuilder(URI.create(base))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString()).body();
+            Matcher matcher = gameId.matcher(body);
+            matcher.find();
+            gameIds[loop] = matcher.group(1);
+        }
+        return gameIds;
+    }
+
+    // every request is a GET poll, with at most concurrency requests, and so connections, open at once
+    private static void run(String mode, String base, String[] gameIds, int concurrency) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(REQUESTS);
+        AtomicInteger failures = new AtomicInteger();
+        long[] latencies = new long[REQUESTS];
+        long start = System.nanoTime();
+        for (int loop = 0; loop < REQUESTS; loop++) {
+            int request = loop;
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            client.sendAsync(HttpRequest.newBuilder(URI.create(base + "/" + gameIds[loop % GAMES]))
+                    .timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        latencies[request] = System.nanoTime() - sent;
+                        if (error != null || response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                        inFlight.release();
+                        done.countDown();
+                    });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        System.out.printf("mode=%s concurrency=%d requests/s=%,d p50=%.2fms p99=%.2fms failures=%d%n",
+                mode, concurrency, REQUESTS * 1_000_000_000L / elapsed,
+                latencies[REQUESTS / 2] / 1e6, latencies[REQUESTS * 99 / 100] / 1e6, failures.get());
+    }
+}
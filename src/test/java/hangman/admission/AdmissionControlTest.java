@@ -0,0 +1,155 @@
+package hangman.admission;
+
+import hangman.admission.AdmissionControl.Decision;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlTest {
+
+    private static final long MILLIS = 1_000_000;
+
+    private final AtomicLong now = new AtomicLong(-5_000 * MILLIS);
+
+    @Test
+    void testTokenBucket() {
+        // 10 a second, so one every 100ms, in bursts of 3
+        TokenBucket bucket = new TokenBucket("client", 10, 3, now.get());
+        for (int loop = 0; loop < 3; loop++) {
+            assertTrue(bucket.tryTake(now.get()));
+        }
+        assertFalse(bucket.tryTake(now.get()));
+        assertFalse(bucket.tryTake(now.addAndGet(99 * MILLIS)));
+        assertTrue(bucket.tryTake(now.addAndGet(MILLIS)));
+        assertFalse(bucket.tryTake(now.get()));
+
+        // a long wait only refills up to the burst
+        now.addAndGet(10_000 * MILLIS);
+        for (int loop = 0; loop < 3; loop++) {
+            assertTrue(bucket.tryTake(now.get()));
+        }
+        assertFalse(bucket.tryTake(now.get()));
+    }
+
+    @Test
+    void testClientAndGameLimits() {
+        AdmissionControl admission = admission(100);
+
+        // the client's burst of 4 runs out first
+        for (int loop = 0; loop < 4; loop++) {
+            assertEquals(Decision.ADMITTED, admission.admit("10.0.0.1", "game" + loop));
+        }
+        assertEquals(Decision.CLIENT_LIMITED, admission.admit("10.0.0.1", "game9"));
+        // the game's burst of 2 is shared by every client
+        assertEquals(Decision.ADMITTED, admission.admit("10.0.0.2", "game0"));
+        assertEquals(Decision.GAME_LIMITED, admission.admit("10.0.0.3", "game0"));
+        // a batch has no game, and a forwarded guess no client
+        assertEquals(Decision.ADMITTED, admission.admit("10.0.0.3", null));
+        assertEquals(Decision.ADMITTED, admission.admit(null, "game1"));
+        assertEquals(Decision.GAME_LIMITED, admission.admit(null, "game1"));
+
+        now.addAndGet(1_000 * MILLIS);
+        assertEquals(Decision.ADMITTED, admission.admit("10.0.0.1", "game0"));
+        assertEquals(8, admission.count(Decision.ADMITTED));
+        assertEquals(1, admission.count(Decision.CLIENT_LIMITED));
+        assertEquals(2, admission.count(Decision.GAME_LIMITED));
+    }
+
+    @Test
+    void testBatchesAreChargedPerGuess() {
+        AdmissionControl admission = admission(100);
+
+        // 3 guesses, 2 of them on game0, use up most of the client's burst of 4 and all of game0's
+        assertEquals(Decision.ADMITTED, admission.admitBatch("10.0.0.1", List.of("game0", "game1", "game0")));
+        assertEquals(Decision.GAME_LIMITED, admission.admit("10.0.0.2", "game0"));
+        assertEquals(Decision.ADMITTED, admission.admit("10.0.0.1", "game2"));
+        assertEquals(Decision.CLIENT_LIMITED, admission.admitBatch("10.0.0.1", List.of("game3")));
+        assertEquals(Decision.GAME_LIMITED, admission.admitBatch(null, List.of("game5", "game0", "game0")));
+
+        // a batch larger than the burst gets through a full bucket, and the client then waits it out
+        now.addAndGet(10_000 * MILLIS);
+        assertEquals(Decision.ADMITTED, admission.admitBatch("10.0.0.1", List.of("a", "b", "c", "d", "e", "f", "g", "h")));
+        now.addAndGet(2_000 * MILLIS);
+        assertEquals(Decision.CLIENT_LIMITED, admission.admit("10.0.0.1", "game4"));
+        now.addAndGet(1_000 * MILLIS);
+        assertEquals(Decision.ADMITTED, admission.admit("10.0.0.1", "game4"));
+
+        assertEquals(13, admission.count(Decision.ADMITTED));
+        assertEquals(2, admission.count(Decision.CLIENT_LIMITED));
+        assertEquals(4, admission.count(Decision.GAME_LIMITED));
+    }
+
+    @Test
+    void testBatchesArePrecheckedWithoutTakingAnything() {
+        AdmissionControl admission = admission(100);
+        assertEquals(Decision.ADMITTED, admission.precheckBatch("10.0.0.1"));
+        assertEquals(Decision.ADMITTED, admission.admitBatch("10.0.0.1", List.of("a", "b", "c", "d")));
+        assertEquals(Decision.CLIENT_LIMITED, admission.precheckBatch("10.0.0.1"));
+        // a node's forwarded batch has no client to check
+        assertEquals(Decision.ADMITTED, admission.precheckBatch(null));
+
+        assertEquals(4, admission.count(Decision.ADMITTED));
+        assertEquals(1, admission.count(Decision.CLIENT_LIMITED));
+    }
+
+    @Test
+    void testTrackingIsBounded() {
+        AdmissionControl admission = admission(100);
+        for (int loop = 0; loop < 4; loop++) {
+            admission.admit("bot", null);
+        }
+        assertEquals(Decision.CLIENT_LIMITED, admission.admit("bot", null));
+
+        for (int loop = 0; loop < 10_000; loop++) {
+            assertEquals(Decision.ADMITTED, admission.admit("10.0." + loop / 256 + "." + loop % 256, null));
+        }
+        assertEquals(128, admission.trackedClients());
+        // the clients pushed out to make room were the ones with the most to spare, never the empty bucket
+        assertEquals(Decision.CLIENT_LIMITED, admission.admit("bot", null));
+    }
+
+    @Test
+    void testSheddingWhenQueued() {
+        AdmissionControl admission = admission(100);
+
+        // some slow guesses are fine, as long as one in each window is quick
+        admission.served(200 * MILLIS);
+        admission.served(2 * MILLIS);
+        now.addAndGet(100 * MILLIS);
+        assertEquals(Decision.ADMITTED, admission.admit("10.0.0.1", null));
+        assertFalse(admission.isOverloaded());
+
+        // a window where every guess was slow sheds the next one
+        admission.served(60 * MILLIS);
+        admission.served(80 * MILLIS);
+        now.addAndGet(100 * MILLIS);
+        assertEquals(Decision.OVERLOADED, admission.admit("10.0.0.1", null));
+        assertEquals(Decision.OVERLOADED, admission.admit("10.0.0.2", null));
+        assertTrue(admission.isOverloaded());
+
+        // nothing was served while shedding, so the window after lets guesses in again
+        now.addAndGet(100 * MILLIS);
+        assertEquals(Decision.ADMITTED, admission.admit("10.0.0.2", null));
+        assertEquals(2, admission.count(Decision.OVERLOADED));
+    }
+
+    @Test
+    void testGuessPaths() {
+        assertTrue(AdmissionControl.isGuess("PUT", "/api/hangman/games/a657aa"));
+        assertTrue(AdmissionControl.isGuess("POST", "/api/hangman/guesses"));
+        assertFalse(AdmissionControl.isGuess("GET", "/api/hangman/games/a657aa"));
+        assertFalse(AdmissionControl.isGuess("POST", "/api/hangman/games"));
+        assertFalse(AdmissionControl.isGuess("PUT", "/api/hangman/games/a657aa/hint"));
+        assertEquals("a657aa", AdmissionControl.gameOf("/api/hangman/games/a657aa"));
+        assertNull(AdmissionControl.gameOf("/api/hangman/guesses"));
+    }
+
+    // clients get 2 a second in bursts of 4, games 1 a second in bursts of 2, and the target is 50ms
+    private AdmissionControl admission(long maxTracked) {
+        return new AdmissionControl(now::get, 2, 4, 1, 2, maxTracked, Duration.ofMillis(50), Duration.ofMillis(100));
+    }
+}
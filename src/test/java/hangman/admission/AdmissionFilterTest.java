@@ -0,0 +1,75 @@
+package hangman.admission;
+
+import hangman.App;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = App.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"hangman.admission.enabled=true", "hangman.admission.client-header=X-Client",
+                "hangman.admission.client.rate=0.1", "hangman.admission.client.burst=5",
+                "hangman.admission.game.rate=0.1", "hangman.admission.game.burst=3"})
+class AdmissionFilterTest {
+
+    private static final Pattern GAME_ID = Pattern.compile("\"gameId\":\"([0-9a-z]+)\"");
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Test
+    void testGuessesAreLimited() {
+        String game = "/api/hangman/games/" + newGame();
+        // the game allows a burst of 3 guesses, whichever client makes them
+        for (int loop = 0; loop < 3; loop++) {
+            assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, guess(game, "player" + loop, loop).getStatusCode());
+        }
+        ResponseEntity<String> refused = guess(game, "player3", 3);
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, refused.getStatusCode());
+        assertEquals("1", refused.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertNull(refused.getBody());
+
+        // only guesses are limited
+        assertEquals(HttpStatus.OK, rest.getForEntity(game, String.class).getStatusCode());
+
+        // and a client allows a burst of 5, over any games
+        String other = "/api/hangman/games/" + newGame();
+        String third = "/api/hangman/games/" + newGame();
+        for (int loop = 0; loop < 3; loop++) {
+            assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, guess(other, "bot", loop).getStatusCode());
+        }
+        assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, guess(third, "bot", 0).getStatusCode());
+        assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, guess(third, "bot", 1).getStatusCode());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, guess(third, "bot", 2).getStatusCode());
+        assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, guess(third, "player", 2).getStatusCode());
+
+        String metrics = rest.getForObject("/metrics", String.class);
+        assertTrue(metrics.contains("hangman_admission_guesses_total{decision=\"game_limited\"} 1\n"), metrics);
+        assertTrue(metrics.contains("hangman_admission_guesses_total{decision=\"client_limited\"} 1\n"), metrics);
+    }
+
+    private ResponseEntity<String> guess(String game, String client, int guessId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Client", client);
+        return rest.exchange(game + "?guess=" + (char) ('0' + guessId) + "&guessId=" + guessId,
+                HttpMethod.PUT, new HttpEntity<>(headers), String.class);
+    }
+
+    private String newGame() {
+        ResponseEntity<String> created = rest.postForEntity("/api/hangman/games", null, String.class);
+        assertEquals(HttpStatus.CREATED, created.getStatusCode());
+        Matcher gameId = GAME_ID.matcher(created.getBody());
+        assertTrue(gameId.find());
+        return gameId.group(1);
+    }
+}
@@ -0,0 +1,100 @@
+package hangman.admission;
+
+import hangman.App;
+import hangman.cluster.Cluster;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// a cluster of one, which owns every game, so forwarded guesses are served where they land
+@SpringBootTest(classes = App.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"hangman.admission.enabled=true", "hangman.admission.client-header=X-Client",
+                "hangman.admission.client.rate=0.1", "hangman.admission.client.burst=3",
+                // a cold start is slow enough to look like a standing queue
+                "hangman.admission.latency-target=1m",
+                "hangman.cluster.nodes=0=http://localhost:1", "hangman.cluster.token=" + AdmissionForwardingTest.TOKEN})
+class AdmissionForwardingTest {
+
+    static final String TOKEN = "test-token";
+
+    private static final Pattern GAME_ID = Pattern.compile("\"gameId\":\"([0-9a-z]+)\"");
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Test
+    void testOnlyNodesSkipTheClientLimit() {
+        String game = "/api/hangman/games/" + newGame();
+        // another node already held the guess to its client's limit
+        for (int loop = 0; loop < 4; loop++) {
+            assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, guess(game, "forwarder", loop, TOKEN).getStatusCode());
+        }
+
+        // a client claiming to be a node is held to its own
+        String other = "/api/hangman/games/" + newGame();
+        for (int loop = 0; loop < 3; loop++) {
+            assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, guess(other, "spoofer", loop, "guessed").getStatusCode());
+        }
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, guess(other, "spoofer", 3, "guessed").getStatusCode());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, guess(other, "spoofer", 3, null).getStatusCode());
+    }
+
+    @Test
+    void testBatchesAreChargedPerGuess() {
+        String game = newGame();
+        String batch = "[{\"gameId\":\"" + game + "\",\"guess\":\"0\",\"guessId\":0},"
+                + "{\"gameId\":\"" + game + "\",\"guess\":\"1\",\"guessId\":1}]";
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Client", "batcher");
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        // the second batch takes the last of the burst of 3 and borrows the other
+        assertEquals(HttpStatus.OK, rest.postForEntity("/api/hangman/guesses", new HttpEntity<>(batch, headers), String.class).getStatusCode());
+        assertEquals(HttpStatus.OK, rest.postForEntity("/api/hangman/guesses", new HttpEntity<>(batch, headers), String.class).getStatusCode());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, rest.postForEntity("/api/hangman/guesses", new HttpEntity<>(batch, headers), String.class).getStatusCode());
+    }
+
+    @Test
+    void testOversizedBatchesAreNotRead() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Client", "flooder");
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        // more than 1000 items of 256 bytes could take, and no guess is charged for it
+        String body = "[" + "{\"gameId\":\"x\",\"guess\":\"a\",\"guessId\":0},".repeat(8000) + "]";
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, rest.postForEntity("/api/hangman/guesses", new HttpEntity<>(body, headers), String.class).getStatusCode());
+
+        String batch = "[" + "{\"gameId\":\"x\",\"guess\":\"a\",\"guessId\":0},".repeat(1001);
+        batch = batch.substring(0, batch.length() - 1) + "]";
+        assertEquals(HttpStatus.BAD_REQUEST, rest.postForEntity("/api/hangman/guesses", new HttpEntity<>(batch, headers), String.class).getStatusCode());
+    }
+
+    private ResponseEntity<String> guess(String game, String client, int guessId, String token) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Client", client);
+        headers.set(Cluster.FORWARDED, "true");
+        if (token != null) {
+            headers.set(Cluster.TOKEN, token);
+        }
+        return rest.exchange(game + "?guess=" + (char) ('0' + guessId) + "&guessId=" + guessId,
+                HttpMethod.PUT, new HttpEntity<>(headers), String.class);
+    }
+
+    private String newGame() {
+        ResponseEntity<String> created = rest.postForEntity("/api/hangman/games", null, String.class);
+        assertEquals(HttpStatus.CREATED, created.getStatusCode());
+        Matcher gameId = GAME_ID.matcher(created.getBody());
+        assertTrue(gameId.find());
+        return gameId.group(1);
+    }
+}
@@ -2,8 +2,12 @@ package hangman.api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import hangman.metrics.Metrics;
+import hangman.service.Dictionary;
 import hangman.service.HangmanService;
+import hangman.service.WordIndex;
 import hangman.store.HangmanStore;
+import hangman.store.MapHangmanStore;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,13 +18,24 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
-@WebMvcTest(controllers = {ApiHandler.class, HangmanService.class, HangmanStore.class})
+@WebMvcTest(controllers = {ApiHandler.class, ResponseCache.class, GameEvents.class, HangmanService.class, Dictionary.class, WordIndex.class, MapHangmanStore.class, Metrics.class},
+        properties = {"hangman.api.events.senders=2", "hangman.api.events.send-timeout=2s"})
 class ApiHandlerTest {
 
     @Autowired
@@ -32,6 +47,9 @@ class ApiHandlerTest {
     @Autowired
     private HangmanStore store;
 
+    @Autowired
+    private GameEvents events;
+
     @Test
     void getGameStateNoSuchGame() throws Exception {
         mvc.perform(get("/api/hangman/games/xyz")
@@ -58,6 +76,19 @@ class ApiHandlerTest {
         assertFalse(result.getResponse().getContentAsString().contains(secretWord));
     }
 
+    @Test
+    void newGameOfLength() throws Exception {
+        MvcResult result = mvc.perform(post("/api/hangman/games")
+                .param("length", "5"))
+                .andExpect(status().isCreated())
+                .andReturn();
+        assertEquals("     ", getGameResponse(result).getState().getMatchingLetters());
+
+        mvc.perform(post("/api/hangman/games")
+                .param("length", "4"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testSharingGame() throws Exception {
         MvcResult result = mvc.perform(post("/api/hangman/games")
@@ -119,6 +150,35 @@ class ApiHandlerTest {
         assertEquals("[0]", game.getState().getFailedGuesses().toString());
     }
 
+    @Test
+    void testGuessingAFinishedGame() throws Exception {
+        String gameId = service.createNewGame().getGameId();
+        for (int loop = 0; loop < 10; loop++) {
+            service.applyGuess(gameId, Character.forDigit(loop, 10), loop);
+        }
+        // the same status a batch gives it
+        mvc.perform(put("/api/hangman/games/" + gameId)
+                .param("guess", "a")
+                .param("guessId", "10"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void testGuessesMustBeIso88591() throws Exception {
+        String gameId = service.createNewGame().getGameId();
+        mvc.perform(put("/api/hangman/games/" + gameId)
+                .param("guess", "\u20ac")
+                .param("guessId", "0"))
+                .andExpect(status().isBadRequest());
+        MvcResult result = mvc.perform(post("/api/hangman/guesses")
+                .content("[{\"gameId\":\"" + gameId + "\",\"guess\":\"\u20ac\",\"guessId\":0}]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        GuessResult[] results = getMapper().readValue(result.getResponse().getContentAsString(), ImmutableGuessResult[].class);
+        assertEquals(400, results[0].getStatus());
+    }
+
     @Test
     void testCaseInsensitive() throws Exception {
         MvcResult result = mvc.perform(post("/api/hangman/games")
@@ -181,10 +241,397 @@ class ApiHandlerTest {
 
     }
 
+    @Test
+    void testMergingGuesses() throws Exception {
+        GameResponse game = getGameResponse(mvc.perform(post("/api/hangman/games"))
+                .andExpect(status().isCreated())
+                .andReturn());
+
+        mvc.perform(put("/api/hangman/games/" + game.getGameId())
+                .param("guess", "0")
+                .param("guessId", "0"))
+                .andExpect(status().isOk());
+        mvc.perform(put("/api/hangman/games/" + game.getGameId())
+                .param("guess", "1")
+                .param("guessId", "0"))
+                .andExpect(status().is(409));
+        MvcResult result = mvc.perform(put("/api/hangman/games/" + game.getGameId())
+                .param("guess", "1")
+                .param("guessId", "0")
+                .param("merge", "true"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2\""))
+                .andReturn();
+        assertEquals(Arrays.asList('0', '1'), getGameResponse(result).getState().getFailedGuesses());
+    }
+
+    @Test
+    void testConditionalGet() throws Exception {
+        MvcResult result = mvc.perform(post("/api/hangman/games")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("ETag", "\"0\""))
+                .andReturn();
+        GameResponse game = getGameResponse(result);
+
+        mvc.perform(get("/api/hangman/games/" + game.getGameId())
+                .header("If-None-Match", "\"0\""))
+                .andExpect(status().isNotModified());
+
+        mvc.perform(put("/api/hangman/games/" + game.getGameId())
+                .param("guess", "0")
+                .param("guessId", "0"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""));
+
+        result = mvc.perform(get("/api/hangman/games/" + game.getGameId())
+                .header("If-None-Match", "\"0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""))
+                .andReturn();
+        assertEquals(1, getGameResponse(result).getState().getNextGuessId());
+
+        mvc.perform(get("/api/hangman/games/" + game.getGameId())
+                .header("If-None-Match", "\"1\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void testGamesMovedElsewhere() throws Exception {
+        MvcResult result = mvc.perform(post("/api/hangman/games"))
+                .andExpect(status().isCreated())
+                .andReturn();
+        String gameId = getGameResponse(result).getGameId();
+        mvc.perform(get("/api/hangman/games/" + gameId))
+                .andExpect(header().string("ETag", "\"0\""));
+
+        // a guess that doesn't come through the api, as from another node
+        service.applyGuess(gameId, '0', 0, false);
+        mvc.perform(get("/api/hangman/games/" + gameId)
+                .header("If-None-Match", "\"0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""));
+
+        service.applyGuess(gameId, '1', 1, false);
+        mvc.perform(put("/api/hangman/games/" + gameId)
+                .param("guess", "2")
+                .param("guessId", "1"))
+                .andExpect(status().isConflict());
+        mvc.perform(get("/api/hangman/games/" + gameId))
+                .andExpect(header().string("ETag", "\"2\""));
+
+        // expired from the store
+        assertTrue(store.removeGame(gameId, 2));
+        mvc.perform(get("/api/hangman/games/" + gameId))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testBinaryResponses() throws Exception {
+        MvcResult result = mvc.perform(post("/api/hangman/games")
+                .header("Accept", GameWriter.BINARY_VALUE))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Content-Type", GameWriter.BINARY_VALUE))
+                .andExpect(header().string("Vary", "Accept"))
+                .andReturn();
+        byte[] body = result.getResponse().getContentAsByteArray();
+        assertEquals(1, body[0]);
+        String gameId = new String(body, 2, body[1], "UTF-8");
+
+        result = mvc.perform(put("/api/hangman/games/" + gameId)
+                .param("guess", "0")
+                .param("guessId", "0")
+                .header("Accept", GameWriter.BINARY_VALUE + ", application/json;q=0.5"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", GameWriter.BINARY_VALUE))
+                .andReturn();
+        assertArrayEquals(GameWriter.binary(store.loadGame(gameId).get()), result.getResponse().getContentAsByteArray());
+
+        result = mvc.perform(get("/api/hangman/games/" + gameId)
+                .header("Accept", "*/*"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(header().string("ETag", "\"1\""))
+                .andReturn();
+        assertEquals(1, getGameResponse(result).getState().getNextGuessId());
+
+        // a tag only matches the representation it came with
+        mvc.perform(get("/api/hangman/games/" + gameId)
+                .header("Accept", GameWriter.BINARY_VALUE)
+                .header("If-None-Match", "\"1\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-b\""));
+        mvc.perform(get("/api/hangman/games/" + gameId)
+                .header("Accept", GameWriter.BINARY_VALUE)
+                .header("If-None-Match", "\"1-b\""))
+                .andExpect(status().isNotModified());
+        mvc.perform(get("/api/hangman/games/" + gameId)
+                .header("If-None-Match", "\"1-b\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testBulkCreate() throws Exception {
+        MvcResult result = mvc.perform(post("/api/hangman/games/bulk")
+                .param("count", "3"))
+                .andExpect(status().isOk())
+                .andReturn();
+        GameResponse[] games = getMapper().readValue(result.getResponse().getContentAsString(), ImmutableGameResponse[].class);
+        assertEquals(3, games.length);
+        for (GameResponse game : games) {
+            assertTrue(store.loadGame(game.getGameId()).isPresent());
+        }
+
+        mvc.perform(post("/api/hangman/games/bulk")
+                .param("count", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testScanAndLookup() throws Exception {
+        GameResponse first = getGameResponse(mvc.perform(post("/api/hangman/games")).andReturn());
+        GameResponse second = getGameResponse(mvc.perform(post("/api/hangman/games")).andReturn());
+        mvc.perform(put("/api/hangman/games/" + second.getGameId()).param("guess", "0").param("guessId", "0"))
+                .andExpect(status().isOk());
+
+        MvcResult scanned = mvc.perform(get("/api/hangman/games").param("status", "IN_PROGRESS"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", ApiHandler.NDJSON_VALUE))
+                .andReturn();
+        List<String> lines = Arrays.asList(scanned.getResponse().getContentAsString().split("\n"));
+        for (String line : lines) {
+            assertEquals(GameStatus.IN_PROGRESS, getMapper().readValue(line, ImmutableGameResponse.class).getState().getStatus());
+        }
+        assertTrue(lines.contains(new String(GameWriter.json(store.loadGame(second.getGameId()).get()))));
+        assertFalse(lines.contains(new String(GameWriter.json(store.loadGame(first.getGameId()).get()))));
+        assertTrue(mvc.perform(get("/api/hangman/games")).andReturn().getResponse().getContentAsString()
+                .contains("\"gameId\":\"" + first.getGameId() + "\""));
+        mvc.perform(get("/api/hangman/games").param("status", "PAUSED"))
+                .andExpect(status().isBadRequest());
+
+        MvcResult looked = mvc.perform(post("/api/hangman/games/lookup")
+                .content("[\"" + second.getGameId() + "\",\"not-a-game\",\"" + first.getGameId() + "\"]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        String[] found = looked.getResponse().getContentAsString().split("\n");
+        assertEquals(2, found.length);
+        assertEquals(second.getGameId(), getMapper().readValue(found[0], ImmutableGameResponse.class).getGameId());
+        assertEquals(first.getGameId(), getMapper().readValue(found[1], ImmutableGameResponse.class).getGameId());
+    }
+
+    @Test
+    void testBatchGuesses() throws Exception {
+        GameResponse game = getGameResponse(mvc.perform(post("/api/hangman/games"))
+                .andExpect(status().isCreated())
+                .andReturn());
+        String secretWord = store.loadGame(game.getGameId()).get().getSecretWord();
+        String gameId = game.getGameId();
+
+        String batch = "[" +
+                "{\"gameId\":\"" + gameId + "\",\"guess\":\"" + secretWord.charAt(0) + "\",\"guessId\":0}," +
+                "{\"gameId\":\"" + gameId + "\",\"guess\":\"0\",\"guessId\":1}," +
+                "{\"gameId\":\"" + gameId + "\",\"guess\":\"1\",\"guessId\":1}," +
+                "{\"gameId\":\"not-a-game\",\"guess\":\"a\",\"guessId\":0}" +
+                "]";
+        MvcResult result = mvc.perform(post("/api/hangman/guesses")
+                .content(batch)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        GuessResult[] results = getMapper().readValue(result.getResponse().getContentAsString(), ImmutableGuessResult[].class);
+
+        assertEquals(200, results[0].getStatus());
+        assertEquals(1, results[0].getGame().get().getState().getNextGuessId());
+        assertEquals(200, results[1].getStatus());
+        assertEquals("[0]", results[1].getGame().get().getState().getFailedGuesses().toString());
+        assertEquals(409, results[2].getStatus());
+        assertEquals(404, results[3].getStatus());
+        assertEquals(2, store.loadGame(gameId).get().getNextGuessId());
+    }
+
+    @Test
+    void testHint() throws Exception {
+        mvc.perform(get("/api/hangman/games/xyz/hint"))
+                .andExpect(status().isNotFound());
+
+        GameResponse game = getGameResponse(mvc.perform(post("/api/hangman/games"))
+                .andExpect(status().isCreated())
+                .andReturn());
+        HintResponse hint = getHintResponse(mvc.perform(get("/api/hangman/games/" + game.getGameId() + "/hint"))
+                .andExpect(status().isOk())
+                .andReturn());
+        assertEquals(game.getGameId(), hint.getGameId());
+        assertEquals(0, hint.getNextGuessId());
+        assertTrue(hint.getLetter().isPresent());
+        assertTrue(hint.getCandidates() >= hint.getMatches() && hint.getMatches() >= 1);
+
+        // taking the hint narrows the candidates down, to words with the letter where the secret word has it
+        String secretWord = store.loadGame(game.getGameId()).get().getSecretWord();
+        service.applyGuess(game.getGameId(), hint.getLetter().get(), 0);
+        HintResponse next = getHintResponse(mvc.perform(get("/api/hangman/games/" + game.getGameId() + "/hint"))
+                .andExpect(status().isOk())
+                .andReturn());
+        assertEquals(1, next.getNextGuessId());
+        assertNotEquals(hint.getLetter(), next.getLetter());
+        assertTrue(next.getCandidates() >= 1);
+        if (secretWord.indexOf(hint.getLetter().get()) >= 0) {
+            assertTrue(next.getCandidates() <= hint.getMatches());
+        } else {
+            assertEquals(hint.getCandidates() - hint.getMatches(), next.getCandidates());
+        }
+    }
+
+    @Test
+    void testEvents() throws Exception {
+        mvc.perform(get("/api/hangman/games/not-a-game/events"))
+                .andExpect(status().isNotFound());
+
+        GameResponse game = getGameResponse(mvc.perform(post("/api/hangman/games"))
+                .andExpect(status().isCreated())
+                .andReturn());
+        MvcResult stream = mvc.perform(get("/api/hangman/games/" + game.getGameId() + "/events"))
+                .andExpect(request().asyncStarted())
+                .andExpect(header().string("Content-Type", MediaType.TEXT_EVENT_STREAM_VALUE))
+                .andReturn();
+        awaitContent(stream, "id:0\nevent:game\ndata:{");
+
+        // ten wrong guesses lose the game, which ends the stream
+        for (int loop = 0; loop < 10; loop++) {
+            service.applyGuess(game.getGameId(), Character.forDigit(loop, 10), loop);
+        }
+        awaitContent(stream, "id:10\n");
+        String content = stream.getResponse().getContentAsString();
+        assertEquals(11, content.split("event:game").length - 1);
+        assertTrue(content.contains("\"status\":\"LOST\""));
+        for (int wait = 0; wait < 100 && events.watchedGames() > 0; wait++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, events.watchedGames());
+    }
+
+    @Test
+    void testSlowSubscribersHoldUpNobodyElse() throws Exception {
+        String gameId = service.createNewGame().getGameId();
+        CountDownLatch stalled = new CountDownLatch(1);
+        List<String> slow = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> slowDone = new CompletableFuture<>();
+        events.subscribe(gameId, new GameEvents.Subscriber() {
+            @Override
+            public void send(byte[] event) throws Exception {
+                // a client that has stopped reading
+                stalled.await();
+                slow.add(new String(event, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void complete() {
+                slowDone.complete(null);
+            }
+        }).join();
+        List<String> fast = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> fastDone = new CompletableFuture<>();
+        events.subscribe(gameId, new GameEvents.Subscriber() {
+            @Override
+            public void send(byte[] event) {
+                fast.add(new String(event, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void complete() {
+                fastDone.complete(null);
+            }
+        }).join();
+
+        for (int loop = 0; loop < 10; loop++) {
+            service.applyGuess(gameId, Character.forDigit(loop, 10), loop);
+        }
+        fastDone.get(5, TimeUnit.SECONDS);
+        assertEquals(11, fast.size());
+        assertTrue(slow.isEmpty());
+
+        stalled.countDown();
+        slowDone.get(5, TimeUnit.SECONDS);
+        assertTrue(slow.get(slow.size() - 1).startsWith("id:10\n"));
+    }
+
+    @Test
+    void testSubscribersThatNeverReadAreCutOff() throws Exception {
+        // more clients that have stopped reading than there are senders
+        long stalledBefore = events.stalledSubscribers();
+        String stuckGameId = service.createNewGame().getGameId();
+        CountDownLatch neverRead = new CountDownLatch(1);
+        List<CompletableFuture<Void>> stuckDone = new ArrayList<>();
+        for (int loop = 0; loop < 3; loop++) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            stuckDone.add(done);
+            events.subscribe(stuckGameId, new GameEvents.Subscriber() {
+                @Override
+                public void send(byte[] event) throws Exception {
+                    neverRead.await();
+                }
+
+                @Override
+                public void complete() {
+                    done.complete(null);
+                }
+            }).join();
+        }
+
+        // another game's stream still flows once the stuck sends are given up on
+        String gameId = service.createNewGame().getGameId();
+        List<String> received = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        events.subscribe(gameId, new GameEvents.Subscriber() {
+            @Override
+            public void send(byte[] event) {
+                received.add(new String(event, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void complete() {
+                done.complete(null);
+            }
+        }).join();
+        for (int loop = 0; loop < 10; loop++) {
+            service.applyGuess(gameId, Character.forDigit(loop, 10), loop);
+        }
+        done.get(10, TimeUnit.SECONDS);
+        assertTrue(received.get(received.size() - 1).startsWith("id:10\n"));
+        assertTrue(events.stalledSubscribers() - stalledBefore >= 2);
+
+        // the last stuck send got a sender of its own, and is cut off in turn
+        for (int wait = 0; wait < 100 && events.stalledSubscribers() - stalledBefore < 3; wait++) {
+            Thread.sleep(50);
+        }
+        assertEquals(3, events.stalledSubscribers() - stalledBefore);
+
+        // once their writes return, the cut off streams are ended for the clients to reconnect
+        neverRead.countDown();
+        for (CompletableFuture<Void> stuck : stuckDone) {
+            stuck.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void awaitContent(MvcResult result, String expected) throws Exception {
+        for (int wait = 0; wait < 100 && !result.getResponse().getContentAsString().contains(expected); wait++) {
+            Thread.sleep(50);
+        }
+        assertTrue(result.getResponse().getContentAsString().contains(expected));
+    }
+
     private GameResponse getGameResponse(MvcResult result) throws com.fasterxml.jackson.core.JsonProcessingException, UnsupportedEncodingException {
+        return getMapper().readValue(result.getResponse().getContentAsString(), ImmutableGameResponse.class);
+    }
+
+    private HintResponse getHintResponse(MvcResult result) throws com.fasterxml.jackson.core.JsonProcessingException, UnsupportedEncodingException {
+        return getMapper().readValue(result.getResponse().getContentAsString(), ImmutableHintResponse.class);
+    }
+
+    private ObjectMapper getMapper() {
         ObjectMapper mapper = new ObjectMapper();
         mapper.registerModule(new Jdk8Module());
-        return mapper.readValue(result.getResponse().getContentAsString(), ImmutableGameResponse.class);
+        return mapper;
     }
 
 }
\ No newline at end of file
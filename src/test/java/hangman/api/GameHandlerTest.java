@@ -0,0 +1,291 @@
+package hangman.api;
+
+import hangman.App;
+import hangman.store.HangmanStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = App.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.main.web-application-type=reactive")
+class GameHandlerTest {
+
+    @Autowired
+    private WebTestClient client;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private HangmanStore store;
+
+    @Test
+    void getGameStateNoSuchGame() {
+        client.get().uri("/api/hangman/games/xyz")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void testMetrics() {
+        client.get().uri("/api/hangman/games/nosuchgame").exchange().expectStatus().isNotFound();
+        String metrics = client.get().uri("/metrics")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+        assertTrue(metrics.contains("hangman_http_responses_total{method=\"GET\",path=\"/api/hangman/games/{gameId}\",status=\"404\"}"));
+        client.get().uri("/health").exchange().expectStatus().isOk();
+    }
+
+    @Test
+    void testPlayingAGame() {
+        GameResponse game = client.post().uri("/api/hangman/games")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().valueMatches("Location", ".*/api/hangman/games/[0-9a-z]+")
+                .expectBody(ImmutableGameResponse.class)
+                .returnResult().getResponseBody();
+        assertEquals(10, game.getState().getGuessesRemaining());
+
+        String secretWord = store.loadGame(game.getGameId()).get().getSecretWord();
+        GameResponse guessed = client.put().uri("/api/hangman/games/{gameId}?guess={guess}&guessId=0",
+                game.getGameId(), Character.toUpperCase(secretWord.charAt(0)))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"1\"")
+                .expectBody(ImmutableGameResponse.class)
+                .returnResult().getResponseBody();
+        assertTrue(guessed.getState().getMatchingLetters().startsWith(secretWord.substring(0, 1)));
+
+        client.put().uri("/api/hangman/games/{gameId}?guess=0&guessId=0", game.getGameId())
+                .exchange()
+                .expectStatus().isEqualTo(409);
+
+        client.get().uri("/api/hangman/games/{gameId}", game.getGameId())
+                .header("If-None-Match", "\"1\"")
+                .exchange()
+                .expectStatus().isNotModified();
+
+        // the same stale guess, merged onto the current game
+        guessed = client.put().uri("/api/hangman/games/{gameId}?guess=0&guessId=0&merge=true", game.getGameId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"2\"")
+                .expectBody(ImmutableGameResponse.class)
+                .returnResult().getResponseBody();
+        assertEquals(2, guessed.getState().getNextGuessId());
+
+        GameResponse polled = client.get().uri("/api/hangman/games/{gameId}", game.getGameId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ImmutableGameResponse.class)
+                .returnResult().getResponseBody();
+        assertEquals(guessed, polled);
+    }
+
+    @Test
+    void testScanAndLookup() {
+        GameResponse first = client.post().uri("/api/hangman/games")
+                .exchange()
+                .expectBody(ImmutableGameResponse.class)
+                .returnResult().getResponseBody();
+        GameResponse second = client.post().uri("/api/hangman/games")
+                .exchange()
+                .expectBody(ImmutableGameResponse.class)
+                .returnResult().getResponseBody();
+        client.put().uri("/api/hangman/games/{gameId}?guess=0&guessId=0", second.getGameId())
+                .exchange()
+                .expectStatus().isOk();
+
+        String listed = client.get().uri("/api/hangman/games?status=NEW")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(ApiHandler.NDJSON_VALUE)
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+        assertTrue(listed.contains("\"gameId\":\"" + first.getGameId() + "\""));
+        assertFalse(listed.contains("\"gameId\":\"" + second.getGameId() + "\""));
+        client.get().uri("/api/hangman/games?status=PAUSED")
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        String[] found = client.post().uri("/api/hangman/games/lookup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[\"" + second.getGameId() + "\",\"nosuchgame\",\"" + first.getGameId() + "\"]")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(ApiHandler.NDJSON_VALUE)
+                .expectBody(String.class)
+                .returnResult().getResponseBody()
+                .split("\n");
+        assertEquals(2, found.length);
+        assertTrue(found[0].contains("\"gameId\":\"" + second.getGameId() + "\""));
+        assertTrue(found[1].contains("\"gameId\":\"" + first.getGameId() + "\""));
+    }
+
+    @Test
+    void testBinaryResponses() {
+        GameResponse game = client.post().uri("/api/hangman/games")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(ImmutableGameResponse.class)
+                .returnResult().getResponseBody();
+
+        byte[] body = client.get().uri("/api/hangman/games/{gameId}", game.getGameId())
+                .header("Accept", GameWriter.BINARY_VALUE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("Content-Type", GameWriter.BINARY_VALUE)
+                .expectHeader().valueEquals("Vary", "Accept")
+                .expectHeader().valueEquals("ETag", "\"0-b\"")
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+        assertArrayEquals(GameWriter.binary(store.loadGame(game.getGameId()).get()), body);
+
+        // a tag only matches the representation it came with
+        client.get().uri("/api/hangman/games/{gameId}", game.getGameId())
+                .header("Accept", GameWriter.BINARY_VALUE)
+                .header("If-None-Match", "\"0\"")
+                .exchange()
+                .expectStatus().isOk();
+        client.get().uri("/api/hangman/games/{gameId}", game.getGameId())
+                .header("Accept", GameWriter.BINARY_VALUE)
+                .header("If-None-Match", "\"0-b\"")
+                .exchange()
+                .expectStatus().isNotModified();
+        client.get().uri("/api/hangman/games/{gameId}", game.getGameId())
+                .header("If-None-Match", "\"0-b\"")
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void testHint() {
+        client.get().uri("/api/hangman/games/xyz/hint")
+                .exchange()
+                .expectStatus().isNotFound();
+
+        GameResponse game = client.post().uri("/api/hangman/games")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(ImmutableGameResponse.class)
+                .returnResult().getResponseBody();
+        HintResponse hint = client.get().uri("/api/hangman/games/{gameId}/hint", game.getGameId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ImmutableHintResponse.class)
+                .returnResult().getResponseBody();
+        assertEquals(game.getGameId(), hint.getGameId());
+        assertTrue(hint.getLetter().isPresent());
+        // the secret word is one of the candidates
+        assertTrue(hint.getCandidates() >= hint.getMatches() && hint.getMatches() >= 1);
+    }
+
+    @Test
+    void testEvents() {
+        client.get().uri("/api/hangman/games/xyz/events")
+                .exchange()
+                .expectStatus().isNotFound();
+
+        GameResponse game = client.post().uri("/api/hangman/games")
+                .exchange()
+                .expectBody(ImmutableGameResponse.class)
+                .returnResult().getResponseBody();
+        Iterator<String> events = client.get().uri("/api/hangman/games/{gameId}/events", game.getGameId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.TEXT_EVENT_STREAM)
+                .returnResult(String.class)
+                .getResponseBody()
+                .toIterable()
+                .iterator();
+        assertTrue(events.next().contains("\"nextGuessId\":0"));
+
+        // ten wrong guesses lose the game, which ends the stream
+        for (int loop = 0; loop < 10; loop++) {
+            client.put().uri("/api/hangman/games/{gameId}?guess={guess}&guessId={guessId}", game.getGameId(), loop, loop)
+                    .exchange()
+                    .expectStatus().isOk();
+        }
+        String last = null;
+        while (events.hasNext()) {
+            last = events.next();
+        }
+        assertTrue(last.contains("\"nextGuessId\":10"));
+        assertTrue(last.contains("\"status\":\"LOST\""));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkFanOut() throws Exception {
+        int subscribers = 2000;
+        GameResponse game = client.post().uri("/api/hangman/games")
+                .exchange()
+                .expectBody(ImmutableGameResponse.class)
+                .returnResult().getResponseBody();
+        int threadsBefore = Thread.activeCount();
+
+        // a connection per stream, rather than the client's bounded pool
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + port)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(ConnectionProvider.newConnection())))
+                .build();
+        CountDownLatch subscribed = new CountDownLatch(subscribers);
+        CountDownLatch updated = new CountDownLatch(subscribers);
+        List<Disposable> streams = new ArrayList<>();
+        for (int loop = 0; loop < subscribers; loop++) {
+            streams.add(webClient.get().uri("/api/hangman/games/{gameId}/events", game.getGameId())
+                    .retrieve()
+                    .bodyToFlux(String.class)
+                    .subscribe(event -> (event.contains("\"nextGuessId\":0") ? subscribed : updated).countDown()));
+        }
+        assertTrue(subscribed.await(60, TimeUnit.SECONDS));
+        int threadsSubscribed = Thread.activeCount();
+
+        long start = System.nanoTime();
+        client.put().uri("/api/hangman/games/{gameId}?guess=0&guessId=0", game.getGameId())
+                .exchange()
+                .expectStatus().isOk();
+        assertTrue(updated.await(60, TimeUnit.SECONDS));
+        System.out.printf("subscribers=%d threads before=%d subscribed=%d fan-out=%.1fms%n",
+                subscribers, threadsBefore, threadsSubscribed, (System.nanoTime() - start) / 1e6);
+        streams.forEach(Disposable::dispose);
+    }
+
+    @Test
+    void testGuessingWithBadParams() {
+        client.put().uri("/api/hangman/games/not-a-game?guess=a&guessId=0")
+                .exchange()
+                .expectStatus().isNotFound();
+
+        client.put().uri("/api/hangman/games/xyz?guess=not-a-single-character&guessId=0")
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        client.put().uri("/api/hangman/games/xyz?guess=x&guessId=x")
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        client.put().uri("/api/hangman/games/xyz?guess=x&guessId=0&merge=perhaps")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+}
@@ -0,0 +1,127 @@
+package hangman.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hangman.service.GameDetail;
+import hangman.service.ImmutableGameDetail;
+import hangman.service.LetterMask;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameWriterTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Test
+    void testJsonMatchesJackson() throws Exception {
+        for (GameDetail game : games()) {
+            assertEquals(jackson(game), new String(GameWriter.json(game), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testBinary() {
+        for (GameDetail game : games()) {
+            GameResponse expected = GameResponses.build(game);
+            ByteBuffer in = ByteBuffer.wrap(GameWriter.binary(game));
+            assertEquals(1, in.get());
+            assertEquals(expected.getGameId(), readString(in));
+            assertEquals(expected.getNumberOfLetters(), readVarint(in));
+            assertEquals(expected.getState().getGuessesRemaining(), readVarint(in));
+            assertEquals(expected.getState().getNextGuessId(), readVarint(in));
+            assertEquals(expected.getState().getStatus().ordinal(), in.get());
+            assertEquals(expected.getState().getMatchingLetters(), readString(in));
+            StringBuilder failed = new StringBuilder();
+            expected.getState().getFailedGuesses().forEach(failed::append);
+            assertEquals(failed.toString().replace('\ud800', '?'), readString(in));
+            assertFalse(in.hasRemaining());
+        }
+    }
+
+    @Test
+    void testBinaryIsCompact() {
+        GameDetail game = game("kz7u3ctx1b9s", "elephant", "eqzl", GameStatus.IN_PROGRESS);
+        assertEquals(30, GameWriter.binary(game).length);
+        assertEquals(170, GameWriter.json(game).length);
+    }
+
+    @Test
+    void testLongGames() throws Exception {
+        StringBuilder word = new StringBuilder();
+        StringBuilder guesses = new StringBuilder();
+        for (int loop = 0; loop < 500; loop++) {
+            word.append('\u00e9');
+            guesses.append((char) (loop + 1));
+        }
+        GameDetail game = game("\"".repeat(300), word.toString(), guesses.toString(), GameStatus.LOST);
+        assertEquals(jackson(game), new String(GameWriter.json(game), StandardCharsets.UTF_8));
+        assertTrue(GameWriter.binary(game).length > 1000);
+    }
+
+    @Test
+    void testPrefersBinary() {
+        assertFalse(GameWriter.prefersBinary(null));
+        assertFalse(GameWriter.prefersBinary("*/*"));
+        assertFalse(GameWriter.prefersBinary("application/json"));
+        assertTrue(GameWriter.prefersBinary("application/vnd.hangman.game"));
+        assertTrue(GameWriter.prefersBinary("application/vnd.hangman.game, application/json;q=0.5"));
+        assertTrue(GameWriter.prefersBinary("*/*, application/vnd.hangman.game"));
+        assertFalse(GameWriter.prefersBinary("application/json, application/vnd.hangman.game"));
+        assertFalse(GameWriter.prefersBinary("application/vnd.hangman.game;q=0.2, application/json"));
+        assertFalse(GameWriter.prefersBinary("application/vnd.hangman.game;q=0"));
+        assertFalse(GameWriter.prefersBinary("application/vnd.hangman.game;q=nonsense"));
+    }
+
+    // as the api writes it, through Jackson's UTF-8 generator
+    private String jackson(GameDetail game) throws Exception {
+        return new String(objectMapper.writeValueAsBytes(GameResponses.build(game)), StandardCharsets.UTF_8);
+    }
+
+    private static GameDetail[] games() {
+        return new GameDetail[]{
+                game("a657aa", "elephant", "", GameStatus.NEW),
+                game("a657aa", "elephant", "eqzl", GameStatus.IN_PROGRESS),
+                game("a657aa", "yacht", "yacht", GameStatus.WON),
+                game("a657aa", "yacht", "bdefgijklm", GameStatus.LOST),
+                game("a657aa", "na\u00efve", "\u00efz\u00e9", GameStatus.IN_PROGRESS),
+                game("id\"with\\odd/chars", "foo bar", "\"\\\n\t\u0001/\u20ac\ud800o", GameStatus.IN_PROGRESS),
+        };
+    }
+
+    private static GameDetail game(String gameId, String secretWord, String guesses, GameStatus status) {
+        long wordMask = LetterMask.of(secretWord);
+        int misses = 0;
+        for (int loop = 0; loop < guesses.length(); loop++) {
+            misses += LetterMask.contains(wordMask, guesses.charAt(loop)) ? 0 : 1;
+        }
+        return ImmutableGameDetail.builder()
+                .gameId(gameId)
+                .secretWord(secretWord)
+                .guesses(guesses)
+                .guessesRemaining(Math.max(0, 10 - misses))
+                .nextGuessId(guesses.length())
+                .status(status)
+                .build();
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte next = in.get();
+            value |= (next & 0x7f) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
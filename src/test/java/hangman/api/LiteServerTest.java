@@ -0,0 +1,131 @@
+package hangman.api;
+
+import hangman.service.Dictionary;
+import hangman.service.HangmanService;
+import hangman.store.MapHangmanStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiteServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private MapHangmanStore store;
+    private LiteServer server;
+    private String base;
+
+    @BeforeEach
+    void start() throws Exception {
+        store = new MapHangmanStore(Duration.ofHours(1), Duration.ofDays(1));
+        store.start();
+        server = new LiteServer(new HangmanService(store, Dictionary.loadFrom("")),
+                new ResponseCache(1000, Duration.ofMinutes(1)));
+        server.start(0, executor);
+        base = "http://localhost:" + server.getPort() + "/api/hangman/games";
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+        executor.shutdown();
+        store.stop();
+    }
+
+    @Test
+    void newGame() throws Exception {
+        HttpResponse<String> response = send("POST", base);
+        assertEquals(201, response.statusCode());
+        String gameId = gameId(response.body());
+        assertEquals(base + "/" + gameId, response.headers().firstValue("Location").get());
+        assertEquals("\"0\"", response.headers().firstValue("ETag").get());
+        assertEquals("application/json", response.headers().firstValue("Content-Type").get());
+
+        // the same bytes the spring handler sends
+        assertEquals(new String(GameWriter.json(store.loadGame(gameId).get())), response.body());
+        assertFalse(response.body().contains(store.loadGame(gameId).get().getSecretWord()));
+    }
+
+    @Test
+    void newGameOfLength() throws Exception {
+        assertTrue(send("POST", base + "?length=5").body().contains("\"matchingLetters\":\"     \""));
+        assertEquals(400, send("POST", base + "?length=4").statusCode());
+        assertEquals(400, send("POST", base + "?length=five").statusCode());
+    }
+
+    @Test
+    void getGameState() throws Exception {
+        String gameId = gameId(send("POST", base).body());
+        HttpResponse<String> response = send("GET", base + "/" + gameId);
+        assertEquals(200, response.statusCode());
+        assertEquals("Accept", response.headers().firstValue("Vary").get());
+
+        HttpResponse<String> notModified = client.send(HttpRequest.newBuilder(URI.create(base + "/" + gameId))
+                .header("If-None-Match", "\"0\"").build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(304, notModified.statusCode());
+        assertEquals("\"0\"", notModified.headers().firstValue("ETag").get());
+
+        HttpResponse<byte[]> binary = client.send(HttpRequest.newBuilder(URI.create(base + "/" + gameId))
+                .header("Accept", GameWriter.BINARY_VALUE).build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(GameWriter.BINARY_VALUE, binary.headers().firstValue("Content-Type").get());
+        assertEquals("\"0-b\"", binary.headers().firstValue("ETag").get());
+        assertArrayEquals(GameWriter.binary(store.loadGame(gameId).get()), binary.body());
+
+        // a tag only matches the representation it came with
+        assertEquals(200, client.send(HttpRequest.newBuilder(URI.create(base + "/" + gameId))
+                .header("If-None-Match", "\"0\"").header("Accept", GameWriter.BINARY_VALUE).build(),
+                HttpResponse.BodyHandlers.ofByteArray()).statusCode());
+        assertEquals(304, client.send(HttpRequest.newBuilder(URI.create(base + "/" + gameId))
+                .header("If-None-Match", "\"0-b\"").header("Accept", GameWriter.BINARY_VALUE).build(),
+                HttpResponse.BodyHandlers.ofByteArray()).statusCode());
+        assertEquals(200, client.send(HttpRequest.newBuilder(URI.create(base + "/" + gameId))
+                .header("If-None-Match", "\"0-b\"").build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        assertEquals(404, send("GET", base + "/xyz").statusCode());
+        assertEquals(404, send("GET", base + "/" + gameId + "/events").statusCode());
+    }
+
+    @Test
+    void guess() throws Exception {
+        String gameId = gameId(send("POST", base + "?length=5").body());
+        String secretWord = store.loadGame(gameId).get().getSecretWord();
+
+        HttpResponse<String> response = send("PUT", base + "/" + gameId + "?guess=" + secretWord.charAt(0) + "&guessId=0");
+        assertEquals(200, response.statusCode());
+        assertEquals("\"1\"", response.headers().firstValue("ETag").get());
+        assertTrue(response.body().contains("\"nextGuessId\":1"));
+
+        // stale, then merged
+        assertEquals(409, send("PUT", base + "/" + gameId + "?guess=%C3%A9&guessId=0").statusCode());
+        assertEquals(200, send("PUT", base + "/" + gameId + "?guess=%C3%A9&guessId=0&merge=true").statusCode());
+
+        assertEquals(400, send("PUT", base + "/" + gameId + "?guess=ab&guessId=2").statusCode());
+        assertEquals(400, send("PUT", base + "/" + gameId + "?guessId=2").statusCode());
+        assertEquals(400, send("PUT", base + "/" + gameId + "?guess=a").statusCode());
+        assertEquals(400, send("PUT", base + "/" + gameId + "?guess=a&guessId=2&merge=maybe").statusCode());
+        assertEquals(404, send("PUT", base + "/xyz?guess=a&guessId=0").statusCode());
+        assertEquals(405, send("DELETE", base + "/" + gameId).statusCode());
+        assertEquals(405, send("GET", base).statusCode());
+    }
+
+    private HttpResponse<String> send(String method, String uri) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(uri))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String gameId(String body) {
+        int start = body.indexOf("\"gameId\":\"") + 10;
+        return body.substring(start, body.indexOf('"', start));
+    }
+}
@@ -0,0 +1,341 @@
+package hangman.cluster;
+
+import hangman.App;
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.store.GameIdGenerator;
+import hangman.store.HangmanStore;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// four nodes on localhost. Nodes 0 and 1 start out as a cluster of two, node 2 joins it and then node 3 does.
+class ClusterTest {
+
+    private static final int NODES = 4;
+    private static final Pattern GAME_ID = Pattern.compile("\"gameId\":\"([0-9a-z]+)\"");
+    private static final String TOKEN = "test-token";
+
+    private static final HttpClient client = HttpClient.newHttpClient();
+    private static final String[] urls = new String[NODES];
+    private static final ConfigurableApplicationContext[] nodes = new ConfigurableApplicationContext[NODES];
+    private static final List<String> gamesBeforeJoining = new ArrayList<>();
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        for (int node = 0; node < NODES; node++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                urls[node] = "http://localhost:" + socket.getLocalPort();
+            }
+        }
+        String twoNodes = "0=" + urls[0] + ",1=" + urls[1];
+        String threeNodes = twoNodes + ",2=" + urls[2];
+        String fourNodes = threeNodes + ",3=" + urls[3];
+        String[] configured = {twoNodes, twoNodes, threeNodes, fourNodes};
+        for (int node = 0; node < NODES; node++) {
+            nodes[node] = new SpringApplicationBuilder(App.class)
+                    .properties("server.port=" + URI.create(urls[node]).getPort(),
+                            "hangman.node.id=" + node,
+                            "hangman.cluster.nodes=" + configured[node],
+                            "hangman.cluster.token=" + TOKEN)
+                    .run();
+        }
+
+        for (int loop = 0; loop < 60; loop++) {
+            gamesBeforeJoining.add(newGame(loop % 2));
+        }
+        setMembers(3);
+        for (int loop = 0; loop < 60; loop++) {
+            gamesBeforeJoining.add(newGame(loop % 3));
+        }
+        // straight after, so some games may still be on their way to their owners under three nodes
+        setMembers(4);
+    }
+
+    // tells the first count nodes that they are the cluster
+    private static void setMembers(int count) throws IOException, InterruptedException {
+        StringBuilder members = new StringBuilder("{");
+        for (int node = 0; node < count; node++) {
+            members.append(node == 0 ? "" : ",").append("\"").append(node).append("\":\"").append(urls[node]).append("\"");
+        }
+        members.append("}");
+        for (int node = 0; node < count; node++) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(urls[node] + "/api/hangman/cluster/nodes"))
+                    .PUT(HttpRequest.BodyPublishers.ofString(members.toString()))
+                    .header("Content-Type", "application/json")
+                    .header(Cluster.TOKEN, TOKEN)
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+        }
+    }
+
+    @AfterAll
+    static void stopCluster() {
+        for (ConfigurableApplicationContext node : nodes) {
+            if (node != null) {
+                node.close();
+            }
+        }
+    }
+
+    @Test
+    void testGamesAreReachableFromEveryNode() throws Exception {
+        for (int creator = 0; creator < NODES; creator++) {
+            String gameId = newGame(creator);
+            assertEquals(creator, nodes[creator].getBean(Cluster.class).ownerOf(gameId));
+            for (int node = 0; node < NODES; node++) {
+                HttpResponse<String> response = send(node, "GET", "/api/hangman/games/" + gameId);
+                assertEquals(200, response.statusCode());
+                assertEquals("\"0\"", response.headers().firstValue("ETag").get());
+            }
+        }
+    }
+
+    @Test
+    void testGuessingThroughAnotherNode() throws Exception {
+        String gameId = newGame(1);
+        assertEquals(200, send(2, "PUT", "/api/hangman/games/" + gameId + "?guess=0&guessId=0").statusCode());
+        assertEquals(409, send(0, "PUT", "/api/hangman/games/" + gameId + "?guess=1&guessId=0").statusCode());
+        assertEquals(304, client.send(HttpRequest.newBuilder(URI.create(urls[0] + "/api/hangman/games/" + gameId))
+                .header("If-None-Match", "\"1\"")
+                .build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(1, nodes[1].getBean(HangmanStore.class).loadGame(gameId).get().getNextGuessId());
+    }
+
+    @Test
+    void testEventsAreRedirectedToTheOwner() throws Exception {
+        String gameId = newGame(0);
+        HttpResponse<String> response = send(1, "GET", "/api/hangman/games/" + gameId + "/events");
+        assertEquals(307, response.statusCode());
+        assertEquals(urls[0] + "/api/hangman/games/" + gameId + "/events", response.headers().firstValue("Location").get());
+    }
+
+    @Test
+    void testBatchesAreSplitByOwner() throws Exception {
+        StringBuilder batch = new StringBuilder("[");
+        List<String> gameIds = new ArrayList<>();
+        for (int node = 0; node < NODES; node++) {
+            gameIds.add(newGame(node));
+            batch.append("{\"gameId\":\"").append(gameIds.get(node)).append("\",\"guess\":\"0\",\"guessId\":0},");
+        }
+        batch.append("{\"gameId\":\"").append(gameIds.get(0)).append("\",\"guess\":\"1\",\"guessId\":0}]");
+
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(urls[1] + "/api/hangman/guesses"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.toString()))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        Matcher results = Pattern.compile("\"gameId\":\"([0-9a-z]+)\",\"status\":(\\d+)").matcher(response.body());
+        for (int loop = 0; loop < NODES; loop++) {
+            assertTrue(results.find());
+            assertEquals(gameIds.get(loop), results.group(1));
+            assertEquals("200", results.group(2));
+        }
+        assertTrue(results.find());
+        assertEquals("409", results.group(2));
+    }
+
+    @Test
+    void testClusterEndpointsNeedTheToken() throws Exception {
+        String gameId = newGame(0);
+        HttpResponse<String> members = client.send(HttpRequest.newBuilder(URI.create(urls[0] + "/api/hangman/cluster/nodes"))
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"0\":\"" + urls[0] + "\"}"))
+                .header("Content-Type", "application/json")
+                .header(Cluster.TOKEN, "guessed")
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(403, members.statusCode());
+        assertEquals(NODES, nodes[0].getBean(Cluster.class).getMembers().size());
+        assertEquals(403, send(1, "POST", "/api/hangman/cluster/games/" + gameId + "/handoff").statusCode());
+        assertTrue(nodes[0].getBean(HangmanStore.class).loadGame(gameId).isPresent());
+
+        // claiming to have been routed already doesn't keep a request on the wrong node without the token
+        HttpResponse<String> game = client.send(HttpRequest.newBuilder(URI.create(urls[1] + "/api/hangman/games/" + gameId))
+                .header(Cluster.FORWARDED, "0")
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, game.statusCode());
+        assertFalse(nodes[1].getBean(HangmanStore.class).loadGame(gameId).isPresent());
+    }
+
+    @Test
+    void testNodesNeedAToken() {
+        SpringApplicationBuilder node = new SpringApplicationBuilder(App.class)
+                .properties("server.port=0", "hangman.node.id=0", "hangman.cluster.nodes=0=" + urls[0]);
+        Throwable failure = assertThrows(Exception.class, node::run);
+        while (failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        assertTrue(failure.getMessage().contains("hangman.cluster.token"), failure.getMessage());
+    }
+
+    @Test
+    void testJoiningNodesTakeOverTheirGames() throws Exception {
+        int moved = 0;
+        for (String gameId : gamesBeforeJoining) {
+            int owner = nodes[0].getBean(Cluster.class).ownerOf(gameId);
+            moved += owner != GameIdGenerator.nodeOf(gameId) ? 1 : 0;
+            for (int node = 0; node < NODES; node++) {
+                assertEquals(200, send(node, "GET", "/api/hangman/games/" + gameId).statusCode());
+            }
+        }
+        assertTrue(moved > 0 && moved < gamesBeforeJoining.size() * 3 / 4, "moved " + moved);
+
+        // and once the hand-offs are done only the owner holds each game
+        long deadline = System.currentTimeMillis() + 10_000;
+        for (String gameId : gamesBeforeJoining) {
+            int owner = nodes[0].getBean(Cluster.class).ownerOf(gameId);
+            for (int node = 0; node < NODES; node++) {
+                while (nodes[node].getBean(HangmanStore.class).loadGame(gameId).isPresent() != (node == owner)
+                        && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(node == owner, nodes[node].getBean(HangmanStore.class).loadGame(gameId).isPresent(), gameId);
+            }
+        }
+    }
+
+    @Test
+    void testGamesNobodyHasAreNotLookedForAgain() throws Exception {
+        // an id node 0 could have made before node 3 joined, which node 3 owns now
+        String gameId = idOwnedBy(3);
+
+        assertEquals(404, send(3, "GET", "/api/hangman/games/" + gameId).statusCode());
+        // had node 3 asked node 0 again, it would have handed the game over
+        HangmanStore creator = nodes[0].getBean(HangmanStore.class);
+        GameDetail game = newGameDetail(gameId);
+        creator.storeGame(game);
+        assertEquals(404, send(3, "GET", "/api/hangman/games/" + gameId).statusCode());
+        assertTrue(creator.loadGame(gameId).isPresent());
+        creator.removeGame(gameId, game.getNextGuessId());
+    }
+
+    @Test
+    void testHoldersKeepGamesUntilTheOwnerHasThem() throws Exception {
+        // a game node 0 made before node 3 joined, which node 3 owns now
+        String gameId = idOwnedBy(3);
+        HangmanStore holder = nodes[0].getBean(HangmanStore.class);
+        holder.storeGame(newGameDetail(gameId));
+
+        HttpResponse<String> copy = client.send(HttpRequest.newBuilder(URI.create(urls[0] + "/api/hangman/cluster/games/" + gameId + "/handoff"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .header(Cluster.TOKEN, TOKEN)
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, copy.statusCode());
+        assertTrue(holder.loadGame(gameId).isPresent());
+
+        // a node that still thinks node 0 owns the game can't guess on the copy that is about to go
+        HttpResponse<String> guess = client.send(HttpRequest.newBuilder(URI.create(urls[0] + "/api/hangman/games/" + gameId + "?guess=w&guessId=0"))
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .header(Cluster.FORWARDED, "1")
+                .header(Cluster.TOKEN, TOKEN)
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(409, guess.statusCode());
+        assertEquals(0, holder.loadGame(gameId).get().getNextGuessId());
+
+        HttpResponse<String> taken = client.send(HttpRequest.newBuilder(URI.create(urls[0] + "/api/hangman/cluster/games/" + gameId + "?nextGuessId=0"))
+                .DELETE()
+                .header(Cluster.TOKEN, TOKEN)
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, taken.statusCode());
+        assertFalse(holder.loadGame(gameId).isPresent());
+    }
+
+    @Test
+    void testAdoptedGamesAreDroppedByTheirHolder() throws Exception {
+        String gameId = idOwnedBy(3);
+        HangmanStore holder = nodes[0].getBean(HangmanStore.class);
+        holder.storeGame(newGameDetail(gameId));
+
+        assertEquals(200, send(3, "PUT", "/api/hangman/games/" + gameId + "?guess=w&guessId=0").statusCode());
+        assertEquals(1, nodes[3].getBean(HangmanStore.class).loadGame(gameId).get().getNextGuessId());
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (holder.loadGame(gameId).isPresent() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(holder.loadGame(gameId).isPresent());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkThroughput() throws Exception {
+        for (int nodeCount = 1; nodeCount <= NODES; nodeCount++) {
+            List<String> gameIds = new ArrayList<>();
+            for (int loop = 0; loop < 300; loop++) {
+                gameIds.add(newGame(loop % nodeCount));
+            }
+            System.out.printf("nodes=%d owner requests/s=%,d any node requests/s=%,d%n", nodeCount,
+                    requestsPerSecond(gameIds, nodeCount, true), requestsPerSecond(gameIds, nodeCount, false));
+        }
+    }
+
+    // polls the games from 32 threads, either straight at the owner or at any of the nodes
+    private static long requestsPerSecond(List<String> gameIds, int nodeCount, boolean toOwner) throws Exception {
+        int requests = 20_000;
+        AtomicInteger next = new AtomicInteger();
+        Thread[] threads = new Thread[32];
+        long start = System.nanoTime();
+        for (int loop = 0; loop < threads.length; loop++) {
+            threads[loop] = new Thread(() -> {
+                for (int request = next.getAndIncrement(); request < requests; request = next.getAndIncrement()) {
+                    int game = request % gameIds.size();
+                    int node = toOwner ? game % nodeCount : request % 7 % nodeCount;
+                    try {
+                        assertEquals(200, send(node, "GET", "/api/hangman/games/" + gameIds.get(game)).statusCode());
+                    } catch (IOException | InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            threads[loop].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return requests * 1_000_000_000L / (System.nanoTime() - start);
+    }
+
+    private static String newGame(int node) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(node, "POST", "/api/hangman/games");
+        assertEquals(201, response.statusCode());
+        Matcher gameId = GAME_ID.matcher(response.body());
+        assertTrue(gameId.find());
+        return gameId.group(1);
+    }
+
+    // an id made the way node 0 makes them, which the given node owns
+    private static String idOwnedBy(int node) {
+        GameIdGenerator generator = new GameIdGenerator();
+        String gameId;
+        do {
+            gameId = generator.nextId();
+        } while (nodes[0].getBean(Cluster.class).ownerOf(gameId) != node);
+        return gameId;
+    }
+
+    private static GameDetail newGameDetail(String gameId) {
+        return ImmutableGameTransfer.builder().gameId(gameId).secretWord("word").guessesRemaining(10)
+                .nextGuessId(0).guesses("").status(GameStatus.NEW).build().toGameDetail();
+    }
+
+    private static HttpResponse<String> send(int node, String method, String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create(urls[node] + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,54 @@
+package hangman.cluster;
+
+import hangman.store.GameIdGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+
+    @Test
+    void testGamesAreSpreadEvenly() {
+        HashRing ring = new HashRing(List.of(0, 1, 2, 3), 128);
+        GameIdGenerator ids = new GameIdGenerator();
+        int[] games = new int[4];
+        for (int loop = 0; loop < 100_000; loop++) {
+            games[ring.nodeFor(ids.nextId())]++;
+        }
+        for (int count : games) {
+            // within 20% of a quarter each
+            assertTrue(Math.abs(count - 25_000) < 5_000, () -> "uneven spread " + Arrays.toString(games));
+        }
+    }
+
+    @Test
+    void testAddingANodeOnlyMovesGamesToIt() {
+        HashRing before = new HashRing(List.of(0, 1, 2), 128);
+        HashRing after = new HashRing(List.of(0, 1, 2, 3), 128);
+        GameIdGenerator ids = new GameIdGenerator();
+        int moved = 0;
+        for (int loop = 0; loop < 100_000; loop++) {
+            String gameId = ids.nextId();
+            if (before.nodeFor(gameId) != after.nodeFor(gameId)) {
+                assertEquals(3, after.nodeFor(gameId));
+                moved++;
+            }
+        }
+        // about a quarter move, all of them to the new node
+        assertTrue(moved > 20_000 && moved < 30_000, "moved " + moved);
+    }
+
+    @Test
+    void testEveryNodeBuildsTheSameRing() {
+        HashRing ring = new HashRing(List.of(2, 0, 1), 128);
+        HashRing same = new HashRing(List.of(0, 1, 2), 128);
+        GameIdGenerator ids = new GameIdGenerator();
+        for (int loop = 0; loop < 1000; loop++) {
+            String gameId = ids.nextId();
+            assertEquals(ring.nodeFor(gameId), same.nodeFor(gameId));
+        }
+    }
+}
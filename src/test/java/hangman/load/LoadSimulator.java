@@ -0,0 +1,414 @@
+package hangman.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays many multi-player games against a running instance, e.g.
+ * {@code ./gradlew simulate --args='--url=http://localhost:8080 --games=200 --players=3 --rate=5 --duration=60'}
+ *
+ * Each game has several players sharing it, so they race on the guessId. A player that gets a 409 re-syncs with a GET
+ * and tries again with the new guessId, as a real client would, up to --retries times. A guess that lands just after
+ * another player finished the game is counted as late and the table moves on to a new game.
+ *
+ * Every player makes a guess on a fixed schedule, --rate guesses a second. Latency is measured from when a guess was
+ * due rather than when it was sent, so a slow response also counts against the guesses queued up behind it and the
+ * percentiles don't suffer from coordinated omission. Re-syncs and retries are sent straight after the response that
+ * caused them, so their latency starts then. A --seed makes the players guess the same letters each run.
+ *
+ * With --merge the guesses are sent with merge=true, so a guess made against a stale guessId is applied to the
+ * current game instead of being refused. Compare the requests per completed game with and without it.
+ */
+public class LoadSimulator {
+
+    public static final String CREATE = "POST /games";
+    public static final String GET = "GET /games/{id}";
+    public static final String GUESS = "PUT /games/{id}";
+
+    private static final String[] ENDPOINTS = {CREATE, GET, GUESS};
+
+    // most common letters first, so games are won as well as lost
+    private static final String LETTERS = "etaoinshrdlcumwfgypbvkjxqz";
+
+    // up to a minute, to 3 significant digits
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final String url;
+    private final int games;
+    private final int players;
+    private final double rate;
+    private final Duration duration;
+    private final Duration warmup;
+    private final int retries;
+    private final long seed;
+    private final boolean merge;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public LoadSimulator(String url, int games, int players, double rate, Duration duration, Duration warmup,
+                         int retries, long seed, boolean merge) {
+        this.url = url;
+        this.games = games;
+        this.players = players;
+        this.rate = rate;
+        this.duration = duration;
+        this.warmup = warmup;
+        this.retries = retries;
+        this.seed = seed;
+        this.merge = merge;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        LoadSimulator simulator = new LoadSimulator(
+                options.getOrDefault("url", "http://localhost:8080"),
+                Integer.parseInt(options.getOrDefault("games", "100")),
+                Integer.parseInt(options.getOrDefault("players", "3")),
+                Double.parseDouble(options.getOrDefault("rate", "5")),
+                Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "60"))),
+                Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "10"))),
+                Integer.parseInt(options.getOrDefault("retries", "3")),
+                Long.parseLong(options.getOrDefault("seed", "42")),
+                Boolean.parseBoolean(options.getOrDefault("merge", "false")));
+        simulator.run().print(System.out);
+    }
+
+    public Report run() throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        List<Table> tables = new ArrayList<>();
+        List<Player> all = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int game = 0; game < games; game++) {
+            Table table = new Table(measureFrom);
+            tables.add(table);
+            for (int player = 0; player < players; player++) {
+                Player next = new Player(table, new Random(seed + all.size()), measureFrom, end,
+                        // spread the players out over the first interval
+                        start + all.size() * intervalNanos() / (games * players));
+                all.add(next);
+                Thread thread = new Thread(next, "player-" + game + "-" + player);
+                thread.setDaemon(true);
+                threads.add(thread);
+            }
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Report report = new Report(Math.max(1, System.nanoTime() - Math.max(measureFrom, start)));
+        all.forEach(report::add);
+        tables.forEach(table -> report.completedGames += table.completed);
+        return report;
+    }
+
+    private long intervalNanos() {
+        return (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    }
+
+    // the game the players at one table share, replaced when it finishes
+    private final class Table {
+        private final long measureFrom;
+        private String gameId;
+        private long completed;
+
+        Table(long measureFrom) {
+            this.measureFrom = measureFrom;
+        }
+
+        synchronized String current(Player player) throws IOException, InterruptedException {
+            if (gameId == null) {
+                gameId = player.create();
+            }
+            return gameId;
+        }
+
+        synchronized String next(Player player, String finished) throws IOException, InterruptedException {
+            // only the first player to see the game finish starts the next one
+            if (finished.equals(gameId)) {
+                completed += System.nanoTime() >= measureFrom ? 1 : 0;
+                gameId = player.create();
+            }
+            return gameId;
+        }
+    }
+
+    private final class Player implements Runnable {
+        private final Table table;
+        private final Random random;
+        private final long measureFrom;
+        private final long end;
+        private final long firstGuess;
+
+        private final Map<String, Histogram> latencies = new HashMap<>();
+        private long guesses;
+        private long conflicts;
+        private long retried;
+        private long givenUp;
+        private long late;
+        private long finished;
+        private long errors;
+
+        // what the player last saw of the game
+        private String gameId;
+        private int nextGuessId;
+        private String tried = "";
+
+        Player(Table table, Random random, long measureFrom, long end, long firstGuess) {
+            this.table = table;
+            this.random = random;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.firstGuess = firstGuess;
+            for (String endpoint : ENDPOINTS) {
+                latencies.put(endpoint, new Histogram(HIGHEST_MICROS, 3));
+            }
+        }
+
+        @Override
+        public void run() {
+            long interval = intervalNanos();
+            for (long due = firstGuess; due < end; due += interval) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                try {
+                    if (gameId == null) {
+                        see(table.current(this), null);
+                    }
+                    guess(due);
+                } catch (IOException | RuntimeException e) {
+                    errors += due >= measureFrom ? 1 : 0;
+                    gameId = null;
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void guess(long due) throws IOException, InterruptedException {
+            boolean measured = due >= measureFrom;
+            guesses += measured ? 1 : 0;
+            String playing = gameId;
+            long sent = due;
+            for (int attempt = 0; ; attempt++) {
+                HttpResponse<byte[]> response = send("PUT", "/" + gameId + "?guess=" + pickLetter() + "&guessId=" + nextGuessId
+                                + (merge ? "&merge=true" : ""),
+                        GUESS, sent, measured);
+                if (response.statusCode() == 200) {
+                    see(gameId, objectMapper.readTree(response.body()));
+                    return;
+                }
+                // re-sync, as the README says
+                sent = System.nanoTime();
+                HttpResponse<byte[]> state = send("GET", "/" + gameId, GET, sent, measured);
+                if (state.statusCode() != 200) {
+                    throw new IOException("get answered " + state.statusCode());
+                }
+                see(gameId, objectMapper.readTree(state.body()));
+                if (!playing.equals(gameId)) {
+                    // someone else finished the game. A guess that arrives after that is refused with a 409
+                    late += measured ? 1 : 0;
+                    return;
+                }
+                if (response.statusCode() != 409) {
+                    throw new IOException("guess answered " + response.statusCode());
+                }
+                conflicts += measured ? 1 : 0;
+                if (attempt == retries) {
+                    givenUp += measured ? 1 : 0;
+                    return;
+                }
+                retried += measured ? 1 : 0;
+                sent = System.nanoTime();
+            }
+        }
+
+        String create() throws IOException, InterruptedException {
+            long sent = System.nanoTime();
+            HttpResponse<byte[]> response = send("POST", "", CREATE, sent, sent >= measureFrom);
+            if (response.statusCode() != 201) {
+                throw new IOException("create answered " + response.statusCode());
+            }
+            return objectMapper.readTree(response.body()).get("gameId").asText();
+        }
+
+        // takes in the latest state of a game, moving the table on to a new game once it is over
+        private void see(String seenGameId, JsonNode game) throws IOException, InterruptedException {
+            if (game == null) {
+                gameId = seenGameId;
+                nextGuessId = 0;
+                tried = "";
+                return;
+            }
+            JsonNode state = game.get("state");
+            String status = state.get("status").asText();
+            if (status.equals("WON") || status.equals("LOST")) {
+                finished += System.nanoTime() >= measureFrom ? 1 : 0;
+                see(table.next(this, seenGameId), null);
+                return;
+            }
+            gameId = seenGameId;
+            nextGuessId = state.get("nextGuessId").asInt();
+            StringBuilder seen = new StringBuilder(state.get("matchingLetters").asText().trim());
+            state.get("failedGuesses").forEach(letter -> seen.append(letter.asText()));
+            tried = seen.toString();
+        }
+
+        // one of the few most common letters no-one at the table has tried yet
+        private char pickLetter() {
+            List<Character> untried = new ArrayList<>();
+            for (int loop = 0; loop < LETTERS.length() && untried.size() < 4; loop++) {
+                if (tried.indexOf(LETTERS.charAt(loop)) < 0) {
+                    untried.add(LETTERS.charAt(loop));
+                }
+            }
+            return untried.isEmpty() ? 'e' : untried.get(random.nextInt(untried.size()));
+        }
+
+        private HttpResponse<byte[]> send(String method, String path, String endpoint, long sent, boolean measured)
+                throws IOException, InterruptedException {
+            HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(URI.create(url + "/api/hangman/games" + path))
+                    .method(method, HttpRequest.BodyPublishers.noBody())
+                    .timeout(Duration.ofSeconds(30))
+                    .build(), HttpResponse.BodyHandlers.ofByteArray());
+            if (measured) {
+                Histogram histogram = latencies.get(endpoint);
+                histogram.recordValue(Math.min(histogram.getHighestTrackableValue(),
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent)));
+            }
+            return response;
+        }
+    }
+
+    /**
+     * What the players saw once warmed up, with latencies in microseconds.
+     */
+    public static final class Report {
+        private final long elapsedNanos;
+        private final Map<String, Histogram> latencies = new HashMap<>();
+        private long guesses;
+        private long conflicts;
+        private long retries;
+        private long givenUp;
+        private long late;
+        private long finishedGames;
+        private long completedGames;
+        private long errors;
+
+        Report(long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+            for (String endpoint : ENDPOINTS) {
+                latencies.put(endpoint, new Histogram(HIGHEST_MICROS, 3));
+            }
+        }
+
+        void add(Player player) {
+            player.latencies.forEach((endpoint, histogram) -> latencies.get(endpoint).add(histogram));
+            guesses += player.guesses;
+            conflicts += player.conflicts;
+            retries += player.retried;
+            givenUp += player.givenUp;
+            late += player.late;
+            finishedGames += player.finished;
+            errors += player.errors;
+        }
+
+        public Histogram getLatencies(String endpoint) {
+            return latencies.get(endpoint);
+        }
+
+        // the guesses due in the measured period, each of which may have taken several requests
+        public long getGuesses() {
+            return guesses;
+        }
+
+        // 409s on games that were still being played
+        public long getConflicts() {
+            return conflicts;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        public long getGivenUp() {
+            return givenUp;
+        }
+
+        // guesses refused because another player had just finished the game
+        public long getLate() {
+            return late;
+        }
+
+        // seen by each player, so a game is counted once per player at its table
+        public long getFinishedGames() {
+            return finishedGames;
+        }
+
+        // counted once per game
+        public long getCompletedGames() {
+            return completedGames;
+        }
+
+        // every request sent, re-syncs and creates included, for each game played to the end
+        public double getRequestsPerCompletedGame() {
+            long requests = 0;
+            for (Histogram histogram : latencies.values()) {
+                requests += histogram.getTotalCount();
+            }
+            return completedGames == 0 ? 0 : (double) requests / completedGames;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public void print(PrintStream out) {
+            double seconds = elapsedNanos / 1e9;
+            out.printf("%-18s %10s %10s %10s %10s %10s %10s%n", "endpoint", "requests", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+            for (String endpoint : ENDPOINTS) {
+                Histogram histogram = latencies.get(endpoint);
+                out.printf("%-18s %10d %10.1f %10.2f %10.2f %10.2f %10.2f%n", endpoint, histogram.getTotalCount(),
+                        histogram.getTotalCount() / seconds,
+                        histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+                        histogram.getValueAtPercentile(99.9) / 1e3, histogram.getMaxValue() / 1e3);
+            }
+            out.printf("guesses %d (%.1f/s), conflicts %d (%.1f%%), retries %d (%.1f%%), given up %d, late %d, errors %d, games finished %d%n",
+                    guesses, guesses / seconds, conflicts, percent(conflicts, guesses + retries), retries, percent(retries, guesses),
+                    givenUp, late, errors, finishedGames);
+            out.printf("games completed %d, %.1f requests per completed game%n", completedGames, getRequestsPerCompletedGame());
+        }
+
+        private static double percent(long count, long of) {
+            return of == 0 ? 0 : 100.0 * count / of;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package hangman.load;
+
+import hangman.App;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadSimulatorTest {
+
+    @Test
+    void testSimulation() throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(App.class)
+                .properties("server.port=0")
+                .run()) {
+            String url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            // four players to a game at 5 guesses a second each, so they often collide
+            LoadSimulator.Report report = new LoadSimulator(url, 5, 4, 5, Duration.ofSeconds(3), Duration.ZERO, 3, 42, false).run();
+            report.print(System.out);
+
+            assertEquals(0, report.getErrors());
+            assertTrue(report.getGuesses() > 0);
+            assertTrue(report.getConflicts() > 0);
+            assertTrue(report.getRetries() > 0);
+            assertTrue(report.getFinishedGames() > 0);
+            assertEquals(report.getGuesses() + report.getRetries(), report.getLatencies(LoadSimulator.GUESS).getTotalCount());
+            assertEquals(report.getConflicts() + report.getLate(), report.getLatencies(LoadSimulator.GET).getTotalCount());
+            assertTrue(report.getLatencies(LoadSimulator.CREATE).getTotalCount() >= 5);
+        }
+    }
+
+    @Test
+    void testMergingSimulation() throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(App.class)
+                .properties("server.port=0")
+                .run()) {
+            String url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            LoadSimulator.Report report = new LoadSimulator(url, 5, 4, 5, Duration.ofSeconds(3), Duration.ZERO, 3, 42, true).run();
+            report.print(System.out);
+
+            assertEquals(0, report.getErrors());
+            assertTrue(report.getCompletedGames() > 0);
+            // stale guesses are merged, so the only refusals are for games that have just finished
+            assertEquals(0, report.getConflicts());
+            assertEquals(report.getLate(), report.getLatencies(LoadSimulator.GET).getTotalCount());
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkMerging() throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(App.class)
+                .properties("server.port=0")
+                .run()) {
+            String url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            // a few hot games, each shared by many players
+            for (boolean merge : new boolean[]{false, true}) {
+                LoadSimulator.Report report = new LoadSimulator(url, 4, 16, 5, Duration.ofSeconds(20), Duration.ofSeconds(5),
+                        3, 42, merge).run();
+                System.out.println("merge=" + merge);
+                report.print(System.out);
+            }
+        }
+    }
+}
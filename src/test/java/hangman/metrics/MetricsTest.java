@@ -0,0 +1,114 @@
+package hangman.metrics;
+
+import hangman.App;
+import hangman.store.HangmanStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = App.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class MetricsTest {
+
+    private static final Pattern GAME_ID = Pattern.compile("\"gameId\":\"([0-9a-z]+)\"");
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Autowired
+    private HangmanStore store;
+
+    @Autowired
+    private Metrics metrics;
+
+    @Test
+    void testRequestsAreCounted() {
+        ResponseEntity<String> created = rest.postForEntity("/api/hangman/games", null, String.class);
+        assertEquals(HttpStatus.CREATED, created.getStatusCode());
+        Matcher gameId = GAME_ID.matcher(created.getBody());
+        assertTrue(gameId.find());
+        String secretWord = store.loadGame(gameId.group(1)).get().getSecretWord();
+
+        String game = "/api/hangman/games/" + gameId.group(1);
+        rest.put(game + "?guess=" + secretWord.charAt(0) + "&guessId=0", null);
+        assertEquals(HttpStatus.CONFLICT, rest.exchange(game + "?guess=" + secretWord.charAt(1) + "&guessId=0",
+                HttpMethod.PUT, null, String.class).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, rest.getForEntity("/api/hangman/games/nosuchgame", String.class).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, rest.getForEntity("/no/such/route", String.class).getStatusCode());
+
+        ResponseEntity<String> scraped = rest.getForEntity("/metrics", String.class);
+        assertEquals(HttpStatus.OK, scraped.getStatusCode());
+        assertTrue(scraped.getHeaders().getContentType().toString().startsWith("text/plain"));
+        String metrics = scraped.getBody();
+        assertTrue(value(metrics, "hangman_http_responses_total{method=\"POST\",path=\"/api/hangman/games\",status=\"201\"}") >= 1);
+        assertTrue(value(metrics, "hangman_http_responses_total{method=\"PUT\",path=\"/api/hangman/games/{gameId}\",status=\"200\"}") >= 1);
+        assertTrue(value(metrics, "hangman_http_responses_total{method=\"PUT\",path=\"/api/hangman/games/{gameId}\",status=\"409\"}") >= 1);
+        assertTrue(value(metrics, "hangman_http_responses_total{method=\"GET\",path=\"/api/hangman/games/{gameId}\",status=\"404\"}") >= 1);
+        // spring mvc hands unknown paths to its static resource handler
+        assertTrue(value(metrics, "hangman_http_responses_total{method=\"GET\",path=\"/**\",status=\"404\"}") >= 1);
+        assertTrue(value(metrics, "hangman_http_request_duration_seconds_count{method=\"PUT\",path=\"/api/hangman/games/{gameId}\"}") >= 2);
+        assertTrue(value(metrics, "hangman_games_created_total") >= 1);
+        assertTrue(value(metrics, "hangman_store_live_games") >= 1);
+        assertTrue(value(metrics, "hangman_store_updates_total") >= 1);
+        assertTrue(value(metrics, "hangman_store_update_conflicts_total") >= 1);
+        assertEquals(6, value(metrics, "hangman_dictionary_words"));
+        assertTrue(value(metrics, "hangman_hint_index_bytes") >= 0);
+        assertTrue(value(metrics, "hangman_pipeline_published_total") >= 1);
+        assertEquals(0, value(metrics, "hangman_pipeline_dropped_total"));
+        // counted on the pipeline's thread, so the guess may not be in yet
+        assertTrue(value(metrics, "hangman_guesses_total{result=\"hit\"}") >= 0);
+    }
+
+    @Test
+    void testUnknownMethodsShareOneSeries() {
+        metrics.recordRequest("BREW", Metrics.UNMATCHED, 405, 1000);
+        metrics.recordRequest("WHEN", Metrics.UNMATCHED, 405, 1000);
+
+        String scraped = metrics.scrape();
+        assertTrue(value(scraped, "hangman_http_responses_total{method=\"OTHER\",path=\"unmatched\",status=\"405\"}") >= 2);
+        assertFalse(scraped.contains("BREW"));
+        assertFalse(scraped.contains("WHEN"));
+    }
+
+    @Test
+    void testHealth() {
+        ResponseEntity<String> health = rest.getForEntity("/health", String.class);
+        assertEquals(HttpStatus.OK, health.getStatusCode());
+        assertTrue(health.getBody().contains("\"status\":\"UP\""));
+    }
+
+    @Test
+    void testHistogramBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(50_000);
+        histogram.record(100_000);
+        histogram.record(3_000_000);
+        histogram.record(60_000_000_000L);
+        StringBuilder out = new StringBuilder();
+        histogram.write(out, "latency", "path=\"/\",");
+        String written = out.toString();
+
+        // cumulative, with a bound counting everything at or under it
+        assertEquals(2, value(written, "latency_bucket{path=\"/\",le=\"0.0001\"}"));
+        assertEquals(2, value(written, "latency_bucket{path=\"/\",le=\"0.0025\"}"));
+        assertEquals(3, value(written, "latency_bucket{path=\"/\",le=\"0.005\"}"));
+        assertEquals(3, value(written, "latency_bucket{path=\"/\",le=\"10\"}"));
+        assertEquals(4, value(written, "latency_bucket{path=\"/\",le=\"+Inf\"}"));
+        assertEquals(4, value(written, "latency_count{path=\"/\"}"));
+        assertTrue(written.contains("latency_sum{path=\"/\"} 60.00315\n"));
+    }
+
+    private static double value(String metrics, String series) {
+        Matcher value = Pattern.compile("^" + Pattern.quote(series) + " (\\S+)$", Pattern.MULTILINE).matcher(metrics);
+        assertTrue(value.find(), series);
+        return Double.parseDouble(value.group(1));
+    }
+}
@@ -0,0 +1,214 @@
+package hangman.pipeline;
+
+import hangman.api.GameStatus;
+import hangman.pipeline.GuessPipeline.Overflow;
+import hangman.service.GameDetail;
+import hangman.service.ImmutableGameDetail;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuessPipelineTest {
+
+    // records the guessIds it sees per game, checking they arrive in order
+    private static class Recorder implements GuessConsumer {
+        final int[] lastGuessIds;
+        final AtomicInteger seen = new AtomicInteger();
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        final AtomicInteger batches = new AtomicInteger();
+
+        Recorder(int games) {
+            lastGuessIds = new int[games];
+            Arrays.fill(lastGuessIds, -1);
+        }
+
+        @Override
+        public void onGuess(GameDetail game, long publishedAt, boolean endOfBatch) {
+            int index = Integer.parseInt(game.getGameId());
+            if (game.getNextGuessId() <= lastGuessIds[index]) {
+                outOfOrder.incrementAndGet();
+            }
+            lastGuessIds[index] = game.getNextGuessId();
+            seen.incrementAndGet();
+            batches.addAndGet(endOfBatch ? 1 : 0);
+        }
+    }
+
+    // holds up the consumer thread on its first guess until released
+    private static class Stalled implements GuessConsumer {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger seen = new AtomicInteger();
+
+        @Override
+        public void onGuess(GameDetail game, long publishedAt, boolean endOfBatch) throws InterruptedException {
+            release.await();
+            seen.incrementAndGet();
+        }
+    }
+
+    @Test
+    void testEveryConsumerSeesEveryGuess() throws Exception {
+        int producers = 4;
+        int guesses = 50_000;
+        Recorder first = new Recorder(producers);
+        Recorder second = new Recorder(producers);
+        GuessPipeline pipeline = new GuessPipeline(Arrays.asList(first, second), 1000, 64, Overflow.BLOCK);
+        pipeline.start();
+        assertEquals(1024, pipeline.capacity());
+
+        // a game per producer, so each game's guesses are published in order
+        Thread[] threads = new Thread[producers];
+        for (int loop = 0; loop < producers; loop++) {
+            GameDetail game = game(Integer.toString(loop), "yacht", "a");
+            threads[loop] = new Thread(() -> {
+                for (int guess = 1; guess <= guesses; guess++) {
+                    pipeline.gameUpdated(ImmutableGameDetail.copyOf(game).withNextGuessId(guess));
+                }
+            });
+            threads[loop].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        pipeline.close();
+
+        for (Recorder recorder : Arrays.asList(first, second)) {
+            assertEquals(producers * guesses, recorder.seen.get());
+            assertEquals(0, recorder.outOfOrder.get());
+            assertTrue(recorder.batches.get() >= producers * guesses / 64);
+        }
+        assertEquals(producers * guesses, pipeline.published());
+        assertEquals(0, pipeline.dropped());
+        assertEquals(0, pipeline.lag());
+    }
+
+    @Test
+    void testDroppingWhenFull() throws Exception {
+        Stalled stalled = new Stalled();
+        GuessPipeline pipeline = new GuessPipeline(Collections.singletonList(stalled), 16, 1024, Overflow.DROP);
+        pipeline.start();
+
+        GameDetail game = game("0", "yacht", "a");
+        for (int loop = 0; loop < 26; loop++) {
+            pipeline.gameUpdated(game);
+        }
+        assertEquals(16, pipeline.published());
+        assertEquals(10, pipeline.dropped());
+        assertEquals(16, pipeline.lag());
+
+        stalled.release.countDown();
+        awaitDrained(pipeline);
+        pipeline.gameUpdated(game);
+        pipeline.close();
+        assertEquals(17, stalled.seen.get());
+        assertEquals(10, pipeline.dropped());
+    }
+
+    @Test
+    void testBlockingWhenFull() throws Exception {
+        Stalled stalled = new Stalled();
+        GuessPipeline pipeline = new GuessPipeline(Collections.singletonList(stalled), 16, 1024, Overflow.BLOCK);
+        pipeline.start();
+
+        GameDetail game = game("0", "yacht", "a");
+        AtomicInteger publishing = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            for (int loop = 0; loop < 26; loop++) {
+                publishing.set(loop);
+                pipeline.gameUpdated(game);
+            }
+        });
+        producer.start();
+        producer.join(200);
+        // waiting for a slot for the 17th guess
+        assertTrue(producer.isAlive());
+        assertEquals(16, publishing.get());
+
+        stalled.release.countDown();
+        producer.join();
+        pipeline.close();
+        assertEquals(26, stalled.seen.get());
+        assertEquals(0, pipeline.dropped());
+    }
+
+    @Test
+    void testFailingConsumerCarriesOn() throws Exception {
+        Recorder recorder = new Recorder(2);
+        GuessConsumer failing = (game, publishedAt, endOfBatch) -> {
+            if (game.getGameId().equals("0")) {
+                throw new IllegalStateException("no");
+            }
+            recorder.onGuess(game, publishedAt, endOfBatch);
+        };
+        GuessPipeline pipeline = new GuessPipeline(Collections.singletonList(failing), 16, 4, Overflow.BLOCK);
+        pipeline.start();
+        for (int loop = 1; loop <= 100; loop++) {
+            pipeline.gameUpdated(ImmutableGameDetail.copyOf(game(Integer.toString(loop % 2), "yacht", "a")).withNextGuessId(loop));
+        }
+        pipeline.close();
+        assertEquals(50, recorder.seen.get());
+    }
+
+    @Test
+    void testAuditLogAndStats(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("audit.log");
+        AuditLog audit = new AuditLog(file);
+        GuessStats stats = new GuessStats();
+        GuessPipeline pipeline = new GuessPipeline(Arrays.asList(audit, stats), 1024, 1024, Overflow.DROP);
+        pipeline.start();
+
+        long before = System.currentTimeMillis();
+        pipeline.gameUpdated(game("a657aa", "yacht", "e"));
+        pipeline.gameUpdated(game("a657aa", "yacht", "ea"));
+        pipeline.gameUpdated(game("b1", "zebra", "0"));
+        pipeline.close();
+        audit.close();
+
+        List<String[]> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            lines.add(line.split("\t"));
+        }
+        assertEquals(3, lines.size());
+        assertTrue(Instant.parse(lines.get(0)[0]).toEpochMilli() >= before);
+        assertEquals(Arrays.asList("a657aa", "0", "e", "miss", "IN_PROGRESS", "9"), Arrays.asList(lines.get(0)).subList(1, 7));
+        assertEquals(Arrays.asList("a657aa", "1", "a", "hit", "IN_PROGRESS", "9"), Arrays.asList(lines.get(1)).subList(1, 7));
+        assertEquals(Arrays.asList("b1", "0", "0", "miss", "IN_PROGRESS", "9"), Arrays.asList(lines.get(2)).subList(1, 7));
+
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(1, stats.hits('a'));
+        assertEquals(1, stats.misses('e'));
+        assertEquals(1, stats.misses('0'));
+    }
+
+    private static void awaitDrained(GuessPipeline pipeline) throws InterruptedException {
+        for (int wait = 0; wait < 100 && pipeline.lag() > 0; wait++) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertEquals(0, pipeline.lag());
+    }
+
+    // the game just after the last of its guesses
+    private static GameDetail game(String gameId, String secretWord, String guesses) {
+        return ImmutableGameDetail.builder()
+                .gameId(gameId)
+                .secretWord(secretWord)
+                .guesses(guesses)
+                .guessesRemaining(9)
+                .nextGuessId(guesses.length())
+                .status(GameStatus.IN_PROGRESS)
+                .build();
+    }
+}
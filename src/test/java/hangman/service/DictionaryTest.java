@@ -0,0 +1,122 @@
+package hangman.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DictionaryTest {
+
+    @Test
+    void testLoad() {
+        Dictionary dictionary = dictionary("yacht\r\nBeefeater\n\nstra\u00dfe\n\u00c9t\u00e9\nnot-a-word\nna\u00efve\n\u0105\nzebra");
+
+        assertEquals(6, dictionary.size());
+        assertEquals(3, dictionary.size(5));
+        assertEquals(1, dictionary.size(6));
+        assertEquals(1, dictionary.size(3));
+        assertEquals(0, dictionary.size(10));
+        assertEquals(0, dictionary.size(0));
+
+        Set<String> words = new HashSet<>();
+        for (int loop = 0; loop < dictionary.size(); loop++) {
+            words.add(dictionary.word(loop));
+        }
+        // lowercased, and words with hyphens or letters beyond ISO-8859-1 skipped
+        assertEquals(Set.of("yacht", "beefeater", "stra\u00dfe", "\u00e9t\u00e9", "na\u00efve", "zebra"), words);
+        // grouped by length
+        assertEquals("\u00e9t\u00e9", dictionary.word(0));
+        assertEquals("beefeater", dictionary.word(5));
+    }
+
+    @Test
+    void testRandomWord() {
+        Dictionary dictionary = dictionary("yacht\nbeefeater\nzebra\ncalibrate\natrocious\n");
+
+        Set<String> fiveLetterWords = new HashSet<>();
+        for (int loop = 0; loop < 100; loop++) {
+            fiveLetterWords.add(dictionary.randomWord(5));
+            assertNotNull(dictionary.randomWord());
+        }
+        assertEquals(Set.of("yacht", "zebra"), fiveLetterWords);
+        assertThrows(IllegalArgumentException.class, () -> dictionary.randomWord(6));
+    }
+
+    @Test
+    void testLoadFile(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("words.txt");
+        Files.write(file, "vulnerable\ndreamboat\n".getBytes(StandardCharsets.UTF_8));
+
+        Dictionary dictionary = new Dictionary(file.toString());
+        dictionary.load();
+        assertEquals(2, dictionary.size());
+        assertEquals("vulnerable", dictionary.randomWord(10));
+
+        Files.write(file, "not-a-word\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalStateException.class, new Dictionary(file.toString())::load);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkLargeDictionary(@TempDir Path directory) throws IOException {
+        int words = 5_000_000;
+        Path file = directory.resolve("words.txt");
+        Random random = new Random(42);
+        long fileSize = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            byte[] word = new byte[16];
+            for (int loop = 0; loop < words; loop++) {
+                int length = 4 + random.nextInt(11);
+                for (int letter = 0; letter < length; letter++) {
+                    word[letter] = (byte) ('a' + random.nextInt(26));
+                }
+                word[length] = '\n';
+                out.write(word, 0, length + 1);
+                fileSize += length + 1;
+            }
+        }
+
+        long before = usedHeap();
+        long start = System.nanoTime();
+        Dictionary dictionary = new Dictionary(file.toString());
+        dictionary.load();
+        long elapsed = System.nanoTime() - start;
+        long after = usedHeap();
+        assertEquals(words, dictionary.size());
+
+        // the same words as a list of Strings, as the Scanner loader held them
+        long stringsBefore = usedHeap();
+        String[] strings = Files.readAllLines(file).toArray(new String[0]);
+        long stringsAfter = usedHeap();
+        assertEquals(words, strings.length);
+
+        System.out.printf("words=%,d file=%,dMB load=%dms packed=%,dMB strings=%,dMB%n",
+                words, fileSize >> 20, elapsed / 1_000_000, (after - before) >> 20, (stringsAfter - stringsBefore) >> 20);
+    }
+
+    private static Dictionary dictionary(String words) {
+        Dictionary dictionary = new Dictionary();
+        dictionary.load(ByteBuffer.wrap(words.getBytes(StandardCharsets.UTF_8)));
+        return dictionary;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int loop = 0; loop < 3; loop++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
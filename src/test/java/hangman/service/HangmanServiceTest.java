@@ -2,15 +2,19 @@ package hangman.service;
 
 import hangman.api.GameStatus;
 import hangman.store.HangmanStore;
+import hangman.store.MapHangmanStore;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.CompletionException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@SpringBootTest(classes = {HangmanStore.class, HangmanService.class})
+@SpringBootTest(classes = {MapHangmanStore.class, HangmanService.class, Dictionary.class})
 class HangmanServiceTest {
 
     @Autowired
@@ -31,6 +35,13 @@ class HangmanServiceTest {
         assertEquals(service.getGameState(game.getGameId()), game);
     }
 
+    @Test
+    void createNewGameOfLength() {
+        // yacht is the only five letter word in the bundled dictionary
+        assertEquals("yacht", service.createNewGame(5).getSecretWord());
+        assertThrows(IllegalArgumentException.class, () -> service.createNewGame(4));
+    }
+
 
     @Test
     void applyGuess() {
@@ -45,13 +56,13 @@ class HangmanServiceTest {
 
         GameDetail updatedDetail = service.applyGuess("id", 'a', 0);
         assertEquals(1, updatedDetail.getNextGuessId());
-        assertEquals("[a]", updatedDetail.getGuesses().toString());
+        assertEquals("a", updatedDetail.getGuesses());
         assertEquals(10, updatedDetail.getGuessesRemaining());
         assertEquals(GameStatus.IN_PROGRESS, updatedDetail.getStatus());
 
         updatedDetail = service.applyGuess("id", 'o', 1);
         assertEquals(2, updatedDetail.getNextGuessId());
-        assertEquals("[a, o]", updatedDetail.getGuesses().toString());
+        assertEquals("ao", updatedDetail.getGuesses());
         assertEquals(10, updatedDetail.getGuessesRemaining());
         assertEquals(GameStatus.IN_PROGRESS, updatedDetail.getStatus());
 
@@ -59,7 +70,7 @@ class HangmanServiceTest {
         updatedDetail = service.applyGuess("id", 'j', 3);
         updatedDetail = service.applyGuess("id", 'k', 4);
         assertEquals(5, updatedDetail.getNextGuessId());
-        assertEquals("[a, o, g, j, k]", updatedDetail.getGuesses().toString());
+        assertEquals("aogjk", updatedDetail.getGuesses());
         assertEquals(7, updatedDetail.getGuessesRemaining());
         assertEquals(GameStatus.IN_PROGRESS, updatedDetail.getStatus());
     }
@@ -79,7 +90,7 @@ class HangmanServiceTest {
         updatedDetail = service.applyGuess("id", 'y', 1);
         updatedDetail = service.applyGuess("id", 'z', 2);
 
-        assertEquals("[x, y, z]", updatedDetail.getGuesses().toString());
+        assertEquals("xyz", updatedDetail.getGuesses());
         assertEquals(3, updatedDetail.getGuessesRemaining());
         assertEquals(GameStatus.WON, updatedDetail.getStatus());
     }
@@ -99,7 +110,7 @@ class HangmanServiceTest {
         updatedDetail = service.applyGuess("id", 'y', 1);
         updatedDetail = service.applyGuess("id", 'z', 2);
 
-        assertEquals("[x, y, z]", updatedDetail.getGuesses().toString());
+        assertEquals("xyz", updatedDetail.getGuesses());
         assertEquals(0, updatedDetail.getGuessesRemaining());
         assertEquals(GameStatus.LOST, updatedDetail.getStatus());
 
@@ -123,7 +134,7 @@ class HangmanServiceTest {
         updatedDetail = service.applyGuess("id", 'X', 1);
         updatedDetail = service.applyGuess("id", 'x', 1);
 
-        assertEquals("[x]", updatedDetail.getGuesses().toString());
+        assertEquals("x", updatedDetail.getGuesses());
         assertEquals(2, updatedDetail.getGuessesRemaining());
     }
 
@@ -143,4 +154,154 @@ class HangmanServiceTest {
                 () -> service.applyGuess("id", 'y', 0));
     }
 
-}
\ No newline at end of file
+    @Test
+    void testMergingStaleGuesses() {
+        store.storeGame(ImmutableGameDetail.builder()
+                .secretWord("foobar")
+                .status(GameStatus.NEW)
+                .nextGuessId(0)
+                .guessesRemaining(2)
+                .gameId("merged")
+                .build());
+
+        service.applyGuess("merged", 'f', 0);
+        // made against the new game, and applied on top of the f
+        GameDetail merged = service.applyGuess("merged", 'x', 0, true);
+        assertEquals("fx", merged.getGuesses());
+        assertEquals(2, merged.getNextGuessId());
+        assertEquals(1, merged.getGuessesRemaining());
+
+        // already guessed, so there is nothing to merge
+        assertSame(merged, service.applyGuess("merged", 'f', 0, true));
+        // a guessId the game hasn't reached yet is still a conflict
+        assertThrows(ConcurrentModificationException.class, () -> service.applyGuess("merged", 'o', 3, true));
+
+        assertEquals(GameStatus.LOST, service.applyGuess("merged", 'y', 1, true).getStatus());
+        // too late, the game is over
+        assertThrows(ConcurrentModificationException.class, () -> service.applyGuess("merged", 'o', 1, true));
+        assertTrue(assertThrows(CompletionException.class, () -> service.applyGuessAsync("merged", 'o', 1, true).join())
+                .getCause() instanceof ConcurrentModificationException);
+    }
+
+    @Test
+    void testMergingAsync() {
+        store.storeGame(ImmutableGameDetail.builder()
+                .secretWord("foobar")
+                .status(GameStatus.NEW)
+                .nextGuessId(0)
+                .guessesRemaining(10)
+                .gameId("mergedAsync")
+                .build());
+
+        service.applyGuessAsync("mergedAsync", 'f', 0).join();
+        assertEquals("fo", service.applyGuessAsync("mergedAsync", 'o', 0, true).join().getGuesses());
+        CompletionException conflict = assertThrows(CompletionException.class,
+                () -> service.applyGuessAsync("mergedAsync", 'b', 0).join());
+        assertTrue(conflict.getCause() instanceof ConcurrentModificationException);
+    }
+
+    @Test
+    void testApplyGuesses() {
+        store.storeGame(ImmutableGameDetail.builder()
+                .secretWord("xyz")
+                .status(GameStatus.NEW)
+                .nextGuessId(0)
+                .guessesRemaining(3)
+                .gameId("batch")
+                .build());
+
+        List<GuessOutcome> outcomes = service.applyGuesses(Arrays.asList(
+                ImmutableGuess.of("batch", 'x', 0),
+                ImmutableGuess.of("batch", 'a', 1),
+                ImmutableGuess.of("batch", 'b', 1),
+                ImmutableGuess.of("batch", 'x', 7),
+                ImmutableGuess.of("missing", 'x', 0),
+                ImmutableGuess.of("batch", 'y', 2),
+                ImmutableGuess.of("batch", 'z', 3),
+                ImmutableGuess.of("batch", 'q', 4)));
+
+        assertEquals(GuessOutcome.Result.APPLIED, outcomes.get(0).getResult());
+        assertEquals(GuessOutcome.Result.APPLIED, outcomes.get(1).getResult());
+        assertEquals(GuessOutcome.Result.CONFLICT, outcomes.get(2).getResult());
+        // repeating a letter is not a conflict, just as with a single guess
+        assertEquals(GuessOutcome.Result.APPLIED, outcomes.get(3).getResult());
+        assertEquals(GuessOutcome.Result.NOT_FOUND, outcomes.get(4).getResult());
+        assertEquals(GameStatus.WON, outcomes.get(6).getGame().get().getStatus());
+        assertEquals(GuessOutcome.Result.FINISHED, outcomes.get(7).getResult());
+
+        GameDetail stored = service.getGameState("batch");
+        assertEquals("xayz", stored.getGuesses());
+        assertEquals(GameStatus.WON, stored.getStatus());
+    }
+
+    @Test
+    void testBatchOutcomesWaitForTheUpdatesTheySaw() {
+        // another writer gets its guess in between the batch reading the game and writing it
+        MapHangmanStore raced = new MapHangmanStore() {
+            @Override
+            public List<UpdateResult> updateGames(List<GameDetail> games, int[] nextGuessIds) {
+                updateGame(ImmutableGameDetail.copyOf(loadGame("raced").get()).withNextGuessId(1).withGuesses("q"), 0);
+                return super.updateGames(games, nextGuessIds);
+            }
+        };
+        raced.storeGame(ImmutableGameDetail.builder()
+                .secretWord("xy")
+                .status(GameStatus.NEW)
+                .nextGuessId(0)
+                .guessesRemaining(3)
+                .gameId("raced")
+                .build());
+        HangmanService racedService = new HangmanService(raced, new Dictionary());
+
+        List<GuessOutcome> outcomes = racedService.applyGuesses(Arrays.asList(
+                ImmutableGuess.of("raced", 'x', 0),
+                ImmutableGuess.of("raced", 'x', 1),
+                ImmutableGuess.of("raced", 'y', 1),
+                ImmutableGuess.of("raced", 'x', 2)));
+
+        // none of them were written, so none of them saw the game as it is
+        for (GuessOutcome outcome : outcomes) {
+            assertEquals(GuessOutcome.Result.CONFLICT, outcome.getResult());
+        }
+        assertEquals("q", raced.loadGame("raced").get().getGuesses());
+    }
+
+    @Test
+    void testGuessingAFinishedGame() {
+        store.storeGame(ImmutableGameDetail.builder()
+                .secretWord("x")
+                .status(GameStatus.WON)
+                .nextGuessId(1)
+                .guessesRemaining(3)
+                .gameId("finished")
+                .build());
+        // a conflict like any other guess on a stale state, in a batch or not
+        assertThrows(GameFinishedException.class, () -> service.applyGuess("finished", 'y', 1));
+        assertEquals(GuessOutcome.Result.FINISHED,
+                service.applyGuesses(Arrays.asList(ImmutableGuess.of("finished", 'y', 1))).get(0).getResult());
+    }
+
+    @Test
+    void testGuessesMustBeIso88591() {
+        GameDetail game = service.createNewGame();
+        assertThrows(InvalidGuessException.class, () -> service.applyGuess(game.getGameId(), '\u20ac', 0));
+        assertTrue(assertThrows(CompletionException.class, () -> service.applyGuessAsync(game.getGameId(), '\u20ac', 0).join())
+                .getCause() instanceof InvalidGuessException);
+        assertEquals(GuessOutcome.Result.INVALID,
+                service.applyGuesses(Arrays.asList(ImmutableGuess.of(game.getGameId(), '\u20ac', 0))).get(0).getResult());
+        assertEquals(game, service.getGameState(game.getGameId()));
+
+        // an uppercase letter is fine as long as its lowercase is held
+        assertEquals("\u00ff", service.applyGuess(game.getGameId(), '\u0178', 0).getGuesses());
+    }
+
+    @Test
+    void testCreateNewGames() {
+        List<GameDetail> games = service.createNewGames(5);
+        assertEquals(5, games.size());
+        for (GameDetail game : games) {
+            assertEquals(game, service.getGameState(game.getGameId()));
+        }
+    }
+
+}
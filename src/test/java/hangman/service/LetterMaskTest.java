@@ -0,0 +1,51 @@
+package hangman.service;
+
+import hangman.api.GameStatus;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LetterMaskTest {
+
+    @Test
+    void testLettersHaveDistinctBits() {
+        long mask = LetterMask.of("abcdefghijklmnopqrstuvwxyz\u00df\u00e0\u00ff");
+        assertEquals(29, Long.bitCount(mask));
+        assertEquals(LetterMask.of('a'), LetterMask.of("aaaa"));
+    }
+
+    @Test
+    void testNonLettersHaveNoBit() {
+        assertEquals(0, LetterMask.of('0'));
+        assertEquals(0, LetterMask.of('-'));
+        assertEquals(0, LetterMask.of('\u00f7'));
+        assertEquals(0, LetterMask.of('A'));
+        assertEquals(0, LetterMask.of('\u0436'));
+    }
+
+    @Test
+    void testAllMatched() {
+        long word = LetterMask.of("foobar");
+        assertFalse(LetterMask.allMatched(word, LetterMask.of("fobx")));
+        assertTrue(LetterMask.allMatched(word, LetterMask.of("fobxar")));
+        assertTrue(LetterMask.contains(word, 'o'));
+        assertFalse(LetterMask.contains(word, 'x'));
+    }
+
+    @Test
+    void testHasGuessed() {
+        GameDetail game = ImmutableGameDetail.builder()
+                .secretWord("foobar")
+                .status(GameStatus.IN_PROGRESS)
+                .nextGuessId(3)
+                .guessesRemaining(8)
+                .gameId("id")
+                .guesses("o0x")
+                .build();
+        assertTrue(game.hasGuessed('o'));
+        assertTrue(game.hasGuessed('0'));
+        assertTrue(game.hasGuessed('x'));
+        assertFalse(game.hasGuessed('f'));
+        assertFalse(game.hasGuessed('1'));
+    }
+}
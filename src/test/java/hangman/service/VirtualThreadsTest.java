@@ -0,0 +1,29 @@
+package hangman.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadsTest {
+
+    @Test
+    void supportedFromJava21() throws Exception {
+        assertEquals(Runtime.version().feature() >= 21, VirtualThreads.isSupported());
+        assertFalse(VirtualThreads.isVirtual(Thread.currentThread()));
+        if (!VirtualThreads.isSupported()) {
+            assertThrows(UnsupportedOperationException.class, () -> VirtualThreads.newExecutor("test-"));
+            return;
+        }
+        ExecutorService executor = VirtualThreads.newExecutor("test-");
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get();
+            assertTrue(VirtualThreads.isVirtual(thread));
+            assertEquals("test-0", thread.getName());
+            assertEquals("test-1", executor.submit(() -> Thread.currentThread().getName()).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
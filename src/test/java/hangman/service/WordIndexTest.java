@@ -0,0 +1,151 @@
+package hangman.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WordIndexTest {
+
+    @Test
+    void testHint() {
+        WordIndex index = index("yacht\nzebra\nzesty\nzeros\nhero\nsta\u00dfe\n", 65536);
+
+        // nothing shown yet: every five letter word fits and four of the five have an e
+        assertEquals(ImmutableHint.of(Optional.of('e'), 5, 4), index.hint("     ", ""));
+        // an e second and nowhere else, and no t
+        assertEquals(ImmutableHint.of(Optional.of('r'), 2, 2), index.hint(" e   ", "t"));
+        // only zebra left, and a comes before b
+        assertEquals(ImmutableHint.of(Optional.of('a'), 1, 1), index.hint("ze r ", ""));
+        // letters without a bit and guesses that aren't letters don't get in the way
+        assertEquals(ImmutableHint.of(Optional.of('\u00df'), 1, 1), index.hint("sta e", "0!"));
+    }
+
+    @Test
+    void testNoHint() {
+        WordIndex index = index("yacht\nzebra\n", 65536);
+
+        assertEquals(Hint.none(0), index.hint("      ", ""));
+        assertEquals(Hint.none(0), index.hint("q    ", ""));
+        assertEquals(Hint.none(0), index.hint("     ", "yz"));
+        assertEquals(Hint.none(0), index.hint("0    ", ""));
+        // the whole word is showing
+        assertEquals(Hint.none(1), index.hint("yacht", "z"));
+    }
+
+    @Test
+    void testBuiltOnTheFirstHint() {
+        WordIndex index = new WordIndex(dictionary("yacht\nzebra\n"), 65536, false);
+        assertEquals(0, index.sizeInBytes());
+
+        assertEquals(ImmutableHint.of(Optional.of('a'), 2, 2), index.hint("     ", ""));
+        // a long each for the ten letters at their positions and the nine letters anywhere
+        assertEquals(19 * Long.BYTES, index.sizeInBytes());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkSize() {
+        Random random = new Random(42);
+        StringBuilder words = new StringBuilder();
+        for (int loop = 0; loop < 1_000_000; loop++) {
+            words.append(word(random, 8)).append('\n');
+        }
+        Dictionary dictionary = dictionary(words.toString());
+        WordIndex index = new WordIndex(dictionary, 65536);
+        System.out.printf("words=%,d letters=%,d index bytes=%,d%n", dictionary.size(), dictionary.size() * 8L, index.sizeInBytes());
+    }
+
+    @Test
+    void testAgainstEveryWord() {
+        // enough words of one length to be split up and counted in parallel
+        Random random = new Random(42);
+        StringBuilder words = new StringBuilder();
+        for (int loop = 0; loop < 70_000; loop++) {
+            words.append(word(random, 4)).append('\n');
+        }
+        Dictionary dictionary = dictionary(words.toString());
+        WordIndex parallel = new WordIndex(dictionary, 1000);
+        WordIndex serial = new WordIndex(dictionary, Integer.MAX_VALUE);
+
+        for (int loop = 0; loop < 200; loop++) {
+            String secretWord = dictionary.randomWord(4);
+            StringBuilder guesses = new StringBuilder();
+            for (int guess = 0; guess < loop % 6; guess++) {
+                guesses.append((char) ('a' + random.nextInt(8)));
+            }
+            char[] shown = new char[secretWord.length()];
+            StringBuilder failed = new StringBuilder();
+            for (int offset = 0; offset < shown.length; offset++) {
+                char letter = secretWord.charAt(offset);
+                shown[offset] = guesses.indexOf(String.valueOf(letter)) >= 0 ? letter : ' ';
+            }
+            for (int guess = 0; guess < guesses.length(); guess++) {
+                if (secretWord.indexOf(guesses.charAt(guess)) < 0) {
+                    failed.append(guesses.charAt(guess));
+                }
+            }
+
+            Hint hint = parallel.hint(new String(shown), failed);
+            assertTrue(hint.getCandidates() > 0);
+            assertEquals(everyWord(dictionary, new String(shown), failed), hint);
+            assertEquals(hint, serial.hint(new String(shown), failed));
+        }
+    }
+
+    // the same hint worked out by checking every word of that length in turn
+    private static Hint everyWord(Dictionary dictionary, String shown, CharSequence failed) {
+        long revealed = LetterMask.of(shown);
+        long tried = revealed | LetterMask.of(failed);
+        int candidates = 0;
+        int[] counts = new int[LetterMask.LETTERS];
+        for (int word = 0; word < dictionary.size(shown.length()); word++) {
+            boolean fits = true;
+            long letters = 0L;
+            for (int offset = 0; offset < shown.length() && fits; offset++) {
+                char letter = dictionary.letter(shown.length(), word, offset);
+                fits = shown.charAt(offset) == ' '
+                        ? !LetterMask.contains(tried, letter)
+                        : shown.charAt(offset) == letter;
+                letters |= LetterMask.of(letter);
+            }
+            if (fits) {
+                candidates++;
+                for (long untried = letters & ~tried; untried != 0; untried &= untried - 1) {
+                    counts[Long.numberOfTrailingZeros(untried)]++;
+                }
+            }
+        }
+        int best = 0;
+        for (int bit = 1; bit < counts.length; bit++) {
+            best = counts[bit] > counts[best] ? bit : best;
+        }
+        return counts[best] == 0
+                ? Hint.none(candidates)
+                : ImmutableHint.of(Optional.of(LetterMask.letter(best)), candidates, counts[best]);
+    }
+
+    private static String word(Random random, int length) {
+        char[] word = new char[length];
+        for (int loop = 0; loop < length; loop++) {
+            // skewed towards the start of the alphabet, as real letters are towards a few common ones
+            word[loop] = (char) ('a' + Math.min(random.nextInt(26), random.nextInt(26)));
+        }
+        return new String(word);
+    }
+
+    private static WordIndex index(String words, int parallelWords) {
+        return new WordIndex(dictionary(words), parallelWords);
+    }
+
+    private static Dictionary dictionary(String words) {
+        Dictionary dictionary = new Dictionary();
+        dictionary.load(ByteBuffer.wrap(words.getBytes(StandardCharsets.UTF_8)));
+        return dictionary;
+    }
+}
@@ -0,0 +1,96 @@
+package hangman.store;
+
+import hangman.App;
+import hangman.api.ResponseCache;
+import hangman.metrics.Metrics;
+import hangman.service.GameDetail;
+import hangman.service.HangmanService;
+import hangman.service.ImmutableGameDetail;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = {App.class, CachingHangmanStoreAppTest.Versions.class}, properties = "hangman.store.near-cache.enabled=true")
+@AutoConfigureMockMvc
+class CachingHangmanStoreAppTest {
+
+    @TestConfiguration
+    static class Versions {
+        @Bean
+        CachingHangmanStoreTest.VersionStream versionStream() {
+            return new CachingHangmanStoreTest.VersionStream();
+        }
+    }
+
+    @Autowired
+    private HangmanStore store;
+
+    @Autowired
+    private MapHangmanStore backend;
+
+    @Autowired
+    private HangmanService service;
+
+    @Autowired
+    private Metrics metrics;
+
+    @Autowired
+    private CachingHangmanStoreTest.VersionStream versions;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    void testTheCacheIsInFrontOfTheBackend() {
+        assertTrue(store instanceof CachingHangmanStore);
+        long invalidations = ((CachingHangmanStore) store).invalidations();
+        GameDetail game = service.createNewGame();
+        assertEquals(game, backend.loadGame(game.getGameId()).get());
+        service.getGameState(game.getGameId());
+        // this node's own write, which doesn't invalidate anything
+        versions.deliver();
+        assertEquals(invalidations, ((CachingHangmanStore) store).invalidations());
+
+        String scraped = metrics.scrape();
+        assertTrue(scraped.contains("hangman_store_cache_loads_total{result=\"hit\"} "));
+        assertFalse(scraped.contains("hangman_store_cache_loads_total{result=\"hit\"} 0\n"));
+        assertTrue(scraped.contains("hangman_store_cache_invalidations_total "));
+    }
+
+    @Test
+    void testGetsSeeWritesFromOtherNodes() throws Exception {
+        GameDetail game = service.createNewGame();
+        mvc.perform(get("/api/hangman/games/" + game.getGameId()))
+                .andExpect(header().string("ETag", "\"0\""));
+        assertNotNull(responseCache.get(game.getGameId()));
+
+        // another node's guess, written straight to the backend and announced
+        backend.updateGame(ImmutableGameDetail.copyOf(game).withNextGuessId(1).withGuessesRemaining(9), 0);
+        versions.publish(game.getGameId(), 1);
+        versions.deliver();
+        assertNull(responseCache.get(game.getGameId()));
+        mvc.perform(get("/api/hangman/games/" + game.getGameId())
+                .header("If-None-Match", "\"0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""));
+
+        backend.removeGame(game.getGameId(), 1);
+        versions.publish(game.getGameId(), GameVersionStream.REMOVED);
+        versions.deliver();
+        assertNull(responseCache.get(game.getGameId()));
+        mvc.perform(get("/api/hangman/games/" + game.getGameId()))
+                .andExpect(status().isNotFound());
+    }
+}
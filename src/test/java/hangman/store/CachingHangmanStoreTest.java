@@ -0,0 +1,246 @@
+package hangman.store;
+
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.ImmutableGameDetail;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// two nodes, each with its own near cache, sharing one backend and one version stream
+class CachingHangmanStoreTest {
+
+    private final SlowStore backend = new SlowStore(Duration.ZERO);
+    private final VersionStream stream = new VersionStream();
+    private final CachingHangmanStore node = cache(backend, stream);
+    private final CachingHangmanStore otherNode = cache(backend, stream);
+
+    @Test
+    void testLoadsAreServedFromTheCache() {
+        node.storeGame(newGame("game"));
+        for (int loop = 0; loop < 3; loop++) {
+            assertEquals(0, node.loadGame("game").get().getNextGuessId());
+        }
+        assertEquals(0, backend.loads());
+        assertEquals(3, node.hits());
+
+        // read through once on the other node
+        otherNode.loadGame("game");
+        otherNode.loadGame("game");
+        assertEquals(1, backend.loads());
+        assertEquals(1, otherNode.misses());
+        assertEquals(1, otherNode.hits());
+
+        assertFalse(node.loadGame("nosuchgame").isPresent());
+        assertEquals(1, node.misses());
+    }
+
+    @Test
+    void testUpdatesWriteThrough() {
+        GameDetail game = newGame("game");
+        node.storeGame(game);
+        node.updateGame(ImmutableGameDetail.copyOf(game).withNextGuessId(1), 0);
+        assertEquals(1, node.loadGame("game").get().getNextGuessId());
+        assertEquals(1, backend.loadGame("game").get().getNextGuessId());
+
+        // this node's own announcements don't drop anything
+        stream.deliver();
+        assertEquals(1, node.loadGame("game").get().getNextGuessId());
+        assertEquals(0, node.invalidations());
+        assertEquals(0, node.misses());
+    }
+
+    @Test
+    void testUpdatesOnAnotherNodeInvalidate() {
+        GameDetail game = newGame("game");
+        node.storeGame(game);
+        otherNode.loadGame("game");
+
+        node.updateGame(ImmutableGameDetail.copyOf(game).withNextGuessId(1), 0);
+        node.updateGame(ImmutableGameDetail.copyOf(game).withNextGuessId(2), 1);
+        // not announced yet, so the other node still reads the old version
+        assertEquals(0, otherNode.loadGame("game").get().getNextGuessId());
+
+        stream.deliver();
+        // dropped at the first announcement, a version behind
+        assertEquals(1, otherNode.invalidations());
+        assertEquals(1, otherNode.staleVersions());
+        assertEquals(2, otherNode.loadGame("game").get().getNextGuessId());
+        assertEquals(2, otherNode.loadGame("game").get().getNextGuessId());
+        assertEquals(2, otherNode.misses());
+    }
+
+    @Test
+    void testStaleCopiesCanNotBeWrittenFrom() {
+        GameDetail game = newGame("game");
+        node.storeGame(game);
+        otherNode.loadGame("game");
+        node.updateGame(ImmutableGameDetail.copyOf(game).withNextGuessId(1), 0);
+
+        assertThrows(ConcurrentModificationException.class,
+                () -> otherNode.updateGame(ImmutableGameDetail.copyOf(game).withNextGuessId(1).withGuesses("x"), 0));
+        assertEquals(1, otherNode.staleUpdates());
+        assertEquals(1, otherNode.loadGame("game").get().getNextGuessId());
+
+        // losing to a guess made on the same node isn't staleness
+        CompletionException lost = assertThrows(CompletionException.class,
+                () -> node.updateGameAsync(ImmutableGameDetail.copyOf(game).withNextGuessId(1), 0).join());
+        assertTrue(lost.getCause() instanceof ConcurrentModificationException);
+        assertEquals(0, node.staleUpdates());
+        assertEquals(1, node.loadGame("game").get().getNextGuessId());
+    }
+
+    @Test
+    void testRemovalsInvalidate() {
+        GameDetail game = newGame("game");
+        node.storeGame(game);
+        otherNode.loadGame("game");
+        assertTrue(node.removeGame("game", 0));
+        assertFalse(node.loadGame("game").isPresent());
+
+        stream.deliver();
+        assertEquals(1, otherNode.invalidations());
+        assertEquals(0, otherNode.staleVersions());
+        assertFalse(otherNode.loadGame("game").isPresent());
+    }
+
+    @Test
+    void testMultiGetReadsAroundTheCache() {
+        node.storeGame(newGame("cached"));
+        backend.storeGame(newGame("uncached"));
+        assertEquals(List.of(Optional.of(newGame("cached")), Optional.empty(), Optional.of(newGame("uncached"))),
+                node.loadGames(List.of("cached", "nowhere", "uncached")));
+        assertEquals(1, node.hits());
+        assertEquals(2, node.misses());
+        assertEquals(1, node.cachedGames());
+        assertEquals(2, backend.loads());
+    }
+
+    @Test
+    void testAsync() {
+        backend.storeGame(newGame("game"));
+        assertEquals(0, node.loadGameAsync("game").join().get().getNextGuessId());
+        assertEquals(0, node.loadGameAsync("game").join().get().getNextGuessId());
+        assertEquals(1, backend.loads());
+
+        node.updateGameAsync(ImmutableGameDetail.copyOf(node.loadGame("game").get()).withNextGuessId(1), 0).join();
+        assertEquals(1, node.loadGameAsync("game").join().get().getNextGuessId());
+        assertEquals(1, backend.loads());
+        assertEquals(1, node.misses());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkPolling() {
+        int games = 100;
+        int polls = 10_000;
+        SlowStore remote = new SlowStore(Duration.ofMillis(1));
+        for (int game = 0; game < games; game++) {
+            remote.storeGame(newGame("game" + game));
+        }
+        HangmanStore[] stores = {remote, cache(remote, stream)};
+        for (HangmanStore store : stores) {
+            long start = System.nanoTime();
+            for (int loop = 0; loop < polls; loop++) {
+                store.loadGame("game" + loop % games);
+            }
+            System.out.printf("%s: %.1fus a load%n", store.getClass().getSimpleName(), (System.nanoTime() - start) / 1e3 / polls);
+        }
+        CachingHangmanStore cache = (CachingHangmanStore) stores[1];
+        System.out.printf("hit rate %.1f%%%n", 100.0 * cache.hits() / (cache.hits() + cache.misses()));
+    }
+
+    private static CachingHangmanStore cache(HangmanStore store, GameVersionStream versions) {
+        CachingHangmanStore cache = new CachingHangmanStore(store, versions, 1000, Duration.ofMinutes(1));
+        cache.start();
+        return cache;
+    }
+
+    private static GameDetail newGame(String gameId) {
+        return ImmutableGameDetail.builder()
+                .gameId(gameId)
+                .secretWord("foobar")
+                .status(GameStatus.NEW)
+                .nextGuessId(0)
+                .guessesRemaining(10)
+                .build();
+    }
+
+    // a map store that takes a round trip to answer
+    static class SlowStore extends MapHangmanStore {
+
+        private final Duration latency;
+        private final LongAdder loads = new LongAdder();
+
+        SlowStore(Duration latency) {
+            this.latency = latency;
+        }
+
+        long loads() {
+            return loads.sum();
+        }
+
+        @Override
+        public Optional<GameDetail> loadGame(String gameId) {
+            loads.increment();
+            roundTrip();
+            return super.loadGame(gameId);
+        }
+
+        @Override
+        public void updateGame(GameDetail game, int nextGuessId) {
+            roundTrip();
+            super.updateGame(game, nextGuessId);
+        }
+
+        private void roundTrip() {
+            if (!latency.isZero()) {
+                try {
+                    Thread.sleep(latency.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // holds announcements until they are delivered, to every subscriber
+    static class VersionStream implements GameVersionStream {
+
+        private final List<ObjLongConsumer<String>> listeners = new CopyOnWriteArrayList<>();
+        private final Queue<Object[]> pending = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void publish(String gameId, long version) {
+            pending.add(new Object[]{gameId, version});
+        }
+
+        @Override
+        public void subscribe(ObjLongConsumer<String> listener) {
+            listeners.add(listener);
+        }
+
+        void deliver() {
+            List<Object[]> delivering = new ArrayList<>();
+            for (Object[] announcement; (announcement = pending.poll()) != null; ) {
+                delivering.add(announcement);
+            }
+            for (Object[] announcement : delivering) {
+                listeners.forEach(listener -> listener.accept((String) announcement[0], (Long) announcement[1]));
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package hangman.store;
+
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.ImmutableGameDetail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiryWheelTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final Map<String, Integer> games = new ConcurrentHashMap<>();
+    private ExpiryWheel wheel;
+
+    @BeforeEach
+    void setUp() {
+        // 8 one second buckets, so anything over 8 seconds goes round the wheel more than once
+        wheel = new ExpiryWheel((gameId, nextGuessId) -> games.remove(gameId, nextGuessId),
+                clock::get, 1000, 8);
+        wheel.configure(Duration.ofSeconds(5), Duration.ofSeconds(20));
+    }
+
+    @Test
+    void testFinishedGamesExpire() {
+        touch(game("won", GameStatus.WON, 4));
+        touch(game("lost", GameStatus.LOST, 10));
+
+        advanceSeconds(4);
+        assertEquals(2, games.size());
+
+        advanceSeconds(1);
+        assertTrue(games.isEmpty());
+        assertEquals(2, wheel.expiredGames());
+        assertEquals(0, wheel.evictedGames());
+    }
+
+    @Test
+    void testIdleGamesAreEvictedAfterSeveralLaps() {
+        touch(game("idle", GameStatus.NEW, 0));
+
+        advanceSeconds(19);
+        assertTrue(games.containsKey("idle"));
+
+        advanceSeconds(1);
+        assertFalse(games.containsKey("idle"));
+        assertEquals(1, wheel.evictedGames());
+    }
+
+    @Test
+    void testActiveGamesAreKept() {
+        touch(game("active", GameStatus.IN_PROGRESS, 1));
+        advanceSeconds(15);
+        touch(game("active", GameStatus.IN_PROGRESS, 2));
+
+        // the first deadline passes, but the game has moved on since
+        advanceSeconds(10);
+        assertEquals(2, games.get("active"));
+
+        advanceSeconds(10);
+        assertFalse(games.containsKey("active"));
+        assertEquals(1, wheel.evictedGames());
+    }
+
+    @Test
+    void testAGameHasOneEntryHoweverOftenItIsWritten() {
+        for (int guess = 0; guess < 100; guess++) {
+            touch(game("busy", GameStatus.IN_PROGRESS, guess));
+            advanceSeconds(1);
+        }
+        assertEquals(1, wheel.queuedEntries());
+
+        // finishing brings the deadline forward
+        touch(game("busy", GameStatus.WON, 100));
+        advanceSeconds(5);
+        assertFalse(games.containsKey("busy"));
+        assertEquals(1, wheel.expiredGames());
+        advanceSeconds(20);
+        assertEquals(0, wheel.queuedEntries());
+        assertEquals(0, wheel.evictedGames());
+
+        // a game played again under the same id gets a new entry
+        touch(game("busy", GameStatus.NEW, 0));
+        advanceSeconds(20);
+        assertFalse(games.containsKey("busy"));
+        assertEquals(1, wheel.evictedGames());
+    }
+
+    @Test
+    void testZeroTtlDisablesExpiry() {
+        wheel.configure(Duration.ZERO, Duration.ZERO);
+        touch(game("won", GameStatus.WON, 4));
+        advanceSeconds(100);
+        assertTrue(games.containsKey("won"));
+    }
+
+    private void touch(GameDetail game) {
+        games.put(game.getGameId(), game.getNextGuessId());
+        wheel.schedule(game);
+    }
+
+    private void advanceSeconds(int seconds) {
+        // tick by tick, the way the background thread would
+        for (int loop = 0; loop < seconds; loop++) {
+            clock.addAndGet(1000);
+            wheel.advance();
+        }
+    }
+
+    private static GameDetail game(String gameId, GameStatus status, int nextGuessId) {
+        return ImmutableGameDetail.builder()
+                .gameId(gameId)
+                .secretWord("foobar")
+                .status(status)
+                .nextGuessId(nextGuessId)
+                .guessesRemaining(10)
+                .build();
+    }
+}
@@ -0,0 +1,116 @@
+package hangman.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameIdGeneratorTest {
+
+    @Test
+    void testIdsAreUniqueAndIncreasing() {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        GameIdGenerator generator = new GameIdGenerator(7, clock::get);
+
+        long previous = -1;
+        Set<String> ids = new HashSet<>();
+        // well over the 4096 ids a millisecond holds, then the clock stepping back
+        for (int loop = 0; loop < 10_000; loop++) {
+            if (loop == 5000) {
+                clock.addAndGet(-60_000);
+            }
+            String id = generator.nextId();
+            long value = GameIdGenerator.decode(id);
+            assertTrue(value > previous);
+            assertTrue(id.length() <= 13);
+            assertEquals(7, GameIdGenerator.nodeOf(id));
+            assertTrue(ids.add(id));
+            previous = value;
+        }
+    }
+
+    @Test
+    void testIdsAreUniqueAcrossThreads() throws InterruptedException {
+        GameIdGenerator generator = new GameIdGenerator();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[4];
+        for (int loop = 0; loop < threads.length; loop++) {
+            threads[loop] = new Thread(() -> {
+                for (int id = 0; id < 50_000; id++) {
+                    ids.add(generator.nextId());
+                }
+            });
+            threads[loop].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200_000, ids.size());
+    }
+
+    @Test
+    void testObserveMovesPastRecoveredIds() {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        GameIdGenerator generator = new GameIdGenerator(1, clock::get);
+        String recovered = generator.nextId();
+
+        // a restart with the clock behind where it was
+        clock.addAndGet(-60_000);
+        GameIdGenerator restarted = new GameIdGenerator(1, clock::get);
+        restarted.observe(recovered);
+        // ids from other nodes have no bearing on ours
+        restarted.observe(new GameIdGenerator(2, () -> clock.get() + 3_600_000).nextId());
+        assertEquals(GameIdGenerator.decode(recovered) + 1, GameIdGenerator.decode(restarted.nextId()));
+    }
+
+    @Test
+    void testDecode() {
+        assertEquals(0, GameIdGenerator.decode("0"));
+        assertEquals(Long.MAX_VALUE, GameIdGenerator.decode(GameIdGenerator.encode(Long.MAX_VALUE)));
+        assertEquals(-1, GameIdGenerator.decode(""));
+        assertEquals(-1, GameIdGenerator.decode("ABC"));
+        assertEquals(-1, GameIdGenerator.decode("not-an-id"));
+        assertEquals(-1, GameIdGenerator.decode("zzzzzzzzzzzzz"));
+        assertEquals(-1, GameIdGenerator.nodeOf("xyz!"));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkThroughput() throws InterruptedException {
+        // the first round warms up
+        for (int threadCount : new int[]{1, 1, 2, 4, 8}) {
+            GameIdGenerator generator = new GameIdGenerator();
+            System.out.printf("threads=%d generator ids/s=%,d random ids/s=%,d%n", threadCount,
+                    idsPerSecond(threadCount, generator::nextId),
+                    // what generateUniqueId used to do
+                    idsPerSecond(threadCount, () -> Integer.toString(new Random().nextInt(Integer.MAX_VALUE), 36)));
+        }
+    }
+
+    private static long idsPerSecond(int threadCount, Supplier<String> ids) throws InterruptedException {
+        int idsPerThread = 2_000_000;
+        Thread[] threads = new Thread[threadCount];
+        long start = System.nanoTime();
+        for (int loop = 0; loop < threadCount; loop++) {
+            threads[loop] = new Thread(() -> {
+                int length = 0;
+                for (int id = 0; id < idsPerThread; id++) {
+                    length += ids.get().length();
+                }
+                assertTrue(length > 0);
+            });
+            threads[loop].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return (long) idsPerThread * threadCount * 1_000_000_000L / (System.nanoTime() - start);
+    }
+}
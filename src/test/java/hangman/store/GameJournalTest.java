@@ -0,0 +1,246 @@
+package hangman.store;
+
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.ImmutableGameDetail;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private GameJournal storeJournal;
+
+    @Test
+    void testGamesSurviveARestart() throws Exception {
+        MapHangmanStore store = startStore();
+        store.storeGame(game("one", 0, ""));
+        store.storeGame(game("two", 0, ""));
+        store.updateGame(game("one", 1, "f"), 0);
+        store.updateGame(game("one", 2, "fx"), 1);
+        stop(store);
+
+        MapHangmanStore recovered = startStore();
+        assertEquals(game("one", 2, "fx"), recovered.loadGame("one").get());
+        assertEquals(game("two", 0, ""), recovered.loadGame("two").get());
+        assertThrows(ConcurrentModificationException.class, () -> recovered.updateGame(game("one", 2, "fx"), 1));
+        stop(recovered);
+    }
+
+    @Test
+    void testHighestVersionWinsAndRemovalsClearWhatCameBefore() throws Exception {
+        GameJournal journal = new GameJournal(directory, 1 << 20, Duration.ZERO);
+        journal.recover(new HashMap<>());
+        journal.start(Map.<String, GameDetail>of()::values);
+        // concurrent updates can reach the log out of order
+        journal.append(game("one", 2, "fx"));
+        journal.append(game("one", 1, "f"));
+        journal.append(game("two", 0, ""));
+        journal.append(game("three", 3, "fxy"));
+        journal.appendRemoval("two");
+        journal.appendRemoval("three");
+        // handed back to this node after it handed it off
+        journal.append(game("two", 1, "f"));
+        journal.close();
+
+        Map<String, GameDetail> table = recover();
+        assertEquals(2, table.get("one").getNextGuessId());
+        assertEquals(game("two", 1, "f"), table.get("two"));
+        assertFalse(table.containsKey("three"));
+    }
+
+    @Test
+    void testTornTailIsIgnored() throws Exception {
+        GameJournal journal = new GameJournal(directory, 1 << 20, Duration.ZERO);
+        journal.recover(new HashMap<>());
+        journal.start(Map.<String, GameDetail>of()::values);
+        journal.append(game("one", 0, ""));
+        journal.append(game("two", 0, ""));
+        journal.close();
+
+        // chop the last record in half, as a crash part way through a write would
+        Path segment = files(".log")[0];
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        Map<String, GameDetail> table = recover();
+        assertTrue(table.containsKey("one"));
+        assertFalse(table.containsKey("two"));
+    }
+
+    @Test
+    void testAFailedWriteDoesNotHideLaterRecords() throws Exception {
+        AtomicBoolean failNextWrite = new AtomicBoolean();
+        GameJournal journal = new GameJournal(directory, 1 << 20, Duration.ZERO) {
+            @Override
+            void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+                if (failNextWrite.getAndSet(false)) {
+                    // half the batch reaches the file before the disk gives up
+                    buffer.flip();
+                    buffer.limit(buffer.limit() / 2);
+                    channel.write(buffer);
+                    buffer.clear();
+                    throw new IOException("disk full");
+                }
+                super.writeFully(channel, buffer);
+            }
+        };
+        journal.recover(new HashMap<>());
+        journal.start(Map.<String, GameDetail>of()::values);
+        journal.append(game("one", 0, ""));
+        failNextWrite.set(true);
+        assertThrows(CompletionException.class, () -> journal.appendAsync(game("two", 0, "")).join());
+        journal.append(game("three", 0, ""));
+        journal.close();
+
+        Map<String, GameDetail> table = recover();
+        assertTrue(table.containsKey("one"));
+        assertFalse(table.containsKey("two"));
+        assertTrue(table.containsKey("three"));
+    }
+
+    @Test
+    void testCompactionKeepsOnlyLiveGames() throws Exception {
+        Map<String, GameDetail> live = new ConcurrentHashMap<>();
+        GameJournal journal = new GameJournal(directory, 256, Duration.ZERO);
+        journal.recover(live);
+        journal.start(live::values);
+        for (int loop = 0; loop < 100; loop++) {
+            GameDetail game = game("game" + loop, loop, "");
+            live.put(game.getGameId(), game);
+            journal.append(game);
+        }
+        assertTrue(files(".log").length > 10);
+
+        journal.compact();
+        live.remove("game0");
+        journal.appendRemoval("game0");
+        journal.append(game("game1", 2, "ab"));
+        journal.close();
+
+        assertEquals(1, files(".snapshot").length);
+        assertTrue(files(".log").length <= 2);
+        Map<String, GameDetail> table = recover();
+        assertEquals(99, table.size());
+        assertEquals("ab", table.get("game1").getGuesses());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkGuessThroughput() throws Exception {
+        int threads = 64;
+        int updatesPerThread = 2_000;
+        for (boolean journaled : new boolean[]{false, true}) {
+            MapHangmanStore store = journaled ? startStore() : new MapHangmanStore();
+            for (int loop = 0; loop < threads; loop++) {
+                store.storeGame(game("game" + loop, 0, ""));
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch done = new CountDownLatch(threads);
+            long start = System.nanoTime();
+            for (int loop = 0; loop < threads; loop++) {
+                String gameId = "game" + loop;
+                executor.execute(() -> {
+                    for (int guess = 0; guess < updatesPerThread; guess++) {
+                        store.updateGame(game(gameId, guess + 1, ""), guess);
+                    }
+                    done.countDown();
+                });
+            }
+            done.await();
+            long elapsed = System.nanoTime() - start;
+            executor.shutdown();
+            System.out.printf("journal=%s updates/s=%,d%n", journaled,
+                    threads * (long) updatesPerThread * TimeUnit.SECONDS.toNanos(1) / elapsed);
+            if (journaled) {
+                stop(store);
+            }
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkRecovery() throws Exception {
+        int records = 10_000_000;
+        GameJournal journal = new GameJournal(directory, 64 << 20, Duration.ZERO);
+        journal.recover(new HashMap<>());
+        journal.start(Map.<String, GameDetail>of()::values);
+        CompletableFuture<Long> last = null;
+        for (int loop = 0; loop < records; loop++) {
+            // a million games, ten records each
+            last = journal.appendAsync(game("game" + loop % 1_000_000, loop / 1_000_000, ""));
+            if (loop % 100_000 == 0) {
+                last.join();
+            }
+        }
+        last.join();
+        journal.close();
+
+        long start = System.nanoTime();
+        Map<String, GameDetail> table = recover();
+        System.out.printf("recovered %,d games from %,d records in %d ms%n", table.size(), records,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private MapHangmanStore startStore() {
+        storeJournal = new GameJournal(directory, 1 << 20, Duration.ZERO);
+        MapHangmanStore store = new MapHangmanStore(storeJournal);
+        store.start();
+        return store;
+    }
+
+    private void stop(MapHangmanStore store) throws Exception {
+        store.stop();
+        // the store doesn't own the journal, spring closes it separately
+        storeJournal.close();
+    }
+
+    private Map<String, GameDetail> recover() {
+        Map<String, GameDetail> table = new HashMap<>();
+        new GameJournal(directory, 1 << 20, Duration.ZERO).recover(table);
+        return table;
+    }
+
+    private Path[] files(String suffix) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.toString().endsWith(suffix)).sorted().toArray(Path[]::new);
+        }
+    }
+
+    private static GameDetail game(String gameId, int nextGuessId, String guesses) {
+        return ImmutableGameDetail.builder()
+                .gameId(gameId)
+                .secretWord("foobar")
+                .status(nextGuessId == 0 ? GameStatus.NEW : GameStatus.IN_PROGRESS)
+                .nextGuessId(nextGuessId)
+                .guessesRemaining(10)
+                .guesses(guesses)
+                .build();
+    }
+}
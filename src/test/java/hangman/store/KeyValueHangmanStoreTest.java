@@ -0,0 +1,313 @@
+package hangman.store;
+
+import hangman.api.GameStatus;
+import hangman.service.Dictionary;
+import hangman.service.GameDetail;
+import hangman.service.HangmanService;
+import hangman.service.ImmutableGameDetail;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// writing behind and flushed by hand, so the tests can see what is still waiting to be written
+@SpringBootTest(classes = {KeyValueHangmanStore.class, KeyValueHangmanStoreTest.Remote.class, HangmanService.class,
+        Dictionary.class},
+        properties = {"hangman.store.backend=kv", "hangman.store.kv.flush-interval=1h", "hangman.store.kv.write-behind=true",
+                "hangman.store.kv.max-staleness=1h"})
+class KeyValueHangmanStoreTest {
+
+    @TestConfiguration
+    static class Remote {
+        @Bean
+        KeyValueServer keyValueServer() {
+            return new KeyValueServer();
+        }
+    }
+
+    @Autowired
+    private HangmanService service;
+
+    @Autowired
+    private KeyValueHangmanStore store;
+
+    @Autowired
+    private KeyValueServer server;
+
+    @Test
+    void testUpdatesAreCoalesced() {
+        GameDetail game = service.createNewGame();
+        GameDetail updated = game;
+        for (char letter : "zqxj".toCharArray()) {
+            updated = service.applyGuess(game.getGameId(), letter, updated.getNextGuessId());
+        }
+        assertNull(server.peek(game.getGameId()));
+
+        long batches = store.batches();
+        long writes = store.writes();
+        store.flush().join();
+        assertEquals(batches + 1, store.batches());
+        assertEquals(writes + 1, store.writes());
+        assertEquals(4, server.peek(game.getGameId()).getVersion());
+        assertEquals(updated, GameJournal.decode(server.peek(game.getGameId()).getValue()));
+
+        // nothing has changed, so nothing is sent
+        store.flush().join();
+        assertEquals(batches + 1, store.batches());
+    }
+
+    @Test
+    void testPlayingAGameReadFromTheRemoteStore() {
+        GameDetail game = ImmutableGameDetail.builder()
+                .gameId("remote")
+                .secretWord("yacht")
+                .status(GameStatus.IN_PROGRESS)
+                .nextGuessId(3)
+                .guessesRemaining(7)
+                .guesses("zqx")
+                .build();
+        server.put("remote", 3, GameJournal.encode(game));
+
+        assertEquals(game, service.getGameState("remote"));
+        GameDetail updated = game;
+        for (char letter : "yacht".toCharArray()) {
+            updated = service.applyGuess("remote", letter, updated.getNextGuessId());
+        }
+        assertEquals(GameStatus.WON, updated.getStatus());
+        store.flush().join();
+        assertEquals(updated, GameJournal.decode(server.peek("remote").getValue()));
+        assertFalse(store.loadGame("nowhere").isPresent());
+    }
+
+    @Test
+    void testMultiGetIsOneRoundTrip() {
+        GameDetail local = service.createNewGame();
+        GameDetail remote = ImmutableGameDetail.copyOf(local).withGameId("remote-multi").withNextGuessId(2);
+        server.put("remote-multi", 2, GameJournal.encode(remote));
+        long live = store.liveGames();
+        long calls = server.calls();
+
+        assertEquals(List.of(Optional.of(remote), Optional.of(local), Optional.empty()),
+                store.loadGames(List.of("remote-multi", local.getGameId(), "nowhere")));
+        assertEquals(calls + 1, server.calls());
+        // read, not taken in
+        assertEquals(live, store.liveGames());
+        assertTrue(store.scanGames(EnumSet.allOf(GameStatus.class)).hasNext());
+    }
+
+    @Test
+    void testGamesWrittenElsewhereAreDropped() {
+        GameDetail game = service.createNewGame();
+        store.flush().join();
+
+        // another node moves the game on, then this one tries to
+        GameDetail elsewhere = ImmutableGameDetail.copyOf(game).withNextGuessId(5).withGuessesRemaining(5);
+        server.put(game.getGameId(), 5, GameJournal.encode(elsewhere));
+        service.applyGuess(game.getGameId(), 'z', 0);
+        long conflicts = store.writeConflicts();
+        store.flush().join();
+
+        assertEquals(conflicts + 1, store.writeConflicts());
+        assertEquals(5, server.peek(game.getGameId()).getVersion());
+        assertEquals(elsewhere, service.getGameState(game.getGameId()));
+    }
+
+    @Test
+    void testFailedBatchesAreSentAgain() {
+        for (KeyValueServer.Failure failure : new KeyValueServer.Failure[]{
+                KeyValueServer.Failure.BEFORE_APPLYING, KeyValueServer.Failure.AFTER_APPLYING}) {
+            GameDetail game = service.createNewGame();
+            GameDetail updated = service.applyGuess(game.getGameId(), 'z', 0);
+            server.setFailure(failure);
+            try {
+                assertThrows(CompletionException.class, () -> store.flush().join());
+            } finally {
+                server.setFailure(KeyValueServer.Failure.NONE);
+            }
+
+            updated = service.applyGuess(game.getGameId(), 'q', updated.getNextGuessId());
+            long conflicts = store.writeConflicts();
+            store.flush().join();
+            assertEquals(conflicts, store.writeConflicts());
+            assertEquals(updated, GameJournal.decode(server.peek(game.getGameId()).getValue()));
+        }
+    }
+
+    @Test
+    void testWritesAreAcknowledgedOnceApplied() throws InterruptedException {
+        KeyValueServer remote = new KeyValueServer(Duration.ofMillis(20));
+        KeyValueHangmanStore acknowledged = new KeyValueHangmanStore(remote, Duration.ofHours(1), 512, 8, false, Duration.ofHours(1));
+        acknowledged.start();
+        try {
+            GameDetail game = newGame(acknowledged.generateUniqueId());
+            acknowledged.storeGame(game);
+            assertEquals(0, remote.peek(game.getGameId()).getVersion());
+            acknowledged.updateGame(ImmutableGameDetail.copyOf(game).withNextGuessId(1), 0);
+            assertEquals(1, remote.peek(game.getGameId()).getVersion());
+
+            // another node moves the game on, so this node's next guess is refused rather than lost
+            GameDetail elsewhere = ImmutableGameDetail.copyOf(game).withNextGuessId(5);
+            remote.put(game.getGameId(), 5, GameJournal.encode(elsewhere));
+            assertThrows(ConcurrentModificationException.class,
+                    () -> acknowledged.updateGame(ImmutableGameDetail.copyOf(game).withNextGuessId(2), 1));
+            assertEquals(elsewhere, GameJournal.decode(remote.peek(game.getGameId()).getValue()));
+            assertEquals(elsewhere, acknowledged.loadGame(game.getGameId()).get());
+
+            // and a write that may not have made it is reported as such
+            remote.setFailure(KeyValueServer.Failure.BEFORE_APPLYING);
+            assertThrows(IllegalStateException.class,
+                    () -> acknowledged.updateGame(ImmutableGameDetail.copyOf(elsewhere).withNextGuessId(6), 5));
+            remote.setFailure(KeyValueServer.Failure.NONE);
+            acknowledged.flush().join();
+            assertEquals(6, remote.peek(game.getGameId()).getVersion());
+        } finally {
+            acknowledged.stop();
+            remote.close();
+        }
+    }
+
+    @Test
+    void testCopiesAreCheckedAgainstTheRemoteStore() throws InterruptedException {
+        KeyValueServer remote = new KeyValueServer();
+        KeyValueHangmanStore checking = new KeyValueHangmanStore(remote, Duration.ofHours(1), 512, 8, false, Duration.ZERO);
+        checking.start();
+        try {
+            GameDetail game = newGame(checking.generateUniqueId());
+            checking.storeGame(game);
+            GameDetail elsewhere = ImmutableGameDetail.copyOf(game).withNextGuessId(3);
+            remote.put(game.getGameId(), 3, GameJournal.encode(elsewhere));
+            assertEquals(elsewhere, checking.loadGame(game.getGameId()).get());
+            // and the copy is written from the version it was read at
+            checking.updateGame(ImmutableGameDetail.copyOf(elsewhere).withNextGuessId(4), 3);
+            assertEquals(4, remote.peek(game.getGameId()).getVersion());
+
+            // reading many at once checks them too
+            checking.flush().join();
+            GameDetail later = ImmutableGameDetail.copyOf(game).withNextGuessId(6);
+            remote.put(game.getGameId(), 6, GameJournal.encode(later));
+            assertEquals(List.of(Optional.of(later)), checking.loadGames(List.of(game.getGameId())));
+            assertEquals(later, checking.loadGame(game.getGameId()).get());
+        } finally {
+            checking.stop();
+            remote.close();
+        }
+    }
+
+    @Test
+    void testAClientIsNeeded() {
+        KeyValueHangmanStore unconnected = new KeyValueHangmanStore(null, Duration.ofHours(1), 512, 8, false, Duration.ZERO);
+        IllegalStateException missing = assertThrows(IllegalStateException.class, unconnected::start);
+        assertTrue(missing.getMessage().contains("KeyValueClient"));
+    }
+
+    @Test
+    void testRemovedGamesAreDeleted() {
+        GameDetail game = service.createNewGame();
+        store.flush().join();
+        assertNotNull(server.peek(game.getGameId()));
+
+        assertTrue(store.removeGame(game.getGameId(), 0));
+        store.flush().join();
+        assertNull(server.peek(game.getGameId()));
+        assertFalse(store.loadGame(game.getGameId()).isPresent());
+    }
+
+    // updates per second from 64 threads as the round trip to the remote store grows: writing behind, acknowledging
+    // each update once its batch has been written, and writing each update through on its own
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkRoundTrips() throws Exception {
+        for (int roundTripMillis : new int[]{0, 1, 5, 20, 50}) {
+            KeyValueServer remote = new KeyValueServer(Duration.ofMillis(roundTripMillis));
+            List<String> gameIds = new ArrayList<>();
+            long writeBehind = storeUpdatesPerSecond(remote, gameIds, true);
+            long acknowledged = storeUpdatesPerSecond(remote, gameIds, false);
+
+            long writeThrough = updatesPerSecond(() -> {
+                String gameId = gameIds.get(ThreadLocalRandom.current().nextInt(gameIds.size()));
+                VersionedValue current = remote.get(List.of(gameId)).join().get(0);
+                GameDetail next = ImmutableGameDetail.copyOf(GameJournal.decode(current.getValue()))
+                        .withNextGuessId((int) current.getVersion() + 1);
+                remote.write(List.of(ConditionalWrite.put(gameId, current.getVersion(), current.getVersion() + 1,
+                        GameJournal.encode(next)))).join();
+            });
+            remote.close();
+            System.out.printf("round trip %2dms: write behind %,9d updates/s, acknowledged once written %,7d updates/s"
+                            + ", write through %,7d updates/s%n",
+                    roundTripMillis, writeBehind, acknowledged, writeThrough);
+        }
+    }
+
+    // a fresh store over the remote one, holding 2000 games of its own
+    private static long storeUpdatesPerSecond(KeyValueServer remote, List<String> gameIds, boolean writeBehind) throws Exception {
+        KeyValueHangmanStore store = new KeyValueHangmanStore(remote, Duration.ofMillis(5), 512, 8, writeBehind,
+                Duration.ofHours(1));
+        store.start();
+        List<GameDetail> games = new ArrayList<>();
+        for (int loop = 0; loop < 2_000; loop++) {
+            games.add(newGame(store.generateUniqueId()));
+        }
+        store.storeGames(games);
+        store.flush().join();
+        gameIds.clear();
+        games.forEach(game -> gameIds.add(game.getGameId()));
+
+        long updates = updatesPerSecond(() -> {
+            String gameId = gameIds.get(ThreadLocalRandom.current().nextInt(gameIds.size()));
+            GameDetail current = store.loadGame(gameId).get();
+            try {
+                store.updateGame(ImmutableGameDetail.copyOf(current).withNextGuessId(current.getNextGuessId() + 1),
+                        current.getNextGuessId());
+            } catch (ConcurrentModificationException e) {
+                // another thread got there first
+            }
+        });
+        store.flush().join();
+        store.stop();
+        return updates;
+    }
+
+    // 64 threads for two seconds
+    private static long updatesPerSecond(Runnable update) throws InterruptedException {
+        LongAdder count = new LongAdder();
+        long end = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        Thread[] threads = new Thread[64];
+        for (int loop = 0; loop < threads.length; loop++) {
+            threads[loop] = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    update.run();
+                    count.increment();
+                }
+            });
+            threads[loop].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return count.sum() / 2;
+    }
+
+    private static GameDetail newGame(String gameId) {
+        return ImmutableGameDetail.builder()
+                .gameId(gameId)
+                .secretWord("foobar")
+                .status(GameStatus.NEW)
+                .nextGuessId(0)
+                .guessesRemaining(10)
+                .build();
+    }
+}
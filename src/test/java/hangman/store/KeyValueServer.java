@@ -0,0 +1,116 @@
+package hangman.store;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// an in-process stand-in for a remote key/value store. Every call is answered a round trip later, and calls are
+// applied in the order they were made, as over one connection. It can also be made to fail calls.
+class KeyValueServer implements KeyValueClient {
+
+    enum Failure {
+        NONE,
+        // the call fails without being applied
+        BEFORE_APPLYING,
+        // the call is applied but the answer is lost
+        AFTER_APPLYING
+    }
+
+    private final Map<String, VersionedValue> data = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService network = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kv-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LongAdder calls = new LongAdder();
+
+    private volatile Duration roundTrip;
+    private volatile Failure failure = Failure.NONE;
+
+    KeyValueServer() {
+        this(Duration.ZERO);
+    }
+
+    KeyValueServer(Duration roundTrip) {
+        this.roundTrip = roundTrip;
+    }
+
+    void setFailure(Failure failure) {
+        this.failure = failure;
+    }
+
+    // a write from another node
+    void put(String key, long version, byte[] value) {
+        data.put(key, VersionedValue.of(version, value));
+    }
+
+    VersionedValue peek(String key) {
+        return data.get(key);
+    }
+
+    long calls() {
+        return calls.sum();
+    }
+
+    void close() {
+        network.shutdownNow();
+    }
+
+    @Override
+    public CompletableFuture<List<VersionedValue>> get(List<String> keys) {
+        return call(() -> {
+            List<VersionedValue> values = new ArrayList<>(keys.size());
+            keys.forEach(key -> values.add(data.get(key)));
+            return values;
+        });
+    }
+
+    @Override
+    public CompletableFuture<boolean[]> write(List<ConditionalWrite> writes) {
+        return call(() -> {
+            boolean[] applied = new boolean[writes.size()];
+            for (int loop = 0; loop < writes.size(); loop++) {
+                ConditionalWrite write = writes.get(loop);
+                VersionedValue current = data.get(write.getKey());
+                if ((current == null ? ABSENT : current.getVersion()) != write.getExpectedVersion()) {
+                    continue;
+                }
+                if (write.getValue().isPresent()) {
+                    data.put(write.getKey(), VersionedValue.of(write.getVersion(), write.getValue().get()));
+                } else {
+                    data.remove(write.getKey());
+                }
+                applied[loop] = true;
+            }
+            return applied;
+        });
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<T> apply) {
+        calls.increment();
+        CompletableFuture<T> answer = new CompletableFuture<>();
+        network.schedule(() -> {
+            Failure failing = failure;
+            if (failing == Failure.BEFORE_APPLYING) {
+                answer.completeExceptionally(new IOException("connection reset"));
+                return;
+            }
+            T result = apply.get();
+            if (failing == Failure.AFTER_APPLYING) {
+                answer.completeExceptionally(new IOException("connection reset"));
+            } else {
+                answer.complete(result);
+            }
+        }, roundTrip.toNanos(), TimeUnit.NANOSECONDS);
+        return answer;
+    }
+}
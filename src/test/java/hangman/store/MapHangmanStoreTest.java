@@ -0,0 +1,150 @@
+package hangman.store;
+
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.ImmutableGameDetail;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ConcurrentModificationException;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapHangmanStoreTest {
+
+    @Test
+    void testIdLength() {
+        HangmanStore store = new MapHangmanStore();
+        assertTrue(store.generateUniqueId().length() <= 13);
+    }
+
+    @Test
+    void testStaleUpdateIsRejected() {
+        HangmanStore store = new MapHangmanStore();
+        store.storeGame(newGame("id"));
+
+        store.updateGame(ImmutableGameDetail.copyOf(newGame("id")).withNextGuessId(1), 0);
+        assertThrows(ConcurrentModificationException.class,
+                () -> store.updateGame(ImmutableGameDetail.copyOf(newGame("id")).withNextGuessId(1), 0));
+        assertEquals(1, store.loadGame("id").get().getNextGuessId());
+    }
+
+    @Test
+    void testScanWhileWriting() {
+        HangmanStore store = new MapHangmanStore();
+        for (int game = 0; game < 100; game++) {
+            GameDetail newGame = newGame("game" + game);
+            store.storeGame(game % 2 == 0 ? newGame : ImmutableGameDetail.copyOf(newGame).withStatus(GameStatus.WON));
+        }
+        Iterator<GameDetail> scan = store.scanGames(EnumSet.of(GameStatus.WON));
+        Set<String> seen = new HashSet<>();
+        while (scan.hasNext()) {
+            GameDetail game = scan.next();
+            assertEquals(GameStatus.WON, game.getStatus());
+            assertTrue(seen.add(game.getGameId()));
+            // neither writes nor removals get in the way of the scan
+            store.removeGame(game.getGameId(), 0);
+            store.storeGame(ImmutableGameDetail.copyOf(newGame("new" + seen.size())).withStatus(GameStatus.WON));
+        }
+        assertTrue(seen.size() >= 50);
+        assertEquals(50, count(store.scanGames(EnumSet.of(GameStatus.NEW))));
+    }
+
+    @Test
+    void testNoLostUpdatesOnOneGame() throws Exception {
+        HangmanStore store = new MapHangmanStore();
+        store.storeGame(newGame("id"));
+
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        AtomicInteger applied = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        runConcurrently(threads, () -> {
+            for (int loop = 0; loop < 10_000; loop++) {
+                GameDetail current = store.loadGame("id").get();
+                try {
+                    store.updateGame(ImmutableGameDetail.copyOf(current)
+                            .withNextGuessId(current.getNextGuessId() + 1), current.getNextGuessId());
+                    applied.incrementAndGet();
+                } catch (ConcurrentModificationException e) {
+                    conflicts.incrementAndGet();
+                }
+            }
+        });
+
+        assertEquals(threads * 10_000, applied.get() + conflicts.get());
+        assertEquals(applied.get(), store.loadGame("id").get().getNextGuessId());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkUpdateScaling() throws Exception {
+        int updatesPerThread = 1_000_000;
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            HangmanStore store = new MapHangmanStore();
+            for (int game = 0; game < threads; game++) {
+                store.storeGame(newGame("game" + game));
+            }
+            AtomicInteger nextGame = new AtomicInteger();
+            long start = System.nanoTime();
+            runConcurrently(threads, () -> {
+                // every thread guesses on its own game, so nothing should contend
+                String gameId = "game" + nextGame.getAndIncrement();
+                for (int loop = 0; loop < updatesPerThread; loop++) {
+                    GameDetail current = store.loadGame(gameId).get();
+                    store.updateGame(ImmutableGameDetail.copyOf(current)
+                            .withNextGuessId(loop + 1), loop);
+                }
+            });
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("threads=%d updates/s=%,d%n", threads,
+                    threads * (long) updatesPerThread * TimeUnit.SECONDS.toNanos(1) / elapsed);
+        }
+    }
+
+    private static int count(Iterator<GameDetail> games) {
+        int count = 0;
+        for (; games.hasNext(); games.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static GameDetail newGame(String gameId) {
+        return ImmutableGameDetail.builder()
+                .gameId(gameId)
+                .secretWord("foobar")
+                .status(GameStatus.NEW)
+                .nextGuessId(0)
+                .guessesRemaining(10)
+                .build();
+    }
+
+    private static void runConcurrently(int threads, Runnable task) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int loop = 0; loop < threads; loop++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                task.run();
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+
+}
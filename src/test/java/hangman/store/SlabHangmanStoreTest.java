@@ -0,0 +1,253 @@
+package hangman.store;
+
+import hangman.api.GameStatus;
+import hangman.service.GameDetail;
+import hangman.service.Dictionary;
+import hangman.service.HangmanService;
+import hangman.service.ImmutableGameDetail;
+import hangman.service.InvalidGameException;
+import hangman.service.LetterMask;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.ConcurrentModificationException;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = {SlabHangmanStore.class, HangmanService.class, Dictionary.class, GameIdGenerator.class},
+        properties = {"hangman.store.backend=slab", "hangman.node.id=5"})
+class SlabHangmanStoreTest {
+
+    @Autowired
+    private HangmanService service;
+
+    @Autowired
+    private HangmanStore store;
+
+    @Test
+    void testRoundTrip() {
+        String gameId = store.generateUniqueId();
+        assertFalse(store.loadGame(gameId).isPresent());
+
+        GameDetail game = newGame(gameId, "foobar");
+        store.storeGame(game);
+        assertEquals(game, store.loadGame(gameId).get());
+
+        GameDetail updated = ImmutableGameDetail.builder().from(game)
+                .guesses("o0\u00e9")
+                .guessedMask(game.getGuessedMask() | LetterMask.of("o\u00e9"))
+                .guessesRemaining(8)
+                .nextGuessId(3)
+                .status(GameStatus.IN_PROGRESS)
+                .build();
+        store.updateGame(updated, 0);
+        assertEquals(updated, store.loadGame(gameId).get());
+    }
+
+    @Test
+    void testScanAndMultiGet() {
+        String playing = store.generateUniqueId();
+        store.storeGame(ImmutableGameDetail.copyOf(newGame(playing, "foobar")).withStatus(GameStatus.IN_PROGRESS));
+        String lost = store.generateUniqueId();
+        store.storeGame(ImmutableGameDetail.copyOf(newGame(lost, "foobar")).withStatus(GameStatus.LOST));
+        // claimed but never stored
+        String unused = store.generateUniqueId();
+
+        Set<String> found = new HashSet<>();
+        for (Iterator<GameDetail> scan = store.scanGames(EnumSet.of(GameStatus.LOST, GameStatus.WON)); scan.hasNext(); ) {
+            GameDetail game = scan.next();
+            assertTrue(game.getStatus() == GameStatus.LOST || game.getStatus() == GameStatus.WON);
+            assertTrue(found.add(game.getGameId()));
+        }
+        assertTrue(found.contains(lost));
+        assertFalse(found.contains(playing));
+        assertFalse(found.contains(unused));
+
+        assertEquals(List.of(store.loadGame(lost), Optional.empty(), store.loadGame(playing)),
+                store.loadGames(List.of(lost, unused, playing)));
+    }
+
+    @Test
+    void testUnknownGames() {
+        assertFalse(store.loadGame("not-a-game").isPresent());
+        assertFalse(store.loadGame("zzzzzzzzzz").isPresent());
+
+        String gameId = store.generateUniqueId();
+        store.storeGame(newGame(gameId, "foobar"));
+        // same row, different salt
+        String forged = Long.toString(Long.parseLong(gameId, 36) ^ 1, 36);
+        assertFalse(store.loadGame(forged).isPresent());
+        assertThrows(InvalidGameException.class, () -> store.updateGame(newGame(forged, "foobar"), 0));
+        assertThrows(IllegalArgumentException.class, () -> store.storeGame(newGame("id", "foobar")));
+
+        // the same row and salt made by another node
+        String otherNode = Long.toString(Long.parseLong(gameId, 36) ^ (1L << GameIdGenerator.NODE_SHIFT), 36);
+        assertFalse(store.loadGame(otherNode).isPresent());
+    }
+
+    @Test
+    void testIdsCarryTheNode() {
+        assertEquals(5, GameIdGenerator.nodeOf(store.generateUniqueId()));
+    }
+
+    @Test
+    void testStaleUpdateIsRejected() {
+        String gameId = store.generateUniqueId();
+        store.storeGame(newGame(gameId, "foobar"));
+
+        store.updateGame(ImmutableGameDetail.copyOf(newGame(gameId, "foobar")).withNextGuessId(1), 0);
+        assertThrows(ConcurrentModificationException.class,
+                () -> store.updateGame(ImmutableGameDetail.copyOf(newGame(gameId, "foobar")).withNextGuessId(1), 0));
+        assertEquals(1, store.loadGame(gameId).get().getNextGuessId());
+    }
+
+    @Test
+    void testRemovedRowsAreReused() {
+        SlabHangmanStore slab = new SlabHangmanStore();
+        String gameId = slab.generateUniqueId();
+        slab.storeGame(newGame(gameId, "foobar"));
+        assertEquals(1, slab.liveGames());
+
+        assertFalse(slab.removeGame(gameId, 1));
+        assertTrue(slab.removeGame(gameId, 0));
+        assertFalse(slab.loadGame(gameId).isPresent());
+        assertEquals(0, slab.liveGames());
+
+        String reusedId = slab.generateUniqueId();
+        assertNotEquals(gameId, reusedId);
+        slab.storeGame(newGame(reusedId, "dreamboat"));
+        assertFalse(slab.loadGame(gameId).isPresent());
+        assertThrows(InvalidGameException.class, () -> slab.updateGame(newGame(gameId, "foobar"), 0));
+        assertEquals("dreamboat", slab.loadGame(reusedId).get().getSecretWord());
+    }
+
+    @Test
+    void testAFailedStoreGivesItsRowBack() {
+        SlabHangmanStore slab = new SlabHangmanStore();
+        String gameId = slab.generateUniqueId();
+        assertThrows(IllegalArgumentException.class,
+                () -> slab.storeGame(ImmutableGameDetail.copyOf(newGame(gameId, "foobar")).withGuesses("\u20ac")));
+        assertThrows(IllegalArgumentException.class, () -> slab.storeGame(newGame(gameId, "foobar")));
+
+        String reusedId = slab.generateUniqueId();
+        assertEquals(Long.parseLong(gameId, 36) >>> SlabHangmanStore.SALT_BITS, Long.parseLong(reusedId, 36) >>> SlabHangmanStore.SALT_BITS);
+        slab.storeGame(newGame(reusedId, "foobar"));
+        assertEquals(1, slab.liveGames());
+    }
+
+    @Test
+    void testGamesExpire() {
+        AtomicLong clock = new AtomicLong(1_000_000_000L);
+        SlabHangmanStore slab = new SlabHangmanStore(clock::get, Duration.ofSeconds(5), Duration.ofSeconds(20));
+        String won = slab.generateUniqueId();
+        slab.storeGame(ImmutableGameDetail.copyOf(newGame(won, "foobar")).withStatus(GameStatus.WON));
+        String idle = slab.generateUniqueId();
+        slab.storeGame(newGame(idle, "foobar"));
+        String active = slab.generateUniqueId();
+        slab.storeGame(newGame(active, "foobar"));
+
+        for (int second = 1; second <= 30; second++) {
+            clock.addAndGet(1000);
+            slab.expireDue();
+            slab.updateGame(ImmutableGameDetail.copyOf(newGame(active, "foobar")).withNextGuessId(second), second - 1);
+            if (second == 5) {
+                assertFalse(slab.loadGame(won).isPresent());
+                assertTrue(slab.loadGame(idle).isPresent());
+            }
+        }
+        assertFalse(slab.loadGame(idle).isPresent());
+        assertEquals(30, slab.loadGame(active).get().getNextGuessId());
+        assertEquals(1, slab.expiredGames());
+        assertEquals(1, slab.evictedGames());
+        assertEquals(1, slab.liveGames());
+
+        // a row freed by expiry holds no timing for the game that gets it next
+        String reused = slab.generateUniqueId();
+        slab.storeGame(newGame(reused, "foobar"));
+        for (int second = 1; second < 20; second++) {
+            clock.addAndGet(1000);
+            slab.expireDue();
+        }
+        assertTrue(slab.loadGame(reused).isPresent());
+        clock.addAndGet(1000);
+        slab.expireDue();
+        assertFalse(slab.loadGame(reused).isPresent());
+    }
+
+    @Test
+    void testPlayingThroughTheService() {
+        GameDetail game = service.createNewGame();
+        String secretWord = game.getSecretWord();
+        GameDetail updated = game;
+        for (char letter : secretWord.toCharArray()) {
+            updated = service.applyGuess(game.getGameId(), letter, updated.getNextGuessId());
+        }
+        assertEquals(GameStatus.WON, updated.getStatus());
+        assertEquals(updated, service.getGameState(game.getGameId()));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    void benchmarkMemoryPerGame() {
+        int games = 1_000_000;
+        // with expiry running at the default ttls, as a deployed store has it
+        System.out.printf("map  bytes/game=%d%n", bytesPerGame(games, () -> {
+            MapHangmanStore map = new MapHangmanStore(Duration.ofHours(1), Duration.ofDays(1));
+            map.start();
+            return map;
+        }));
+        System.out.printf("slab bytes/game=%d%n", bytesPerGame(games, () -> {
+            SlabHangmanStore slab = new SlabHangmanStore(Duration.ofHours(1), Duration.ofDays(1));
+            slab.startExpiry();
+            return slab;
+        }));
+    }
+
+    private static long bytesPerGame(int games, Supplier<HangmanStore> storeFactory) {
+        String[] words = {"spellbinding", "atrocious", "beefeater", "dreamboat", "vulnerable"};
+        long before = usedHeap();
+        HangmanStore store = storeFactory.get();
+        for (int loop = 0; loop < games; loop++) {
+            // a game a few guesses in, sharing its word with the dictionary like a real one
+            store.storeGame(ImmutableGameDetail.builder()
+                    .from(newGame(store.generateUniqueId(), words[loop % words.length]))
+                    .guesses("ea" + (char) ('p' + loop % 8))
+                    .nextGuessId(3)
+                    .status(GameStatus.IN_PROGRESS)
+                    .build());
+        }
+        long after = usedHeap();
+        assertTrue(store.loadGame(store.generateUniqueId()).isEmpty());
+        return (after - before) / games;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int loop = 0; loop < 3; loop++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static GameDetail newGame(String gameId, String word) {
+        return ImmutableGameDetail.builder()
+                .gameId(gameId)
+                .secretWord(word)
+                .status(GameStatus.NEW)
+                .nextGuessId(0)
+                .guessesRemaining(10)
+                .build();
+    }
+
+}